@@ -0,0 +1,20 @@
+package groovySci.bench;
+
+import groovySci.math.array.Matrix;
+
+// reproducible input data of the benchmarks
+class BenchData {
+
+    static double [][] randomArray(int n, int m, long seed) {
+        java.util.Random rnd = new java.util.Random(seed);
+        double [][] a = new double[n][m];
+        for (int r = 0; r < n; r++)
+            for (int c = 0; c < m; c++)
+                a[r][c] = 0.01+0.98*rnd.nextDouble();
+        return a;
+    }
+
+    static Matrix randomMatrix(int n, int m, long seed) {
+        return new Matrix(randomArray(n, m, seed), true);
+    }
+}
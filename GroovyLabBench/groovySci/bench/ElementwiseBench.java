@@ -0,0 +1,52 @@
+package groovySci.bench;
+
+import groovySci.math.array.ElementwiseOps;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// the element-wise kernels, single threaded and parallel, with a caller-provided output array
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementwiseBench {
+
+    @Param({"sin", "exp", "log", "sqrt", "pow"})
+    public String kernel;
+
+    @Param({"1000"})
+    public int n;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    int op;
+    double [][] x, y;
+    int savedMinParallel;
+
+    @Setup
+    public void setup() {
+        op = -1;
+        for (int k = 0; k < ElementwiseOps.numOps(); k++)
+            if (ElementwiseOps.name(k).equals(kernel))
+                op = k;
+        if (op < 0)
+            throw new IllegalArgumentException("unknown kernel "+kernel);
+        x = BenchData.randomArray(n, n, 1);
+        y = new double[n][n];
+        savedMinParallel = ElementwiseOps.minParallelElements;
+        ElementwiseOps.minParallelElements = parallel ? 0 : Integer.MAX_VALUE;
+    }
+
+    @TearDown
+    public void tearDown() {
+        ElementwiseOps.minParallelElements = savedMinParallel;
+    }
+
+    @Benchmark
+    public double [][] apply() {
+        return ElementwiseOps.apply(op, 1.5, x, y);
+    }
+}
@@ -0,0 +1,70 @@
+package groovySci.bench;
+
+import DSP.fft.CDFT;
+import com.nr.fft.FFT;
+import groovySci.FFT.ApacheFFT;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.openjdk.jmh.annotations.*;
+
+// complex FFTs of the Numerical Recipes, DSP split-radix and Apache Commons Math implementations,
+// and the groovySci ApacheFFT.fft, that is computed with the cached RealFFTPlan plans
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FFTBench {
+
+    @Param({"10", "16"})
+    public int log2N;
+
+    int N;
+    double [] signal, interleaved, work;
+    double [] xr, xi, Xr, Xi;
+    CDFT cdft;
+    FastFourierTransformer apache;
+
+    @Setup
+    public void setup() {
+        N = 1 << log2N;
+        signal = new double[N];
+        interleaved = new double[2*N];
+        xr = new double[N];  xi = new double[N];
+        Xr = new double[N];  Xi = new double[N];
+        for (int k = 0; k < N; k++) {
+            signal[k] = Math.sin(0.43*k) + 0.5*Math.cos(0.28*k);
+            xr[k] = signal[k];
+            interleaved[2*k] = signal[k];
+        }
+        work = new double[2*N];
+        cdft = new CDFT(log2N);
+        apache = new FastFourierTransformer(DftNormalization.STANDARD);
+    }
+
+    @Benchmark
+    public double [] nrFour1() {
+        System.arraycopy(interleaved, 0, work, 0, 2*N);   // four1 transforms in-place
+        FFT.four1(work, 1);
+        return work;
+    }
+
+    @Benchmark
+    public double [] dspCDFT() {
+        cdft.evaluate(xr, xi, Xr, Xi);
+        return Xr;
+    }
+
+    @Benchmark
+    public Object apacheFFT() {
+        return apache.transform(signal, TransformType.FORWARD);
+    }
+
+    @Benchmark
+    public Object groovySciPlanFFT() {
+        return ApacheFFT.fft(signal);
+    }
+}
@@ -0,0 +1,45 @@
+package groovySci.bench;
+
+import com.jmatio.io.MatFileReader;
+import com.jmatio.io.MatFileWriter;
+import com.jmatio.types.MLArray;
+import com.jmatio.types.MLDouble;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// reading a .mat file with a few dense double matrices
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatFileBench {
+
+    @Param({"1000"})
+    public int n;
+
+    File matFile;
+
+    @Setup
+    public void setup() throws IOException {
+        matFile = File.createTempFile("groovySciBench", ".mat");
+        ArrayList<MLArray> data = new ArrayList<MLArray>();
+        for (int k = 0; k < 4; k++)
+            data.add(new MLDouble("m"+k, BenchData.randomArray(n, n, k)));
+        new MatFileWriter(matFile, data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        matFile.delete();
+    }
+
+    @Benchmark
+    public Object read() throws IOException {
+        return new MatFileReader(matFile).getContent();
+    }
+}
@@ -0,0 +1,49 @@
+package groovySci.bench;
+
+import groovySci.math.array.Matrix;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// dense Matrix operations: multiply, inverse, solve and svd
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBench {
+
+    @Param({"100", "500"})
+    public int n;
+
+    Matrix A, B, b;
+
+    @Setup
+    public void setup() {
+        A = BenchData.randomMatrix(n, n, 1);
+        B = BenchData.randomMatrix(n, n, 2);
+        b = BenchData.randomMatrix(n, 1, 3);
+        for (int k = 0; k < n; k++)    // well conditioned
+            A.set(k, k, A.get(k, k)+n);
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        return A.multiply(B);
+    }
+
+    @Benchmark
+    public Matrix inverse() {
+        return Matrix.inv(A);
+    }
+
+    @Benchmark
+    public Matrix solve() {
+        return Matrix.solve(A, b);
+    }
+
+    @Benchmark
+    public Object svd() {
+        return Matrix.svd(A);
+    }
+}
@@ -0,0 +1,64 @@
+package groovySci.bench;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_compress;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_entry;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_util;
+import groovySci.math.array.CCMatrix;
+import groovySci.math.array.Sparse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// sparse matrix-vector products of Sparse (CSparse) and CCMatrix (MTJ) on a banded matrix
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseBench {
+
+    @Param({"100000"})
+    public int n;
+
+    @Param({"7"})
+    public int bandwidth;
+
+    Sparse S;
+    CCMatrix C;
+    double [] x, y;
+
+    @Setup
+    public void setup() {
+        Dcs triplet = Dcs_util.cs_spalloc(n, n, n*bandwidth, true, true);
+        java.util.Random rnd = new java.util.Random(1);
+        int half = bandwidth/2;
+        for (int r = 0; r < n; r++)
+            for (int c = Math.max(0, r-half); c <= Math.min(n-1, r+half); c++)
+                Dcs_entry.cs_entry(triplet, r, c, r == c ? bandwidth : rnd.nextDouble());
+        S = new Sparse();
+        S.csm = Dcs_compress.cs_compress(triplet);
+        S.Nrows = n;
+        S.Ncols = n;
+        C = CCMatrix.CSparseToCCMatrix(S);
+        x = new double[n];
+        for (int k = 0; k < n; k++)
+            x[k] = rnd.nextDouble();
+        y = new double[n];
+    }
+
+    @Benchmark
+    public double [] sparseMultiply() {
+        return S.multiply(x);
+    }
+
+    @Benchmark
+    public double [] ccMatrixMultiply() {
+        return C.multiply(x);
+    }
+
+    @Benchmark
+    public double [] ccMatrixTransMult() {
+        return C.transMult(x, y);
+    }
+}
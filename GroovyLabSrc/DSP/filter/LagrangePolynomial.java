@@ -24,6 +24,9 @@ public class LagrangePolynomial {
   /** Barycentric weights for this Lagrange polynomial. */
   private double[] weights;                 // Barycentric weights
   
+  /** int specifying the number of points evaluated together by evaluate(double[], int, int, double[]). */
+  private static final int BLOCK = 256;
+  
   /**
    * Instantiates a new Lagrange polynomial given the set of ordinate and matching abscissa values that this
    * polynomial interpolates.
@@ -84,8 +87,66 @@ public class LagrangePolynomial {
   
   
   
+  /**
+   * Evaluates the Lagrange polynomial at an array of real values.
+   * 
+   * Evaluates the barycentric formula for blocks of points at once, with the loop over the points innermost:
+   * its iterations are independent, thus the JIT can vectorize it, and the terms of two nodes share one division.
+   * The results agree with those of evaluate(double) to rounding.
+   *
+   * @param xp     double[] containing the real values for evaluation of the polynomial.
+   * @param off    int specifying the first value of xp evaluated.
+   * @param len    int specifying the number of values evaluated.
+   * @param yp     double[] receiving the values of the polynomial at yp[off..off+len), may be xp.
+   */
+  public void evaluate( double[] xp, int off, int len, double[] yp ) {
+    
+    double[] num   = new double[ Math.min( len, BLOCK ) ];
+    double[] denom = new double[ num.length ];
+    for ( int b = off;  b < off + len;  b += BLOCK ) {
+      int m = Math.min( BLOCK, off + len - b );
+      java.util.Arrays.fill( num, 0.0 );
+      java.util.Arrays.fill( denom, 0.0 );
+      int j = 0;
+      // two nodes per pass share a division:  w0/d0 = w0*d1/(d0*d1), w1/d1 = w1*d0/(d0*d1)
+      for ( ;  j < order;  j += 2 ) {
+        double x0 = x[j],   w0 = weights[j],   y0 = y[j];
+        double x1 = x[j+1], w1 = weights[j+1], y1 = y[j+1];
+        for ( int i = 0;  i < m;  i++ ) {
+          double d0 = xp[b+i] - x0;
+          double d1 = xp[b+i] - x1;
+          double r  = 1.0/( d0*d1 );
+          double t0 = w0*d1*r;
+          double t1 = w1*d0*r;
+          num[i]   += t0*y0 + t1*y1;
+          denom[i] += t0 + t1;
+        }
+      }
+      if ( j == order ) {
+        double xj = x[j], wj = weights[j], yj = y[j];
+        for ( int i = 0;  i < m;  i++ ) {
+          double term = wj/( xp[b+i] - xj );
+          num[i]   += term*yj;
+          denom[i] += term;
+        }
+      }
+      for ( int i = 0;  i < m;  i++ ) {
+        double v = num[i]/denom[i];
+        // at a node the terms are infinite, evaluated as the ordinate by evaluate(double)
+        yp[b+i] = ( Double.isNaN( v ) || Double.isInfinite( v ) ) ? evaluate( xp[b+i] ) : v;
+      }
+    }
+  }
+  
+  
+  
   /**
    * Calculates barycentric weights for a collection of abscissa values.
+   * 
+   * The weights are scaled by a common factor, which cancels in the barycentric formula, so that the largest
+   * is about 1:  the products of the differences are accumulated with separate binary exponents, thus the
+   * products of thousands of differences (e.g. of the extrema of long equiripple designs) do not underflow
+   * or overflow.
    *
    * @param z     double[] containing the ordinate values for which the barycentric weights are computed.
    * @return      double[] containing the resulting barycentric weights.
@@ -94,16 +155,34 @@ public class LagrangePolynomial {
     
     int n = z.length;
     
-    double[] retval = new double[ n ];
+    double[] retval   = new double[ n ];
+    int[]    exponent = new int[ n ];
+    int      emin     = Integer.MAX_VALUE;
     
     for ( int j = 0;  j < n;  j++ ) {
-      double w = 1.0;
+      double w  = 1.0;
+      int    e  = 0;
+      double zj = z[j];
       for ( int i = 0;  i < n;  i++ ) {
-        if ( i != j ) w *= ( z[j] - z[i] );
+        if ( i == j ) continue;
+        w *= ( zj - z[i] );
+        if ( ( i & 31 ) == 31 ) {
+          // renormalize, 32 factors of [2^-64, 2^64] keep w within the range of a double
+          int k = Math.getExponent( w );
+          w  = Math.scalb( w, -k );
+          e += k;
+        }
       }
-      retval[j] = 1.0/w;
+      int k = Math.getExponent( w );
+      retval[j]   = 1.0/Math.scalb( w, -k );
+      exponent[j] = e + k;
+      emin        = Math.min( emin, exponent[j] );
     }
     
+    // 1/w = retval[j] * 2^-exponent[j], scaled by 2^emin
+    for ( int j = 0;  j < n;  j++ )
+      retval[j] = Math.scalb( retval[j], emin - exponent[j] );
+    
     return retval;
   }
   
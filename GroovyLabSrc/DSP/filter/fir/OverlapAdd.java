@@ -59,6 +59,13 @@ public class OverlapAdd {
    */
   public OverlapAdd( double[] H, int blockSize ) {
     
+    init( H, blockSize );
+  }
+  
+  
+  
+  private void init( double[] H, int blockSize ) {
+    
     kernelLength = H.length;
     
     this.blockSize = blockSize;
@@ -85,12 +92,29 @@ public class OverlapAdd {
   
   
   
-  /** Constructor for slave OverlapAdd instance - this one uses the fft instance contained in the master
+  /** Constructor for subclasses that implement the convolution otherwise, e.g. PartitionedConvolution.
+   */
+  protected OverlapAdd() {
+  }
+  
+  
+  
+  /** Constructor for slave OverlapAdd instance - this one uses the fft instance contained in the master.
+   * A master without a DFT to share, e.g. a PartitionedConvolution, gives a plain OverlapAdd instance
+   * at the block size of the master.
    * @param H          double array containing kernel
    * @param master     Master OverlapAdd instance - slave obtains fft instances from the master
    */
   public OverlapAdd( double[] H, OverlapAdd master ) {
     
+    if ( master == null )
+      throw new IllegalArgumentException( "Master OverlapAdd instance is null" );
+    
+    if ( master.fft == null ) {
+      init( H, master.getBlockSize() );
+      return;
+    }
+    
     if ( H.length != master.kernelLength ) 
       throw new IllegalArgumentException( "Slave kernel length inconsistent with master OverlapAdd kernel length" );
     
@@ -152,6 +176,13 @@ public class OverlapAdd {
   
   
   
+  /** @return  int block size, i.e. the number of samples filtered by each call of filter(). */
+  public int getBlockSize() {
+    return blockSize;
+  }
+  
+  
+  
   /** Flushes state information buffer - i.e. left over convolution results when no further data blocks are available
    * @param dst       double[] where convolution results are returned.  Length of dst must be >= dptr + blockSize.
    * @param dptr      int specifying point in dst where convolution results begin.
@@ -0,0 +1,339 @@
+package DSP.fir;
+
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import DSP.fft.RDFT;
+import groovySci.math.array.ParallelEngine;
+
+
+
+/**
+  Implements a finite impulse response (FIR) filter with partitioned convolution, for long kernels (e.g. room
+  impulse responses of 10^6 taps) filtered in short blocks.  OverlapAdd transforms the whole kernel with a DFT
+  of at least kernelLength + blockSize - 1 points for every block, thus a long kernel needs either a large
+  block, i.e. a large latency, or a large cost per sample.  Here the kernel is cut into partitions of the block
+  size, each transformed once with a DFT of about twice the block size.  The transforms of the recent input
+  blocks are kept in a frequency-domain delay line, and every block the output is the inverse transform of the
+  sum of the products of the partitions with the delayed input transforms (uniformly partitioned overlap-save).
+
+ With the second constructor the partitions grow with the delay:  a few partitions of the block size, then a
+  few of twice the block size, and so on up to a maximum size, which lowers the cost of long kernels at the same
+  latency (non-uniformly partitioned convolution).  A partition of size B*2^s is convolved once every 2^s blocks,
+  when its input block is complete, and its result is added to the output delayed accordingly:  the partitions
+  are placed so that the result is always ready when it is due.
+
+ The multiply-accumulate over the partitions is split by frequency bins across the threads of the ParallelEngine
+  pool when there is enough work, e.g. for thousands of partitions.
+
+ The call shape is that of OverlapAdd:  filter() takes one block of blockSize samples and returns the next
+  blockSize samples of the convolution, thus the latency is one block.  When the stream ends, flush() returns
+  the following blocks of the tail of the convolution, one block per call.
+
+   h  = ...                                                 // 10^6 taps
+   pc = new PartitionedConvolution( h, 256, 65536 )         // 256 samples of latency
+   pc.filter( x, 0, y, 0 )                                  // blocks of 256 samples
+ */
+public class PartitionedConvolution extends OverlapAdd {
+
+  /** The number of spectral values multiplied per block, summed over the partitions, below which the calling thread does the work. */
+  public static int minParallelWork = 1 << 16;
+
+  /** The number of partitions of each size before the size doubles, for the non-uniform partitions built afterwards. */
+  public static int partitionsPerSize = 4;
+
+  private int         blockSize;
+  private Segment[]   segments;
+
+  // output accumulator, circular, outputs[ ( outputPtr + i ) & outputMask ] is the output i samples after the current block start
+  private double[]    outputs;
+  private int         outputMask;
+  private int         outputPtr;
+
+  private double[]    zeros;
+
+
+
+  /** Constructor for uniformly partitioned convolution - all partitions are of the block size.
+   * @param H          double[] containing convolutional kernel
+   * @param blockSize  int specifying size of data blocks to be filtered, i.e. the latency, at least 8
+   */
+  public PartitionedConvolution( double[] H, int blockSize ) {
+    this( H, blockSize, blockSize );
+  }
+
+
+
+  /** Constructor for non-uniformly partitioned convolution - the partition sizes double from blockSize up to maxPartitionSize.
+   * @param H                  double[] containing convolutional kernel
+   * @param blockSize          int specifying size of data blocks to be filtered, i.e. the latency, at least 8
+   * @param maxPartitionSize   int specifying the largest partition size, blockSize times a power of two
+   */
+  public PartitionedConvolution( double[] H, int blockSize, int maxPartitionSize ) {
+
+    if ( H.length == 0 )
+      throw new IllegalArgumentException( "Kernel is empty" );
+    if ( blockSize < 8 )
+      throw new IllegalArgumentException( "Block size should be at least 8, is " + blockSize );
+    if ( maxPartitionSize < blockSize  ||  maxPartitionSize % blockSize != 0  ||  Integer.bitCount( maxPartitionSize/blockSize ) != 1 )
+      throw new IllegalArgumentException( "Maximum partition size " + maxPartitionSize + " is not the block size " + blockSize + " times a power of two" );
+
+    this.blockSize = blockSize;
+
+    // partition sizes:  partitionsPerSize partitions of each size below the maximum, the rest of the kernel
+    //   at the maximum.  The partitions of size Bs start at an offset of at least Bs - blockSize, the delay
+    //   of their results
+
+    int perSize = Math.max( 1, partitionsPerSize );
+    java.util.ArrayList< Segment > list = new java.util.ArrayList< Segment >();
+    int offset = 0;
+    int Bs     = blockSize;
+    while ( offset < H.length ) {
+      int remaining = ( H.length - offset + Bs - 1 )/Bs;
+      int P         = Bs == maxPartitionSize ? remaining : Math.min( perSize, remaining );
+      list.add( new Segment( H, offset, Bs, P, blockSize ) );
+      offset += P*Bs;
+      if ( Bs < maxPartitionSize ) Bs *= 2;
+    }
+    segments = list.toArray( new Segment[ list.size() ] );
+
+    int span = 1;
+    for ( Segment S : segments )
+      while ( span < S.delay + S.size ) span *= 2;
+    outputs    = new double[ span ];
+    outputMask = span - 1;
+    outputPtr  = 0;
+
+    zeros = new double[ blockSize ];
+  }
+
+
+
+  /** Filtering operation to produce an incremental convolution result from one block of data
+   * @param src    double[] array containing data block
+   * @param sptr   int specifying point within data array to begin block (usually 0).
+   *               Array length must be at least blocksize + sptr.
+   * @param dst    double[] containing increment of convolution result - array length must be at
+   *                  least dptr + blockSize
+   * @param dptr   Point within destination array where convolution result starts
+   */
+  public void filter( double[] src, int sptr, double[] dst, int dptr ) {
+
+    if ( sptr < 0  ||  src.length < sptr + blockSize )
+      throw new IllegalArgumentException( "Data array shorter than sptr + blockSize" );
+    if ( dptr < 0  ||  dst.length < dptr + blockSize )
+      throw new IllegalArgumentException( "Destination array shorter than dptr + blockSize" );
+
+    // each segment buffers the block, and convolves when its input block is complete
+
+    for ( Segment S : segments ) {
+      if ( S.append( src, sptr ) ) {
+        S.convolve();
+        int p = outputPtr + S.delay;
+        double[] y = S.result;
+        int base = y.length - S.size;
+        for ( int i = 0;  i < S.size;  i++ )
+          outputs[ ( p + i ) & outputMask ] += y[ base + i ];
+      }
+    }
+
+    // save incremental result and release it
+
+    for ( int i = 0;  i < blockSize;  i++ ) {
+      int j = ( outputPtr + i ) & outputMask;
+      dst[ dptr + i ] = outputs[j];
+      outputs[j] = 0.0;
+    }
+    outputPtr = ( outputPtr + blockSize ) & outputMask;
+  }
+
+
+
+  /** Flushes state information - i.e. returns the next block of the tail of the convolution when no further data blocks
+   * are available.  The tail is complete after ( kernelLength + blockSize - 2 )/blockSize calls.
+   * @param dst       double[] where convolution results are returned.  Length of dst must be >= dptr + blockSize.
+   * @param dptr      int specifying point in dst where convolution results begin.
+   */
+  public void flush( double[] dst, int dptr ) {
+    filter( zeros, 0, dst, dptr );
+  }
+
+
+
+  /** Resets the state to that before the first block - the delay lines and the pending output are cleared. */
+  public void initialize() {
+    for ( Segment S : segments )
+      S.initialize();
+    Arrays.fill( outputs, 0.0 );
+    outputPtr = 0;
+  }
+
+
+
+  /** @return  int block size, i.e. the latency in samples. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+
+
+  /** @return  int number of kernel partitions, of all sizes. */
+  public int getPartitionCount() {
+    int n = 0;
+    for ( Segment S : segments )
+      n += S.P;
+    return n;
+  }
+
+
+
+  /**
+   * Partitions of one size Bs, a uniformly partitioned overlap-save convolution of part of the kernel.
+   */
+  static class Segment {
+
+    final int         size;       // Bs, partition size and input block size
+    final int         P;          // number of partitions
+    final int         nfft;
+    final int         delay;      // of the results relative to the start of the current output block
+    final int         block;      // the block size of the filter
+    final RDFT        fft;
+    final double[][]  kernels;    // DFTs of the partitions, packed form
+    final double[][]  fdl;        // frequency-domain delay line of the input DFTs, fdl[ head ] is the latest
+    int               head;
+    final double[]    window;     // the last nfft input samples, the current block at the end
+    int               fill;       // samples of the current block buffered
+    final double[]    Y;          // accumulated product
+    final double[]    result;     // inverse DFT of Y
+
+
+    Segment( double[] H, int offset, int Bs, int P, int blockSize ) {
+      size  = Bs;
+      block = blockSize;
+      this.P = P;
+      int log2nfft = 4;
+      while ( ( 1 << log2nfft ) < 2*Bs ) log2nfft++;
+      nfft  = 1 << log2nfft;
+      fft   = new RDFT( log2nfft );
+
+      // the inputs [T - Bs, T) are convolved when the block ending at T is complete, with the kernel
+      //   from offset on, the results are the outputs at [T - Bs + offset, T + offset), while the current
+      //   output block starts at T - blockSize
+      delay = offset - Bs + blockSize;
+
+      kernels = new double[ P ][ nfft ];
+      fdl     = new double[ P ][ nfft ];
+      window  = new double[ nfft ];
+      Y       = new double[ nfft ];
+      result  = new double[ nfft ];
+
+      double[] segment = new double[ nfft ];
+      for ( int k = 0;  k < P;  k++ ) {
+        int start = offset + k*Bs;
+        int n     = Math.min( Bs, H.length - start );
+        Arrays.fill( segment, 0.0 );
+        System.arraycopy( H, start, segment, 0, n );
+        fft.evaluate( segment, kernels[k] );
+      }
+    }
+
+
+    void initialize() {
+      for ( double[] X : fdl )
+        Arrays.fill( X, 0.0 );
+      Arrays.fill( window, 0.0 );
+      head = 0;
+      fill = 0;
+    }
+
+
+    // buffers a block of the input, true when the block of this segment is complete
+    boolean append( double[] src, int sptr ) {
+      System.arraycopy( src, sptr, window, nfft - size + fill, block );
+      fill += block;
+      return fill == size;
+    }
+
+
+    // transforms the window to the delay line and accumulates the products of all partitions
+    void convolve() {
+      head = head == P - 1 ? 0 : head + 1;
+      fft.evaluate( window, fdl[ head ] );
+      System.arraycopy( window, size, window, 0, nfft - size );
+      fill = 0;
+
+      int half = nfft/2;
+      if ( (long) P*nfft < minParallelWork  ||  ParallelEngine.getNumThreads() < 2 ) {
+        accumulate( 0, half );
+      }
+      else {
+        BinTask task = new BinTask( this, 0, half );
+        task.grain = Math.max( 64, half/( 4*ParallelEngine.getNumThreads() ) );
+        ParallelEngine.run( task );
+      }
+      fft.evaluateInverse( Y, result );
+    }
+
+
+    // Y at the bins [i0, i1) and their conjugates n - i, with bin N/2 along with bin 0
+    void accumulate( int i0, int i1 ) {
+      int n = nfft;
+      int half = n/2;
+      int lo = Math.max( i0, 1 );
+      for ( int i = lo;  i < i1;  i++ ) {
+        Y[i]     = 0.0;
+        Y[n - i] = 0.0;
+      }
+      if ( i0 == 0 ) {
+        Y[0]    = 0.0;
+        Y[half] = 0.0;
+      }
+      int slot = head;
+      for ( int k = 0;  k < P;  k++ ) {
+        double[] Hk = kernels[k];
+        double[] Xk = fdl[ slot ];
+        if ( i0 == 0 ) {
+          Y[0]    += Hk[0]*Xk[0];
+          Y[half] += Hk[half]*Xk[half];
+        }
+        for ( int i = lo;  i < i1;  i++ ) {
+          int im = n - i;
+          double hr = Hk[i], hi = Hk[im], xr = Xk[i], xi = Xk[im];
+          Y[i]  += hr*xr - hi*xi;
+          Y[im] += hr*xi + hi*xr;
+        }
+        slot = slot == 0 ? P - 1 : slot - 1;
+      }
+    }
+  }
+
+
+
+  // the bins [i0, i1) of the accumulation of a segment, split in halves down to the grain
+  static class BinTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Segment S;
+    final int     i0, i1;
+    int           grain = Integer.MAX_VALUE;
+
+    BinTask( Segment S, int i0, int i1 ) {
+      this.S = S;  this.i0 = i0;  this.i1 = i1;
+    }
+
+    @Override
+    protected void compute() {
+      if ( i1 - i0 <= grain ) {
+        S.accumulate( i0, i1 );
+        return;
+      }
+      int mid = ( i0 + i1 ) >>> 1;
+      BinTask left  = new BinTask( S, i0, mid );
+      BinTask right = new BinTask( S, mid, i1 );
+      left.grain = right.grain = grain;
+      invokeAll( left, right );
+    }
+  }
+
+}
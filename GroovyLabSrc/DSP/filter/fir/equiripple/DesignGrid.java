@@ -3,6 +3,8 @@ package DSP.filter.fir.equiripple;
 
 import java.io.PrintStream;
 import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 
@@ -43,6 +45,73 @@ class DesignGrid {
   boolean      containsPi;
   
   
+  /** The number of grids kept by the cache. */
+  static int   cacheSize = 32;
+  
+  /** Cache of the grids, without responses and weights, by design order, density and band edges, least recently used first. */
+  private static final LinkedHashMap< String, DesignGrid > cache = new LinkedHashMap< String, DesignGrid >( 16, 0.75f, true ) {
+    protected boolean removeEldestEntry( Map.Entry< String, DesignGrid > eldest ) {
+      return size() > cacheSize;
+    }
+  };
+  
+  
+  
+  /**
+   * Returns a copy of a cached grid, sharing its read-only sample arrays, with its own extrema and with
+   * new arrays for the response and the weights.
+   *
+   * @param key    String identifying the grid.
+   * @return       DesignGrid copy, or null if the grid is not cached.
+   */
+  static DesignGrid cached( String key ) {
+    DesignGrid G;
+    synchronized ( cache ) {
+      G = cache.get( key );
+    }
+    return G == null ? null : G.copy();
+  }
+  
+  
+  
+  /**
+   * Adds a grid to the cache.  The grid should not have been used by the Remez exchange yet.
+   *
+   * @param key    String identifying the grid.
+   * @param G      DesignGrid instance, a copy of which is cached.
+   */
+  static void cache( String key, DesignGrid G ) {
+    DesignGrid C = G.copy();
+    synchronized ( cache ) {
+      cache.put( key, C );
+    }
+  }
+  
+  
+  /** Empties the cache. */
+  static void clearCache() {
+    synchronized ( cache ) {
+      cache.clear();
+    }
+  }
+  
+  
+  // shares grid, X and the band edges, which are not modified by the designs
+  private DesignGrid copy() {
+    DesignGrid G      = new DesignGrid();
+    G.grid            = grid;
+    G.gridSize        = gridSize;
+    G.X               = X;
+    G.H               = new double[ gridSize ];
+    G.W               = new double[ gridSize ];
+    G.bandEdgeIndices = bandEdgeIndices;
+    G.extremaIndices  = extremaIndices.clone();
+    G.containsZero    = containsZero;
+    G.containsPi      = containsPi;
+    return G;
+  }
+  
+  
   /**
    * Prints the grid to a PrintStream instance - useful for debugging.
    *
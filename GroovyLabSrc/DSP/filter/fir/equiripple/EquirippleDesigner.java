@@ -3,11 +3,12 @@
 package DSP.filter.fir.equiripple;
 
 import java.util.ArrayList;
-
-
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import DSP.fft.RDFT;
 import DSP.filter.LagrangePolynomial;
+import groovySci.math.array.ParallelEngine;
 
 
 /*
@@ -31,6 +32,12 @@ class EquirippleDesigner {
   /** Constant specifying the maximum number of iterations of the Remez exchange algorithm */
   private static final int    MAXITER   = 25;
   
+  /** The number of grid points times extrema above which a single design evaluates its grid in parallel. */
+  static int                  minParallelWork = 1 << 22;
+  
+  /** The number of grid points of a parallel task. */
+  private static final int    GRAIN     = 2048;
+  
   
   /**
    * Remez exchange algorithm.
@@ -52,15 +59,13 @@ class EquirippleDesigner {
     do {
       
       double delta = computeDelta( G );
-      
-      System.out.println( "delta: " + delta );
        
       LagrangePolynomial LP = constructInterpolatingPolynomial( G, delta );
     
       //  Compute current approximant (GA) and error function (E) on grid
     
+      evaluateOnGrid( LP, G, GA );
       for ( int i = 0;  i < G.gridSize;  i++ ) {
-        GA[i] = LP.evaluate( G.X[i] );
         E[i]  = GA[i] - G.H[i];
       }
       
@@ -101,6 +106,17 @@ class EquirippleDesigner {
           
         }
         
+        // two extrema climbing to the same grid point, seen with long designs, would make the interpolation
+        //   singular: the second one keeps its place, or at the end of the grid the first one returns to its own
+        
+        int last = newExtrema.isEmpty() ? -1 : newExtrema.get( newExtrema.size()-1 );
+        if ( ptr <= last ) {
+          if ( last + 1 < G.gridSize )
+            ptr = Math.max( currentGridPt, last + 1 );
+          else
+            newExtrema.set( newExtrema.size()-1, G.extremaIndices[ currentExtremum-1 ] );
+        }
+        
         newExtrema.add( ptr );
         if ( ptr != currentGridPt ) change++;
       }
@@ -157,6 +173,51 @@ class EquirippleDesigner {
   
   
   
+  /**
+   * Evaluates the interpolating polynomial on the grid.  The grid of a long design is split among the threads of
+   * the ParallelEngine pool, unless the design already runs at the pool, e.g. as part of an EquirippleFilterBank.
+   *
+   * @param LP     LagrangePolynomial interpolating the current extrema.
+   * @param G      DesignGrid instance.
+   * @param GA     double[] receiving the values on the grid.
+   */
+  static void evaluateOnGrid( final LagrangePolynomial LP, final DesignGrid G, final double[] GA ) {
+    
+    if ( (long) G.gridSize*G.extremaIndices.length < minParallelWork  ||  ParallelEngine.getNumThreads() < 2
+         ||  ForkJoinTask.inForkJoinPool() ) {
+      LP.evaluate( G.X, 0, G.gridSize, GA );
+      return;
+    }
+    
+    ParallelEngine.run( new GridTask( LP, G.X, GA, 0, G.gridSize ) );
+  }
+  
+  
+  // the evaluation at the grid points [i0, i1), split in halves down to GRAIN points
+  static class GridTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final LagrangePolynomial LP;
+    final double[]           X, GA;
+    final int                i0, i1;
+    
+    GridTask( LagrangePolynomial LP, double[] X, double[] GA, int i0, int i1 ) {
+      this.LP = LP;  this.X = X;  this.GA = GA;  this.i0 = i0;  this.i1 = i1;
+    }
+    
+    @Override
+    protected void compute() {
+      if ( i1 - i0 <= GRAIN ) {
+        LP.evaluate( X, i0, i1 - i0, GA );
+        return;
+      }
+      int mid = ( i0 + i1 ) >>> 1;
+      invokeAll( new GridTask( LP, X, GA, i0, mid ), new GridTask( LP, X, GA, mid, i1 ) );
+    }
+  }
+  
+  
+  
   /**
    * Method to compute the Linfinity norm best approximation error on the current set of extrema.
    *
@@ -233,8 +294,9 @@ class EquirippleDesigner {
     double[] X        = new double[ nfft ];
     double[] x        = new double[ nfft ];
     for ( int i = 0;  i <= nfft/2;  i++ ) {
-      X[i] = (double) LP.evaluate( Math.cos( 2.0*Math.PI*i/nfft ) );
+      X[i] = Math.cos( 2.0*Math.PI*i/nfft );
     }
+    LP.evaluate( X, 0, nfft/2 + 1, X );
     
     RDFT dft = new RDFT( log2nfft );
     dft.evaluateInverse( X, x );
@@ -59,7 +59,16 @@ abstract class EquirippleFIRFilter {
    */
   protected DesignGrid createGrid() {
     
-    DesignGrid G = new DesignGrid();
+    // the grid depends on the order and the band edges only, it is shared with earlier designs of these
+    
+    StringBuilder key = new StringBuilder();
+    key.append( N ).append( '/' ).append( DesignGrid.GRIDDENSITY );
+    for ( int ib = 0;  ib < numBands;  ib++ )
+      key.append( '/' ).append( bands[ib][0] ).append( ':' ).append( bands[ib][1] );
+    DesignGrid G = DesignGrid.cached( key.toString() );
+    if ( G != null ) return G;
+    
+    G = new DesignGrid();
     
     //  initial guess for extreme points - need N + 1 approximately equally spaced among pass and stop bands
     //    include band edges, 0 and pi
@@ -143,6 +152,7 @@ abstract class EquirippleFIRFilter {
       G.X[i]    = Math.cos( G.grid[i]*Math.PI );
     }
     
+    DesignGrid.cache( key.toString(), G );
     return G;
   }
   
@@ -0,0 +1,186 @@
+package DSP.filter.fir.equiripple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RecursiveAction;
+
+import groovySci.math.array.ParallelEngine;
+
+
+/*
+ Designs banks of equiripple FIR filters, e.g. the channel filters of a channelizer, concurrently on the
+ threads of the ParallelEngine pool.  Each design runs the Remez exchange algorithm on its own grid; the
+ dense grids are cached by order and band edges, thus designs with the same order and band edges share
+ the grid of the first one.
+
+   bank = new EquirippleFilterBank()
+   for (k in 0..<16)
+     bank.addBandpass(2000, 0.05*k+0.01, 1.0, 0.05*k+0.02, 0.05*k+0.04, 1.0, 0.05*k+0.05, 1.0)
+   h = bank.coefficients()          // h[k] are the 4001 taps of the k-th filter
+
+ Any other designs can be run concurrently with design(List<Callable>), e.g. with Groovy closures:
+
+   filters = EquirippleFilterBank.design([ { new EquirippleHighpass(500, 0.3, 1.0, 0.35, 1.0) },
+                                           { new CenteredHilbertTransform(500, 0.05, 0.95) } ])
+ */
+public class EquirippleFilterBank {
+
+  private final List< Callable< ? > > designs = new ArrayList< Callable< ? > >();
+
+
+
+  /**
+   * Adds an equiripple lowpass filter to the bank, see EquirippleLowpass.
+   *
+   * @param N        int specifying the design order of the filter.
+   * @param OmegaP   double specifying the passband upper cutoff frequency.
+   * @param Wp       double specifying the passband weight.
+   * @param OmegaS   double specifying the stopband lower cutoff frequency.
+   * @param Ws       double specifying the stopband weight.
+   * @return         this bank.
+   */
+  public EquirippleFilterBank addLowpass( final int N, final double OmegaP, final double Wp, final double OmegaS, final double Ws ) {
+    designs.add( new Callable< EquirippleLowpass >() {
+      public EquirippleLowpass call() {
+        return new EquirippleLowpass( N, OmegaP, Wp, OmegaS, Ws );
+      }
+    } );
+    return this;
+  }
+
+
+
+  /**
+   * Adds an equiripple bandpass filter to the bank, see EquirippleBandpass.
+   *
+   * @param N         int specifying the design order of the filter.
+   * @param OmegaS1   double specifying the upper cutoff of the low stopband.
+   * @param Ws1       double specifying the error weighting of the lower stopband.
+   * @param OmegaP1   double specifying the lower cutoff of the passband.
+   * @param OmegaP2   double specifying the upper cutoff of the passband.
+   * @param Wp        double specifying the error weighting of the passband.
+   * @param OmegaS2   double specifying the lower cutoff of the high stopband.
+   * @param Ws2       double specifying the error weighting of the upper stopband.
+   * @return          this bank.
+   */
+  public EquirippleFilterBank addBandpass( final int N, final double OmegaS1, final double Ws1, final double OmegaP1, final double OmegaP2,
+                                           final double Wp, final double OmegaS2, final double Ws2 ) {
+    designs.add( new Callable< EquirippleBandpass >() {
+      public EquirippleBandpass call() {
+        return new EquirippleBandpass( N, OmegaS1, Ws1, OmegaP1, OmegaP2, Wp, OmegaS2, Ws2 );
+      }
+    } );
+    return this;
+  }
+
+
+
+  /** @return  int number of filters of the bank. */
+  public int size() {
+    return designs.size();
+  }
+
+
+
+  /**
+   * Designs the filters of the bank concurrently.
+   *
+   * @return   Object[] containing the EquirippleLowpass and EquirippleBandpass filters, in the order they were added.
+   */
+  public Object[] design() {
+    return design( designs ).toArray();
+  }
+
+
+
+  /**
+   * Designs the filters of the bank concurrently.
+   *
+   * @return   double[][] containing the coefficients of the filters, in the order they were added.
+   */
+  public double[][] coefficients() {
+    Object[]   filters = design();
+    double[][] h       = new double[ filters.length ][];
+    for ( int k = 0;  k < filters.length;  k++ )
+      h[k] = ( (EquirippleFIRFilter) filters[k] ).getCoefficients();
+    return h;
+  }
+
+
+
+  /**
+   * Runs designs concurrently on the threads of the ParallelEngine pool.
+   *
+   * @param designs   List of Callables, each constructing a filter.
+   * @return          List of the results of the designs, in the same order.
+   * @throws IllegalArgumentException   if a design fails, e.g. for an invalid band specification.
+   */
+  public static < T > List< T > design( List< ? extends Callable< ? extends T > > designs ) {
+    int n = designs.size();
+    List< T > results = new ArrayList< T >( n );
+    for ( int k = 0;  k < n;  k++ )
+      results.add( null );
+    if ( n == 0 )
+      return results;
+    DesignTask< T > task = new DesignTask< T >( designs, results, 0, n );
+    if ( n == 1  ||  ParallelEngine.getNumThreads() < 2 )
+      task.compute();
+    else
+      ParallelEngine.run( task );
+    return results;
+  }
+
+
+  /** Empties the cache of the design grids. */
+  public static void clearGridCache() {
+    DesignGrid.clearCache();
+  }
+
+
+  /**
+   * Sets the number of design grids kept by the cache.
+   *
+   * @param n    int number of grids.
+   */
+  public static void setGridCacheSize( int n ) {
+    if ( n < 0 ) throw new IllegalArgumentException( "Cache size should not be negative, is " + n );
+    DesignGrid.cacheSize = n;
+  }
+
+
+
+  // the designs [k0, k1), split in halves down to single designs
+  static class DesignTask< T > extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final List< ? extends Callable< ? extends T > > designs;
+    final List< T >                                 results;
+    final int                                       k0, k1;
+
+    DesignTask( List< ? extends Callable< ? extends T > > designs, List< T > results, int k0, int k1 ) {
+      this.designs = designs;  this.results = results;  this.k0 = k0;  this.k1 = k1;
+    }
+
+    @Override
+    protected void compute() {
+      if ( k1 - k0 == 1 ) {
+        T r;
+        try {
+          r = designs.get( k0 ).call();
+        } catch ( RuntimeException e ) {
+          throw e;
+        } catch ( Exception e ) {
+          throw new IllegalArgumentException( "Design " + k0 + " failed: " + e, e );
+        }
+        synchronized ( results ) {
+          results.set( k0, r );
+        }
+        return;
+      }
+      int mid = ( k0 + k1 ) >>> 1;
+      invokeAll( new DesignTask< T >( designs, results, k0, mid ), new DesignTask< T >( designs, results, mid, k1 ) );
+    }
+  }
+
+}
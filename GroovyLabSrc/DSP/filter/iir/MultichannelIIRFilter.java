@@ -0,0 +1,255 @@
+package DSP.filter.iir;
+
+import java.util.concurrent.RecursiveAction;
+
+import groovySci.math.array.ParallelEngine;
+
+
+/*
+ Class to apply the same IIR filter, a cascade of second-order sections, to many channels, e.g. of a sensor array.
+ The states of the sections are stored channel-interleaved in primitive arrays, s1[section*channels + channel],
+ so that each section is applied to a group of adjacent channels in a loop over the channels for every sample:
+ the iterations are independent, thus the JIT can vectorize the loop, instead of the recurrence of one channel
+ sample by sample.  The groups of channels are filtered in parallel on the ParallelEngine pool.
+ As IIRFilter, the states are kept from one invocation to the next, for continuous processing in consecutive blocks.
+
+   lp = new Butterworth(4, PassbandType.LOWPASS, 0.0, 50.0, 0.001)
+   mf = new MultichannelIIRFilter(lp, 256)
+   mf.filterInterleaved(frames)     // frames[t*256 + c], in place
+   mf.filter(x)                     // x[c][t], in place
+ */
+public class MultichannelIIRFilter {
+
+  /** The number of sample-sections below which a call is filtered at the calling thread. */
+  public static int minParallelWork = 1 << 16;
+
+  /** The number of channels filtered together, for the channel-major arrays. */
+  public static int tileChannels = 64;
+
+  /** The number of samples transposed at once, for the channel-major arrays. */
+  public static int tileFrames = 256;
+
+  private final int      channels;
+  private final int      nSections;
+  private final double[] b0, b1, b2, a1, a2;
+  private final double[] s1, s2;
+
+
+
+  /**
+   * Instantiates a new multichannel filter with the sections of an IIR filter, e.g. a Butterworth, ChebyshevI
+   * or ChebyshevII design.  The states are independent of those of the filter.
+   *
+   * @param filter      IIRFilter whose second-order sections are applied.
+   * @param channels    int specifying the number of channels.
+   */
+  public MultichannelIIRFilter( IIRFilter filter, int channels ) {
+    this( channels, filter.sections.toArray( new SecondOrderSection[ filter.sections.size() ] ) );
+  }
+
+
+
+  /**
+   * Instantiates a new multichannel filter with a cascade of second-order sections.
+   *
+   * @param channels    int specifying the number of channels.
+   * @param sections    SecondOrderSection[] applied in this order.
+   */
+  public MultichannelIIRFilter( int channels, SecondOrderSection... sections ) {
+    if ( channels < 1 )
+      throw new IllegalArgumentException( "Number of channels should be positive, is " + channels );
+    if ( sections.length == 0 )
+      throw new IllegalArgumentException( "At least one second-order section is needed" );
+    this.channels = channels;
+    nSections = sections.length;
+    b0 = new double[ nSections ];
+    b1 = new double[ nSections ];
+    b2 = new double[ nSections ];
+    a1 = new double[ nSections ];
+    a2 = new double[ nSections ];
+    for ( int k = 0;  k < nSections;  k++ ) {
+      b0[k] = sections[k].b0;
+      b1[k] = sections[k].b1;
+      b2[k] = sections[k].b2;
+      a1[k] = sections[k].a1;
+      a2[k] = sections[k].a2;
+    }
+    s1 = new double[ nSections*channels ];
+    s2 = new double[ nSections*channels ];
+  }
+
+
+
+  /** @return  int number of channels. */
+  public int channels() {
+    return channels;
+  }
+
+
+
+  /**
+   * Initializes the states of all channels to zero.
+   */
+  public void initialize() {
+    java.util.Arrays.fill( s1, 0.0 );
+    java.util.Arrays.fill( s2, 0.0 );
+  }
+
+
+
+  /**
+   * Initializes the states of one channel to zero.
+   *
+   * @param channel    int specifying the channel.
+   */
+  public void initialize( int channel ) {
+    for ( int k = 0;  k < nSections;  k++ ) {
+      s1[ k*channels + channel ] = 0.0;
+      s2[ k*channels + channel ] = 0.0;
+    }
+  }
+
+
+
+  /**
+   * Filters in place a block of channel-interleaved samples, x[t*channels + c].
+   *
+   * @param x     double[] containing whole frames of all channels, replaced by the filtered samples.
+   */
+  public void filterInterleaved( double[] x ) {
+    if ( x.length % channels != 0 )
+      throw new IllegalArgumentException( "Interleaved array of " + x.length + " samples is not made of frames of " + channels + " channels" );
+    filterInterleaved( x, 0, x.length/channels );
+  }
+
+
+
+  /**
+   * Filters in place frames of channel-interleaved samples, x[off + t*channels + c].
+   *
+   * @param x        double[] containing the frames.
+   * @param off      int specifying the point within x where the first frame begins.
+   * @param frames   int specifying the number of frames.
+   */
+  public void filterInterleaved( double[] x, int off, int frames ) {
+    if ( off < 0 || frames < 0 || off + (long) frames*channels > x.length )
+      throw new IllegalArgumentException( frames + " frames of " + channels + " channels at " + off + " exceed an array of " + x.length );
+    run( new ChannelTask( this, x, null, off, frames, 0, channels ), frames );
+  }
+
+
+
+  /**
+   * Filters in place channel-major samples, x[c][t].  Tiles of channels are transposed to interleaved blocks,
+   * filtered together and transposed back.
+   *
+   * @param x     double[][] with a row of samples of the same length for each channel.
+   */
+  public void filter( double[][] x ) {
+    if ( x.length != channels )
+      throw new IllegalArgumentException( "Array of " + x.length + " channels, the filter has " + channels );
+    int frames = x[0].length;
+    for ( int c = 1;  c < channels;  c++ )
+      if ( x[c].length != frames )
+        throw new IllegalArgumentException( "Channel " + c + " has " + x[c].length + " samples, channel 0 has " + frames );
+    run( new ChannelTask( this, null, x, 0, frames, 0, channels ), frames );
+  }
+
+
+
+  private void run( ChannelTask task, int frames ) {
+    long work = (long) frames*channels*nSections;
+    int threads = ParallelEngine.getNumThreads();
+    if ( work < minParallelWork || threads < 2 || channels < 16 ) {
+      task.compute();
+      return;
+    }
+    // groups of whole cache lines of 8 channels, so that the threads do not share the lines of the interleaved arrays
+    task.grain = Math.max( 8, ( channels/( 4*threads ) + 7 ) & ~7 );
+    ParallelEngine.run( task );
+  }
+
+
+
+  // filters the frames [0, frames) of the channels [c0, c1), with the sample of channel c of frame t at
+  // x[off + t*stride + c - c0]
+  void filterChannels( double[] x, int off, int stride, int frames, int c0, int c1 ) {
+    for ( int t = 0;  t < frames;  t++ ) {
+      int base = off + t*stride - c0;
+      for ( int k = 0;  k < nSections;  k++ ) {
+        double cb0 = b0[k], cb1 = b1[k], cb2 = b2[k], ca1 = a1[k], ca2 = a2[k];
+        int so = k*channels;
+        for ( int c = c0;  c < c1;  c++ ) {
+          double p1 = s1[ so + c ];
+          double p2 = s2[ so + c ];
+          double s0 = x[ base + c ] - ca1*p1 - ca2*p2;
+          x[ base + c ] = cb0*s0 + cb1*p1 + cb2*p2;
+          s2[ so + c ] = p1;
+          s1[ so + c ] = s0;
+        }
+      }
+    }
+  }
+
+
+
+  // filters the channels [c0, c1) of channel-major rows, through interleaved tiles
+  void filterRows( double[][] x, int frames, int c0, int c1 ) {
+    int T = Math.max( 1, Math.min( tileChannels, c1 - c0 ) );
+    int B = Math.max( 1, tileFrames );
+    double[] tile = new double[ T*B ];
+    for ( int g = c0;  g < c1;  g += T ) {
+      int nc = Math.min( T, c1 - g );
+      for ( int t0 = 0;  t0 < frames;  t0 += B ) {
+        int nf = Math.min( B, frames - t0 );
+        for ( int j = 0;  j < nc;  j++ ) {
+          double[] row = x[ g + j ];
+          for ( int t = 0;  t < nf;  t++ )
+            tile[ t*nc + j ] = row[ t0 + t ];
+        }
+        filterChannels( tile, 0, nc, nf, g, g + nc );
+        for ( int j = 0;  j < nc;  j++ ) {
+          double[] row = x[ g + j ];
+          for ( int t = 0;  t < nf;  t++ )
+            row[ t0 + t ] = tile[ t*nc + j ];
+        }
+      }
+    }
+  }
+
+
+
+  // a group of channels, split in halves down to the grain
+  static class ChannelTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final MultichannelIIRFilter f;
+    final double[]              x;
+    final double[][]            rows;
+    final int                   off, frames, c0, c1;
+    int                         grain = Integer.MAX_VALUE;
+
+    ChannelTask( MultichannelIIRFilter f, double[] x, double[][] rows, int off, int frames, int c0, int c1 ) {
+      this.f = f;  this.x = x;  this.rows = rows;  this.off = off;  this.frames = frames;  this.c0 = c0;  this.c1 = c1;
+    }
+
+    @Override
+    protected void compute() {
+      if ( c1 - c0 <= grain ) {
+        if ( x != null )
+          f.filterChannels( x, off + c0, f.channels, frames, c0, c1 );
+        else
+          f.filterRows( rows, frames, c0, c1 );
+        return;
+      }
+      int mid = ( ( c0 + c1 ) >>> 1 ) & ~7;
+      if ( mid <= c0 )
+        mid = c0 + grain;
+      ChannelTask left  = new ChannelTask( f, x, rows, off, frames, c0, mid );
+      ChannelTask right = new ChannelTask( f, x, rows, off, frames, mid, c1 );
+      left.grain = right.grain = grain;
+      invokeAll( left, right );
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package DSP.stream;
+
+import java.util.Arrays;
+
+
+/**
+ * A SampleSink collecting the samples at a growing in-memory array.
+ */
+public class ArraySink implements SampleSink {
+
+  private double[] data = new double[ 1024 ];
+  private int      size;
+
+
+
+  public void write( double[] buf, int off, int len ) {
+    if ( size + len > data.length ) {
+      long cap = Math.max( (long) size + len, 2L*data.length );
+      if ( cap > Integer.MAX_VALUE - 8 )
+        throw new IllegalStateException( "ArraySink is limited to " + ( Integer.MAX_VALUE - 8 ) + " samples, use a file sink" );
+      data = Arrays.copyOf( data, (int) cap );
+    }
+    System.arraycopy( buf, off, data, size, len );
+    size += len;
+  }
+
+
+  /** @return  int number of samples collected. */
+  public int size() {
+    return size;
+  }
+
+
+  /** @return  double[] containing a copy of the samples collected. */
+  public double[] toArray() {
+    return Arrays.copyOf( data, size );
+  }
+
+
+  public void close() {
+  }
+
+}
@@ -0,0 +1,56 @@
+package DSP.stream;
+
+
+/**
+ * A SampleSource streaming an array that is already in memory.
+ */
+public class ArraySource implements SampleSource {
+
+  private final double[] data;
+  private final int      end;
+  private int            pos;
+
+
+
+  /**
+   * Instantiates a new ArraySource.
+   *
+   * @param data    double[] containing the samples, not copied.
+   */
+  public ArraySource( double[] data ) {
+    this( data, 0, data.length );
+  }
+
+
+
+  /**
+   * Instantiates a new ArraySource of a part of an array.
+   *
+   * @param data    double[] containing the samples, not copied.
+   * @param off     int specifying the first sample.
+   * @param len     int specifying the number of samples.
+   */
+  public ArraySource( double[] data, int off, int len ) {
+    if ( off < 0 || len < 0 || off + len > data.length )
+      throw new IllegalArgumentException( "Samples " + off + " to " + ( off + len ) + " outside an array of " + data.length );
+    this.data = data;
+    this.pos  = off;
+    this.end  = off + len;
+  }
+
+
+
+  public int read( double[] buf, int off, int len ) {
+    if ( pos == end && len > 0 )
+      return -1;
+    int k = Math.min( len, end - pos );
+    System.arraycopy( data, pos, buf, off, k );
+    pos += k;
+    return k;
+  }
+
+
+  public void close() {
+  }
+
+}
@@ -0,0 +1,110 @@
+package DSP.stream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A SampleSink writing binary samples to a file, an output stream or a channel, through a fixed-size
+ * reusable byte buffer.  The samples are written as v*scale + offset.
+ */
+public class BinarySink implements SampleSink {
+
+  private final WritableByteChannel channel;
+  private final SampleFormat        format;
+  private final ByteBuffer          bb;
+
+  protected double                  offset = 0.0;
+  protected double                  scale  = 1.0;
+
+  /** The number of bytes written to the channel. */
+  protected long                    written;
+
+
+
+  /**
+   * Instantiates a new BinarySink writing to a file.
+   *
+   * @param file       File receiving the samples, overwritten if it exists.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   * @throws IOException   if the file cannot be created.
+   */
+  public BinarySink( File file, SampleFormat format, ByteOrder order ) throws IOException {
+    this( new FileOutputStream( file ).getChannel(), format, order );
+  }
+
+
+
+  /**
+   * Instantiates a new BinarySink writing to an output stream, e.g. of a socket.
+   *
+   * @param out        OutputStream receiving the samples.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   */
+  public BinarySink( OutputStream out, SampleFormat format, ByteOrder order ) {
+    this( Channels.newChannel( out ), format, order );
+  }
+
+
+
+  /**
+   * Instantiates a new BinarySink writing to a channel.
+   *
+   * @param channel    WritableByteChannel receiving the samples.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   */
+  public BinarySink( WritableByteChannel channel, SampleFormat format, ByteOrder order ) {
+    this.channel = channel;
+    this.format  = format;
+    bb = ByteBuffer.allocateDirect( Math.max( 1, BinarySource.bufferBytes/format.bytes )*format.bytes ).order( order );
+  }
+
+
+
+  public void write( double[] buf, int off, int len ) throws IOException {
+    for ( int i = 0;  i < len;  i++ ) {
+      if ( bb.remaining() < format.bytes )
+        drain();
+      format.put( bb, buf[off+i]*scale + offset );
+    }
+  }
+
+
+
+  /**
+   * Writes the buffered samples to the channel.
+   *
+   * @throws IOException   if the channel cannot be written.
+   */
+  public void flush() throws IOException {
+    drain();
+  }
+
+
+  private void drain() throws IOException {
+    bb.flip();
+    while ( bb.hasRemaining() )
+      written += channel.write( bb );
+    bb.clear();
+  }
+
+
+
+  public void close() throws IOException {
+    try {
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+package DSP.stream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+
+/**
+ * A SampleSource reading binary samples from a file, an input stream (e.g. of a socket) or a channel,
+ * through a fixed-size reusable byte buffer, thus recordings of any length are streamed with bounded memory.
+ *
+ * For interleaved multichannel data a single channel is selected, or the channels are averaged.
+ * The samples are returned as (raw - offset)*scale, e.g. WavSource uses the scale to normalize PCM samples.
+ */
+public class BinarySource implements SampleSource {
+
+  /** The size in bytes of the read buffer, for the sources created afterwards. */
+  public static int bufferBytes = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final SampleFormat        format;
+  private final ByteBuffer          bb;
+  private final int                 channels;
+  private final int                 selected;
+  private final int                 frameBytes;
+  private boolean                   eof;
+
+  protected double                  offset = 0.0;
+  protected double                  scale  = 1.0;
+
+  /** The number of bytes that remain to be read from the channel, e.g. of the data chunk of a WAV file. */
+  protected long                    remaining = Long.MAX_VALUE;
+
+
+
+  /**
+   * Instantiates a new BinarySource reading a single-channel file.
+   *
+   * @param file       File containing the samples.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   * @throws IOException   if the file cannot be opened.
+   */
+  public BinarySource( File file, SampleFormat format, ByteOrder order ) throws IOException {
+    this( new FileInputStream( file ).getChannel(), format, order, 1, 0 );
+  }
+
+
+
+  /**
+   * Instantiates a new BinarySource reading a single-channel input stream, e.g. of a socket.
+   *
+   * @param in         InputStream providing the samples.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   */
+  public BinarySource( InputStream in, SampleFormat format, ByteOrder order ) {
+    this( Channels.newChannel( in ), format, order, 1, 0 );
+  }
+
+
+
+  /**
+   * Instantiates a new BinarySource reading interleaved multichannel samples.
+   *
+   * @param channel    ReadableByteChannel providing the samples.
+   * @param format     SampleFormat of the samples.
+   * @param order      ByteOrder of the samples.
+   * @param channels   int specifying the number of interleaved channels.
+   * @param selected   int specifying the channel returned, or -1 for the average of the channels.
+   */
+  public BinarySource( ReadableByteChannel channel, SampleFormat format, ByteOrder order, int channels, int selected ) {
+    if ( channels < 1 || selected < -1 || selected >= channels )
+      throw new IllegalArgumentException( "Channel " + selected + " is not one of the " + channels + " channels" );
+    this.channel    = channel;
+    this.format     = format;
+    this.channels   = channels;
+    this.selected   = selected;
+    this.frameBytes = channels*format.bytes;
+    bb = ByteBuffer.allocateDirect( Math.max( 1, bufferBytes/frameBytes )*frameBytes ).order( order );
+    bb.flip();
+  }
+
+
+
+  public int read( double[] buf, int off, int len ) throws IOException {
+    int n = 0;
+    while ( n < len ) {
+      if ( bb.remaining() < frameBytes ) {
+        if ( !fill() )
+          break;
+        continue;
+      }
+      int k = Math.min( len - n, bb.remaining()/frameBytes );
+      if ( channels == 1 ) {
+        for ( int i = 0;  i < k;  i++ )
+          buf[off+n+i] = ( format.get( bb ) - offset )*scale;
+      } else if ( selected >= 0 ) {
+        for ( int i = 0;  i < k;  i++ ) {
+          int p = bb.position();
+          bb.position( p + selected*format.bytes );
+          buf[off+n+i] = ( format.get( bb ) - offset )*scale;
+          bb.position( p + frameBytes );
+        }
+      } else {
+        for ( int i = 0;  i < k;  i++ ) {
+          double s = 0.0;
+          for ( int c = 0;  c < channels;  c++ )
+            s += format.get( bb );
+          buf[off+n+i] = ( s/channels - offset )*scale;
+        }
+      }
+      n += k;
+    }
+    return ( n == 0 && len > 0 ) ? -1 : n;
+  }
+
+
+
+  // moves the unread bytes to the start of the buffer and reads more, false at the end of the stream
+  private boolean fill() throws IOException {
+    if ( eof )
+      return false;
+    bb.compact();
+    if ( remaining < bb.remaining() )
+      bb.limit( bb.position() + (int) remaining );
+    int r = channel.read( bb );
+    bb.limit( bb.capacity() );
+    if ( r > 0 )
+      remaining -= r;
+    if ( r < 0 || remaining == 0 )
+      eof = true;
+    bb.flip();
+    return bb.remaining() >= frameBytes || !eof;
+  }
+
+
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,164 @@
+package DSP.stream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Base class of the processing stages of a Pipeline.  A stage pulls fixed-size blocks of blockSize samples from
+ * its upstream source into a reusable buffer, processes them into a reusable output buffer, and serves its output
+ * as a SampleSource to the next stage or the sink.  Thus the filters, which keep their states from one block to
+ * the next, see uniform consecutive blocks whatever the read sizes downstream, and the memory of a pipeline is
+ * bounded by its block buffers.
+ *
+ * Only the last block of the stream may be shorter than blockSize; it is passed zero-padded to blockSize, with
+ * the number of valid samples.
+ */
+public abstract class BlockStage implements SampleSource {
+
+  /** int containing the number of input samples of a block. */
+  protected final int    blockSize;
+
+  private SampleSource   upstream;
+  private final double[] in;
+  private final double[] out;
+  private int            outPos, outLen;
+  private boolean        ended, flushed;
+
+  final StageMetrics     metrics;
+
+
+
+  /**
+   * Instantiates a new stage.
+   *
+   * @param name        String naming the stage at the metrics.
+   * @param blockSize   int specifying the number of input samples of a block.
+   * @param maxOutput   int specifying the maximum number of output samples of a block or of the flush.
+   */
+  protected BlockStage( String name, int blockSize, int maxOutput ) {
+    if ( blockSize < 1 )
+      throw new IllegalArgumentException( "Block size should be positive, is " + blockSize );
+    this.blockSize = blockSize;
+    in      = new double[ blockSize ];
+    out     = new double[ Math.max( 1, maxOutput ) ];
+    metrics = new StageMetrics( name );
+  }
+
+
+
+  /**
+   * Processes one block.
+   *
+   * @param x     double[] of blockSize containing the block, zero-padded after n.
+   * @param n     int number of samples of the block, less than blockSize only for the last block.
+   * @param y     double[] receiving the output samples.
+   * @return      int number of output samples.
+   */
+  protected abstract int process( double[] x, int n, double[] y );
+
+
+
+  /**
+   * Produces the output that remains at the end of the stream, none by default.
+   *
+   * @param y     double[] receiving the output samples.
+   * @return      int number of output samples.
+   */
+  protected int flush( double[] y ) {
+    return 0;
+  }
+
+
+
+  /**
+   * Connects the stage to its upstream source.  Pipeline connects its stages, this is needed only to use a
+   * stage on its own.
+   *
+   * @param source   SampleSource providing the input samples.
+   * @return         this stage.
+   */
+  public BlockStage from( SampleSource source ) {
+    upstream = source;
+    return this;
+  }
+
+
+  /** @return  StageMetrics of this stage. */
+  public StageMetrics metrics() {
+    return metrics;
+  }
+
+
+
+  public int read( double[] buf, int off, int len ) throws IOException {
+    int n = 0;
+    while ( n < len ) {
+      if ( outPos == outLen ) {
+        if ( !pull() )
+          break;
+        continue;
+      }
+      int k = Math.min( len - n, outLen - outPos );
+      System.arraycopy( out, outPos, buf, off + n, k );
+      outPos += k;
+      n      += k;
+    }
+    return ( n == 0 && len > 0 ) ? -1 : n;
+  }
+
+
+
+  // refills the output buffer, false when the stream and the flush are exhausted
+  private boolean pull() throws IOException {
+    if ( upstream == null )
+      throw new IllegalStateException( "Stage " + metrics.name() + " is not connected to a source" );
+    while ( !flushed ) {
+      outPos = 0;
+      outLen = 0;
+      if ( ended ) {
+        flushed = true;
+        long t0 = System.nanoTime();
+        outLen = flush( out );
+        if ( outLen > 0 )
+          metrics.add( 0, outLen, System.nanoTime() - t0 );
+      } else {
+        int n = readFully( upstream, in );
+        if ( n < blockSize ) {
+          ended = true;
+          Arrays.fill( in, n, blockSize, 0.0 );
+        }
+        if ( n > 0 ) {
+          long t0 = System.nanoTime();
+          outLen = process( in, n, out );
+          metrics.add( n, outLen, System.nanoTime() - t0 );
+        }
+      }
+      if ( outLen > 0 )
+        return true;
+    }
+    return false;
+  }
+
+
+
+  // reads until buf is full or the source is exhausted, returns the number of samples read
+  static int readFully( SampleSource source, double[] buf ) throws IOException {
+    int n = 0;
+    while ( n < buf.length ) {
+      int r = source.read( buf, n, buf.length - n );
+      if ( r <= 0 )
+        break;
+      n += r;
+    }
+    return n;
+  }
+
+
+
+  public void close() throws IOException {
+    if ( upstream != null )
+      upstream.close();
+  }
+
+}
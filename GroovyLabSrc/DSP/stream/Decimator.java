@@ -0,0 +1,70 @@
+package DSP.stream;
+
+import DSP.HammingWindow;
+
+
+/**
+ * A Pipeline stage resampling the stream down by an integer rate.  The stream is lowpass filtered at the new
+ * Nyquist frequency by a Hamming-windowed sinc kernel, the counterpart of the one of DSP.fir.Interpolator, of
+ * length N = 2*rate*designFactor + 1, and every rate-th sample is kept.  Only the kept samples are computed,
+ * thus the cost is about N/rate multiplications per input sample.  The output is delayed by designFactor
+ * output samples, the group delay of the kernel.
+ */
+public class Decimator extends BlockStage {
+
+  private final int      rate;
+  private final double[] kernel;
+  private final double[] history;     // the last N-1 input samples, followed by the current block
+  private long           position;    // of the first sample of the current block
+
+
+
+  /**
+   * Instantiates a new Decimator.
+   *
+   * @param rate            int containing the decimation rate.
+   * @param designFactor    int controlling the length, and thus the stopband rejection, of the lowpass kernel.
+   * @param blockSize       int specifying the number of input samples of a block.
+   */
+  public Decimator( int rate, int designFactor, int blockSize ) {
+    super( "Decimator /" + rate, blockSize, blockSize/rate + 1 );
+    if ( rate < 1 || designFactor < 1 )
+      throw new IllegalArgumentException( "Decimation rate and design factor should be positive" );
+    this.rate = rate;
+
+    int half = rate*designFactor;
+    int N    = 2*half + 1;
+    kernel = ( new HammingWindow( N ) ).getArray();
+    for ( int i = 1;  i <= half;  i++ ) {
+      kernel[ half + i ] *= Math.sin( Math.PI * i / rate ) / ( Math.PI * i / rate );
+      kernel[ half - i ]  = kernel[ half + i ];
+    }
+    double sum = 0.0;
+    for ( double h : kernel )
+      sum += h;
+    for ( int i = 0;  i < N;  i++ )     // unit gain at zero frequency
+      kernel[i] /= sum;
+
+    history = new double[ N - 1 + blockSize ];
+  }
+
+
+
+  protected int process( double[] x, int n, double[] y ) {
+    int N = kernel.length;
+    System.arraycopy( x, 0, history, N - 1, n );
+    int first = (int) ( ( rate - position % rate ) % rate );
+    int m = 0;
+    for ( int i = first;  i < n;  i += rate ) {
+      // y = sum h[k] x[i-k], the kernel is symmetric
+      double s = 0.0;
+      for ( int k = 0;  k < N;  k++ )
+        s += kernel[k]*history[ i + k ];
+      y[ m++ ] = s;
+    }
+    System.arraycopy( history, n, history, 0, N - 1 );
+    position += n;
+    return m;
+  }
+
+}
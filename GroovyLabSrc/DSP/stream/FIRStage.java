@@ -0,0 +1,49 @@
+package DSP.stream;
+
+import DSP.fir.OverlapAdd;
+
+
+/**
+ * A Pipeline stage applying a FIR filter to the stream with the overlap-add algorithm.  The output is the causal
+ * convolution with the kernel, with the length of the input, i.e. the tail of the convolution past the end of
+ * the stream is not produced.  An equiripple design is streamed with its getCoefficients(), or with its
+ * getImplementation(blockSize).
+ */
+public class FIRStage extends BlockStage {
+
+  private final OverlapAdd overlapAdd;
+
+
+
+  /**
+   * Instantiates a new FIRStage.
+   *
+   * @param kernel       double[] containing the impulse response of the filter.
+   * @param blockSize    int specifying the number of samples of a block.
+   */
+  public FIRStage( double[] kernel, int blockSize ) {
+    this( new OverlapAdd( kernel, blockSize ), blockSize );
+  }
+
+
+
+  /**
+   * Instantiates a new FIRStage for an OverlapAdd instance, which should not be used elsewhere, e.g. a
+   * PartitionedConvolution for a long kernel at a short block size.
+   *
+   * @param overlapAdd   OverlapAdd instance with the block size blockSize.
+   * @param blockSize    int specifying the number of samples of a block.
+   */
+  public FIRStage( OverlapAdd overlapAdd, int blockSize ) {
+    super( "FIR", blockSize, blockSize );
+    this.overlapAdd = overlapAdd;
+  }
+
+
+
+  protected int process( double[] x, int n, double[] y ) {
+    overlapAdd.filter( x, 0, y, 0 );
+    return n;
+  }
+
+}
@@ -0,0 +1,74 @@
+package DSP.stream;
+
+import DSP.filter.iir.IIRFilter;
+import DSP.filter.iir.SecondOrderSection;
+
+
+/**
+ * A Pipeline stage applying an IIRFilter, or a cascade of SecondOrderSections, to the stream.  The filter keeps
+ * its states from one block to the next, the output has the length of the input.
+ */
+public class IIRStage extends BlockStage {
+
+  private final IIRFilter            filter;
+  private final SecondOrderSection[] sections;
+
+
+
+  /**
+   * Instantiates a new IIRStage.
+   *
+   * @param filter       IIRFilter applied to the stream.
+   * @param blockSize    int specifying the number of samples of a block.
+   */
+  public IIRStage( IIRFilter filter, int blockSize ) {
+    super( "IIRFilter", blockSize, blockSize );
+    this.filter   = filter;
+    this.sections = null;
+  }
+
+
+
+  /**
+   * Instantiates a new IIRStage applying a cascade of second-order sections.
+   *
+   * @param blockSize    int specifying the number of samples of a block.
+   * @param sections     SecondOrderSection[] applied in this order to the stream.
+   */
+  public IIRStage( int blockSize, SecondOrderSection... sections ) {
+    super( "SecondOrderSection x" + sections.length, blockSize, blockSize );
+    if ( sections.length == 0 )
+      throw new IllegalArgumentException( "At least one second-order section is needed" );
+    this.filter   = null;
+    this.sections = sections.clone();
+  }
+
+
+
+  protected int process( double[] x, int n, double[] y ) {
+    if ( n < blockSize ) {
+      // the last block: the padding should not run through the filter states
+      for ( int i = 0;  i < n;  i++ )
+        y[i] = filter( x[i] );
+      return n;
+    }
+    if ( filter != null ) {
+      filter.filter( x, y );
+    } else {
+      sections[0].filter( x, y );
+      for ( int k = 1;  k < sections.length;  k++ )
+        sections[k].filter( y, y );
+    }
+    return n;
+  }
+
+
+  private double filter( double v ) {
+    if ( filter != null )
+      return filter.filter( v );
+    for ( SecondOrderSection s : sections )
+      v = s.filter( v );
+    return v;
+  }
+
+}
@@ -0,0 +1,313 @@
+package DSP.stream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+/**
+ * A pull-based streaming pipeline: a SampleSource, a chain of BlockStages (filters, decimators, upsamplers)
+ * and a SampleSink.  The sink pulls blocks through the chain, each stage pulls fixed-size blocks from its
+ * upstream element into reusable buffers, thus a recording of any length is processed with the memory of the
+ * block buffers only, e.g. a multi-hour recording is filtered without loading it first.
+ *
+ * With threaded(true) the source and each stage run at their own thread, decoupled by bounded queues of
+ * queueDepth reusable blocks, so that reading, the stages and writing overlap.  The StageMetrics report the
+ * samples and the time of the work of each element, thus the slowest one.
+ *
+ *   src = new WavSource(new File("rec.wav"), 0)
+ *   lp = new IIRFilter(new Butterworth(...), PassbandType.LOWPASS, 0, 1000, 1.0/src.sampleRate())
+ *   p = new Pipeline(src).add(new IIRStage(lp, 8192)).add(new Decimator(8, 8, 8192)).threaded(true)
+ *   p.run(new WavSink(new File("out.wav"), src.sampleRate()/8, SampleFormat.FLOAT))
+ *   p.printMetrics(System.out)
+ */
+public class Pipeline {
+
+  /** The number of samples of the blocks read by the sink, for the pipelines created afterwards. */
+  public static int defaultBlockSize = 8192;
+
+  /** The number of blocks queued between the threads of a threaded pipeline. */
+  public static int queueDepth = 4;
+
+  private final SampleSource          source;
+  private final List< BlockStage >    stages = new ArrayList< BlockStage >();
+  private final StageMetrics          sourceMetrics = new StageMetrics( "source" );
+  private final StageMetrics          sinkMetrics   = new StageMetrics( "sink" );
+  private int                         blockSize = defaultBlockSize;
+  private boolean                     threaded;
+  private boolean                     started;
+  private long                        elapsed;
+
+
+
+  /**
+   * Instantiates a new Pipeline.
+   *
+   * @param source    SampleSource providing the input stream.
+   */
+  public Pipeline( SampleSource source ) {
+    this.source = source;
+  }
+
+
+
+  /**
+   * Appends a stage to the chain.
+   *
+   * @param stage    BlockStage processing the output of the previous stage, or of the source.
+   * @return         this pipeline.
+   */
+  public Pipeline add( BlockStage stage ) {
+    if ( started )
+      throw new IllegalStateException( "The pipeline has already run" );
+    stages.add( stage );
+    return this;
+  }
+
+
+
+  /**
+   * Selects whether the source and each stage run at their own thread.
+   *
+   * @param threaded   boolean, true for stage-per-thread pipelining.
+   * @return           this pipeline.
+   */
+  public Pipeline threaded( boolean threaded ) {
+    this.threaded = threaded;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the number of samples of the blocks read by the sink, and of the blocks queued after the source.
+   *
+   * @param blockSize   int number of samples.
+   * @return            this pipeline.
+   */
+  public Pipeline blockSize( int blockSize ) {
+    if ( blockSize < 1 )
+      throw new IllegalArgumentException( "Block size should be positive, is " + blockSize );
+    this.blockSize = blockSize;
+    return this;
+  }
+
+
+
+  /**
+   * Runs the stream through the pipeline to a sink.  The source, the stages and the sink are closed afterwards,
+   * a pipeline runs once, as its stages keep the states of the stream.
+   *
+   * @param sink    SampleSink receiving the output stream.
+   * @return        long number of samples written to the sink.
+   * @throws IOException   if the source cannot be read or the sink cannot be written.
+   */
+  public long run( SampleSink sink ) throws IOException {
+    if ( started )
+      throw new IllegalStateException( "The pipeline has already run" );
+    started = true;
+
+    long t0 = System.nanoTime();
+    SampleSource s = new MeteredSource( source, sourceMetrics );
+    if ( threaded )
+      s = new AsyncSource( s, blockSize, "source" );
+    for ( BlockStage stage : stages ) {
+      stage.from( s );
+      s = threaded ? new AsyncSource( stage, stage.blockSize, stage.metrics.name() ) : stage;
+    }
+
+    double[] buf = new double[ blockSize ];
+    long total = 0;
+    try {
+      int n;
+      while ( ( n = BlockStage.readFully( s, buf ) ) > 0 ) {
+        long t = System.nanoTime();
+        sink.write( buf, 0, n );
+        sinkMetrics.add( n, n, System.nanoTime() - t );
+        total += n;
+        if ( n < blockSize )
+          break;
+      }
+    } finally {
+      try {
+        s.close();
+      } finally {
+        sink.close();
+        elapsed = System.nanoTime() - t0;
+      }
+    }
+    return total;
+  }
+
+
+
+  /**
+   * Runs the stream through the pipeline to an in-memory array.
+   *
+   * @return        double[] containing the output stream.
+   * @throws IOException   if the source cannot be read.
+   */
+  public double[] runToArray() throws IOException {
+    ArraySink sink = new ArraySink();
+    run( sink );
+    return sink.toArray();
+  }
+
+
+
+  /** @return  List of the StageMetrics of the source, of each stage and of the sink. */
+  public List< StageMetrics > metrics() {
+    List< StageMetrics > m = new ArrayList< StageMetrics >();
+    m.add( sourceMetrics );
+    for ( BlockStage stage : stages )
+      m.add( stage.metrics );
+    m.add( sinkMetrics );
+    return m;
+  }
+
+
+  /** @return  double wall-clock seconds of the last run. */
+  public double elapsedSeconds() {
+    return elapsed*1e-9;
+  }
+
+
+
+  /**
+   * Prints the metrics of the elements of the pipeline.
+   *
+   * @param ps    PrintStream to which the metrics are printed.
+   */
+  public void printMetrics( PrintStream ps ) {
+    for ( StageMetrics m : metrics() )
+      ps.println( m );
+    ps.println( String.format( "%-24s %10.3f s", "elapsed", elapsedSeconds() ) );
+  }
+
+
+
+  // times the reads of the source
+  private static class MeteredSource implements SampleSource {
+    private final SampleSource source;
+    private final StageMetrics metrics;
+
+    MeteredSource( SampleSource source, StageMetrics metrics ) {
+      this.source  = source;
+      this.metrics = metrics;
+    }
+
+    public int read( double[] buf, int off, int len ) throws IOException {
+      long t = System.nanoTime();
+      int n = source.read( buf, off, len );
+      metrics.add( Math.max( n, 0 ), Math.max( n, 0 ), System.nanoTime() - t );
+      return n;
+    }
+
+    public void close() throws IOException {
+      source.close();
+    }
+  }
+
+
+
+  // runs an upstream element at its own thread, which fills a bounded set of reusable blocks ahead of the reader
+  private static class AsyncSource implements SampleSource, Runnable {
+
+    private static class Block {
+      final double[] data;
+      int            n;
+      Block( int size ) { data = new double[ size ]; }
+    }
+
+    private final SampleSource                upstream;
+    private final ArrayBlockingQueue< Block > free;
+    private final ArrayBlockingQueue< Block > full;
+    private final Thread                      thread;
+    private volatile Throwable                error;
+    private Block                             current;
+    private int                               pos;
+    private boolean                           end;
+
+    AsyncSource( SampleSource upstream, int size, String name ) {
+      this.upstream = upstream;
+      int depth = Math.max( 2, queueDepth );
+      free = new ArrayBlockingQueue< Block >( depth );
+      full = new ArrayBlockingQueue< Block >( depth );
+      for ( int i = 0;  i < depth;  i++ )
+        free.add( new Block( size ) );
+      thread = new Thread( this, "DSP pipeline: " + name );
+      thread.setDaemon( true );
+      thread.start();
+    }
+
+    public void run() {
+      Block b = null;
+      try {
+        do {
+          b = free.take();
+          b.n = BlockStage.readFully( upstream, b.data );
+          full.put( b );
+        } while ( b.n == b.data.length );
+      } catch ( InterruptedException e ) {
+        // closed by the reader
+      } catch ( Throwable t ) {
+        error = t;
+        b.n = -1;
+        full.offer( b );    // there is room, as this thread holds one of the blocks
+      }
+    }
+
+    public int read( double[] buf, int off, int len ) throws IOException {
+      int n = 0;
+      while ( n < len ) {
+        if ( current == null ) {
+          if ( end )
+            break;
+          try {
+            current = full.take();
+          } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for " + thread.getName() );
+          }
+          pos = 0;
+          if ( current.n < 0 ) {
+            end = true;
+            current = null;
+            if ( error instanceof IOException )
+              throw (IOException) error;
+            if ( error instanceof RuntimeException )
+              throw (RuntimeException) error;
+            if ( error instanceof Error )
+              throw (Error) error;
+            throw new IOException( error );
+          }
+          if ( current.n < current.data.length )
+            end = true;
+        }
+        int k = Math.min( len - n, current.n - pos );
+        System.arraycopy( current.data, pos, buf, off + n, k );
+        pos += k;
+        n   += k;
+        if ( pos == current.n ) {
+          free.offer( current );
+          current = null;
+        }
+      }
+      return ( n == 0 && len > 0 ) ? -1 : n;
+    }
+
+    public void close() throws IOException {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+      upstream.close();
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+package DSP.stream;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Binary encodings of samples.  The integer formats are decoded to their raw integer values, the
+ * byte order is that of the ByteBuffer.
+ */
+public enum SampleFormat {
+
+  UINT8( 1 ), INT16( 2 ), INT24( 3 ), INT32( 4 ), FLOAT( 4 ), DOUBLE( 8 );
+
+  /** The number of bytes of one sample. */
+  public final int bytes;
+
+  SampleFormat( int bytes ) {
+    this.bytes = bytes;
+  }
+
+
+
+  /**
+   * Decodes the sample at the current position of a buffer.
+   *
+   * @param bb      ByteBuffer with at least bytes remaining.
+   * @return        double value of the sample.
+   */
+  public double get( ByteBuffer bb ) {
+    switch (this) {
+      case UINT8:   return bb.get() & 0xff;
+      case INT16:   return bb.getShort();
+      case INT24: {
+        int b0 = bb.get() & 0xff, b1 = bb.get() & 0xff, b2 = bb.get();
+        return bb.order() == java.nio.ByteOrder.LITTLE_ENDIAN ? (b2 << 16) | (b1 << 8) | b0
+                                                              : (b0 << 24 >> 8) | (b1 << 8) | (b2 & 0xff);
+      }
+      case INT32:   return bb.getInt();
+      case FLOAT:   return bb.getFloat();
+      default:      return bb.getDouble();
+    }
+  }
+
+
+
+  /**
+   * Encodes a sample at the current position of a buffer.  Values of the integer formats are rounded
+   * and clipped to their range.
+   *
+   * @param bb      ByteBuffer with at least bytes remaining.
+   * @param v       double value of the sample.
+   */
+  public void put( ByteBuffer bb, double v ) {
+    switch (this) {
+      case UINT8:   bb.put( (byte) clip( v, 0, 255 ) );  break;
+      case INT16:   bb.putShort( (short) clip( v, Short.MIN_VALUE, Short.MAX_VALUE ) );  break;
+      case INT24: {
+        int i = (int) clip( v, -(1 << 23), (1 << 23) - 1 );
+        if ( bb.order() == java.nio.ByteOrder.LITTLE_ENDIAN ) {
+          bb.put( (byte) i );  bb.put( (byte) (i >> 8) );  bb.put( (byte) (i >> 16) );
+        } else {
+          bb.put( (byte) (i >> 16) );  bb.put( (byte) (i >> 8) );  bb.put( (byte) i );
+        }
+        break;
+      }
+      case INT32:   bb.putInt( (int) clip( v, Integer.MIN_VALUE, Integer.MAX_VALUE ) );  break;
+      case FLOAT:   bb.putFloat( (float) v );  break;
+      default:      bb.putDouble( v );
+    }
+  }
+
+
+  private static long clip( double v, long lo, long hi ) {
+    long r = Math.round( v );
+    return r < lo ? lo : ( r > hi ? hi : r );
+  }
+
+}
@@ -0,0 +1,22 @@
+package DSP.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * A sink that consumes the samples produced by a Pipeline, e.g. a file or an in-memory array.
+ */
+public interface SampleSink extends Closeable {
+
+  /**
+   * Writes samples to the sink.
+   *
+   * @param buf     double[] containing the samples.
+   * @param off     int specifying the point within buf where the samples begin.
+   * @param len     int specifying the number of samples.
+   * @throws IOException   if the underlying file or channel cannot be written.
+   */
+  void write( double[] buf, int off, int len ) throws IOException;
+
+}
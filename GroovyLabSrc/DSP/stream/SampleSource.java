@@ -0,0 +1,25 @@
+package DSP.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * A pull-based source of a stream of samples, e.g. a file, a socket, or a filter stage of a Pipeline
+ * reading from its upstream source.
+ */
+public interface SampleSource extends Closeable {
+
+  /**
+   * Reads the next samples of the stream.  The requested number of samples is read unless the end of the
+   * stream is reached, thus a short read means that the stream is exhausted.
+   *
+   * @param buf     double[] receiving the samples.
+   * @param off     int specifying the point within buf where the samples are stored.
+   * @param len     int specifying the number of samples requested.
+   * @return        int number of samples read, or -1 at the end of the stream.
+   * @throws IOException   if the underlying file or channel cannot be read.
+   */
+  int read( double[] buf, int off, int len ) throws IOException;
+
+}
@@ -0,0 +1,49 @@
+package DSP.stream;
+
+
+/**
+ * Throughput counters of a source, a stage or a sink of a Pipeline.  The time is the time spent at the
+ * work of the element itself, i.e. reading, filtering or writing, not waiting for its neighbours.
+ */
+public class StageMetrics {
+
+  private final String  name;
+  private volatile long blocks;
+  private volatile long samplesIn;
+  private volatile long samplesOut;
+  private volatile long nanos;
+
+
+  StageMetrics( String name ) {
+    this.name = name;
+  }
+
+
+  // updated by the single thread running the element
+  void add( long in, long out, long ns ) {
+    blocks++;
+    samplesIn  += in;
+    samplesOut += out;
+    nanos      += ns;
+  }
+
+
+  public String name()        { return name; }
+  public long   blocks()      { return blocks; }
+  public long   samplesIn()   { return samplesIn; }
+  public long   samplesOut()  { return samplesOut; }
+  public double seconds()     { return nanos*1e-9; }
+
+
+  /** @return  double number of input samples processed per second of work. */
+  public double samplesPerSecond() {
+    return nanos == 0 ? 0.0 : samplesIn/( nanos*1e-9 );
+  }
+
+
+  public String toString() {
+    return String.format( "%-24s %8d blocks %12d in %12d out %10.3f s %14.0f samples/s",
+                          name, blocks, samplesIn, samplesOut, seconds(), samplesPerSecond() );
+  }
+
+}
@@ -0,0 +1,36 @@
+package DSP.stream;
+
+import DSP.fir.Interpolator;
+
+
+/**
+ * A Pipeline stage resampling the stream up by an integer rate with a DSP.fir.Interpolator.
+ */
+public class Upsampler extends BlockStage {
+
+  private final int          rate;
+  private final Interpolator interpolator;
+
+
+
+  /**
+   * Instantiates a new Upsampler.
+   *
+   * @param rate            int containing the interpolation rate.
+   * @param designFactor    int controlling the accuracy of the interpolation, see Interpolator.
+   * @param blockSize       int specifying the number of input samples of a block.
+   */
+  public Upsampler( int rate, int designFactor, int blockSize ) {
+    super( "Upsampler x" + rate, blockSize, blockSize*rate );
+    this.rate    = rate;
+    interpolator = new Interpolator( rate, designFactor, blockSize );
+  }
+
+
+
+  protected int process( double[] x, int n, double[] y ) {
+    interpolator.interpolate( x, y );
+    return n*rate;
+  }
+
+}
@@ -0,0 +1,84 @@
+package DSP.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A SampleSink writing a single-channel WAV file, PCM (16, 24 or 32 bits) from samples in [-1, 1),
+ * or IEEE float.  The sizes of the header are written when the sink is closed.
+ */
+public class WavSink extends BinarySink {
+
+  private final FileChannel  fc;
+  private final SampleFormat format;
+  private final int          sampleRate;
+
+
+
+  /**
+   * Instantiates a new WavSink.
+   *
+   * @param file          File receiving the recording, overwritten if it exists.
+   * @param sampleRate    int specifying the sampling rate in Hz.
+   * @param format        SampleFormat INT16, INT24, INT32, FLOAT or DOUBLE.
+   * @throws IOException   if the file cannot be created.
+   */
+  public WavSink( File file, int sampleRate, SampleFormat format ) throws IOException {
+    this( open( file ), sampleRate, format );
+  }
+
+
+  private WavSink( FileChannel fc, int sampleRate, SampleFormat format ) throws IOException {
+    super( fc, format, ByteOrder.LITTLE_ENDIAN );
+    if ( format == SampleFormat.UINT8 )
+      throw new IllegalArgumentException( "8-bit WAV output is not supported" );
+    this.fc         = fc;
+    this.format     = format;
+    this.sampleRate = sampleRate;
+    switch ( format ) {
+      case INT16:  scale = 1 << 15;  break;
+      case INT24:  scale = 1 << 23;  break;
+      case INT32:  scale = 1L << 31;  break;
+      default:     break;
+    }
+    fc.write( header( 0 ) );
+  }
+
+
+  private static FileChannel open( File file ) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+    raf.setLength( 0 );
+    return raf.getChannel();
+  }
+
+
+  private ByteBuffer header( long dataBytes ) {
+    boolean ieee = format == SampleFormat.FLOAT || format == SampleFormat.DOUBLE;
+    ByteBuffer b = ByteBuffer.allocate( 44 ).order( ByteOrder.LITTLE_ENDIAN );
+    b.putInt( 0x46464952 ).putInt( (int) ( 36 + dataBytes ) ).putInt( 0x45564157 );         // "RIFF" size "WAVE"
+    b.putInt( 0x20746d66 ).putInt( 16 ).putShort( (short) ( ieee ? 3 : 1 ) ).putShort( (short) 1 );
+    b.putInt( sampleRate ).putInt( sampleRate*format.bytes ).putShort( (short) format.bytes ).putShort( (short) ( 8*format.bytes ) );
+    b.putInt( 0x61746164 ).putInt( (int) dataBytes );                                           // "data" size
+    b.flip();
+    return b;
+  }
+
+
+
+  public void close() throws IOException {
+    try {
+      flush();
+      if ( written + 36 > 0xffffffffL )
+        throw new IOException( "WAV files are limited to 4 GB, " + written + " bytes written" );
+      fc.write( header( written ), 0 );
+    } finally {
+      super.close();
+    }
+  }
+
+}
@@ -0,0 +1,167 @@
+package DSP.stream;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+
+/**
+ * A SampleSource streaming a channel of a RIFF/WAV file, PCM (8, 16, 24 or 32 bits) or IEEE float
+ * (32 or 64 bits), with the PCM samples normalized to [-1, 1).
+ */
+public class WavSource extends BinarySource {
+
+  private final Header header;
+
+
+
+  /**
+   * Instantiates a new WavSource.
+   *
+   * @param file       File containing the WAV recording.
+   * @param channel    int specifying the channel returned, or -1 for the average of the channels.
+   * @throws IOException   if the file cannot be read or is not a supported WAV file.
+   */
+  public WavSource( File file, int channel ) throws IOException {
+    this( new FileInputStream( file ).getChannel(), channel );
+  }
+
+
+
+  /**
+   * Instantiates a new WavSource reading a WAV stream, e.g. of a socket.
+   *
+   * @param in         InputStream providing the WAV stream.
+   * @param channel    int specifying the channel returned, or -1 for the average of the channels.
+   * @throws IOException   if the stream cannot be read or is not a supported WAV stream.
+   */
+  public WavSource( InputStream in, int channel ) throws IOException {
+    this( Channels.newChannel( in ), channel );
+  }
+
+
+  private WavSource( ReadableByteChannel ch, int channel ) throws IOException {
+    this( ch, Header.read( ch ), channel );
+  }
+
+
+  private WavSource( ReadableByteChannel ch, Header h, int channel ) {
+    super( ch, h.format, ByteOrder.LITTLE_ENDIAN, h.channels, channel );
+    header    = h;
+    remaining = h.dataBytes;
+    switch ( h.format ) {
+      case UINT8:  offset = 128;  scale = 1.0/128;  break;
+      case INT16:  scale = 1.0/(1 << 15);  break;
+      case INT24:  scale = 1.0/(1 << 23);  break;
+      case INT32:  scale = 1.0/(1L << 31);  break;
+      default:     break;
+    }
+  }
+
+
+  /** @return  int sampling rate of the recording in Hz. */
+  public int sampleRate() {
+    return header.sampleRate;
+  }
+
+  /** @return  int number of channels of the recording. */
+  public int channels() {
+    return header.channels;
+  }
+
+  /** @return  long number of samples per channel of the recording. */
+  public long length() {
+    return header.dataBytes/( header.channels*header.format.bytes );
+  }
+
+  /** @return  SampleFormat of the samples of the recording. */
+  public SampleFormat format() {
+    return header.format;
+  }
+
+
+
+  // the fmt and data chunks of a WAV stream, read up to the start of the samples
+  static class Header {
+    SampleFormat format;
+    int          channels;
+    int          sampleRate;
+    long         dataBytes;
+
+    static Header read( ReadableByteChannel ch ) throws IOException {
+      ByteBuffer b = ByteBuffer.allocate( 64 ).order( ByteOrder.LITTLE_ENDIAN );
+      readFully( ch, b, 12 );
+      if ( b.getInt( 0 ) != 0x46464952 || b.getInt( 8 ) != 0x45564157 )    // "RIFF", "WAVE"
+        throw new IOException( "Not a RIFF/WAVE stream" );
+      Header h = null;
+      while ( true ) {
+        readFully( ch, b, 8 );
+        int  id   = b.getInt( 0 );
+        long size = b.getInt( 4 ) & 0xffffffffL;
+        if ( id == 0x20746d66 ) {                                            // "fmt "
+          if ( size < 16 || size > 64 )
+            throw new IOException( "Invalid WAV fmt chunk of " + size + " bytes" );
+          readFully( ch, b, (int) ( size + ( size & 1 ) ) );
+          int tag  = b.getShort( 0 ) & 0xffff;
+          int bits = b.getShort( 14 ) & 0xffff;
+          if ( tag == 0xfffe && size >= 26 )                                  // WAVE_FORMAT_EXTENSIBLE
+            tag = b.getShort( 24 ) & 0xffff;
+          h = new Header();
+          h.channels   = b.getShort( 2 ) & 0xffff;
+          h.sampleRate = b.getInt( 4 );
+          h.format     = format( tag, bits );
+        } else if ( id == 0x61746164 ) {                                     // "data"
+          if ( h == null )
+            throw new IOException( "WAV data chunk before the fmt chunk" );
+          h.dataBytes = size;
+          return h;
+        } else {
+          skip( ch, size + ( size & 1 ) );
+        }
+      }
+    }
+
+    private static SampleFormat format( int tag, int bits ) throws IOException {
+      if ( tag == 1 ) {
+        switch ( bits ) {
+          case 8:   return SampleFormat.UINT8;
+          case 16:  return SampleFormat.INT16;
+          case 24:  return SampleFormat.INT24;
+          case 32:  return SampleFormat.INT32;
+          default:  break;
+        }
+      } else if ( tag == 3 ) {
+        if ( bits == 32 ) return SampleFormat.FLOAT;
+        if ( bits == 64 ) return SampleFormat.DOUBLE;
+      }
+      throw new IOException( "Unsupported WAV format " + tag + " with " + bits + " bits per sample" );
+    }
+
+    private static void readFully( ReadableByteChannel ch, ByteBuffer b, int n ) throws IOException {
+      b.clear();
+      b.limit( n );
+      while ( b.hasRemaining() )
+        if ( ch.read( b ) < 0 )
+          throw new EOFException( "Truncated WAV header" );
+    }
+
+    private static void skip( ReadableByteChannel ch, long n ) throws IOException {
+      ByteBuffer b = ByteBuffer.allocate( 4096 );
+      while ( n > 0 ) {
+        b.clear();
+        b.limit( (int) Math.min( n, b.capacity() ) );
+        int r = ch.read( b );
+        if ( r < 0 )
+          throw new EOFException( "Truncated WAV stream" );
+        n -= r;
+      }
+    }
+  }
+
+}
@@ -290,6 +290,10 @@ public class LinearAlgebra extends DoubleArray {
 	
     public static double[][] times(double[][] v1, double[][] v2) {  
         
+        // larger products use the cache-blocked, multithreaded GEMM engine
+        if ((long)v1.length*v1[0].length*v2[0].length >= GEMM.minBlockedOps)
+            return GEMM.times(v1, v2);
+        
         int v1Rows = v1.length;  // # rows of the result matrix
         int v2Cols = v2[0].length;  // # cols of the result matrix
         double [][] result = new double[v1Rows][v2Cols];
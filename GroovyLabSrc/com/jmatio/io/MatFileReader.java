@@ -7,12 +7,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import com.jmatio.common.MatDataTypes;
@@ -39,8 +44,17 @@ import com.jmatio.types.MLUInt8;
  * 
  * //or get the collection of all arrays that were stored in the file
  * Map content = mfr.getContent();
+ * 
+ * //open a large file lazily: only the variable headers are read here,
+ * //each variable is decoded at its first getMLArray()
+ * MatFileReader lazy = new MatFileReader( new File("big.mat"), new MatFileFilter(), true );
+ * DoubleBuffer x = lazy.getDoubleBuffer( "x" );   //uncompressed doubles are not copied
+ * lazy.close();
  * </pre></code>
  * 
+ * The file is addressed with 64-bit offsets and each variable is mapped
+ * separately, thus files larger than 2 GB can be read.
+ * 
  * @see com.jmatio.io.MatFileFilter
  * @author Wojciech Gradkowski (<a href="mailto:wgradkowski@gmail.com">wgradkowski@gmail.com</a>)
  */
@@ -66,6 +80,22 @@ public class MatFileReader
      * Array name filter
      */
     private MatFileFilter filter;
+    /**
+     * The file channel, kept open in lazy mode until <code>close()</code>
+     */
+    private FileChannel channel;
+    /**
+     * The position and length of the top-level variables that match the filter
+     */
+    private Map<String, long[]> index;
+    /**
+     * When <code>true</code> the variables are decoded at first access
+     */
+    private boolean lazy;
+    /**
+     * Bytes read initially to find the name of a variable
+     */
+    private static final int HEAD_LENGTH = 256;
     /**
      * Creates instance of <code>MatFileReader</code> and reads MAT-file 
      * from location given as <code>fileName</code>.
@@ -121,24 +151,109 @@ public class MatFileReader
      * @throws IOException when error occurred while processing the file.
      */
     public MatFileReader(File file, MatFileFilter filter) throws IOException
+    {
+        this( file, filter, false );
+    }
+    /**
+     * Creates instance of <code>MatFileReader</code> for the MAT-file at
+     * <code>fileName</code>, optionally in lazy mode.
+     * 
+     * @param fileName the MAT-file path <code>String</code>
+     * @param lazy when <code>true</code> variables are decoded at first access
+     * @throws IOException when error occurred while processing the file.
+     */
+    public MatFileReader(String fileName, boolean lazy) throws IOException
+    {
+        this( new File(fileName), new MatFileFilter(), lazy );
+    }
+    /**
+     * Creates instance of <code>MatFileReader</code> for the MAT-file 
+     * <code>file</code>.
+     * 
+     * In lazy mode only the headers of the variables are read here. Each 
+     * variable is decoded at the first <code>getMLArray</code> for it, 
+     * uncompressed double arrays are then backed by the memory-mapped file 
+     * without copying (and are read-only). The file stays open until 
+     * <code>close()</code>.
+     * 
+     * Otherwise all the variables are read here and the file is closed.
+     * 
+     * @param file the MAT-file
+     * @param MatFileFilter array name filter.
+     * @param lazy when <code>true</code> variables are decoded at first access
+     * @throws IOException when error occurred while processing the file.
+     */
+    public MatFileReader(File file, MatFileFilter filter, boolean lazy) throws IOException
     {
         this.filter = filter;
+        this.lazy = lazy;
         data = new LinkedHashMap<String, MLArray>();
+        index = new LinkedHashMap<String, long[]>();
         
-        //Create a read-only memory-mapped file
-        FileChannel roChannel = new RandomAccessFile(file, "r").getChannel();
-        ByteBuffer buf = roChannel.map(FileChannel.MapMode.READ_ONLY, 0, (int)roChannel.size());        
-        
-        //read in file header
-        readHeader(buf);
-        
-        while ( buf.remaining() > 0 )
+        channel = new RandomAccessFile(file, "r").getChannel();
+        try
+        {
+            //read in file header
+            readHeader( read(0, 128) );
+            
+            indexVariables();
+            
+            if ( !lazy )
+            {
+                for ( long[] entry : index.values() )
+                {
+                    readData( map(entry) );
+                }
+            }
+        }
+        catch ( IOException e )
         {
-            readData( buf );
+            close();
+            throw e;
         }
-        //close file channel
-        roChannel.close();
-        
+        if ( !lazy )
+        {
+            close();
+        }
+    }
+    /**
+     * Closes the MAT-file. 
+     * 
+     * In lazy mode the variables not accessed before are not available after.
+     * 
+     * @throws IOException when closing the file fails
+     */
+    public synchronized void close() throws IOException
+    {
+        if ( channel != null )
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+    /**
+     * Returns the names of the variables of the file that match the filter,
+     * without decoding them.
+     * 
+     * @return - the variable names, in file order
+     */
+    public Set<String> getVariableNames()
+    {
+        return index.keySet();
+    }
+    /**
+     * Returns the real part of a double array, packed by columns. 
+     * 
+     * In lazy mode uncompressed arrays are viewed at the mapped file without copying.
+     * 
+     * @param - array name
+     * @return - the <code>DoubleBuffer</code>, or <code>null</code> if there is 
+     *           no double array of this name.
+     */
+    public DoubleBuffer getDoubleBuffer( String name )
+    {
+        MLArray array = getMLArray( name );
+        return array instanceof MLDouble ? ((MLDouble) array).getRealDoubleBuffer() : null;
     }
     /**
      * Gets MAT-file header
@@ -158,7 +273,7 @@ public class MatFileReader
      */
     public ArrayList<MLArray> getData()
     {
-        return new ArrayList<MLArray>( data.values() );
+        return new ArrayList<MLArray>( getContent().values() );
     }
     /**
      * Returns the value to which the read file maps the specified array name.
@@ -169,9 +284,21 @@ public class MatFileReader
      * @return - the <code>MLArray</code> to which this file maps the specified name, 
      *           or null if the file contains no content for this name.
      */
-    public MLArray getMLArray( String name )
+    public synchronized MLArray getMLArray( String name )
     {
-        return data.get( name );
+        MLArray array = data.get( name );
+        if ( array == null && lazy && index.containsKey(name) )
+        {
+            try
+            {
+                array = decode( name, index.get(name) );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException("Cannot read " + name + ": " + e.getMessage(), e);
+            }
+        }
+        return array;
     }
     /**
      * Returns a map of <code>MLArray</code> objects that were inside MAT-file.
@@ -180,9 +307,277 @@ public class MatFileReader
      *  
      * @return - a <code>Map</code> of MLArrays mapped with their names.
      */
-    public Map<String, MLArray> getContent()
+    public synchronized Map<String, MLArray> getContent()
+    {
+        if ( !lazy )
+        {
+            return data;
+        }
+        //decode all the variables, in file order
+        Map<String, MLArray> content = new LinkedHashMap<String, MLArray>();
+        for ( String name : index.keySet() )
+        {
+            content.put( name, getMLArray(name) );
+        }
+        return content;
+    }
+    
+    /**
+     * Reads <code>length</code> bytes of the file at <code>position</code>
+     * 
+     * @return - a heap <code>ByteBuffer</code> with the bytes, in the byte order of the file
+     * @throws IOException when the file ends before
+     */
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate( length );
+        while ( buf.hasRemaining() )
+        {
+            if ( channel.read( buf, position + buf.position() ) < 0 )
+            {
+                throw new MatlabIOException("Unexpected end of file at " + (position + buf.position()));
+            }
+        }
+        buf.flip();
+        if ( byteOrder != null )
+        {
+            buf.order( byteOrder );
+        }
+        return buf;
+    }
+    /**
+     * Maps a top-level variable of the file.
+     * 
+     * @param entry - the position and length of the variable
+     * @return - the mapped variable, in the byte order of the file
+     * @throws IOException when the mapping fails
+     */
+    private ByteBuffer map(long[] entry) throws IOException
     {
-        return data;
+        if ( channel == null )
+        {
+            throw new MatlabIOException("The MAT-file is closed");
+        }
+        if ( entry[1] > Integer.MAX_VALUE )
+        {
+            throw new MatlabIOException("Variable at " + entry[0] + " has " + entry[1] + " bytes, more than a single mapping allows");
+        }
+        ByteBuffer buf = channel.map( FileChannel.MapMode.READ_ONLY, entry[0], entry[1] );
+        buf.order( byteOrder );
+        return buf;
+    }
+    /**
+     * Scans the top-level data elements of the file and records the position
+     * and length of the variables that match the filter. Only the headers
+     * of the variables are read.
+     * 
+     * @throws IOException when error occurs while reading the file
+     */
+    private void indexVariables() throws IOException
+    {
+        long position = 128;
+        long end = channel.size();
+        while ( position < end )
+        {
+            ByteBuffer tag = read( position, 8 );
+            int type = tag.getInt();
+            long size = tag.getInt() & 0xffffffffL;
+            if ( type != MatDataTypes.miMATRIX && type != MatDataTypes.miCOMPRESSED )
+            {
+                throw new MatlabIOException("Incorrect data tag: " + new MatTag(type, (int) size));
+            }
+            String name = readVariableName( position + 8, size, type == MatDataTypes.miCOMPRESSED );
+            if ( filter.matches(name) )
+            {
+                index.put( name, new long[] { position, 8 + size } );
+            }
+            position += 8 + size;
+        }
+    }
+    /**
+     * Reads the name of the top-level variable with data at <code>position</code>,
+     * by reading (or inflating) only the beginning of the data.
+     * 
+     * @param position - the position of the data of the variable
+     * @param size - the size of the data
+     * @param compressed - <code>true</code> for <code>miCOMPRESSED</code> data
+     * @return - the variable name
+     * @throws IOException when error occurs while reading the file
+     */
+    private String readVariableName(long position, long size, boolean compressed) throws IOException
+    {
+        int length = HEAD_LENGTH;
+        while ( true )
+        {
+            ByteBuffer head = compressed ? inflateHead( position, size, length )
+                                         : read( position, (int) Math.min(size, length) );
+            try
+            {
+                if ( compressed )
+                {
+                    ISMatTag tag = new ISMatTag(head);
+                    if ( tag.type != MatDataTypes.miMATRIX )
+                    {
+                        throw new MatlabIOException("Incorrect data tag: " + tag);
+                    }
+                }
+                readFlags(head);
+                readDimension(head);
+                return readName(head);
+            }
+            catch ( BufferUnderflowException e )
+            {
+                //the header is longer, e.g. an array with many dimensions
+                if ( head.limit() < length )
+                {
+                    throw new MatlabIOException("Truncated array header at " + position);
+                }
+                length *= 4;
+            }
+        }
+    }
+    /**
+     * Inflates the first <code>length</code> bytes of compressed data.
+     * 
+     * @return - the inflated bytes, fewer if the data are shorter
+     * @throws IOException when error occurs while reading or inflating the data
+     */
+    private ByteBuffer inflateHead(long position, long size, int length) throws IOException
+    {
+        Inflater inflater = new Inflater();
+        byte[] out = new byte[length];
+        int n = 0;
+        long end = position + size;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        try
+        {
+            while ( n < length && !inflater.finished() )
+            {
+                if ( inflater.needsInput() )
+                {
+                    if ( position >= end )
+                    {
+                        break;
+                    }
+                    in.clear();
+                    in.limit( (int) Math.min(in.capacity(), end - position) );
+                    int read = channel.read( in, position );
+                    if ( read <= 0 )
+                    {
+                        break;
+                    }
+                    position += read;
+                    inflater.setInput( in.array(), 0, read );
+                }
+                if ( inflater.needsDictionary() )
+                {
+                    throw new MatlabIOException("Could not decompress data: a preset dictionary is needed");
+                }
+                n += inflater.inflate( out, n, length - n );
+            }
+        }
+        catch ( DataFormatException e )
+        {
+            throw new MatlabIOException("Could not decompress data: " + e );
+        }
+        finally
+        {
+            inflater.end();
+        }
+        ByteBuffer head = ByteBuffer.wrap( out, 0, n );
+        head.order( byteOrder );
+        return head;
+    }
+    /**
+     * Decodes a top-level variable and keeps it for the next accesses.
+     * 
+     * Uncompressed double arrays are backed by the mapped file, the other
+     * arrays are read as in eager mode.
+     * 
+     * @param name - the variable name
+     * @param entry - the position and length of the variable
+     * @return - the <code>MLArray</code>
+     * @throws IOException when error occurs while reading the file
+     */
+    private MLArray decode(String name, long[] entry) throws IOException
+    {
+        ByteBuffer buf = map(entry);
+        MLArray array = mapDouble(buf);
+        if ( array != null )
+        {
+            data.put( name, array );
+            return array;
+        }
+        buf.rewind();
+        readData( buf );
+        return data.get( name );
+    }
+    /**
+     * Creates a <code>MLDouble</code> backed by the mapped buffer of an 
+     * uncompressed variable.
+     * 
+     * @param buf - the mapped variable
+     * @return - the <code>MLDouble</code>, or <code>null</code> if the variable
+     *           is not a double array with double data
+     * @throws IOException when error occurs while reading the buffer
+     */
+    private MLArray mapDouble(ByteBuffer buf) throws IOException
+    {
+        ISMatTag tag = new ISMatTag(buf);
+        if ( tag.type != MatDataTypes.miMATRIX )
+        {
+            return null;
+        }
+        int[] flags = readFlags(buf);
+        int attributes = ( flags.length != 0 ) ? flags[0] : 0;
+        if ( (attributes & 0xff) != MLArray.mxDOUBLE_CLASS )
+        {
+            return null;
+        }
+        int[] dims = readDimension(buf);
+        String name = readName(buf);
+        
+        long elements = 1;
+        for ( int d : dims )
+        {
+            elements *= d;
+        }
+        ByteBuffer real = mapDoubleData( buf, elements );
+        if ( real == null )
+        {
+            return null;
+        }
+        ByteBuffer imaginary = null;
+        if ( (attributes & MLArray.mtFLAG_COMPLEX) != 0 )
+        {
+            imaginary = mapDoubleData( buf, elements );
+            if ( imaginary == null )
+            {
+                return null;
+            }
+        }
+        return new MLDouble( name, dims, attributes, real, imaginary );
+    }
+    /**
+     * A view of the next data element when it holds <code>elements</code> doubles.
+     * 
+     * @return - the view, or <code>null</code> if the data are stored with
+     *           another type (e.g. MATLAB stores integer valued arrays as integers)
+     * @throws IOException when error occurs while reading the buffer
+     */
+    private ByteBuffer mapDoubleData(ByteBuffer buf, long elements) throws IOException
+    {
+        ISMatTag tag = new ISMatTag(buf);
+        if ( tag.type != MatDataTypes.miDOUBLE || tag.size != elements*8 )
+        {
+            return null;
+        }
+        ByteBuffer view = buf.duplicate();
+        view.limit( buf.position() + tag.size );
+        ByteBuffer part = view.slice();
+        part.order( byteOrder );
+        buf.position( buf.position() + tag.size );
+        return part;
     }
     
     
@@ -0,0 +1,941 @@
+package com.jmatio.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import com.jmatio.common.MatDataTypes;
+import com.jmatio.types.MLArray;
+import com.jmatio.types.MLCell;
+import com.jmatio.types.MLChar;
+import com.jmatio.types.MLNumericArray;
+import com.jmatio.types.MLSparse;
+import com.jmatio.types.MLStructure;
+
+/**
+ * Streaming MAT-file writer.
+ *
+ * The variables are serialized directly into a few fixed-size chunks, the sizes
+ * of the data elements are computed up front, thus no variable is buffered
+ * as a whole. With compression the chunks are deflated by a background thread
+ * while the next chunks are serialized, and the size of each
+ * <code>miCOMPRESSED</code> element is patched into the file when its
+ * compression ends. The memory used is bounded by
+ * <code>chunksInFlight*chunkSize</code>, whatever the size of the variables.
+ *
+ * Usage:
+ * <pre><code>
+ * MatFileStreamWriter w = new MatFileStreamWriter( "mat_file.mat" );
+ * w.writeDouble( "x", x );            //a double[][] written without conversion
+ * w.write( new MLChar( "s", "text" ) ); //any MLArray
+ * w.close();
+ * </code></pre>
+ *
+ * Without compression the chunk is a direct <code>ByteBuffer</code> written
+ * to the channel as it fills. With compression the chunks are heap buffers, since
+ * <code>Deflater</code> inputs byte arrays.
+ *
+ * @see com.jmatio.io.MatFileWriter
+ */
+public class MatFileStreamWriter implements Closeable
+{
+    /**
+     * Bytes of each serialization chunk
+     */
+    public static int chunkSize = 1 << 20;
+    /**
+     * Chunks waiting for or under compression, at most
+     */
+    public static int chunksInFlight = 4;
+
+    /**
+     * Source of the elements of a double array, e.g. an adapter to a matrix class
+     */
+    public interface DoubleSource
+    {
+        double get(int row, int column);
+    }
+
+    private WritableByteChannel channel;
+    /**
+     * The channel when it is a file, the sizes of the compressed elements are
+     * patched into it, else each compressed element is collected before written
+     */
+    private final FileChannel fileChannel;
+    private final boolean compress;
+
+    /**
+     * Serialized chunks and markers, consumed by the deflater thread
+     */
+    private BlockingQueue<ByteBuffer> filled;
+    /**
+     * Chunks free for serialization
+     */
+    private BlockingQueue<ByteBuffer> free;
+    private Thread deflaterThread;
+    private volatile Throwable failure;
+
+    /**
+     * Markers at the <code>filled</code> queue
+     */
+    private static final ByteBuffer START = ByteBuffer.allocate(0);
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final ByteBuffer ABORT = ByteBuffer.allocate(0);
+    private static final ByteBuffer STOP = ByteBuffer.allocate(0);
+
+    /**
+     * The file position where the current variable starts, for uncompressed file channels
+     */
+    private long variableStart;
+
+    private final ChunkSink sink;
+
+    /**
+     * Creates the compressed MAT-file <code>fileName</code> and writes its header.
+     *
+     * @param fileName - name of output file
+     * @throws IOException
+     */
+    public MatFileStreamWriter(String fileName) throws IOException
+    {
+        this( new File(fileName) );
+    }
+    /**
+     * Creates the compressed MAT-file <code>file</code> and writes its header.
+     *
+     * @param file - an output <code>File</code>
+     * @throws IOException
+     */
+    public MatFileStreamWriter(File file) throws IOException
+    {
+        this( new FileOutputStream(file).getChannel(), true );
+    }
+    /**
+     * Writes the MAT-file header into <code>channel</code>.
+     *
+     * @param channel - the output channel, closed by <code>close()</code>
+     * @param compress - when <code>true</code> the variables are written as <code>miCOMPRESSED</code>
+     * @throws IOException
+     */
+    public MatFileStreamWriter(WritableByteChannel channel, boolean compress) throws IOException
+    {
+        this.channel = channel;
+        this.fileChannel = channel instanceof FileChannel ? (FileChannel) channel : null;
+        this.compress = compress;
+
+        writeHeader();
+
+        if ( compress )
+        {
+            filled = new ArrayBlockingQueue<ByteBuffer>( chunksInFlight + 3 );
+            free = new ArrayBlockingQueue<ByteBuffer>( chunksInFlight );
+            for ( int i = 0; i < chunksInFlight; i++ )
+            {
+                free.add( ByteBuffer.allocate(chunkSize) );
+            }
+            deflaterThread = new Thread( new Runnable() {
+                public void run()
+                {
+                    deflateLoop();
+                }
+            }, "MAT-file deflater" );
+            deflaterThread.setDaemon(true);
+            deflaterThread.start();
+            sink = new ChunkSink( null );
+        }
+        else
+        {
+            sink = new ChunkSink( ByteBuffer.allocateDirect(chunkSize) );
+        }
+    }
+
+    /**
+     * Writes a <code>MLArray</code>, numeric data are copied from its storage
+     * buffers chunk by chunk.
+     *
+     * @param array - a <code>MLArray</code>
+     * @throws IOException
+     */
+    public void write(MLArray array) throws IOException
+    {
+        beginVariable();
+        boolean written = false;
+        try
+        {
+            writeMatrix( sink, array );
+            sink.flush();
+            written = true;
+        }
+        finally
+        {
+            if ( !written )
+            {
+                abortVariable();
+            }
+        }
+        endVariable();
+    }
+    /**
+     * Writes a real double array directly from <code>values</code>.
+     *
+     * @param name - array name
+     * @param values - the rows of the array
+     * @throws IOException
+     */
+    public void writeDouble(String name, final double[][] values) throws IOException
+    {
+        int n = values.length > 0 ? values[0].length : 0;
+        for ( int i = 0; i < values.length; i++ )
+        {
+            if ( values[i].length != n )
+            {
+                throw new IllegalArgumentException("All rows must have the same length, row " + i + " has " + values[i].length);
+            }
+        }
+        writeDouble( name, values.length, n, new DoubleSource() {
+            public double get(int row, int column)
+            {
+                return values[row][column];
+            }
+        });
+    }
+    /**
+     * Writes a real double array from a one-dimensional packed array.
+     *
+     * @param name - array name
+     * @param values - One-dimensional array of doubles, packed by columns (ala Fortran).
+     * @param m - Number of rows
+     * @throws IOException
+     */
+    public void writeDouble(String name, final double[] values, final int m) throws IOException
+    {
+        if ( m <= 0 || values.length % m != 0 )
+        {
+            throw new IllegalArgumentException("Array length " + values.length + " is not a multiple of " + m + " rows");
+        }
+        writeDouble( name, m, values.length / m, new DoubleSource() {
+            public double get(int row, int column)
+            {
+                return values[row + column*m];
+            }
+        });
+    }
+    /**
+     * Writes a real m x n double array, the elements are read from
+     * <code>source</code> by columns.
+     *
+     * @param name - array name
+     * @param m - Number of rows
+     * @param n - Number of columns
+     * @param source - the elements
+     * @throws IOException
+     */
+    public void writeDouble(String name, int m, int n, DoubleSource source) throws IOException
+    {
+        byte[] nameBytes = name.getBytes();
+        long dataSize = 8L*m*n;
+        long size = 16 + 16 + tagged(nameBytes.length) + 8 + dataSize;
+        checkSize( name, size );
+
+        beginVariable();
+        boolean written = false;
+        try
+        {
+            sink.putInt( MatDataTypes.miMATRIX );
+            sink.putInt( (int) size );
+            //flags
+            sink.putInt( MatDataTypes.miUINT32 );
+            sink.putInt( 8 );
+            sink.putInt( MLArray.mxDOUBLE_CLASS );
+            sink.putInt( 0 );
+            //dimensions
+            sink.putInt( MatDataTypes.miUINT32 );
+            sink.putInt( 8 );
+            sink.putInt( m );
+            sink.putInt( n );
+            //name
+            putTagged( sink, 16, nameBytes );
+            //real part
+            sink.putInt( MatDataTypes.miDOUBLE );
+            sink.putInt( (int) dataSize );
+            for ( int c = 0; c < n; c++ )
+            {
+                for ( int r = 0; r < m; r++ )
+                {
+                    sink.putDouble( source.get(r, c) );
+                }
+            }
+            sink.flush();
+            written = true;
+        }
+        finally
+        {
+            if ( !written )
+            {
+                abortVariable();
+            }
+        }
+        endVariable();
+    }
+
+    /**
+     * Waits for the pending compression, then closes the channel.
+     *
+     * @throws IOException if writing failed
+     */
+    public void close() throws IOException
+    {
+        if ( channel == null )
+        {
+            return;
+        }
+        try
+        {
+            if ( compress )
+            {
+                queue( STOP );
+                try
+                {
+                    deflaterThread.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MatlabIOException("Interrupted while writing the MAT-file");
+                }
+            }
+            checkFailure();
+        }
+        finally
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes MAT-file header into the channel
+     *
+     * @throws IOException
+     */
+    private void writeHeader() throws IOException
+    {
+        //write descriptive text
+        MatFileHeader header = MatFileHeader.createHeader();
+        char[] dest = new char[116];
+        char[] src = header.getDescription().toCharArray();
+        System.arraycopy(src, 0, dest, 0, src.length);
+
+        byte[] endianIndicator = header.getEndianIndicator();
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(dest.length + 8 + 2 + endianIndicator.length);
+
+        for ( int i = 0; i < dest.length; i++ )
+        {
+            buf.put( (byte)dest[i] );
+        }
+        //write subsyst data offset
+        buf.position( buf.position() + 8);
+
+        //write version
+        int version = header.getVersion();
+        buf.put( (byte)(version >> 8) );
+        buf.put( (byte)version );
+
+        buf.put( endianIndicator );
+
+        buf.flip();
+        writeFully( channel, buf );
+    }
+
+    private void beginVariable() throws IOException
+    {
+        if ( channel == null )
+        {
+            throw new MatlabIOException("The MAT-file is closed");
+        }
+        checkFailure();
+        if ( compress )
+        {
+            queue( START );
+        }
+        else if ( fileChannel != null )
+        {
+            variableStart = fileChannel.position();
+        }
+    }
+
+    private void endVariable() throws IOException
+    {
+        if ( compress )
+        {
+            queue( END );
+        }
+        checkFailure();
+    }
+
+    /**
+     * Drops the variable that failed partway: the file is cut back to the
+     * start of the variable, by the deflater thread with compression, and
+     * the part already written to a channel that is not a file makes the
+     * MAT-file invalid, thus the next writes and <code>close()</code> throw.
+     * Does not throw, so that the error of the variable is reported.
+     */
+    private void abortVariable()
+    {
+        sink.discard();
+        try
+        {
+            if ( compress )
+            {
+                queue( ABORT );
+            }
+            else if ( fileChannel != null )
+            {
+                rollback( fileChannel, variableStart );
+            }
+            else if ( failure == null )
+            {
+                failure = new MatlabIOException("The MAT-file is invalid, a variable was written partially");
+            }
+        }
+        catch ( IOException e )
+        {
+            if ( failure == null )
+            {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Cuts the file back to <code>position</code>
+     */
+    private static void rollback(FileChannel fileChannel, long position) throws IOException
+    {
+        fileChannel.truncate( position );
+        fileChannel.position( position );
+    }
+
+    private void checkFailure() throws IOException
+    {
+        Throwable t = failure;
+        if ( t == null )
+        {
+            return;
+        }
+        if ( t instanceof IOException )
+        {
+            throw (IOException) t;
+        }
+        throw new MatlabIOException("Could not compress data: " + t);
+    }
+
+    /**
+     * Queues a chunk or marker for the deflater thread
+     */
+    private void queue(ByteBuffer chunk) throws IOException
+    {
+        try
+        {
+            filled.put( chunk );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MatlabIOException("Interrupted while writing the MAT-file");
+        }
+    }
+
+    /**
+     * A free chunk, waits while all the chunks are in flight
+     */
+    private ByteBuffer takeFree() throws IOException
+    {
+        try
+        {
+            while ( true )
+            {
+                checkFailure();
+                ByteBuffer chunk = free.poll( 100, java.util.concurrent.TimeUnit.MILLISECONDS );
+                if ( chunk != null )
+                {
+                    chunk.clear();
+                    return chunk;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MatlabIOException("Interrupted while writing the MAT-file");
+        }
+    }
+
+    /**
+     * The deflater thread: compresses each variable between START and END into
+     * a <code>miCOMPRESSED</code> element
+     */
+    private void deflateLoop()
+    {
+        Deflater deflater = new Deflater();
+        byte[] out = new byte[64*1024];
+        ByteBuffer outBuf = ByteBuffer.wrap(out);
+        long start = -1;    //the position of the miCOMPRESSED tag of the current variable, for file channels
+        ByteArrayOutputStream collected = null;     //the compressed element, for other channels
+        try
+        {
+            while ( true )
+            {
+                ByteBuffer chunk = filled.take();
+                if ( chunk == STOP )
+                {
+                    return;
+                }
+                if ( failure != null )
+                {
+                    //keep consuming, so that the writing thread is not blocked
+                    if ( chunk != START && chunk != END && chunk != ABORT )
+                    {
+                        free.put( chunk );
+                    }
+                    continue;
+                }
+                try
+                {
+                    if ( chunk == START )
+                    {
+                        deflater.reset();
+                        if ( fileChannel != null )
+                        {
+                            start = fileChannel.position();
+                            ByteBuffer tag = ByteBuffer.allocate(8);
+                            tag.putInt( MatDataTypes.miCOMPRESSED ).putInt( 0 ).flip();
+                            writeFully( fileChannel, tag );
+                        }
+                        else
+                        {
+                            collected = new ByteArrayOutputStream();
+                        }
+                    }
+                    else if ( chunk == ABORT )
+                    {
+                        //the variable failed partway, its element is dropped
+                        if ( fileChannel != null )
+                        {
+                            rollback( fileChannel, start );
+                            start = -1;
+                        }
+                        collected = null;
+                    }
+                    else if ( chunk == END )
+                    {
+                        deflater.finish();
+                        while ( !deflater.finished() )
+                        {
+                            emit( deflater.deflate(out), outBuf, collected );
+                        }
+                        if ( fileChannel != null )
+                        {
+                            long size = fileChannel.position() - start - 8;
+                            if ( size > Integer.MAX_VALUE )
+                            {
+                                throw new MatlabIOException("A variable compresses to " + size + " bytes, more than a MAT-file element can hold");
+                            }
+                            ByteBuffer sizeBuf = ByteBuffer.allocate(4);
+                            sizeBuf.putInt( (int) size ).flip();
+                            while ( sizeBuf.hasRemaining() )
+                            {
+                                fileChannel.write( sizeBuf, start + 4 + sizeBuf.position() );
+                            }
+                            start = -1;
+                        }
+                        else
+                        {
+                            ByteBuffer tag = ByteBuffer.allocate(8);
+                            tag.putInt( MatDataTypes.miCOMPRESSED ).putInt( collected.size() ).flip();
+                            writeFully( channel, tag );
+                            writeFully( channel, ByteBuffer.wrap(collected.toByteArray()) );
+                            collected = null;
+                        }
+                    }
+                    else
+                    {
+                        deflater.setInput( chunk.array(), 0, chunk.limit() );
+                        while ( !deflater.needsInput() )
+                        {
+                            emit( deflater.deflate(out), outBuf, collected );
+                        }
+                        free.put( chunk );
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    failure = t;
+                    if ( chunk != START && chunk != END && chunk != ABORT )
+                    {
+                        free.put( chunk );
+                    }
+                    //no truncated element is left in the file
+                    if ( fileChannel != null && start >= 0 )
+                    {
+                        try
+                        {
+                            rollback( fileChannel, start );
+                        }
+                        catch ( IOException e )
+                        {
+                            //the failure is reported already
+                        }
+                        start = -1;
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            failure = e;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private void emit(int length, ByteBuffer outBuf, ByteArrayOutputStream collected) throws IOException
+    {
+        if ( length == 0 )
+        {
+            return;
+        }
+        if ( collected != null )
+        {
+            collected.write( outBuf.array(), 0, length );
+            return;
+        }
+        outBuf.clear();
+        outBuf.limit( length );
+        writeFully( fileChannel, outBuf );
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException
+    {
+        while ( buf.hasRemaining() )
+        {
+            channel.write( buf );
+        }
+    }
+
+    private static void checkSize(String name, long size) throws IOException
+    {
+        if ( size > Integer.MAX_VALUE )
+        {
+            throw new MatlabIOException("Array " + name + " needs " + size + " bytes, more than a MAT-file element can hold");
+        }
+    }
+
+    /**
+     * Size of a data element with <code>length</code> bytes, with its tag and padding
+     */
+    private static long tagged(long length)
+    {
+        return 8 + length + padding(length);
+    }
+
+    private static int padding(long length)
+    {
+        return (int) ((8 - length % 8) % 8);
+    }
+
+    private static void putTagged(Sink os, int type, byte[] bytes) throws IOException
+    {
+        os.putInt( type );
+        os.putInt( bytes.length );
+        os.put( bytes );
+        os.putPadding( padding(bytes.length) );
+    }
+
+    private static void putTaggedInts(Sink os, int type, int[] values) throws IOException
+    {
+        os.putInt( type );
+        os.putInt( 4*values.length );
+        for ( int v : values )
+        {
+            os.putInt( v );
+        }
+        os.putPadding( padding(4L*values.length) );
+    }
+
+    private static void putTaggedDoubles(Sink os, Double[] values) throws IOException
+    {
+        os.putInt( MatDataTypes.miDOUBLE );
+        os.putInt( 8*values.length );
+        for ( Double v : values )
+        {
+            os.putDouble( v.doubleValue() );
+        }
+    }
+
+    private static void putTaggedBuffer(Sink os, int type, ByteBuffer data, boolean doubles) throws IOException
+    {
+        os.putInt( type );
+        os.putInt( data.limit() );
+        os.put( data, doubles );
+        os.putPadding( padding(data.limit()) );
+    }
+
+    /**
+     * Writes MATRIX, with its tag, into <code>os</code>
+     *
+     * @param os - the output
+     * @param array - a <code>MLArray</code>
+     * @throws IOException
+     */
+    private static void writeMatrix(Sink os, MLArray array) throws IOException
+    {
+        //the size of the MATRIX data, by serializing without storing the data
+        CountingSink counter = new CountingSink();
+        writeMatrixData( counter, array );
+        checkSize( array.getName(), counter.count );
+
+        os.putInt( MatDataTypes.miMATRIX );
+        os.putInt( (int) counter.count );
+        writeMatrixData( os, array );
+    }
+
+    /**
+     * Writes the MATRIX data (flags, dimensions, name and contents) into <code>os</code>
+     */
+    private static void writeMatrixData(Sink os, MLArray array) throws IOException
+    {
+        //flags
+        os.putInt( MatDataTypes.miUINT32 );
+        os.putInt( 8 );
+        os.putInt( array.getFlags() );
+        os.putInt( array.isSparse() ? ((MLSparse)array).getMaxNZ() : 0 );
+
+        //dimensions
+        putTaggedInts( os, MatDataTypes.miUINT32, array.getDimensions() );
+
+        //array name
+        putTagged( os, 16, array.getNameToByteArray() );
+
+        switch ( array.getType() )
+        {
+            case MLArray.mxCHAR_CLASS:
+                Character[] ac = ((MLChar)array).exportChar();
+                byte[] chars = new byte[ac.length];
+                for ( int i = 0; i < ac.length; i++ )
+                {
+                    chars[i] = (byte)ac[i].charValue();
+                }
+                putTagged( os, MatDataTypes.miUTF8, chars );
+                break;
+            case MLArray.mxDOUBLE_CLASS:
+                putTaggedBuffer( os, MatDataTypes.miDOUBLE, ((MLNumericArray)array).getRealByteBuffer(), true );
+                if ( array.isComplex() )
+                {
+                    putTaggedBuffer( os, MatDataTypes.miDOUBLE, ((MLNumericArray)array).getImaginaryByteBuffer(), true );
+                }
+                break;
+            case MLArray.mxUINT8_CLASS:
+                putTaggedBuffer( os, MatDataTypes.miUINT8, ((MLNumericArray)array).getRealByteBuffer(), false );
+                if ( array.isComplex() )
+                {
+                    putTaggedBuffer( os, MatDataTypes.miUINT8, ((MLNumericArray)array).getImaginaryByteBuffer(), false );
+                }
+                break;
+            case MLArray.mxSTRUCT_CLASS:
+                //field name length
+                os.putInt( 4 << 16 | MatDataTypes.miINT32 & 0xffff );
+                os.putInt( ((MLStructure)array).getMaxFieldLenth() );
+                //field names
+                putTagged( os, MatDataTypes.miINT8, ((MLStructure)array).getKeySetToByteArray() );
+                for ( MLArray a : ((MLStructure)array).getAllFields() )
+                {
+                    writeMatrix( os, a );
+                }
+                break;
+            case MLArray.mxCELL_CLASS:
+                for ( MLArray a : ((MLCell)array).cells() )
+                {
+                    writeMatrix( os, a );
+                }
+                break;
+            case MLArray.mxSPARSE_CLASS:
+                MLSparse sparse = (MLSparse)array;
+                putTaggedInts( os, MatDataTypes.miINT32, sparse.getIR() );
+                putTaggedInts( os, MatDataTypes.miINT32, sparse.getJC() );
+                putTaggedDoubles( os, sparse.exportReal() );
+                if ( array.isComplex() )
+                {
+                    putTaggedDoubles( os, sparse.exportImaginary() );
+                }
+                break;
+            default:
+                throw new MatlabIOException("Cannot write matrix of type: " + MLArray.typeToString( array.getType() ));
+        }
+    }
+
+    /**
+     * Output of the serialization, in big-endian byte order
+     */
+    private static abstract class Sink
+    {
+        abstract void putInt(int v) throws IOException;
+        abstract void putDouble(double v) throws IOException;
+        abstract void put(byte[] bytes) throws IOException;
+        /**
+         * Copies the bytes of <code>data</code> from its start to its limit,
+         * <code>doubles</code> tells that it holds doubles in its byte order
+         */
+        abstract void put(ByteBuffer data, boolean doubles) throws IOException;
+        abstract void putPadding(int n) throws IOException;
+    }
+
+    /**
+     * Counts the bytes only, numeric data are not read
+     */
+    private static class CountingSink extends Sink
+    {
+        long count;
+
+        void putInt(int v) { count += 4; }
+        void putDouble(double v) { count += 8; }
+        void put(byte[] bytes) { count += bytes.length; }
+        void put(ByteBuffer data, boolean doubles) { count += data.limit(); }
+        void putPadding(int n) { count += n; }
+    }
+
+    /**
+     * Fills chunks and hands them to the channel (direct chunk) or to the deflater thread
+     */
+    private class ChunkSink extends Sink
+    {
+        private ByteBuffer chunk;
+        private final boolean direct;
+
+        ChunkSink(ByteBuffer directChunk)
+        {
+            direct = directChunk != null;
+            chunk = directChunk;
+        }
+
+        /**
+         * A chunk with at least <code>n</code> bytes free
+         */
+        private ByteBuffer room(int n) throws IOException
+        {
+            if ( chunk == null )
+            {
+                chunk = takeFree();
+            }
+            else if ( chunk.remaining() < n )
+            {
+                flush();
+                if ( chunk == null )
+                {
+                    chunk = takeFree();
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * Drops the bytes not handed over yet
+         */
+        void discard()
+        {
+            if ( chunk != null )
+            {
+                chunk.clear();
+            }
+        }
+
+        void flush() throws IOException
+        {
+            if ( chunk == null || chunk.position() == 0 )
+            {
+                return;
+            }
+            chunk.flip();
+            if ( direct )
+            {
+                writeFully( channel, chunk );
+                chunk.clear();
+            }
+            else
+            {
+                queue( chunk );
+                chunk = null;
+            }
+        }
+
+        void putInt(int v) throws IOException
+        {
+            room(4).putInt( v );
+        }
+
+        void putDouble(double v) throws IOException
+        {
+            room(8).putDouble( v );
+        }
+
+        void put(byte[] bytes) throws IOException
+        {
+            int off = 0;
+            while ( off < bytes.length )
+            {
+                ByteBuffer c = room(1);
+                int n = Math.min( c.remaining(), bytes.length - off );
+                c.put( bytes, off, n );
+                off += n;
+            }
+        }
+
+        void put(ByteBuffer data, boolean doubles) throws IOException
+        {
+            if ( doubles && data.order() != ByteOrder.BIG_ENDIAN )
+            {
+                //e.g. an array mapped from a little-endian file
+                ByteBuffer view = data.duplicate().order( data.order() );
+                view.rewind();
+                DoubleBuffer d = view.asDoubleBuffer();
+                while ( d.hasRemaining() )
+                {
+                    putDouble( d.get() );
+                }
+                return;
+            }
+            ByteBuffer src = data.duplicate();
+            src.rewind();
+            while ( src.hasRemaining() )
+            {
+                ByteBuffer c = room(1);
+                int n = Math.min( c.remaining(), src.remaining() );
+                ByteBuffer part = src.duplicate();
+                part.limit( src.position() + n );
+                c.put( part );
+                src.position( src.position() + n );
+            }
+        }
+
+        void putPadding(int n) throws IOException
+        {
+            for ( int i = 0; i < n; i++ )
+            {
+                room(1).put( (byte) 0 );
+            }
+        }
+    }
+}
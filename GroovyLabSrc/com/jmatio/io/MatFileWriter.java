@@ -1,25 +1,14 @@
 package com.jmatio.io;
 
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
 import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
-import com.jmatio.common.MatDataTypes;
 import com.jmatio.types.MLArray;
-import com.jmatio.types.MLCell;
-import com.jmatio.types.MLChar;
-import com.jmatio.types.MLNumericArray;
-import com.jmatio.types.MLSparse;
-import com.jmatio.types.MLStructure;
 
 /**
  * MAT-file writer.
@@ -47,6 +36,9 @@ import com.jmatio.types.MLStructure;
  * >> save('mat_file.mat', 'double_arr', 'char_arr');
  * </pre></code>
  * 
+ * For large arrays <code>MatFileStreamWriter</code> can also write 
+ * <code>double[][]</code> data directly, without creating <code>MLArray</code>s.
+ * 
  * @author Wojciech Gradkowski (<a href="mailto:wgradkowski@gmail.com">wgradkowski@gmail.com</a>)
  */
 public class MatFileWriter
@@ -88,359 +80,18 @@ public class MatFileWriter
      */
     public MatFileWriter(WritableByteChannel channel, Collection<MLArray> data) throws IOException
     {
-        //write header
-        writeHeader(channel);
-        
-        //write data
-        for ( MLArray matrix : data )
-        {
-            //prepare buffer for MATRIX data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream dos = new DataOutputStream( baos );
-            //write MATRIX bytes into buffer
-            writeMatrix( dos, matrix );
-            
-            //compress data to save storage
-            Deflater compresser = new Deflater();
-            
-            byte[] input = baos.toByteArray();
-            
-            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
-            DataOutputStream dout = new DataOutputStream(new DeflaterOutputStream(compressed, compresser));
-            
-            dout.write(input);
-            
-            dout.close();
-            compressed.close();
-            
-            //write COMPRESSED tag and compressed data into output channel
-            byte[] compressedBytes = compressed.toByteArray();
-            ByteBuffer buf = ByteBuffer.allocateDirect(2 * 4 /* Int size */ + compressedBytes.length);
-            buf.putInt( MatDataTypes.miCOMPRESSED );
-            buf.putInt( compressedBytes.length );
-            buf.put( compressedBytes );
-            
-            buf.flip();
-            channel.write( buf );
-        }
-        
-        channel.close();        
-    }
-    
-    /**
-     * Writes MAT-file header into <code>OutputStream</code>
-     * @param os <code>OutputStream</code>
-     * @throws IOException
-     */
-    private void writeHeader(WritableByteChannel channel) throws IOException
-    {
-        //write descriptive text
-        MatFileHeader header = MatFileHeader.createHeader();
-        char[] dest = new char[116];
-        char[] src = header.getDescription().toCharArray();
-        System.arraycopy(src, 0, dest, 0, src.length);
-        
-        byte[] endianIndicator = header.getEndianIndicator();
-        
-        ByteBuffer buf = ByteBuffer.allocateDirect(dest.length * 2 /* Char size */ + 2 + endianIndicator.length);
-        
-        for ( int i = 0; i < dest.length; i++ )
-        {
-            buf.put( (byte)dest[i] );
-        }
-        //write subsyst data offset
-        buf.position( buf.position() + 8);
-        
-        //write version
-        int version = header.getVersion();
-        buf.put( (byte)(version >> 8) );
-        buf.put( (byte)version );
-        
-        buf.put( endianIndicator );
-        
-        buf.flip();
-        channel.write(buf);
-    }
-    
-    /**
-     * Writes MATRIX into <code>OutputStream</code>.
-     * 
-     * @param os - <code>OutputStream</code>
-     * @param array - a <code>MLArray</code>
-     * @throws IOException
-     */
-    private void writeMatrix(DataOutputStream output, MLArray array) throws IOException
-    {   
-        OSArrayTag tag;
-        ByteArrayOutputStream buffer;         
-        DataOutputStream bufferDOS;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        
-        //flags
-        writeFlags(dos, array);
-
-        //dimensions
-        writeDimensions(dos, array);
-        
-        //array name
-        writeName(dos, array);
-        
-        switch ( array.getType() )
-        {
-            case MLArray.mxCHAR_CLASS:
-                //write char data
-                buffer = new ByteArrayOutputStream();
-                bufferDOS = new DataOutputStream(buffer);
-                Character[] ac = ((MLChar)array).exportChar();
-                for ( int i = 0; i < ac.length; i++ )
-                {
-                    bufferDOS.writeByte( (byte)ac[i].charValue() );
-                }
-                tag = new OSArrayTag(MatDataTypes.miUTF8, buffer.toByteArray() );
-                tag.writeTo( dos );
-                
-                break;
-            case MLArray.mxDOUBLE_CLASS:
-                
-                tag = new OSArrayTag(MatDataTypes.miDOUBLE, 
-                                ((MLNumericArray)array).getRealByteBuffer() );
-                tag.writeTo( dos );
-                
-                //write real imaginary
-                if ( array.isComplex() )
-                {
-                    tag = new OSArrayTag(MatDataTypes.miDOUBLE, 
-                            ((MLNumericArray)array).getImaginaryByteBuffer() );
-                    tag.writeTo( dos );
-                }
-                break;
-            case MLArray.mxUINT8_CLASS:
-                
-                tag = new OSArrayTag(MatDataTypes.miUINT8, 
-                        ((MLNumericArray)array).getRealByteBuffer() );
-                tag.writeTo( dos );
-                
-                //write real imaginary
-                if ( array.isComplex() )
-                {
-                    tag = new OSArrayTag(MatDataTypes.miUINT8, 
-                            ((MLNumericArray)array).getImaginaryByteBuffer() );
-                    tag.writeTo( dos );
-                }
-                break;
-            case MLArray.mxSTRUCT_CLASS:
-                //field name length
-                int itag = 4 << 16 | MatDataTypes.miINT32 & 0xffff;
-                dos.writeInt( itag );
-                dos.writeInt( ((MLStructure)array).getMaxFieldLenth() );
-                
-                //get field names
-                tag = new OSArrayTag(MatDataTypes.miINT8, ((MLStructure)array).getKeySetToByteArray() );
-                tag.writeTo( dos );
-
-                for ( MLArray a : ((MLStructure)array).getAllFields() )
-                {
-                    writeMatrix(dos, a);
-                }
-                break;
-            case MLArray.mxCELL_CLASS:
-                for ( MLArray a : ((MLCell)array).cells() )
-                {
-                    writeMatrix(dos, a);
-                }
-                break;
-            case MLArray.mxSPARSE_CLASS:
-                int[] ai;
-                //write ir
-                buffer = new ByteArrayOutputStream();
-                bufferDOS = new DataOutputStream(buffer);
-                ai = ((MLSparse)array).getIR();
-                for ( int i : ai )
-                {
-                        bufferDOS.writeInt( i );
-                }
-                tag = new OSArrayTag(MatDataTypes.miINT32, buffer.toByteArray() );
-                tag.writeTo( dos );
-                //write jc
-                buffer = new ByteArrayOutputStream();
-                bufferDOS = new DataOutputStream(buffer);
-                ai = ((MLSparse)array).getJC();
-                for ( int i : ai )
-                {
-                        bufferDOS.writeInt( i );
-                }
-                tag = new OSArrayTag(MatDataTypes.miINT32, buffer.toByteArray() );
-                tag.writeTo( dos );
-                //write real
-                buffer = new ByteArrayOutputStream();
-                bufferDOS = new DataOutputStream(buffer);
-                
-                Double[] ad = ((MLSparse)array).exportReal();
-                
-                for ( int i = 0; i < ad.length; i++ )
-                {
-                    bufferDOS.writeDouble( ad[i].doubleValue() );
-                }
-                
-                tag = new OSArrayTag(MatDataTypes.miDOUBLE, buffer.toByteArray() );
-                tag.writeTo( dos );
-                //write real imaginary
-                if ( array.isComplex() )
-                {
-                    buffer = new ByteArrayOutputStream();
-                    bufferDOS = new DataOutputStream(buffer);
-                    ad = ((MLSparse)array).exportImaginary();
-                    for ( int i = 0; i < ad.length; i++ )
-                    {
-                        bufferDOS.writeDouble( ad[i].doubleValue() );
-                    }
-                    tag = new OSArrayTag(MatDataTypes.miDOUBLE, buffer.toByteArray() );
-                    tag.writeTo( dos );
-                }
-                break;
-            default:
-                throw new MatlabIOException("Cannot write matrix of type: " + MLArray.typeToString( array.getType() ));
-                
-        }
-        
-        
-        //write matrix
-        output.writeInt(MatDataTypes.miMATRIX); //matrix tag
-        output.writeInt( baos.size() ); //size of matrix
-        output.write( baos.toByteArray() ); //matrix data
-    }
-    
-    /**
-     * Writes MATRIX flags into <code>OutputStream</code>.
-     * 
-     * @param os - <code>OutputStream</code>
-     * @param array - a <code>MLArray</code>
-     * @throws IOException
-     */
-    private void writeFlags(DataOutputStream os, MLArray array) throws IOException
-    {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        DataOutputStream bufferDOS = new DataOutputStream(buffer);
-
-        bufferDOS.writeInt( array.getFlags() );
-        
-        if ( array.isSparse() )
-        {
-            bufferDOS.writeInt( ((MLSparse)array).getMaxNZ() );
-        }
-        else
+        //the arrays are streamed, no array is buffered as a whole
+        MatFileStreamWriter writer = new MatFileStreamWriter( channel, true );
+        try
         {
-            bufferDOS.writeInt( 0 );
-        }
-        OSArrayTag tag = new OSArrayTag(MatDataTypes.miUINT32, buffer.toByteArray() );
-        tag.writeTo( os );
-        
-    }
-    
-    /**
-     * Writes MATRIX dimensions into <code>OutputStream</code>.
-     * 
-     * @param os - <code>OutputStream</code>
-     * @param array - a <code>MLArray</code>
-     * @throws IOException
-     */
-    private void writeDimensions(DataOutputStream os, MLArray array) throws IOException
-    {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        DataOutputStream bufferDOS = new DataOutputStream(buffer);
-        
-        int[] dims = array.getDimensions();
-        for ( int i = 0; i < dims.length; i++ )
-        {
-            bufferDOS.writeInt(dims[i]);
-        }
-        OSArrayTag tag = new OSArrayTag(MatDataTypes.miUINT32, buffer.toByteArray() );
-        tag.writeTo( os );
-        
-    }
-    
-    /**
-     * Writes MATRIX name into <code>OutputStream</code>.
-     * 
-     * @param os - <code>OutputStream</code>
-     * @param array - a <code>MLArray</code>
-     * @throws IOException
-     */
-    private void writeName(DataOutputStream os, MLArray array) throws IOException
-    {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        DataOutputStream bufferDOS = new DataOutputStream(buffer);
-
-        byte[] nameByteArray = array.getNameToByteArray();
-        buffer = new ByteArrayOutputStream();
-        bufferDOS = new DataOutputStream(buffer);
-        bufferDOS.write( nameByteArray );
-        OSArrayTag tag = new OSArrayTag(16, buffer.toByteArray() );
-        tag.writeTo( os );
-    }
-    
-    /**
-     * Tiny class that represents MAT-file TAG 
-     * It simplifies writing data. Automates writing padding for instance.
-     */
-    private class OSArrayTag extends MatTag
-    {
-        private ByteBuffer data;
-        private int padding;
-        /**
-         * Creates TAG and stets its <code>size</code> as size of byte array
-         * 
-         * @param type
-         * @param data
-         */
-        public OSArrayTag(int type, byte[] data )
-        {
-            this ( type, ByteBuffer.wrap( data ) );
-        }
-        /**
-         * Creates TAG and stets its <code>size</code> as size of byte array
-         * 
-         * @param type
-         * @param data
-         */
-        public OSArrayTag(int type, ByteBuffer data )
-        {
-            super( type, data.limit() );
-            this.data = data;
-            data.rewind();
-            this.padding = getPadding(data.limit(), false);
-        }
-
-        
-        /**
-         * Writes tag and data to <code>DataOutputStream</code>. Wites padding if neccesary.
-         * 
-         * @param os
-         * @throws IOException
-         */
-        public void writeTo(DataOutputStream os) throws IOException
-        {
-            os.writeInt(type);
-            os.writeInt(size);
-            
-            int maxBuffSize = 1024;
-            int writeBuffSize = data.remaining() < maxBuffSize ? data.remaining() : maxBuffSize;
-            byte[] tmp = new byte[writeBuffSize]; 
-            while ( data.remaining() > 0 )
-            {
-                int length = data.remaining() > tmp.length ? tmp.length : data.remaining();
-                data.get( tmp, 0, length);
-                os.write(tmp, 0, length);
-            }
-            
-            if ( padding > 0 )
+            for ( MLArray matrix : data )
             {
-                os.write( new byte[padding] );
+                writer.write( matrix );
             }
         }
+        finally
+        {
+            writer.close();
+        }
     }
-    
-    
-    
 }
@@ -2,6 +2,7 @@ package com.jmatio.types;
 
 import java.io.DataInputStream;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 
 /**
  * Class represents Double array (matrix)
@@ -34,6 +35,22 @@ public class MLDouble extends MLNumericArray<Double>
     {
         super(name, dims, MLArray.mxDOUBLE_CLASS, 0);
     }
+    /**
+     * Creates a <code>MLDouble</code> array over existing storage, without copying,
+     * e.g. over a memory-mapped region of a MAT-file.
+     * 
+     * Normally this constructor is used only by MatFileReader
+     * 
+     * @param name - array name
+     * @param dims - array dimensions
+     * @param attributes - array flags
+     * @param real - the real part, ordered with the byte order of the elements
+     * @param imaginary - the imaginary part, <code>null</code> for real arrays
+     */
+    public MLDouble(String name, int[] dims, int attributes, ByteBuffer real, ByteBuffer imaginary)
+    {
+        super(name, dims, MLArray.mxDOUBLE_CLASS, attributes, real, imaginary);
+    }
     /**
      * <a href="http://math.nist.gov/javanumerics/jama/">Jama</a> [math.nist.gov] style: 
      * construct a 2D real matrix from a one-dimensional packed array
@@ -83,19 +100,51 @@ public class MLDouble extends MLNumericArray<Double>
      */
     public double[][] getArray()
     {
-        double[][] result = new double[getM()][];
+        DoubleBuffer real = getRealDoubleBuffer();
+        int M = getM();
+        double[][] result = new double[M][];
         
-        for ( int m = 0; m < getM(); m++ )
+        for ( int m = 0; m < M; m++ )
         {
            result[m] = new double[ getN() ];
 
            for ( int n = 0; n < getN(); n++ )
            {               
-               result[m][n] = getReal(m,n);
+               result[m][n] = real.get(m + n*M);
            }
         }
         return result;
     }
+    /**
+     * Gets a view of the real part, packed by columns, without copying.
+     * 
+     * For arrays read lazily by <code>MatFileReader</code> the view is over
+     * the memory-mapped file.
+     * 
+     * @return - the real part as a <code>DoubleBuffer</code>
+     */
+    public DoubleBuffer getRealDoubleBuffer()
+    {
+        return asDoubleBuffer( getRealByteBuffer() );
+    }
+    /**
+     * Gets a view of the imaginary part, packed by columns, without copying.
+     * 
+     * @return - the imaginary part as a <code>DoubleBuffer</code>, 
+     *           or <code>null</code> if the array is not complex
+     */
+    public DoubleBuffer getImaginaryDoubleBuffer()
+    {
+        ByteBuffer imaginary = getImaginaryByteBuffer();
+        return imaginary == null ? null : asDoubleBuffer( imaginary );
+    }
+    private static DoubleBuffer asDoubleBuffer( ByteBuffer buff )
+    {
+        //duplicate() resets the byte order
+        ByteBuffer view = buff.duplicate().order( buff.order() );
+        view.rewind();
+        return view.asDoubleBuffer();
+    }
     /**
      * Casts <code>Double[]</code> to <code>double[]</code>
      * 
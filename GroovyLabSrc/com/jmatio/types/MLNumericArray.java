@@ -1,6 +1,7 @@
 package com.jmatio.types;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -43,6 +44,28 @@ public abstract class MLNumericArray<T extends Number> extends MLArray
         }
         bytes = new byte[ getBytesAllocated() ];
     }
+    /**
+     * Creates an array over existing storage buffers, e.g. over the mapped
+     * region of a MAT-file. The data are not copied, the element byte order
+     * is the order of the buffers.
+     * 
+     * Normally this constructor is used only by MatFileReader
+     * 
+     * @param name - array name
+     * @param dims - array dimensions
+     * @param type - array type
+     * @param attributes - array flags
+     * @param real - the real part storage
+     * @param imaginary - the imaginary part storage, <code>null</code> for real arrays
+     */
+    protected MLNumericArray(String name, int[] dims, int type, int attributes, ByteBuffer real, ByteBuffer imaginary)
+    {
+        super(name, dims, type, attributes);
+        
+        this.real = real;
+        this.imaginary = imaginary;
+        bytes = new byte[ getBytesAllocated() ];
+    }
     /**
      * <a href="http://math.nist.gov/javanumerics/jama/">Jama</a> [math.nist.gov] style: 
      * construct a 2D real matrix from a one-dimensional packed array
@@ -254,13 +277,35 @@ public abstract class MLNumericArray<T extends Number> extends MLArray
     {
         buffer.position( getByteOffset(index) );
         buffer.get( bytes, 0, bytes.length );
+        if ( buffer.order() == ByteOrder.LITTLE_ENDIAN )
+        {
+            reverse( bytes );
+        }
         return buldFromBytes( bytes );
     }
     
     protected void _set( ByteBuffer buffer, T value, int index )
     {
         buffer.position( getByteOffset(index) );
-        buffer.put( getByteArray( value ) );
+        byte[] b = getByteArray( value );
+        if ( buffer.order() == ByteOrder.LITTLE_ENDIAN )
+        {
+            reverse( b );
+        }
+        buffer.put( b );
+    }
+    /**
+     * The elements are built from big-endian bytes, little-endian storage
+     * (e.g. a mapped MAT-file) is converted by reversing the bytes
+     */
+    private static void reverse( byte[] b )
+    {
+        for ( int i = 0, j = b.length - 1; i < j; i++, j-- )
+        {
+            byte t = b[i];
+            b[i] = b[j];
+            b[j] = t;
+        }
     }
     
     public void putImaginaryByteBuffer( ByteBuffer buff )
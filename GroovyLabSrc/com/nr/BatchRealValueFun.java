@@ -0,0 +1,10 @@
+package com.nr;
+
+// A RealValueFun that evaluates many points at a time, e.g. concurrently. The minimizers
+// of com.nr.min evaluate independent points, such as the vertices of a simplex, through batch.
+public interface BatchRealValueFun extends RealValueFun {
+	
+	// f[k] = funk(x[k]) for k = 0..n-1; the points x are not modified
+	public void batch(double[][] x, int n, double[] f);
+
+}
@@ -0,0 +1,40 @@
+package com.nr;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// The fork/join pool shared by the parallel batch routines of com.nr (Spectbatch, Sfbatch,
+// OdeintEnsemble, ...), e.g.
+//   NRPool.setNumThreads(8)   // use 8 worker threads
+public class NRPool {
+  private NRPool(){}
+
+  private static int numThreads = Runtime.getRuntime().availableProcessors();
+  private static ForkJoinPool pool = null;
+
+  // the shared pool, created at first use
+  public static synchronized ForkJoinPool getPool() {
+    if (pool == null) pool = new ForkJoinPool(numThreads);
+    return pool;
+  }
+
+  public static synchronized int getNumThreads() {
+    return numThreads;
+  }
+
+  // sets the parallelism level, a new pool is created at next use.  The current pool is not shut down,
+  // since a call may still be running on it; its idle workers terminate by themselves
+  public static synchronized void setNumThreads(final int n) {
+    if (n < 1) throw new IllegalArgumentException("number of threads should be positive, given "+n);
+    if (n == numThreads) return;
+    numThreads = n;
+    pool = null;
+  }
+
+  // runs the task at the shared pool and waits for its completion; a task started from a worker
+  // thread (i.e. nested parallelism) is run directly at the worker's pool
+  public static <T> T run(final ForkJoinTask<T> task) {
+    if (ForkJoinTask.inForkJoinPool()) return task.invoke();
+    return getPool().invoke(task);
+  }
+}
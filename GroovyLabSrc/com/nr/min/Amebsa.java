@@ -80,12 +80,8 @@ public class Amebsa {
   }
 
   public void inity() {
-    double[] x = new double[ndim];
-    for (int i=0;i<mpts;i++) {
-      for (int j=0;j<ndim;j++)
-        x[j]=p[i][j];
-      y[i]=funk.funk(x);
-    }
+    // the vertices are independent, evaluated as a batch for a BatchRealValueFun
+    Batchfun.vertices(funk,p,mpts,-1,y);
   }
   
   public boolean anneal(final intW iter, final double temperature) { // int[] simulated pointer.
@@ -146,9 +142,9 @@ public class Amebsa {
                 psum[j]=0.5*(p[i][j]+p[ilo][j]);
                 p[i][j]=psum[j];
               }
-              y[i]=funk.funk(psum);
             }
           }
+          Batchfun.vertices(funk,p,mpts,ilo,y);
           iter.val -= ndim;
           get_psum(p,psum);
         }
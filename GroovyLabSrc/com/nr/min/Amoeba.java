@@ -65,16 +65,12 @@ public class Amoeba {
     ndim=pp[0].length;
     double[] psum = new double[ndim];
     double[] pmin = new double[ndim];
-    double[] x = new double[ndim];
     p = new double[pp.length][pp[0].length];
     copyAssign(p,pp); // XXX p=pp, in NR "=" is overloading, see "nr3.h"
     //y = resize(y,mpts);
     y = new double[mpts];
-    for (int i=0;i<mpts;i++) {
-      for (int j=0;j<ndim;j++)
-        x[j]=p[i][j];
-      y[i]=func.funk(x);
-    }
+    // the vertices are independent, evaluated as a batch for a BatchRealValueFun
+    Batchfun.vertices(func,p,mpts,-1,y);
     nfunc=0;
     get_psum(p,psum);
     for (;;) {
@@ -132,9 +128,9 @@ public class Amoeba {
             if (i != ilo) {                    // (best) point
               for (int j=0;j<ndim;j++)
                 p[i][j]=psum[j]=0.5*(p[i][j]+p[ilo][j]);
-              y[i]=func.funk(psum);
             }
           }
+          Batchfun.vertices(func,p,mpts,ilo,y);
           nfunc += ndim;    // Keep track of function ealuations
           get_psum(p,psum);    // Recompute psum
         }
@@ -0,0 +1,64 @@
+package com.nr.min;
+
+import static java.lang.Math.*;
+
+import com.nr.BatchRealValueFun;
+import com.nr.RealValueFun;
+import com.nr.RealValueFunWithDiff;
+
+/**
+ * Forward-difference gradient as Funcd, with the n probes of a gradient
+ * evaluated as batches of at most maxBatch points when the function is a
+ * BatchRealValueFun, e.g. a Batchfun, thus concurrently; the results are those
+ * of Funcd. As Funcd, df uses the value of the last call of funk, which
+ * dfpmin and Frprmn make at the point of the gradient.
+ *
+ *   QuasiNewton.dfpmin(p, gtol, iter, fret, new BatchFuncd(new Batchfun(objective)))
+ */
+public class BatchFuncd implements RealValueFunWithDiff {
+  // the number of probes evaluated at a time
+  public static int maxBatch = 256;
+
+  double EPS;
+  final RealValueFun func;
+  double f;
+  double[][] xh;
+  double[] fh, hh;
+
+  public BatchFuncd(final RealValueFun funcc) {
+    EPS = 1.0e-8;
+    func = funcc;
+  }
+
+  public double funk(final double[] x) {
+    return f=func.funk(x);
+  }
+
+  public void df(final double[] x, final double[] df) {
+    int n=x.length;
+    int nb=max(1,min(maxBatch,n));
+    if (xh == null || xh.length != nb || xh[0].length != n) {
+      xh = new double[nb][n];
+      fh = new double[nb];
+      hh = new double[nb];
+    }
+    for (int j0=0;j0<n;j0+=nb) {
+      int m=min(nb,n-j0);
+      for (int k=0;k<m;k++) {
+        int j=j0+k;
+        System.arraycopy(x,0,xh[k],0,n);
+        double temp=x[j];
+        double h=EPS*abs(temp);
+        if (h == 0.0) h=EPS;
+        xh[k][j]=temp+h;
+        hh[k]=xh[k][j]-temp;
+      }
+      if (func instanceof BatchRealValueFun)
+        ((BatchRealValueFun) func).batch(xh,m,fh);
+      else
+        for (int k=0;k<m;k++) fh[k]=func.funk(xh[k]);
+      for (int k=0;k<m;k++)
+        df[j0+k]=(fh[k]-f)/hh[k];
+    }
+  }
+}
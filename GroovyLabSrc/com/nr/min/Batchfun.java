@@ -0,0 +1,88 @@
+package com.nr.min;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.BatchRealValueFun;
+import com.nr.RealValueFun;
+
+import com.nr.NRPool;
+
+/**
+ * Evaluates a RealValueFun at batches of points concurrently on the
+ * NRPool pool, one point per task, for objectives expensive enough,
+ * e.g. simulations, that a point is worth a task. The function is called from
+ * several threads at a time, thus it should not modify shared state.
+ *
+ *   f = new Batchfun(new Funcache(objective, 10000))
+ *   xmin = new Amoeba(1.e-8).minimize(point, 1.0, f)     // the simplex vertices evaluated concurrently
+ */
+public class Batchfun implements BatchRealValueFun {
+  // the number of points of a batch below which they are evaluated serially
+  public static int minParallelBatch = 2;
+
+  final RealValueFun func;
+
+  public Batchfun(final RealValueFun funcc) {
+    func = funcc;
+  }
+
+  public double funk(final double[] x) {
+    return func.funk(x);
+  }
+
+  public void batch(final double[][] x, final int n, final double[] f) {
+    if (n < minParallelBatch || NRPool.getNumThreads() < 2) {
+      for (int k=0;k<n;k++) f[k]=func.funk(x[k]);
+      return;
+    }
+    NRPool.run(new EvalTask(func,x,f,0,n));
+  }
+
+  // y[i] = func(p[i]) for the rows i < mpts but skip, as a batch when func is a BatchRealValueFun
+  static void vertices(final RealValueFun func, final double[][] p, final int mpts, final int skip, final double[] y) {
+    int ndim=p[0].length;
+    if (func instanceof BatchRealValueFun) {
+      double[][] q = new double[mpts][];
+      double[] yq = new double[mpts];
+      int m=0;
+      for (int i=0;i<mpts;i++)
+        if (i != skip) q[m++]=p[i];
+      ((BatchRealValueFun) func).batch(q,m,yq);
+      m=0;
+      for (int i=0;i<mpts;i++)
+        if (i != skip) y[i]=yq[m++];
+    } else {
+      double[] x = new double[ndim];
+      for (int i=0;i<mpts;i++) {
+        if (i == skip) continue;
+        for (int j=0;j<ndim;j++)
+          x[j]=p[i][j];
+        y[i]=func.funk(x);
+      }
+    }
+  }
+
+  // the points [k0, k1), split in halves down to single points
+  static class EvalTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final RealValueFun func;
+    final double[][] x;
+    final double[] f;
+    final int k0, k1;
+
+    EvalTask(RealValueFun func, double[][] x, double[] f, int k0, int k1) {
+      this.func = func;  this.x = x;  this.f = f;  this.k0 = k0;  this.k1 = k1;
+    }
+
+    @Override
+    protected void compute() {
+      if (k1 - k0 == 1) {
+        f[k0] = func.funk(x[k0]);
+        return;
+      }
+      int mid = (k0 + k1) >>> 1;
+      invokeAll(new EvalTask(func,x,f,k0,mid), new EvalTask(func,x,f,mid,k1));
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.nr.min;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.nr.RealValueFun;
+
+/**
+ * Memoizes a RealValueFun: the values of the last capacity distinct points
+ * are kept, and a point evaluated again, bit for bit, is looked up instead,
+ * e.g. the end points of the line minimizations, or the same minimum reached
+ * from several starts. Thread-safe when the function is; a point requested by
+ * two threads at once may be evaluated twice.
+ */
+public class Funcache implements RealValueFun {
+  final RealValueFun func;
+  final int capacity;
+  final Map<Key,Double> map;
+  long hits, misses;
+
+  public Funcache(final RealValueFun funcc, final int capacityy) {
+    if (capacityy < 1) throw new IllegalArgumentException("bad capacity in Funcache");
+    func = funcc;
+    capacity = capacityy;
+    map = new LinkedHashMap<Key,Double>(16,0.75f,true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key,Double> e) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  public double funk(final double[] x) {
+    Key k = new Key(x);
+    synchronized (map) {
+      Double v = map.get(k);
+      if (v != null) {
+        hits++;
+        return v;
+      }
+      misses++;
+    }
+    double f = func.funk(x);
+    synchronized (map) {
+      map.put(k,f);
+    }
+    return f;
+  }
+
+  // the number of values looked up
+  public long hits() {
+    synchronized (map) {
+      return hits;
+    }
+  }
+
+  // the number of values evaluated
+  public long misses() {
+    synchronized (map) {
+      return misses;
+    }
+  }
+
+  public void clear() {
+    synchronized (map) {
+      map.clear();
+    }
+  }
+
+  // a copy of a point, equal to the points of the same bits
+  static final class Key {
+    final double[] x;
+    final int hash;
+
+    Key(final double[] xx) {
+      x = xx.clone();
+      hash = Arrays.hashCode(x);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof Key && Arrays.equals(x,((Key) o).x);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package com.nr.min;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.RecursiveAction;
+
+import org.netlib.util.doubleW;
+import org.netlib.util.intW;
+
+import com.nr.BatchRealValueFun;
+import com.nr.RealValueFun;
+import com.nr.ran.Ran;
+
+import com.nr.NRPool;
+
+/**
+ * Parallel front-end of the minimizers: local searches from many starting
+ * points run concurrently on the NRPool pool, and within a search the
+ * independent evaluations, the vertices of a simplex and the probes of a
+ * finite-difference gradient, are evaluated as batches on the same pool. The
+ * function is memoized by a Funcache shared by the searches, and every value
+ * better than the best so far is reported to a Progress, thus a long run on an
+ * expensive objective, e.g. a simulation, streams its best points as they are
+ * found. The function is called from several threads at a time, thus it should
+ * not modify shared state.
+ *
+ *   ms = new Multistart(objective)
+ *   ms.setProgress(p)                                        // optional
+ *   res = ms.minimize(Multistart.starts(lo, hi, 64, 1), Multistart.amoeba(1.e-8, 0.1))
+ *   res[0].x, res[0].f                                       // the best minimum
+ */
+public class Multistart {
+
+  /**
+   * A local search from start, minimizing func; returns the point found.
+   */
+  public interface Search {
+    double[] minimize(double[] start, BatchRealValueFun func);
+  }
+
+  /**
+   * Receives the values better than all before, in decreasing order, with
+   * their point and the index of the start of the search that found them.
+   * Called by the searching threads one at a time, thus it should be quick.
+   */
+  public interface Progress {
+    void improved(double f, double[] x, int start);
+  }
+
+  // the result of the search from starts[start]; x is null and f infinite when it failed with error
+  public static class Result {
+    public final int start;
+    public final double[] x;
+    public final double f;
+    public final RuntimeException error;
+
+    Result(final int start, final double[] x, final double f, final RuntimeException error) {
+      this.start = start;  this.x = x;  this.f = f;  this.error = error;
+    }
+  }
+
+  // the number of points memoized by default
+  public static int cacheSize = 1 << 16;
+
+  final RealValueFun func;
+  final Funcache cache;
+  final Batchfun batch;
+  Progress progress;
+  volatile double best = Double.POSITIVE_INFINITY;
+  double[] bestx;
+
+  public Multistart(final RealValueFun funcc) {
+    this(funcc,cacheSize);
+  }
+
+  // Constructor with the number of points memoized, 0 for none
+  public Multistart(final RealValueFun funcc, final int cachesize) {
+    if (cachesize < 0) throw new IllegalArgumentException("bad cache size in Multistart");
+    cache = cachesize > 0 ? new Funcache(funcc,cachesize) : null;
+    func = cache != null ? cache : funcc;
+    batch = new Batchfun(func);
+  }
+
+  public void setProgress(final Progress p) {
+    progress = p;
+  }
+
+  // the cache of the function values, null for none
+  public Funcache cache() {
+    return cache;
+  }
+
+  // the best value found so far
+  public synchronized double best() {
+    return best;
+  }
+
+  // the point of the best value found so far
+  public synchronized double[] bestx() {
+    return bestx == null ? null : bestx.clone();
+  }
+
+  /**
+   * Runs the search s from each of the points starts, concurrently. Returns
+   * the results sorted by increasing value.
+   */
+  public Result[] minimize(final double[][] starts, final Search s) {
+    int n = starts.length;
+    Result[] res = new Result[n];
+    if (n == 0) return res;
+    if (n < 2 || NRPool.getNumThreads() < 2) {
+      for (int k=0;k<n;k++) res[k] = search(starts,s,k);
+    } else
+      NRPool.run(new StartTask(this,starts,s,res,0,n));
+    Arrays.sort(res,new Comparator<Result>() {
+      public int compare(final Result a, final Result b) {
+        int c = Double.compare(a.f,b.f);
+        return c != 0 ? c : a.start - b.start;
+      }
+    });
+    return res;
+  }
+
+  Result search(final double[][] starts, final Search s, final int k) {
+    Tracked f = new Tracked(k);
+    try {
+      double[] x = s.minimize(starts[k].clone(),f);
+      return new Result(k,x,f.funk(x),null);
+    } catch (RuntimeException e) {
+      return new Result(k,null,Double.POSITIVE_INFINITY,e);
+    }
+  }
+
+  void offer(final double f, final double[] x, final int start) {
+    if (!(f < best)) return;
+    synchronized (this) {
+      if (!(f < best)) return;
+      best = f;
+      bestx = x.clone();
+      if (progress != null) progress.improved(f,bestx.clone(),start);
+    }
+  }
+
+  // the function as seen by the search from start k, reporting its improvements
+  class Tracked implements BatchRealValueFun {
+    final int k;
+
+    Tracked(final int k) {
+      this.k = k;
+    }
+
+    public double funk(final double[] x) {
+      double f = func.funk(x);
+      offer(f,x,k);
+      return f;
+    }
+
+    public void batch(final double[][] x, final int n, final double[] f) {
+      batch.batch(x,n,f);
+      for (int i=0;i<n;i++) offer(f[i],x[i],k);
+    }
+  }
+
+  /**
+   * n starting points uniformly distributed in the box [lo, hi], from a Ran
+   * of the seed.
+   */
+  public static double[][] starts(final double[] lo, final double[] hi, final int n, final long seed) {
+    if (lo.length != hi.length) throw new IllegalArgumentException("bad sizes in Multistart.starts");
+    Ran ran = new Ran(seed);
+    double[][] x = new double[n][lo.length];
+    for (int k=0;k<n;k++)
+      for (int j=0;j<lo.length;j++) x[k][j] = lo[j]+(hi[j]-lo[j])*ran.doub();
+    return x;
+  }
+
+  // Amoeba with the tolerance ftol from the simplex of the displacement del
+  public static Search amoeba(final double ftol, final double del) {
+    return new Search() {
+      public double[] minimize(final double[] start, final BatchRealValueFun func) {
+        return new Amoeba(ftol).minimize(start,del,func);
+      }
+    };
+  }
+
+  /**
+   * Amebsa from the simplex of the displacement del: iter steps of anneal at
+   * each of the temperatures temp0*cool^k, k < ntemp, until converged; returns
+   * the best point met.
+   */
+  public static Search amebsa(final double ftol, final double del, final double temp0, final double cool,
+      final int ntemp, final int iter) {
+    return new Search() {
+      public double[] minimize(final double[] start, final BatchRealValueFun func) {
+        Amebsa a = new Amebsa(start,del,func,ftol);
+        double t = temp0;
+        for (int k=0;k<ntemp;k++) {
+          if (a.anneal(new intW(iter),t)) break;
+          t *= cool;
+        }
+        return (a.y[0] < a.yb ? a.p[0] : a.pb).clone();
+      }
+    };
+  }
+
+  // Powell with the tolerance ftol
+  public static Search powell(final double ftol) {
+    return new Search() {
+      public double[] minimize(final double[] start, final BatchRealValueFun func) {
+        return new Powell(func,ftol).minimize(start);
+      }
+    };
+  }
+
+  // Frprmn with the tolerance ftol, with the gradients of BatchFuncd
+  public static Search frprmn(final double ftol) {
+    return new Search() {
+      public double[] minimize(final double[] start, final BatchRealValueFun func) {
+        return new Frprmn(new BatchFuncd(func),ftol).minimize(start);
+      }
+    };
+  }
+
+  // QuasiNewton.dfpmin with the tolerance gtol, with the gradients of BatchFuncd
+  public static Search dfpmin(final double gtol) {
+    return new Search() {
+      public double[] minimize(final double[] start, final BatchRealValueFun func) {
+        double[] p = start.clone();
+        QuasiNewton.dfpmin(p,gtol,new intW(0),new doubleW(0.),new BatchFuncd(func));
+        return p;
+      }
+    };
+  }
+
+  // the starts [k0, k1), split in halves down to single starts
+  static class StartTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Multistart ms;
+    final double[][] starts;
+    final Search s;
+    final Result[] res;
+    final int k0, k1;
+
+    StartTask(Multistart ms, double[][] starts, Search s, Result[] res, int k0, int k1) {
+      this.ms = ms;  this.starts = starts;  this.s = s;  this.res = res;  this.k0 = k0;  this.k1 = k1;
+    }
+
+    @Override
+    protected void compute() {
+      if (k1 - k0 == 1) {
+        res[k0] = ms.search(starts,s,k0);
+        return;
+      }
+      int mid = (k0 + k1) >>> 1;
+      invokeAll(new StartTask(ms,starts,s,res,k0,mid), new StartTask(ms,starts,s,res,mid,k1));
+    }
+  }
+}
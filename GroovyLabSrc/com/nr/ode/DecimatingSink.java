@@ -0,0 +1,75 @@
+package com.nr.ode;
+
+/**
+ * OutputSink reducing every factor points to one before passing it on to
+ * another sink: PICK passes the first point of each block, MEAN the mean of
+ * x and y over the block. The last point of the integration is always passed
+ * on, with PICK as such and with MEAN as the mean of the incomplete block.
+ *
+ *   out = new StreamOutput(100000000, new DecimatingSink(new MappedFileSink(f), 100, DecimatingSink.MEAN))
+ */
+public class DecimatingSink implements OutputSink {
+  public static final int PICK=0, MEAN=1;
+
+  final OutputSink next;
+  final int factor, mode;
+  int nvar, m;
+  boolean held;   // PICK holds the last point put when it was not passed on
+  double xacc;
+  double[] acc;
+
+  public DecimatingSink(final OutputSink next, final int factor, final int mode) {
+    if (next == null) throw new IllegalArgumentException("null sink in DecimatingSink");
+    if (factor < 1) throw new IllegalArgumentException("bad factor in DecimatingSink");
+    if (mode != PICK && mode != MEAN) throw new IllegalArgumentException("bad mode in DecimatingSink");
+    this.next = next;
+    this.factor = factor;
+    this.mode = mode;
+  }
+
+  public void begin(final int nvar) {
+    if (acc == null || acc.length != nvar) acc = new double[nvar];
+    this.nvar = nvar;
+    m = 0;
+    held = false;
+    xacc = 0.;
+    next.begin(nvar);
+  }
+
+  public void put(final double x, final double[] y) {
+    if (mode == PICK) {
+      if (m == 0) {
+        next.put(x,y);
+        held = false;
+      } else {
+        xacc = x;
+        System.arraycopy(y,0,acc,0,nvar);
+        held = true;
+      }
+      if (++m == factor) m = 0;
+    } else {
+      xacc += x;
+      for (int i=0;i<nvar;i++) acc[i] += y[i];
+      if (++m == factor) flush();
+    }
+  }
+
+  public void end() {
+    if (mode == PICK) {
+      if (held) next.put(xacc,acc);
+      held = false;
+    } else if (m > 0) flush();
+    m = 0;
+    next.end();
+  }
+
+  void flush() {
+    double fac = 1./m;
+    xacc *= fac;
+    for (int i=0;i<nvar;i++) acc[i] *= fac;
+    next.put(xacc,acc);
+    xacc = 0.;
+    for (int i=0;i<nvar;i++) acc[i] = 0.;
+    m = 0;
+  }
+}
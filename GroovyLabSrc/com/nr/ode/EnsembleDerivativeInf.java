@@ -0,0 +1,12 @@
+package com.nr.ode;
+
+/**
+ * Right-hand side of an ensemble of systems of ODEs, integrated together by OdeintEnsemble.
+ * The state is stored by variable, y[i][k] is the variable i of the member k, and the parameters
+ * likewise, p[j][k] is the parameter j of the member k (p may be null). derivs sets
+ * dydx[i][k] for the members m0 <= k < m1, each at its own x[k]. It is called concurrently
+ * for disjoint ranges of members, thus it should not keep state of its own.
+ */
+public interface EnsembleDerivativeInf {
+  public void derivs(final double[] x, final double[][] y, final double[][] p, double[][] dydx, final int m0, final int m1);
+}
@@ -0,0 +1,100 @@
+package com.nr.ode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the points of a file written by MappedFileSink. The file is mapped
+ * read-only, in windows of whole records below 2^31 bytes, and nothing is
+ * read before it is asked for: x, y and get read single values, and column
+ * reads one column of all the points, x as column 0 and y[i] as column i+1,
+ * to a new array or to a part of a given one, e.g. of a larger matrix.
+ * groovySci.math.io.OdeOutputFile builds Matrix columns on it.
+ *
+ *   r = new MappedFileReader(new File("lorenz.bin"))
+ *   y2 = r.variable(2)         // the same as r.column(3)
+ */
+public class MappedFileReader {
+  public final int nvar;
+  public final long count;
+
+  final int rec, recsPerWindow;
+  final DoubleBuffer[] win;
+
+  public MappedFileReader(final File f) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(f,"r");
+    try {
+      FileChannel ch = file.getChannel();
+      if (ch.size() < MappedFileSink.HEADER) throw new IOException("not a MappedFileSink file: "+f);
+      ByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY,0,MappedFileSink.HEADER);
+      head.order(ByteOrder.LITTLE_ENDIAN);
+      if (head.getInt(0) != MappedFileSink.MAGIC || head.getInt(4) < 1) throw new IOException("not a MappedFileSink file: "+f);
+      nvar = head.getInt(4);
+      count = head.getLong(8);
+      rec = nvar+1;
+      if (count < 0 || MappedFileSink.HEADER+8L*rec*count > ch.size()) throw new IOException("truncated MappedFileSink file: "+f);
+      recsPerWindow = Math.max(1,Integer.MAX_VALUE/(8*rec));
+      int nw = (int) ((count+recsPerWindow-1)/recsPerWindow);
+      win = new DoubleBuffer[nw];
+      for (int w=0;w<nw;w++) {
+        long k0 = (long) w*recsPerWindow, n = Math.min(recsPerWindow,count-k0);
+        ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY,MappedFileSink.HEADER+8L*rec*k0,8L*rec*n);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        win[w] = b.asDoubleBuffer();
+      }
+    } finally {
+      file.close();   // the mappings stay valid
+    }
+  }
+
+  // column c of point k, x for c = 0 and y[c-1] otherwise
+  public double get(final long k, final int c) {
+    if (k < 0 || k >= count) throw new IllegalArgumentException("bad point in MappedFileReader");
+    if (c < 0 || c > nvar) throw new IllegalArgumentException("bad column in MappedFileReader");
+    return win[(int) (k/recsPerWindow)].get((int) (k%recsPerWindow)*rec+c);
+  }
+
+  public double x(final long k) {
+    return get(k,0);
+  }
+
+  public double y(final long k, final int i) {
+    return get(k,i+1);
+  }
+
+  // x of all the points
+  public double[] x() {
+    return column(0);
+  }
+
+  // y[i] of all the points
+  public double[] variable(final int i) {
+    if (i < 0 || i >= nvar) throw new IllegalArgumentException("bad variable in MappedFileReader");
+    return column(i+1);
+  }
+
+  // column c of all the points, 0 for x and i+1 for y[i]
+  public double[] column(final int c) {
+    double[] v = new double[npoints()];
+    column(c,v,0);
+    return v;
+  }
+
+  // column c of all the points to v[off .. off+count)
+  public void column(final int c, final double[] v, final int off) {
+    if (c < 0 || c > nvar) throw new IllegalArgumentException("bad column in MappedFileReader");
+    int n = npoints();
+    if (off < 0 || off+(long) n > v.length) throw new IllegalArgumentException("bad range in MappedFileReader");
+    for (int k=0;k<n;k++) v[off+k] = win[k/recsPerWindow].get((k%recsPerWindow)*rec+c);
+  }
+
+  int npoints() {
+    if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("too many points for an array in MappedFileReader");
+    return (int) count;
+  }
+}
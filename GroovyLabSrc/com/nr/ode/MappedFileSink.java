@@ -0,0 +1,120 @@
+package com.nr.ode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * OutputSink writing the points to a binary file through a memory-mapped
+ * window, remapped further along the file when full, thus a point is a bulk
+ * copy into the page cache. The file is read back with MappedFileReader.
+ *
+ * Layout, little-endian: the int MAGIC, the int nvar, the long count of points,
+ * then count records of nvar+1 doubles, x followed by y[0..nvar-1]. The count
+ * is updated at every remapping and by end, which also truncates the file to
+ * the records written; a file of an interrupted integration thus holds the
+ * points up to the last remapping.
+ */
+public class MappedFileSink implements OutputSink {
+  public static final int MAGIC = 0x4F444531;   // "ODE1"
+  public static final int HEADER = 16;
+
+  // the size in bytes of the mapped window
+  public static int windowBytes = 1 << 24;
+
+  final File f;
+  RandomAccessFile file;
+  FileChannel ch;
+  MappedByteBuffer head, map;
+  DoubleBuffer db;
+  int nvar, rec;
+  long count, wpos;
+
+  public MappedFileSink(final File f) {
+    this.f = f;
+  }
+
+  public File file() {
+    return f;
+  }
+
+  // the number of points written
+  public long count() {
+    return count;
+  }
+
+  public void begin(final int nvar) {
+    if (nvar < 1) throw new IllegalArgumentException("bad nvar in MappedFileSink");
+    close();
+    this.nvar = nvar;
+    rec = nvar+1;
+    count = 0;
+    try {
+      file = new RandomAccessFile(f,"rw");
+      file.setLength(0);
+      ch = file.getChannel();
+      head = ch.map(FileChannel.MapMode.READ_WRITE,0,HEADER);
+      head.order(ByteOrder.LITTLE_ENDIAN);
+      head.putInt(0,MAGIC);
+      head.putInt(4,nvar);
+      head.putLong(8,0L);
+      window(HEADER);
+    } catch (IOException e) {
+      close();
+      throw new IllegalStateException("cannot map "+f+" in MappedFileSink: "+e.getMessage(),e);
+    }
+  }
+
+  // maps the window of the records from the byte offset pos on
+  void window(final long pos) throws IOException {
+    int recs = Math.max(1,windowBytes/(8*rec));
+    map = ch.map(FileChannel.MapMode.READ_WRITE,pos,8L*recs*rec);
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    db = map.asDoubleBuffer();
+    wpos = pos;
+  }
+
+  public void put(final double x, final double[] y) {
+    if (db.remaining() < rec) {
+      head.putLong(8,count);
+      try {
+        window(wpos+8L*db.capacity());
+      } catch (IOException e) {
+        throw new IllegalStateException("cannot map "+f+" in MappedFileSink: "+e.getMessage(),e);
+      }
+    }
+    db.put(x);
+    db.put(y,0,nvar);
+    count++;
+  }
+
+  public void end() {
+    if (ch == null) return;
+    head.putLong(8,count);
+    head.force();
+    map.force();
+    try {
+      ch.truncate(HEADER+8L*count*rec);
+    } catch (IOException e) {
+      // the file keeps the unused part of the window, the count is in the header
+    }
+    close();
+  }
+
+  void close() {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+      }
+    }
+    file = null;
+    ch = null;
+    head = map = null;
+    db = null;
+  }
+}
@@ -107,8 +107,9 @@ public class Odeint {
         out.save(s.x,s.y);
       if ((s.x-x2)*(x2-x1) >= 0.0) {
         for (int i=0;i<nvar;i++) ystart[i]=s.y[i];
-        if (out.kmax > 0 && abs(out.xsave[out.count-1]-x2) > 100.0*abs(x2)*EPS)
+        if (out.kmax > 0 && abs(out.lastx()-x2) > 100.0*abs(x2)*EPS)
           out.save(s.x,s.y);
+        out.end();
         return;
       }
       if (abs(s.hnext) <= hmin) throw new IllegalArgumentException("Step size too small in Odeint");
@@ -0,0 +1,313 @@
+package com.nr.ode;
+
+import static com.nr.NRUtil.*;
+import static java.lang.Math.*;
+import static com.nr.ode.StepperDopr5.*;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.NRPool;
+
+/**
+ * Driver for an ensemble of systems of ODEs with the same right-hand side, e.g. a sweep over
+ * initial conditions and parameters, integrated together with the Dormand-Prince fifth-order
+ * method of StepperDopr5. The state is stored by variable, y[i][k] is the variable i of the
+ * member k, and the right-hand side of a batch of members is evaluated in one call of an
+ * EnsembleDerivativeInf. Each member has its own stepsize control, that of StepperDopr5, thus a
+ * member takes the steps it would take with Odeint. The batches of batchSize members are
+ * integrated concurrently on the threads of the NRPool pool.
+ *
+ *   ens = new OdeintEnsemble(y,p,x1,x2,atol,rtol,h1,hmin,nsave,derivs);
+ *   ens.integrate();              // y[i][k] replaced by the values at x2
+ *
+ * With nsave > 0 the members are also saved at nsave equally spaced intervals, with the dense
+ * output of the method: ysave[j][i][k] is the variable i of the member k at xsave[j].
+ */
+public class OdeintEnsemble {
+  static final int MAXSTP=50000;
+
+  // the number of members integrated together, the columns [m0, m1) of a call of derivs
+  public static int batchSize = 256;
+
+  // the number of variables of the ensemble, nvar*nmem, below which the batches are integrated serially
+  public static int minParallelWork = 1 << 12;
+
+  final int nvar, nmem, nsave;
+  final double x1, x2, atol, rtol, hmin, h1, EPS;
+  final double[][] y, p;
+  final EnsembleDerivativeInf derivs;
+
+  // the number of good and bad (but retried and fixed) steps of each member
+  public final int[] nok, nbad;
+  public double[] xsave;
+  public double[][][] ysave;
+
+  // the state of the members, by member or by variable and member
+  final double[] x, xs, h, htry, hnext, errold, err;
+  final boolean[] reject, done;
+  final int[] nstp, kout;
+  final double[][] dydx, k2, k3, k4, k5, k6, ytemp, yout, dydxnew;
+  final double[][] rcont1, rcont2, rcont3, rcont4, rcont5;
+
+  /**
+   * Constructor sets everything up, as Odeint. The routine integrates the starting values
+   * ystart[0..nvar-1][0..nmem-1] of the nmem members from xx1 to xx2 with absolute tolerance atol
+   * and relative tolerance rtol, with the parameters p[0..npar-1][0..nmem-1] (p may be null).
+   * h1 is the guessed first stepsize, hmin the minimum allowed stepsize (can be zero), and nsave
+   * the number of intervals of the dense output (none if nsave <= 0). On output ystart is
+   * replaced by the values at xx2.
+   */
+  public OdeintEnsemble(final double[][] ystart, final double[][] p, final double xx1, final double xx2,
+    final double atoll, final double rtoll, final double hh1, final double hminn, final int nsavee,
+    final EnsembleDerivativeInf derivss) {
+    nvar = ystart.length;
+    if (nvar == 0) throw new IllegalArgumentException("no variables in OdeintEnsemble");
+    nmem = ystart[0].length;
+    for (int i=0;i<nvar;i++)
+      if (ystart[i].length != nmem) throw new IllegalArgumentException("ystart rows of different lengths");
+    y = ystart;
+    this.p = p;
+    x1 = xx1;
+    x2 = xx2;
+    atol = atoll;
+    rtol = rtoll;
+    h1 = hh1;
+    hmin = hminn;
+    nsave = max(nsavee,0);
+    derivs = derivss;
+    EPS = DBL_EPSILON;
+
+    nok = new int[nmem];
+    nbad = new int[nmem];
+    x = new double[nmem];
+    xs = new double[nmem];
+    h = new double[nmem];
+    htry = new double[nmem];
+    hnext = new double[nmem];
+    errold = new double[nmem];
+    err = new double[nmem];
+    reject = new boolean[nmem];
+    done = new boolean[nmem];
+    nstp = new int[nmem];
+    kout = new int[nmem];
+    dydx = new double[nvar][nmem];
+    k2 = new double[nvar][nmem];
+    k3 = new double[nvar][nmem];
+    k4 = new double[nvar][nmem];
+    k5 = new double[nvar][nmem];
+    k6 = new double[nvar][nmem];
+    ytemp = new double[nvar][nmem];
+    yout = new double[nvar][nmem];
+    dydxnew = new double[nvar][nmem];
+    if (nsave > 0) {
+      rcont1 = new double[nvar][nmem];
+      rcont2 = new double[nvar][nmem];
+      rcont3 = new double[nvar][nmem];
+      rcont4 = new double[nvar][nmem];
+      rcont5 = new double[nvar][nmem];
+      xsave = new double[nsave+1];
+      ysave = new double[nsave+1][nvar][nmem];
+      double dxout=(x2-x1)/nsave;
+      for (int j=0;j<nsave;j++) xsave[j]=x1+j*dxout;
+      xsave[nsave]=x2;
+    } else {
+      rcont1 = rcont2 = rcont3 = rcont4 = rcont5 = null;
+    }
+  }
+
+  public void integrate() {
+    int bs=max(batchSize,1),nb=(nmem+bs-1)/bs;
+    if ((long) nvar*nmem < minParallelWork || nb < 2 || NRPool.getNumThreads() < 2) {
+      for (int b=0;b<nb;b++) batch(b*bs,min(nmem,(b+1)*bs));
+    } else
+      NRPool.run(new BatchTask(this,bs,0,nb));
+  }
+
+  // integrates the members [m0, m1): every pass each member not done tries a step with its stepsize,
+  // which is accepted, or reduced for the next pass
+  void batch(final int m0, final int m1) {
+    int i,k,live;
+    for (k=m0;k<m1;k++) {
+      x[k]=x1;
+      h[k]=SIGN(h1,x2-x1);
+      if ((x[k]+h[k]*1.0001-x2)*(x2-x1) > 0.0) h[k]=x2-x[k];
+      htry[k]=h[k];
+      errold[k]=1.0e-4;
+      reject[k]=false;
+      done[k]=false;
+      nstp[k]=nok[k]=nbad[k]=0;
+      kout[k]=1;
+    }
+    derivs.derivs(x,y,p,dydx,m0,m1);
+    if (nsave > 0)
+      for (i=0;i<nvar;i++) System.arraycopy(y[i],m0,ysave[0][i],m0,m1-m0);
+    for (;;) {
+      dy(m0,m1);
+      error(m0,m1);
+      live=0;
+      for (k=m0;k<m1;k++) {
+        if (done[k]) continue;
+        if (success(k)) accept(k);
+        else if (abs(h[k]) <= abs(x[k])*EPS)
+          throw new IllegalArgumentException("stepsize underflow in OdeintEnsemble, member "+k);
+        if (!done[k]) live++;
+      }
+      if (live == 0) return;
+    }
+  }
+
+  // the stages of the members [m0, m1), with the stepsizes h; the members done have h = 0
+  void dy(final int m0, final int m1) {
+    int i,k;
+    for (k=m0;k<m1;k++) xs[k]=x[k]+c2*h[k];
+    for (i=0;i<nvar;i++) {
+      double[] yt=ytemp[i],yi=y[i],d=dydx[i];
+      for (k=m0;k<m1;k++) yt[k]=yi[k]+h[k]*a21*d[k];
+    }
+    derivs.derivs(xs,ytemp,p,k2,m0,m1);
+    for (k=m0;k<m1;k++) xs[k]=x[k]+c3*h[k];
+    for (i=0;i<nvar;i++) {
+      double[] yt=ytemp[i],yi=y[i],d=dydx[i],q2=k2[i];
+      for (k=m0;k<m1;k++) yt[k]=yi[k]+h[k]*(a31*d[k]+a32*q2[k]);
+    }
+    derivs.derivs(xs,ytemp,p,k3,m0,m1);
+    for (k=m0;k<m1;k++) xs[k]=x[k]+c4*h[k];
+    for (i=0;i<nvar;i++) {
+      double[] yt=ytemp[i],yi=y[i],d=dydx[i],q2=k2[i],q3=k3[i];
+      for (k=m0;k<m1;k++) yt[k]=yi[k]+h[k]*(a41*d[k]+a42*q2[k]+a43*q3[k]);
+    }
+    derivs.derivs(xs,ytemp,p,k4,m0,m1);
+    for (k=m0;k<m1;k++) xs[k]=x[k]+c5*h[k];
+    for (i=0;i<nvar;i++) {
+      double[] yt=ytemp[i],yi=y[i],d=dydx[i],q2=k2[i],q3=k3[i],q4=k4[i];
+      for (k=m0;k<m1;k++) yt[k]=yi[k]+h[k]*(a51*d[k]+a52*q2[k]+a53*q3[k]+a54*q4[k]);
+    }
+    derivs.derivs(xs,ytemp,p,k5,m0,m1);
+    for (k=m0;k<m1;k++) xs[k]=x[k]+h[k];
+    for (i=0;i<nvar;i++) {
+      double[] yt=ytemp[i],yi=y[i],d=dydx[i],q2=k2[i],q3=k3[i],q4=k4[i],q5=k5[i];
+      for (k=m0;k<m1;k++) yt[k]=yi[k]+h[k]*(a61*d[k]+a62*q2[k]+a63*q3[k]+a64*q4[k]+a65*q5[k]);
+    }
+    derivs.derivs(xs,ytemp,p,k6,m0,m1);
+    for (i=0;i<nvar;i++) {
+      double[] yo=yout[i],yi=y[i],d=dydx[i],q3=k3[i],q4=k4[i],q5=k5[i],q6=k6[i];
+      for (k=m0;k<m1;k++) yo[k]=yi[k]+h[k]*(a71*d[k]+a73*q3[k]+a74*q4[k]+a75*q5[k]+a76*q6[k]);
+    }
+    derivs.derivs(xs,yout,p,dydxnew,m0,m1);
+  }
+
+  // the scaled error estimates of the members [m0, m1), as StepperDopr5.error()
+  void error(final int m0, final int m1) {
+    int i,k;
+    for (k=m0;k<m1;k++) err[k]=0.0;
+    for (i=0;i<nvar;i++) {
+      double[] yi=y[i],yo=yout[i],d=dydx[i],q3=k3[i],q4=k4[i],q5=k5[i],q6=k6[i],dn=dydxnew[i];
+      for (k=m0;k<m1;k++) {
+        double yerr=h[k]*(e1*d[k]+e3*q3[k]+e4*q4[k]+e5*q5[k]+e6*q6[k]+e7*dn[k]);
+        double sk=atol+rtol*max(abs(yi[k]),abs(yo[k]));
+        err[k] += SQR(yerr/sk);
+      }
+    }
+    for (k=m0;k<m1;k++) err[k]=sqrt(err[k]/nvar);
+  }
+
+  // the stepsize control of StepperDopr5.Controller for the member k
+  boolean success(final int k) {
+    final double beta=Controller.beta,alpha=Controller.alpha,safe=Controller.safe,
+      minscale=Controller.minscale,maxscale=Controller.maxscale;
+    double scale,e=err[k];
+    if (e <= 1.0) {
+      if (e == 0.0)
+        scale=maxscale;
+      else {
+        scale=safe*pow(e,-alpha)*pow(errold[k],beta);
+        if (scale<minscale) scale=minscale;
+        if (scale>maxscale) scale=maxscale;
+      }
+      if (reject[k])
+        hnext[k]=h[k]*min(scale,1.0);
+      else
+        hnext[k]=h[k]*scale;
+      errold[k]=max(e,1.0e-4);
+      reject[k]=false;
+      return true;
+    } else {
+      scale=max(safe*pow(e,-alpha),minscale);
+      h[k] *= scale;
+      reject[k]=true;
+      return false;
+    }
+  }
+
+  // completes the step of the member k, with the dense output, and sets up its next step as Odeint
+  void accept(final int k) {
+    int i;
+    if (nsave > 0) prepare_dense(k);
+    for (i=0;i<nvar;i++) {
+      dydx[i][k]=dydxnew[i][k];
+      y[i][k]=yout[i][k];
+    }
+    double xold=x[k];
+    x[k] += h[k];
+    if (h[k] == htry[k]) ++nok[k]; else ++nbad[k];
+    if (nsave > 0) {
+      while (kout[k] < nsave && (x[k]-xsave[kout[k]])*(x2-x1) > 0.0) {
+        double s=(xsave[kout[k]]-xold)/h[k],s1=1.0-s;
+        double[][] ys=ysave[kout[k]++];
+        for (i=0;i<nvar;i++)
+          ys[i][k]=rcont1[i][k]+s*(rcont2[i][k]+s1*(rcont3[i][k]+s*(rcont4[i][k]+s1*rcont5[i][k])));
+      }
+    }
+    if ((x[k]-x2)*(x2-x1) >= 0.0) {
+      done[k]=true;
+      h[k]=0.0;
+      if (nsave > 0) {
+        for (;kout[k]<=nsave;kout[k]++)
+          for (i=0;i<nvar;i++) ysave[kout[k]][i][k]=y[i][k];
+      }
+      return;
+    }
+    if (abs(hnext[k]) <= hmin) throw new IllegalArgumentException("Step size too small in OdeintEnsemble, member "+k);
+    if (++nstp[k] >= MAXSTP) throw new IllegalArgumentException("Too many steps in OdeintEnsemble, member "+k);
+    h[k]=hnext[k];
+    if ((x[k]+h[k]*1.0001-x2)*(x2-x1) > 0.0) h[k]=x2-x[k];
+    htry[k]=h[k];
+  }
+
+  // the dense output coefficients of the member k, as StepperDopr5.prepare_dense()
+  void prepare_dense(final int k) {
+    double hk=h[k];
+    for (int i=0;i<nvar;i++) {
+      rcont1[i][k]=y[i][k];
+      double ydiff=yout[i][k]-y[i][k];
+      rcont2[i][k]=ydiff;
+      double bspl=hk*dydx[i][k]-ydiff;
+      rcont3[i][k]=bspl;
+      rcont4[i][k]=ydiff-hk*dydxnew[i][k]-bspl;
+      rcont5[i][k]=hk*(d1*dydx[i][k]+d3*k3[i][k]+d4*k4[i][k]+d5*k5[i][k]+d6*k6[i][k]+
+        d7*dydxnew[i][k]);
+    }
+  }
+
+  // the batches [b0, b1), split in halves down to single batches
+  static class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final OdeintEnsemble ens;
+    final int bs, b0, b1;
+
+    BatchTask(OdeintEnsemble ens, int bs, int b0, int b1) {
+      this.ens = ens;  this.bs = bs;  this.b0 = b0;  this.b1 = b1;
+    }
+
+    @Override
+    protected void compute() {
+      if (b1 - b0 == 1) {
+        ens.batch(b0*bs,min(ens.nmem,(b0+1)*bs));
+        return;
+      }
+      int mid = (b0 + b1) >>> 1;
+      invokeAll(new BatchTask(ens,bs,b0,mid), new BatchTask(ens,bs,mid,b1));
+    }
+  }
+}
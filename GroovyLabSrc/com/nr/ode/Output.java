@@ -98,6 +98,21 @@ public class Output {
   }
 
   
+  /**
+   * The x of the last saved point, used by Odeint to save the end point when
+   * the last step did not.
+   */
+  public double lastx() {
+    return xsave[count-1];
+  }
+
+  /**
+   * Called by Odeint when the integration reaches xhi, after the last point is
+   * saved. Streaming outputs flush and close their sink here.
+   */
+  public void end() {
+  }
+
   public void out(final int nstp,final double x,final double[] y,final StepperBase s,final double h) {
     if (!dense)
       throw new IllegalArgumentException("dense output not set in Output!");
@@ -0,0 +1,16 @@
+package com.nr.ode;
+
+/**
+ * Receiver of the points saved by a StreamOutput, e.g. a MappedFileSink, a
+ * RingBufferSink or a DecimatingSink.
+ *
+ * begin is called once per integration, before the first point, put once per
+ * saved point, and end when the integration reaches its end point. The array
+ * y passed to put belongs to the caller and is valid during the call only,
+ * thus sinks copy what they keep.
+ */
+public interface OutputSink {
+  void begin(int nvar);
+  void put(double x, double[] y);
+  void end();
+}
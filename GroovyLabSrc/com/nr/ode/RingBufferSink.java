@@ -0,0 +1,73 @@
+package com.nr.ode;
+
+/**
+ * OutputSink keeping the last capacity points in a ring, e.g. for live
+ * plotting of a running integration: another thread copies the recent points
+ * with latest while the integration puts new ones. The ring is allocated by
+ * begin, thus put allocates nothing.
+ */
+public class RingBufferSink implements OutputSink {
+  final int capacity;
+  int nvar;
+  double[] xs, ys;   // point j at xs[j % capacity], ys[(j % capacity)*nvar ..]
+  long total;
+  boolean ended;
+
+  public RingBufferSink(final int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("bad capacity in RingBufferSink");
+    this.capacity = capacity;
+  }
+
+  public synchronized void begin(final int nvar) {
+    if (xs == null || this.nvar != nvar) {
+      xs = new double[capacity];
+      ys = new double[capacity*nvar];
+    }
+    this.nvar = nvar;
+    total = 0;
+    ended = false;
+  }
+
+  public synchronized void put(final double x, final double[] y) {
+    int k = (int) (total % capacity);
+    xs[k] = x;
+    System.arraycopy(y,0,ys,k*nvar,nvar);
+    total++;
+  }
+
+  public synchronized void end() {
+    ended = true;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  // the number of points put since begin
+  public synchronized long total() {
+    return total;
+  }
+
+  // true once the integration has ended
+  public synchronized boolean ended() {
+    return ended;
+  }
+
+  /**
+   * Copies the most recent points, at most x.length and capacity, in the order
+   * they were put, to x[j] and y[i][j] as Output's xsave and ysave; y may be
+   * null. Returns the number of points copied.
+   */
+  public synchronized int latest(final double[] x, final double[][] y) {
+    int n = (int) Math.min(Math.min(total,capacity),x.length);
+    if (y != null && y.length < nvar) throw new IllegalArgumentException("y has fewer rows than nvar in RingBufferSink");
+    long first = total-n;
+    for (int j=0;j<n;j++) {
+      int k = (int) ((first+j) % capacity);
+      x[j] = xs[k];
+      if (y != null)
+        for (int i=0;i<nvar;i++) y[i][j] = ys[k*nvar+i];
+    }
+    return n;
+  }
+}
@@ -0,0 +1,13 @@
+package com.nr.ode;
+
+/**
+ * Right-hand side of a large stiff system with a sparse or banded Jacobian, for StepperRoss and
+ * StepperSie. pattern() gives the positions of the nonzero entries of dfdy, which should not change
+ * during the integration; it is called once by the stepper. sparseJacobian() sets dfdx and the values
+ * dfdy.val of the entries of the pattern and returns true, or returns false to have them computed by
+ * coloured finite differences of derivs. The dense jacobian() of DerivativeInf is not called.
+ */
+public interface SparseDerivativeInf extends DerivativeInf {
+  public SparseJacobian pattern();
+  public boolean sparseJacobian(final double x, double[] y, double[] dfdx, SparseJacobian dfdy);
+}
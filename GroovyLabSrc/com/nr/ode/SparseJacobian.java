@@ -0,0 +1,291 @@
+package com.nr.ode;
+
+import static java.lang.Math.*;
+
+import java.util.Arrays;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsn;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_lsolve;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_lu;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_sqr;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_usolve;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_util;
+
+/**
+ * Sparse Jacobian dfdy of a stiff system, for StepperRoss and StepperSie with a SparseDerivativeInf.
+ * The entries are stored by columns: column j has the rows rowi[colp[j]..colp[j+1]-1] with the values
+ * val[colp[j]..colp[j+1]-1]. The pattern is fixed, thus it is analysed once:
+ * - the columns are coloured so that the columns of a colour have no row in common, and the
+ *   finite differences of all the columns of a colour take one evaluation of derivs, e.g. ml+mu+1
+ *   evaluations for a banded Jacobian, whatever n;
+ * - the matrix shift*1-dfdy of the steppers is factored by the sparse LU of CSparse (Dcs_lu), with
+ *   the fill-reducing ordering and the symbolic analysis of Dcs_sqr computed at the first
+ *   factorization and reused by the next ones.
+ */
+public class SparseJacobian {
+  static final double EPS=1.0e-8;
+
+  public final int n;
+  public final int[] colp, rowi;
+  public final double[] val;
+
+  // threshold of the partial pivoting of Dcs_lu: a diagonal pivot is kept if at least pivtol times
+  // the largest entry of its column, which keeps the fill of the symbolic analysis
+  public double pivtol=1.0e-3;
+
+  // the columns of colour c are cols[cptr[c]..cptr[c+1]-1]
+  final int ncolor;
+  final int[] cptr, cols;
+  final int order;
+
+  // the matrix shift*1-dfdy, with the entries of dfdy at amap[] and the diagonal at diag[]
+  final Dcs A;
+  final int[] amap, diag;
+  Dcss S;
+  Dcsn N;
+  final double[] ytemp, ftemp, work;
+
+  /**
+   * Constructor for a general pattern, factored with the approximate minimum degree ordering of
+   * the pattern of A+A'. The rows of a column should be distinct.
+   *
+   * @param nn the number of equations
+   * @param ccolp the start of each column in rrowi, ccolp[0..nn]
+   * @param rrowi the rows of the entries
+   */
+  public SparseJacobian(final int nn, final int[] ccolp, final int[] rrowi) {
+    this(nn,ccolp,rrowi,1);
+  }
+
+  SparseJacobian(final int nn, final int[] ccolp, final int[] rrowi, final int oorder) {
+    int i,j,p;
+    n=nn;
+    if (n < 1 || ccolp.length != n+1 || ccolp[0] != 0 || ccolp[n] > rrowi.length)
+      throw new IllegalArgumentException("bad pattern in SparseJacobian");
+    int[] mark=new int[n];
+    Arrays.fill(mark,-1);
+    for (j=0;j<n;j++) {
+      if (ccolp[j+1] < ccolp[j]) throw new IllegalArgumentException("bad pattern in SparseJacobian");
+      for (p=ccolp[j];p<ccolp[j+1];p++) {
+        i=rrowi[p];
+        if (i < 0 || i >= n || mark[i] == j) throw new IllegalArgumentException("bad row in SparseJacobian column "+j);
+        mark[i]=j;
+      }
+    }
+    colp=ccolp.clone();
+    rowi=Arrays.copyOf(rrowi,ccolp[n]);
+    order=oorder;
+
+    // greedy colouring of the columns: the colours of the columns sharing a row are marked
+    int nnz=colp[n];
+    int[] rowp=new int[n+1],colj=new int[nnz];
+    for (p=0;p<nnz;p++) rowp[rowi[p]+1]++;
+    for (i=0;i<n;i++) rowp[i+1] += rowp[i];
+    int[] next=Arrays.copyOf(rowp,n);
+    for (j=0;j<n;j++)
+      for (p=colp[j];p<colp[j+1];p++) colj[next[rowi[p]]++]=j;
+    int[] color=new int[n];
+    Arrays.fill(color,-1);
+    Arrays.fill(mark,-1);
+    int nc=0;
+    for (j=0;j<n;j++) {
+      for (p=colp[j];p<colp[j+1];p++) {
+        i=rowi[p];
+        for (int q=rowp[i];q<rowp[i+1];q++)
+          if (color[colj[q]] >= 0) mark[color[colj[q]]]=j;
+      }
+      int c=0;
+      while (mark[c] == j) c++;
+      color[j]=c;
+      nc=max(nc,c+1);
+    }
+    ncolor=nc;
+    cptr=new int[nc+1];
+    cols=new int[n];
+    for (j=0;j<n;j++) cptr[color[j]+1]++;
+    for (int c=0;c<nc;c++) cptr[c+1] += cptr[c];
+    next=Arrays.copyOf(cptr,nc);
+    for (j=0;j<n;j++) cols[next[color[j]]++]=j;
+
+    // the pattern of dfdy and the diagonal
+    amap=new int[nnz];
+    diag=new int[n];
+    int anz=nnz;
+    for (j=0;j<n;j++) {
+      boolean hasdiag=false;
+      for (p=colp[j];p<colp[j+1];p++) hasdiag = hasdiag || rowi[p] == j;
+      if (!hasdiag) anz++;
+    }
+    A=Dcs_util.cs_spalloc(n,n,anz,true,false);
+    int q=0;
+    for (j=0;j<n;j++) {
+      A.p[j]=q;
+      diag[j]=-1;
+      for (p=colp[j];p<colp[j+1];p++) {
+        A.i[q]=rowi[p];
+        if (rowi[p] == j) diag[j]=q;
+        amap[p]=q++;
+      }
+      if (diag[j] < 0) {
+        A.i[q]=j;
+        diag[j]=q++;
+      }
+    }
+    A.p[n]=q;
+
+    val=new double[nnz];
+    ytemp=new double[n];
+    ftemp=new double[n];
+    work=new double[n];
+  }
+
+  // a copy of the pattern, with its own values and factorization, for a stepper
+  SparseJacobian(final SparseJacobian s) {
+    n=s.n;
+    colp=s.colp;
+    rowi=s.rowi;
+    pivtol=s.pivtol;
+    ncolor=s.ncolor;
+    cptr=s.cptr;
+    cols=s.cols;
+    order=s.order;
+    amap=s.amap;
+    diag=s.diag;
+    A=Dcs_util.cs_spalloc(n,n,s.A.nzmax,true,false);
+    System.arraycopy(s.A.p,0,A.p,0,n+1);
+    System.arraycopy(s.A.i,0,A.i,0,s.A.nzmax);
+    val=new double[s.val.length];
+    ytemp=new double[n];
+    ftemp=new double[n];
+    work=new double[n];
+  }
+
+  /**
+   * Pattern of a banded Jacobian, with ml subdiagonals and mu superdiagonals, factored in the
+   * natural order.
+   */
+  public static SparseJacobian banded(final int n, final int ml, final int mu) {
+    if (ml < 0 || mu < 0) throw new IllegalArgumentException("bad bandwidth in SparseJacobian");
+    int[] colp=new int[n+1];
+    int[] rowi=new int[n*(ml+mu+1)];
+    int q=0;
+    for (int j=0;j<n;j++) {
+      colp[j]=q;
+      for (int i=max(0,j-mu);i<=min(n-1,j+ml);i++) rowi[q++]=i;
+    }
+    colp[n]=q;
+    return new SparseJacobian(n,colp,rowi,0);
+  }
+
+  /**
+   * Pattern of the entries (rows[k], cols[k]) of a Jacobian of order n, in any order; repeated
+   * entries are kept once.
+   */
+  public static SparseJacobian fromEntries(final int n, final int[] rows, final int[] cols) {
+    int k,j;
+    if (rows.length != cols.length) throw new IllegalArgumentException("rows and cols of different lengths");
+    int[] colp=new int[n+1];
+    for (k=0;k<cols.length;k++) {
+      if (cols[k] < 0 || cols[k] >= n) throw new IllegalArgumentException("bad column in SparseJacobian");
+      colp[cols[k]+1]++;
+    }
+    for (j=0;j<n;j++) colp[j+1] += colp[j];
+    int[] next=Arrays.copyOf(colp,n),rowi=new int[rows.length];
+    for (k=0;k<rows.length;k++) rowi[next[cols[k]]++]=rows[k];
+    int[] mark=new int[n];
+    Arrays.fill(mark,-1);
+    int q=0;
+    for (j=0;j<n;j++) {
+      int p0=colp[j];
+      colp[j]=q;
+      for (int p=p0;p<colp[j+1];p++) {
+        int i=rowi[p];
+        if (i < 0 || i >= n) throw new IllegalArgumentException("bad row in SparseJacobian");
+        if (mark[i] != j) {
+          mark[i]=j;
+          rowi[q++]=i;
+        }
+      }
+    }
+    colp[n]=q;
+    return new SparseJacobian(n,colp,rowi,1);
+  }
+
+  // the number of colours, i.e. the evaluations of derivs of finiteDifferences() besides f0 and dfdx
+  public int colors() {
+    return ncolor;
+  }
+
+  // the value of dfdy[i][j], 0 off the pattern
+  public double get(final int i, final int j) {
+    for (int p=colp[j];p<colp[j+1];p++)
+      if (rowi[p] == i) return val[p];
+    return 0.0;
+  }
+
+  /**
+   * Sets the values by coloured finite differences of derivs at (x, y), and dfdx by a finite
+   * difference in x unless dfdx is null. f0 is derivs at (x, y), computed if null.
+   */
+  public void finiteDifferences(final DerivativeInf derivs, final double x, final double[] y,
+    double[] f0, final double[] dfdx) {
+    int c,k,j,p;
+    if (f0 == null) {
+      f0=new double[n];
+      derivs.derivs(x,y,f0);
+    }
+    System.arraycopy(y,0,ytemp,0,n);
+    for (c=0;c<ncolor;c++) {
+      for (k=cptr[c];k<cptr[c+1];k++) {
+        j=cols[k];
+        double h=EPS*abs(y[j]);
+        if (h == 0.0) h=EPS;
+        ytemp[j]=y[j]+h;
+        work[j]=ytemp[j]-y[j];
+      }
+      derivs.derivs(x,ytemp,ftemp);
+      for (k=cptr[c];k<cptr[c+1];k++) {
+        j=cols[k];
+        for (p=colp[j];p<colp[j+1];p++)
+          val[p]=(ftemp[rowi[p]]-f0[rowi[p]])/work[j];
+        ytemp[j]=y[j];
+      }
+    }
+    if (dfdx != null) {
+      double h=EPS*abs(x);
+      if (h == 0.0) h=EPS;
+      double xh=x+h;
+      derivs.derivs(xh,y,ftemp);
+      for (int i=0;i<n;i++) dfdx[i]=(ftemp[i]-f0[i])/(xh-x);
+    }
+  }
+
+  // factors shift*1-dfdy
+  public void factor(final double shift) {
+    double[] Ax=A.x;
+    Arrays.fill(Ax,0.0);
+    for (int p=0;p<val.length;p++) Ax[amap[p]]=-val[p];
+    for (int j=0;j<n;j++) Ax[diag[j]] += shift;
+    if (S == null) {
+      S=Dcs_sqr.cs_sqr(order,A,false);
+      if (S == null) throw new IllegalArgumentException("symbolic analysis failed in SparseJacobian");
+    }
+    N=Dcs_lu.cs_lu(A,S,pivtol);
+    if (N == null) throw new IllegalArgumentException("singular matrix in SparseJacobian");
+    // the next factorizations start with the fill of this one
+    S.lnz=max(S.lnz,N.L.p[n]);
+    S.unz=max(S.unz,N.U.p[n]);
+  }
+
+  // solves (shift*1-dfdy).x = b with the last factorization; x may be b
+  public void solve(final double[] b, final double[] x) {
+    if (N == null) throw new IllegalArgumentException("SparseJacobian not factored");
+    Dcs_ipvec.cs_ipvec(N.pinv,b,work,n);
+    Dcs_lsolve.cs_lsolve(N.L,work);
+    Dcs_usolve.cs_usolve(N.U,work);
+    Dcs_ipvec.cs_ipvec(S.q,work,x,n);
+  }
+}
@@ -262,8 +262,10 @@ public class StepperBS extends StepperBase{
     }
   }
   
-  static boolean first_step=true,last_step=false;
-  static boolean forward,reject=false,prev_reject=false;
+  // per instance, not static as the function-static locals of the C++ step(), thus steppers of
+  // different integrations (e.g. the members of an OdeintEnsemble) do not share the first step flag
+  boolean first_step=true,last_step=false;
+  boolean forward,reject=false,prev_reject=false;
   public void step(final double htry,final DerivativeInf derivs) {
     final double STEPFAC1=0.65,STEPFAC2=0.94,STEPFAC3=0.02,STEPFAC4=4.0,
       KFAC1=0.8,KFAC2=0.9;
@@ -89,7 +89,7 @@ public class StepperDopr5 extends StepperBase{
     return rcont1[i]+s*(rcont2[i]+s1*(rcont3[i]+s*(rcont4[i]+s1*rcont5[i])));
   }
   
-  private static final double c2=0.2,c3=0.3,c4=0.8,c5=8.0/9.0,a21=0.2,a31=3.0/40.0,
+  static final double c2=0.2,c3=0.3,c4=0.8,c5=8.0/9.0,a21=0.2,a31=3.0/40.0,
   a32=9.0/40.0,a41=44.0/45.0,a42=-56.0/15.0,a43=32.0/9.0,a51=19372.0/6561.0,
   a52=-25360.0/2187.0,a53=64448.0/6561.0,a54=-212.0/729.0,a61=9017.0/3168.0,
   a62=-355.0/33.0,a63=46732.0/5247.0,a64=49.0/176.0,a65=-5103.0/18656.0,
@@ -132,7 +132,7 @@ public class StepperDopr5 extends StepperBase{
     return sqrt(err/n);
   }
   
-  private static final double d1=-12715105075.0/11282082432.0,
+  static final double d1=-12715105075.0/11282082432.0,
   d3=87487479700.0/32700410799.0, d4=-10690763975.0/1880347072.0,
   d5=701980252875.0/199316789632.0, d6=-1453857185.0/822651844.0,
   d7=69997945.0/29380423.0;
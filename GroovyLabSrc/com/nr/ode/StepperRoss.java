@@ -67,6 +67,9 @@ public class StepperRoss extends StepperBase{
   double[] cont1,cont2,cont3,cont4;
   double[][] a;
   Controller con = new Controller();
+  // the Jacobian and the factorization of a SparseDerivativeInf, used in place of dfdy and a
+  boolean sparse;
+  SparseJacobian sjac;
   
   public static class Controller {
     double hnext;
@@ -119,7 +122,7 @@ public class StepperRoss extends StepperBase{
   public void setParam(final double[] yy, final double[] dydxx, final double xx,
     final double atoll,final double rtoll, final boolean dense) {
     super.setParam(yy,dydxx,xx,atoll,rtoll,dense);
-    dfdy = new double[n][n];
+    dfdy = null;
     dfdx = new double[n];
     k1 = new double[n];
     k2 = new double[n];
@@ -131,14 +134,15 @@ public class StepperRoss extends StepperBase{
     cont2 = new double[n];
     cont3 = new double[n];
     cont4 = new double[n];
-    a= new double[n][n];
+    a = null;
+    sjac = null;
     EPS=DBL_EPSILON;
   }
   
   public void step(final double htry,final DerivativeInf derivs) {
     double[] dydxnew = new double[n];
     doubleW h= new doubleW(htry);
-    derivs.jacobian(x,y,dfdx,dfdy);
+    jacobian(derivs);
     for (;;) {
       dy(h.val,derivs);
       double err=error();
@@ -158,48 +162,80 @@ public class StepperRoss extends StepperBase{
     hnext=con.hnext;
   }
   
+  // the Jacobian at (x, y), dense, or sparse for a SparseDerivativeInf, whose matrices are allocated
+  // at the first step
+  void jacobian(final DerivativeInf derivs) {
+    sparse = derivs instanceof SparseDerivativeInf;
+    if (sparse) {
+      SparseDerivativeInf sd = (SparseDerivativeInf) derivs;
+      if (sjac == null) {
+        SparseJacobian pat = sd.pattern();
+        if (pat.n != n) throw new IllegalArgumentException("SparseJacobian of wrong size in StepperRoss");
+        sjac = new SparseJacobian(pat);
+      }
+      if (!sd.sparseJacobian(x,y,dfdx,sjac))
+        sjac.finiteDifferences(derivs,x,y,dydx,dfdx);
+    } else {
+      if (dfdy == null) {
+        dfdy = new double[n][n];
+        a = new double[n][n];
+      }
+      derivs.jacobian(x,y,dfdx,dfdy);
+    }
+  }
+
+  void solve(final LUdcmp alu, final double[] b, final double[] z) {
+    if (alu == null) sjac.solve(b,z);
+    else alu.solve(b,z);
+  }
+
   public void dy(final double h,final DerivativeInf derivs) {
     double[] ytemp = new double[n],dydxnew = new double[n];
     int i;
-    for (i=0;i<n;i++) {
-      for (int j=0;j<n;j++) a[i][j] = -dfdy[i][j];
-      a[i][i] += 1.0/(gam*h);
+    LUdcmp alu = null;
+    if (sparse)
+      sjac.factor(1.0/(gam*h));
+    else {
+      for (i=0;i<n;i++) {
+        for (int j=0;j<n;j++) a[i][j] = -dfdy[i][j];
+        a[i][i] += 1.0/(gam*h);
+      }
+      alu = new LUdcmp(a);
     }
-    LUdcmp alu = new LUdcmp(a);
     for (i=0;i<n;i++)
       ytemp[i]=dydx[i]+h*d1*dfdx[i];
-    alu.solve(ytemp,k1);
+    solve(alu,ytemp,k1);
     for (i=0;i<n;i++)
       ytemp[i]=y[i]+a21*k1[i];
     derivs.derivs(x+c2*h,ytemp,dydxnew);
     for (i=0;i<n;i++)
       ytemp[i]=dydxnew[i]+h*d2*dfdx[i]+c21*k1[i]/h;
-    alu.solve(ytemp,k2);
+    solve(alu,ytemp,k2);
     for (i=0;i<n;i++)
       ytemp[i]=y[i]+a31*k1[i]+a32*k2[i];
     derivs.derivs(x+c3*h,ytemp,dydxnew);
     for (i=0;i<n;i++)
       ytemp[i]=dydxnew[i]+h*d3*dfdx[i]+(c31*k1[i]+c32*k2[i])/h;
-    alu.solve(ytemp,k3);
+    solve(alu,ytemp,k3);
     for (i=0;i<n;i++)
       ytemp[i]=y[i]+a41*k1[i]+a42*k2[i]+a43*k3[i];
     derivs.derivs(x+c4*h,ytemp,dydxnew);
     for (i=0;i<n;i++)
       ytemp[i]=dydxnew[i]+h*d4*dfdx[i]+(c41*k1[i]+c42*k2[i]+c43*k3[i])/h;
-    alu.solve(ytemp,k4);
+    solve(alu,ytemp,k4);
     for (i=0;i<n;i++)
       ytemp[i]=y[i]+a51*k1[i]+a52*k2[i]+a53*k3[i]+a54*k4[i];
     double xph=x+h;
     derivs.derivs(xph,ytemp,dydxnew);
     for (i=0;i<n;i++)
       k6[i]=dydxnew[i]+(c51*k1[i]+c52*k2[i]+c53*k3[i]+c54*k4[i])/h;
-    alu.solve(k6,k5);
+    solve(alu,k6,k5);
     for (i=0;i<n;i++)
       ytemp[i] += k5[i];
     derivs.derivs(xph,ytemp,dydxnew);
     for (i=0;i<n;i++)
       k6[i]=dydxnew[i]+(c61*k1[i]+c62*k2[i]+c63*k3[i]+c64*k4[i]+c65*k5[i])/h;
-    alu.solve(k6,yerr);
+    solve(alu,k6,yerr);
     for (i=0;i<n;i++)
       yout[i]=ytemp[i]+yerr[i];
   }
@@ -30,6 +30,9 @@ public class StepperSie extends StepperBase{
   double[][] fsave;
   double[] dens;
   double[] factrl;
+  // the Jacobian and the factorization of a SparseDerivativeInf, used in place of dfdy and a
+  boolean sparse;
+  SparseJacobian sjac;
   
   static final double costfunc=1.0,costjac=5.0,costlu=1.0,costsolve=1.0;
   
@@ -47,10 +50,11 @@ public class StepperSie extends StepperBase{
     nseq = new int[IMAXX];
     cost = new double[IMAXX];
     table = new double[KMAXX][n];
-    dfdy = new double[n][n];
+    dfdy = null;
     dfdx = new double[n];
     calcjac = false;
-    a = new double[n][n];
+    a = null;
+    sjac = null;
     coeff = new double[IMAXX][IMAXX];
     fsave = new double[(IMAXX-1)*(IMAXX+1)/2+2][n];
     dens = new double[(IMAXX+2)*n];
@@ -80,9 +84,9 @@ public class StepperSie extends StepperBase{
       factrl[k+1]=(k+1)*factrl[k];
   }
   
-  static boolean first_step=true,last_step=false;
-  static boolean forward,reject=false,prev_reject=false;
-  static double errold;
+  boolean first_step=true,last_step=false;
+  boolean forward,reject=false,prev_reject=false;
+  double errold;
   public void step(final double htry,final DerivativeInf derivs) {
     final double STEPFAC1=0.6,STEPFAC2=0.93,STEPFAC3=0.1,STEPFAC4=4.0,
       STEPFAC5=0.5,KFAC1=0.7,KFAC2=0.9;
@@ -114,7 +118,7 @@ public class StepperSie extends StepperBase{
     boolean goto_compute_jac = false;
     
     if (theta > jac_redo && !calcjac) {
-      derivs.jacobian(x,y,dfdx,dfdy);
+      jacobian(derivs);
       calcjac=true;
     }
     while (firstk || reject) {
@@ -259,21 +263,53 @@ public class StepperSie extends StepperBase{
       hnext=-hnew;  
   }
   
+  // the Jacobian at (x, y), dense, or sparse for a SparseDerivativeInf, whose matrices are allocated
+  // at the first step
+  void jacobian(final DerivativeInf derivs) {
+    sparse = derivs instanceof SparseDerivativeInf;
+    if (sparse) {
+      SparseDerivativeInf sd = (SparseDerivativeInf) derivs;
+      if (sjac == null) {
+        SparseJacobian pat = sd.pattern();
+        if (pat.n != n) throw new IllegalArgumentException("SparseJacobian of wrong size in StepperSie");
+        sjac = new SparseJacobian(pat);
+      }
+      if (!sd.sparseJacobian(x,y,dfdx,sjac))
+        sjac.finiteDifferences(derivs,x,y,null,null);
+    } else {
+      if (dfdy == null) {
+        dfdy = new double[n][n];
+        a = new double[n][n];
+      }
+      derivs.jacobian(x,y,dfdx,dfdy);
+    }
+  }
+
+  void solve(final LUdcmp alu, final double[] b, final double[] z) {
+    if (alu == null) sjac.solve(b,z);
+    else alu.solve(b,z);
+  }
+
   public boolean dy(final double[] y,final double htot,final int k,final double[] yend,
     final intW ipt,final double[] scale,final DerivativeInf derivs) {
     double[] del = new double[n],ytemp = new double[n],dytemp = new double[n];
     int nstep=nseq[k];
     double h=htot/nstep;
-    for (int i=0;i<n;i++) {
-      for (int j=0;j<n;j++) a[i][j] = -dfdy[i][j];
-      a[i][i] += 1.0/h;
+    LUdcmp alu = null;
+    if (sparse)
+      sjac.factor(1.0/h);
+    else {
+      for (int i=0;i<n;i++) {
+        for (int j=0;j<n;j++) a[i][j] = -dfdy[i][j];
+        a[i][i] += 1.0/h;
+      }
+      alu = new LUdcmp(a);
     }
-    LUdcmp alu = new LUdcmp(a);
     double xnew=x+h;
     derivs.derivs(xnew,y,del);
     for (int i=0;i<n;i++)
       ytemp[i]=y[i];
-    alu.solve(del,del);
+    solve(alu,del,del);
     if (dense && nstep==k+1) {
       ipt.val++;
       for (int i=0;i<n;i++)
@@ -292,7 +328,7 @@ public class StepperSie extends StepperBase{
         derivs.derivs(x+h,ytemp,dytemp);
         for (int i=0;i<n;i++)
           del[i]=dytemp[i]-del[i]/h;
-        alu.solve(del,del);
+        solve(alu,del,del);
         double del2=0.0;
         for (int i=0;i<n;i++)
           del2 += SQR(del[i]/scale[i]);
@@ -301,7 +337,7 @@ public class StepperSie extends StepperBase{
         if (theta > 1.0)
           return false;
       }
-      alu.solve(yend,del);
+      solve(alu,yend,del);
       if (dense && nn >= nstep-k-1) {
         ipt.val++;
         for (int i=0;i<n;i++)
@@ -0,0 +1,348 @@
+package com.nr.ode;
+
+import static java.lang.Math.*;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.la.NRsparseCol;
+import com.nr.ran.Poissondev;
+import com.nr.sort.IQagent;
+
+import com.nr.NRPool;
+
+/**
+ * Many realizations of a stochastic simulation, as Stochsim for a general
+ * network of nn species and mm reactions, run in batches on the
+ * NRPool pool. Each realization is simulated with Gillespie's direct
+ * method with the dependency graph and the sorted propensity search of
+ * Stochsim, or optionally by tau-leaping, and its states at the output times
+ * tout are aggregated online: the mean and the variance of each species at
+ * each output time, and its quantiles through an IQagent. Thus the memory is
+ * that of the nt*nn agents and of a batch of realizations per thread, and does
+ * not grow with the number of realizations.
+ *
+ * Realization r draws from the stream of the seed seed+r, whatever the number
+ * of threads and the batch size. The populations are integers, thus the means
+ * and variances do not depend on the order the realizations are aggregated in,
+ * while the quantiles, which are estimates, do.
+ *
+ *   instate/outstate as Stochsim, k the rate constants
+ *   e = new StochsimEnsemble(sinit, instate, outstate, StochsimEnsemble.massAction(k, instate), tout, 1)
+ *   e.run(1000000)
+ *   e.mean(it, i), e.quantile(it, i, 0.95)
+ */
+public class StochsimEnsemble {
+
+  /**
+   * The propensity of reaction j at the populations s. Called concurrently,
+   * thus it should not modify shared state.
+   */
+  public interface Rates {
+    double rate(int j, double[] s);
+  }
+
+  // the number of realizations simulated and aggregated at a time by a thread
+  public static int batchSize = 64;
+
+  // tau-leaping falls back to exact steps when a leap would hold fewer events
+  public static double minLeapEvents = 10.;
+
+  public final int nn, mm, nt;
+  final double[] sinit, tout;
+  final Rates rates;
+  final NRsparseCol[] outchg, depend;
+  final long seed;
+
+  // the leap of tau-leaping, 0 for the exact direct method
+  double leap;
+
+  long count;
+  final double[] sum, sumsq;
+  final IQagent[] agent;
+
+  private final ThreadLocal<Work> work;
+
+  /**
+   * Constructor. instate[i][j] is nonzero when reaction j depends on species
+   * i, and outstate[i][j] is the change of species i when reaction j occurs,
+   * as Stochsim's; tout are the output times, nondecreasing from 0.
+   */
+  public StochsimEnsemble(final double[] sinit, final double[][] instate, final double[][] outstate,
+      final Rates rates, final double[] tout, final long seed) {
+    int i,j,k;
+    nn = sinit.length;
+    if (nn < 1 || instate.length != nn || outstate.length != nn)
+      throw new IllegalArgumentException("bad sizes in StochsimEnsemble");
+    mm = instate[0].length;
+    for (i=0;i<nn;i++)
+      if (instate[i].length != mm || outstate[i].length != mm) throw new IllegalArgumentException("bad sizes in StochsimEnsemble");
+    nt = tout.length;
+    for (k=0;k<nt;k++)
+      if (tout[k] < (k == 0 ? 0. : tout[k-1])) throw new IllegalArgumentException("bad tout in StochsimEnsemble");
+    this.sinit = sinit.clone();
+    this.tout = tout.clone();
+    this.rates = rates;
+    this.seed = seed;
+    outchg = new NRsparseCol[mm];
+    depend = new NRsparseCol[mm];
+    for (j=0;j<mm;j++) {
+      outchg[j] = new NRsparseCol();
+      depend[j] = new NRsparseCol();
+    }
+    Stochsim.sparmatfill(outchg,outstate);
+    // reaction l depends on reaction j when j changes a species l depends on
+    double[][] dep = new double[mm][mm];
+    for (int l=0;l<mm;l++) for (j=0;j<mm;j++)
+      for (i=0;i<nn;i++)
+        if (instate[i][l] != 0. && outstate[i][j] != 0.) dep[l][j] = 1.;
+    Stochsim.sparmatfill(depend,dep);
+    sum = new double[nt*nn];
+    sumsq = new double[nt*nn];
+    agent = new IQagent[nt*nn];
+    for (k=0;k<nt*nn;k++) agent[k] = new IQagent();
+    work = new ThreadLocal<Work>() {
+      @Override
+      protected Work initialValue() {
+        return new Work();
+      }
+    };
+  }
+
+  /**
+   * Mass-action propensities k[j] times the product over the species of
+   * s(s-1)...(s-n+1), with n = reactants[i][j] the number of molecules of
+   * species i consumed by reaction j; for the 0/1 instate of Stochsim these
+   * are its rates k0*s[0]*s[1], ...
+   */
+  public static Rates massAction(final double[] k, final double[][] reactants) {
+    final int mm = k.length;
+    final NRsparseCol[] r = new NRsparseCol[mm];
+    for (int j=0;j<mm;j++) r[j] = new NRsparseCol();
+    Stochsim.sparmatfill(r,reactants);
+    for (int j=0;j<mm;j++)
+      for (int l=0;l<r[j].nvals;l++)
+        if (r[j].val[l] < 0. || r[j].val[l] != floor(r[j].val[l])) throw new IllegalArgumentException("bad reactants in massAction");
+    final double[] kk = k.clone();
+    return new Rates() {
+      public double rate(final int j, final double[] s) {
+        double a = kk[j];
+        NRsparseCol c = r[j];
+        for (int l=0;l<c.nvals;l++) {
+          double x = s[c.row_ind[l]];
+          for (int n=0;n<c.val[l];n++) a *= x-n;
+        }
+        return a;
+      }
+    };
+  }
+
+  /**
+   * Selects tau-leaping with leaps of at most tau, cut at the output times and
+   * halved when a species would become negative; 0 selects the exact direct
+   * method.
+   */
+  public void setLeap(final double tau) {
+    if (tau < 0.) throw new IllegalArgumentException("bad tau in StochsimEnsemble");
+    leap = tau;
+  }
+
+  /**
+   * Simulates and aggregates nreal further realizations, numbered from count.
+   */
+  public void run(final long nreal) {
+    if (nreal < 0) throw new IllegalArgumentException("bad nreal in StochsimEnsemble");
+    int bs = max(1,batchSize);
+    long nb = (nreal+bs-1)/bs;
+    if (nb == 0) return;
+    long r0 = count;
+    if (nb < 2 || NRPool.getNumThreads() < 2) {
+      for (long b=0;b<nb;b++) batch(r0+b*bs,min(r0+nreal,r0+(b+1)*bs));
+    } else
+      NRPool.run(new RunTask(this,r0,r0+nreal,bs,0,nb));
+  }
+
+  // the number of realizations aggregated
+  public synchronized long count() {
+    return count;
+  }
+
+  // the mean population of species i at tout[it]
+  public synchronized double mean(final int it, final int i) {
+    return sum[index(it,i)]/count;
+  }
+
+  // the variance of the population of species i at tout[it]
+  public synchronized double variance(final int it, final int i) {
+    int k = index(it,i);
+    if (count < 2) return 0.;
+    double m = sum[k]/count;
+    return max(0.,(sumsq[k]-m*sum[k])/(count-1));
+  }
+
+  // the estimated p-quantile of the population of species i at tout[it]
+  public synchronized double quantile(final int it, final int i, final double p) {
+    if (count == 0) throw new IllegalArgumentException("no realizations in StochsimEnsemble");
+    return agent[index(it,i)].report(p);
+  }
+
+  int index(final int it, final int i) {
+    if (it < 0 || it >= nt || i < 0 || i >= nn) throw new IllegalArgumentException("bad index in StochsimEnsemble");
+    return it*nn+i;
+  }
+
+  /**
+   * The states of realization r at the output times, sout[it][i], as
+   * aggregated by run.
+   */
+  public void realization(final long r, final double[][] sout) {
+    Work w = work.get();
+    simulate(w,r,w.out,0);
+    for (int it=0;it<nt;it++)
+      for (int i=0;i<nn;i++) sout[it][i] = w.out[it*nn+i];
+  }
+
+  // the realizations [r0, r1) of a batch, aggregated
+  void batch(final long r0, final long r1) {
+    Work w = work.get();
+    int n = (int) (r1-r0), len = nt*nn;
+    if (w.out.length < n*len) w.out = new double[n*len];
+    for (int b=0;b<n;b++) simulate(w,r0+b,w.out,b*len);
+    synchronized (this) {
+      for (int b=0;b<n;b++) {
+        int o = b*len;
+        for (int k=0;k<len;k++) {
+          double x = w.out[o+k];
+          sum[k] += x;
+          sumsq[k] += x*x;
+          agent[k].add(x);
+        }
+      }
+      count += n;
+    }
+  }
+
+  // the states of realization r at the output times, to out[off + it*nn + i]
+  void simulate(final Work w, final long r, final double[] out, final int off) {
+    int i,j,it=0;
+    double[] s = w.s, a = w.a;
+    Poissondev ran = w.ran;
+    ran.seed(seed+r);
+    System.arraycopy(sinit,0,s,0,nn);
+    double t = 0.;
+    w.asum = 0.;
+    for (j=0;j<mm;j++) {
+      w.pr[j] = j;
+      a[j] = rates.rate(j,s);
+      w.asum += a[j];
+    }
+    while (it < nt) {
+      if (w.asum <= 0.) break;
+      if (leap > 0. && w.asum*leap >= minLeapEvents) {
+        while (it < nt && tout[it] <= t) record(s,out,off,it++);
+        if (it == nt) break;
+        t = leapstep(w,t,tout[it]);
+      } else {
+        double tau = -log(ran.doub())/w.asum;
+        while (it < nt && tout[it] < t+tau) record(s,out,off,it++);
+        if (it == nt) break;
+        fire(w,t);
+        t += tau;
+      }
+    }
+    for (;it<nt;it++) record(s,out,off,it);
+  }
+
+  void record(final double[] s, final double[] out, final int off, final int it) {
+    System.arraycopy(s,0,out,off+it*nn,nn);
+  }
+
+  // one event of the direct method, as Stochsim.step at the time t
+  void fire(final Work w, final double t) {
+    int i,n,m,k=0;
+    double atarg,sum,anew;
+    double[] s = w.s, a = w.a;
+    int[] pr = w.pr;
+    atarg = w.ran.doub()*w.asum;
+    sum = a[pr[0]];
+    while (sum < atarg && k < mm-1) sum += a[pr[++k]];
+    m = pr[k];
+    if (k > 0) {
+      pr[k] = pr[k-1];
+      pr[k-1] = m;
+    }
+    if (k == mm-1) w.asum = sum;
+    n = outchg[m].nvals;
+    for (i=0;i<n;i++) s[outchg[m].row_ind[i]] += outchg[m].val[i];
+    n = depend[m].nvals;
+    for (i=0;i<n;i++) {
+      k = depend[m].row_ind[i];
+      anew = rates.rate(k,s);
+      w.asum += (anew - a[k]);
+      a[k] = anew;
+    }
+    if (t*w.asum < 0.1)
+      for (w.asum=0.,i=0;i<mm;i++) w.asum += a[i];
+  }
+
+  // one leap from t of at most leap, ending at tnext at the latest; returns the new time
+  double leapstep(final Work w, final double t, final double tnext) {
+    int i,j,l;
+    double[] s = w.s, a = w.a, snew = w.snew;
+    int[] kf = w.kf;
+    double h = min(leap,tnext-t);
+    for (;;) {
+      System.arraycopy(s,0,snew,0,nn);
+      for (j=0;j<mm;j++) {
+        kf[j] = a[j] > 0. ? w.ran.dev(a[j]*h) : 0;
+        if (kf[j] > 0)
+          for (l=0;l<outchg[j].nvals;l++) snew[outchg[j].row_ind[l]] += kf[j]*outchg[j].val[l];
+      }
+      boolean neg = false;
+      for (i=0;i<nn;i++) if (snew[i] < 0.) neg = true;
+      if (!neg) break;
+      h *= 0.5;
+    }
+    System.arraycopy(snew,0,s,0,nn);
+    for (j=0;j<mm;j++)
+      if (kf[j] > 0)
+        for (l=0;l<depend[j].nvals;l++) {
+          i = depend[j].row_ind[l];
+          a[i] = rates.rate(i,s);
+        }
+    for (w.asum=0.,j=0;j<mm;j++) w.asum += a[j];
+    return h == tnext-t ? tnext : t+h;
+  }
+
+  // the workspace of a thread
+  class Work {
+    final double[] s = new double[nn], snew = new double[nn], a = new double[mm];
+    final int[] pr = new int[mm], kf = new int[mm];
+    final Poissondev ran = new Poissondev(1.,seed);
+    double[] out = new double[nt*nn];
+    double asum;
+  }
+
+  // the batches [b0, b1) of the realizations [r0, r1), split in halves down to single batches
+  static class RunTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final StochsimEnsemble e;
+    final long r0, r1, b0, b1;
+    final int bs;
+
+    RunTask(StochsimEnsemble e, long r0, long r1, int bs, long b0, long b1) {
+      this.e = e;  this.r0 = r0;  this.r1 = r1;  this.bs = bs;  this.b0 = b0;  this.b1 = b1;
+    }
+
+    @Override
+    protected void compute() {
+      if (b1 - b0 == 1) {
+        long s = r0+b0*bs;
+        e.batch(s,min(r1,s+bs));
+        return;
+      }
+      long mid = (b0 + b1) >>> 1;
+      invokeAll(new RunTask(e,r0,r1,bs,b0,mid), new RunTask(e,r0,r1,bs,mid,b1));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.nr.ode;
+
+/**
+ * Output for Odeint that streams the saved points to an OutputSink instead of
+ * storing them in xsave and ysave, thus long integrations with dense output do
+ * not grow with the number of points. The dense values are evaluated into a
+ * buffer allocated by init, and the steady state allocates nothing per step.
+ *
+ *   sink = new MappedFileSink(new File("lorenz.bin"))
+ *   out = new StreamOutput(1000000, sink)       // dense output at 10^6 points
+ *   ode = new Odeint(ystart,x1,x2,atol,rtol,h1,hmin,out,d,new StepperDopr5())
+ *   ode.integrate()
+ *   r = new MappedFileReader(new File("lorenz.bin"))
+ *
+ * count is the number of points streamed; xsave and ysave are null.
+ */
+public class StreamOutput extends Output {
+  public final OutputSink sink;
+  double[] ybuf;
+  double xlast;
+
+  /**
+   * Constructor streams the points of the actual integration steps.
+   */
+  public StreamOutput(final OutputSink sink) {
+    this(0,sink);
+  }
+
+  /**
+   * Constructor streams dense output at nsave equally spaced intervals. If
+   * nsave <= 0, the points of the actual integration steps are streamed.
+   */
+  public StreamOutput(final int nsavee, final OutputSink sink) {
+    if (sink == null) throw new IllegalArgumentException("null sink in StreamOutput");
+    this.sink=sink;
+    kmax=Integer.MAX_VALUE;   // no limit
+    nsave=nsavee;
+    count=0;
+    dense = nsave > 0;
+  }
+
+  @Override
+  public void init(final int neqn, final double xlo, final double xhi) {
+    nvar=neqn;
+    if (ybuf == null || ybuf.length != nvar) ybuf = new double[nvar];
+    count=0;
+    if (dense) {
+      x1=xlo;
+      x2=xhi;
+      xout=x1;
+      dxout=(x2-x1)/nsave;
+    }
+    sink.begin(nvar);
+  }
+
+  @Override
+  public void resize() {
+  }
+
+  @Override
+  public void save_dense(final StepperBase s, final double xout, final double h) {
+    for (int i=0;i<nvar;i++)
+      ybuf[i]=s.dense_out(i,xout,h);
+    sink.put(xout,ybuf);
+    xlast=xout;
+    count++;
+  }
+
+  @Override
+  public void save(final double x, final double[] y) {
+    sink.put(x,y);
+    xlast=x;
+    count++;
+  }
+
+  @Override
+  public double lastx() {
+    return xlast;
+  }
+
+  @Override
+  public void end() {
+    sink.end();
+  }
+}
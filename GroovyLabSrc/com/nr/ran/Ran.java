@@ -28,6 +28,20 @@ public class Ran{
     v = u; int64();
     w = v; int64();
   }
+
+  /**
+   * Restart the generator with the sequence of the seed j, as a new Ran(j),
+   * e.g. for one stream per realization with a generator kept per thread.
+   * 
+   * @param j
+   */
+  public void seed(final long j) {
+    v = 4101842887655102017L;
+    w = 1;
+    u = j ^ v; int64();
+    v = u; int64();
+    w = v; int64();
+  }
   
   /**
    * Return 64-bit random integer. See text for explanation of method.
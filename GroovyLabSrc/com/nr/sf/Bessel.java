@@ -403,4 +403,24 @@ public class Bessel {
     if (n != sphno || x != xsph) sphbes(n,x);
     return sphyo;
   }
+
+  // jnu, ynu, inu and knu over arrays, evaluated in parallel by Sfbatch with an instance per thread
+  public static double[] jnu(final double nu, final double[] x) {return Sfbatch.map(fun(0,nu),x);}
+  public static double[] ynu(final double nu, final double[] x) {return Sfbatch.map(fun(1,nu),x);}
+  public static double[] inu(final double nu, final double[] x) {return Sfbatch.map(fun(2,nu),x);}
+  public static double[] knu(final double nu, final double[] x) {return Sfbatch.map(fun(3,nu),x);}
+  private static Sfbatch.Fun fun(final int op, final double nu) {
+    return new Sfbatch.Fun() {
+      final Bessel s = new Bessel();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.jnu(nu,x);
+        case 1: return s.ynu(nu,x);
+        case 2: return s.inu(nu,x);
+        default: return s.knu(nu,x);
+        }
+      }
+      public Sfbatch.Fun fork() {return fun(op, nu);}
+    };
+  }
 }
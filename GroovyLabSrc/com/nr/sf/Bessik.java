@@ -164,4 +164,28 @@ public class Bessik {
       return (x < 0.0 && (n & 1)!=0) ? -ans : ans;
     }
   }
+
+  // the functions over arrays, evaluated in parallel by Sfbatch with an instance per thread
+  public static double[] i0(final double[] x) {return Sfbatch.map(fun(0,0),x);}
+  public static double[] i1(final double[] x) {return Sfbatch.map(fun(1,0),x);}
+  public static double[] k0(final double[] x) {return Sfbatch.map(fun(2,0),x);}
+  public static double[] k1(final double[] x) {return Sfbatch.map(fun(3,0),x);}
+  public static double[] in(final int n, final double[] x) {return Sfbatch.map(fun(4,n),x);}
+  public static double[] kn(final int n, final double[] x) {return Sfbatch.map(fun(5,n),x);}
+  private static Sfbatch.Fun fun(final int op, final int n) {
+    return new Sfbatch.Fun() {
+      final Bessik s = new Bessik();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.i0(x);
+        case 1: return s.i1(x);
+        case 2: return s.k0(x);
+        case 3: return s.k1(x);
+        case 4: return s.in(n,x);
+        default: return s.kn(n,x);
+        }
+      }
+      public Sfbatch.Fun fork() {return fun(op, n);}
+    };
+  }
 }
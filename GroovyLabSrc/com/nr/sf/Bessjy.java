@@ -212,4 +212,28 @@ public class Bessjy {
     }
     return by;
   }
+
+  // the functions over arrays, evaluated in parallel by Sfbatch with an instance per thread
+  public static double[] j0(final double[] x) {return Sfbatch.map(fun(0,0),x);}
+  public static double[] j1(final double[] x) {return Sfbatch.map(fun(1,0),x);}
+  public static double[] y0(final double[] x) {return Sfbatch.map(fun(2,0),x);}
+  public static double[] y1(final double[] x) {return Sfbatch.map(fun(3,0),x);}
+  public static double[] jn(final int n, final double[] x) {return Sfbatch.map(fun(4,n),x);}
+  public static double[] yn(final int n, final double[] x) {return Sfbatch.map(fun(5,n),x);}
+  private static Sfbatch.Fun fun(final int op, final int n) {
+    return new Sfbatch.Fun() {
+      final Bessjy s = new Bessjy();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.j0(x);
+        case 1: return s.j1(x);
+        case 2: return s.y0(x);
+        case 3: return s.y1(x);
+        case 4: return s.jn(n,x);
+        default: return s.yn(n,x);
+        }
+      }
+      public Sfbatch.Fun fork() {return fun(op, n);}
+    };
+  }
 }
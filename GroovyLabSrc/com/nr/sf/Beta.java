@@ -132,4 +132,17 @@ public class Beta implements Gauleg18{
     return exp(gammln(z)+gammln(w)-gammln(z+w));
   }
 
+  // betai and invbetai over arrays, evaluated in parallel by Sfbatch
+  public static double[] betai(final double a, final double b, final double[] x) {return Sfbatch.map(fun(0,a,b),x);}
+  public static double[] invbetai(final double[] p, final double a, final double b) {return Sfbatch.map(fun(1,a,b),p);}
+  private static Sfbatch.Fun fun(final int op, final double a, final double b) {
+    return new Sfbatch.Fun() {
+      public double f(final double x) {
+        switch (op) {
+        case 0: return betai(a,b,x);
+        default: return invbetai(x,a,b);
+        }
+      }
+    };
+  }
 }
@@ -3,7 +3,7 @@ package com.nr.sf;
 import static java.lang.Math.*;
 import static com.nr.sf.Gamma.*;
 
-public class Betadist extends Beta{
+public class Betadist extends Beta implements Sfbatch.Dist{
   double alph, bet, fac;
   
   public Betadist(double aalph, double bbet) {
@@ -27,4 +27,9 @@ public class Betadist extends Beta{
     if (p < 0. || p > 1.) throw new IllegalArgumentException("bad p in Betadist");
     return invbetai(p,alph,bet);
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
@@ -58,4 +58,18 @@ public class Binomialdist extends Beta {
     }
     return kl;
   }
+
+  // p, cdf and invcdf over arrays, evaluated in parallel by Sfbatch; the counts k are whole numbers
+  public double[] p(final double[] k) {return Sfbatch.map(fun(0),k);}
+  public double[] cdf(final double[] k) {return Sfbatch.map(fun(1),k);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(fun(2),p);}
+  private Sfbatch.Fun fun(final int op) {
+    return new Sfbatch.Fun() {
+      public double f(final double x) {
+        if (op == 2) return invcdf(x);
+        if (x != floor(x) || abs(x) > Integer.MAX_VALUE) throw new IllegalArgumentException("bad k in Binomialdist");
+        return op == 0 ? p((int) x) : cdf((int) x);
+      }
+    };
+  }
 }
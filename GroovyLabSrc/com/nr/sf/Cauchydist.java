@@ -12,7 +12,7 @@ import static com.nr.NRUtil.*;
  * @author hwh
  *
  */
-public class Cauchydist {
+public class Cauchydist implements Sfbatch.Dist {
   double mu, sig;
   
   public Cauchydist(){
@@ -40,4 +40,9 @@ public class Cauchydist {
     if (p <= 0. || p >= 1.) throw new IllegalArgumentException("bad p in Cauchydist");
     return mu + sig*tan(3.14159265358979324*(p-0.5));
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
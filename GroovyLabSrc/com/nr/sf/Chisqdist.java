@@ -5,7 +5,7 @@ import static java.lang.Math.*;
 
 
 // χ^2 distribution, derived from the gamma function Gamma
-public class Chisqdist extends Gamma {
+public class Chisqdist extends Gamma implements Sfbatch.Dist {
   double nu,fac;
   
   public Chisqdist(double nnu) {
@@ -31,4 +31,9 @@ public class Chisqdist extends Gamma {
     if (p < 0. || p >= 1.) throw new IllegalArgumentException("bad p in Chisqdist");
     return 2.*invgammp(p,0.5*nu);
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
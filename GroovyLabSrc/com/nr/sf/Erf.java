@@ -73,4 +73,22 @@ public class Erf {
     return (x >= 0.0 ? ans : 2.0-ans);
   }
 
+  // erf, erfc, inverf and inverfc over arrays, evaluated in parallel by Sfbatch
+  public static double[] erf(final double[] x) {return Sfbatch.map(fun(0),x);}
+  public static double[] erfc(final double[] x) {return Sfbatch.map(fun(1),x);}
+  public static double[] inverf(final double[] p) {return Sfbatch.map(fun(2),p);}
+  public static double[] inverfc(final double[] p) {return Sfbatch.map(fun(3),p);}
+  private static Sfbatch.Fun fun(final int op) {
+    return new Sfbatch.Fun() {
+      final Erf s = new Erf();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.erf(x);
+        case 1: return s.erfc(x);
+        case 2: return s.inverf(x);
+        default: return s.inverfc(x);
+        }
+      }
+    };
+  }
 }
@@ -2,7 +2,7 @@ package com.nr.sf;
 import static java.lang.Math.*;
 
 // Exponential distribution
-public class Expondist {
+public class Expondist implements Sfbatch.Dist {
   double bet;
   
  // initialize with β
@@ -28,4 +28,9 @@ public class Expondist {
     if (p < 0. || p >= 1.) throw new IllegalArgumentException("bad p in Expondist");
     return -log(1.-p)/bet;
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
@@ -4,7 +4,7 @@ import static java.lang.Math.*;
 import static com.nr.sf.Gamma.*;
 
 // F distribution, derived from the beta function Beta
-public class Fdist extends Beta{
+public class Fdist extends Beta implements Sfbatch.Dist{
   double nu1,nu2;
   double fac;
   
@@ -34,4 +34,9 @@ public class Fdist extends Beta{
     double x = invbetai(p,0.5*nu1,0.5*nu2);
     return nu2*x/(nu1*(1.-x));
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
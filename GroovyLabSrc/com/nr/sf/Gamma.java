@@ -8,7 +8,6 @@ public class Gamma implements Gauleg18{
   private static final int ASWITCH=100;
   private static final double EPS = DBL_EPSILON;;
   private static final double FPMIN = Double.MIN_NORMAL/EPS;
-  private double gln;
 
   public double gammp(final double a, final double x) {
     if (x < 0.0 || a <= 0.0) throw new IllegalArgumentException("bad args in gammp");
@@ -27,7 +26,7 @@ public class Gamma implements Gauleg18{
   }
 
   public double gser(final double a, final double x) {
-    double sum,del,ap;
+    double sum,del,ap,gln;
     gln=gammln(a);
     ap=a;
     del=sum=1.0/a;
@@ -43,7 +42,7 @@ public class Gamma implements Gauleg18{
 
   public double gcf(final double a, final double x) {
     int i;
-    double an,b,c,d,del,h;
+    double an,b,c,d,del,h,gln;
     gln=gammln(a);
     b=x+1.0-a;
     c=1.0/FPMIN;
@@ -66,7 +65,7 @@ public class Gamma implements Gauleg18{
 
   public double gammpapprox(final double a, final double x, final int psig) {
     int j;
-    double xu,t,sum,ans;
+    double xu,t,sum,ans,gln;
     double a1 = a-1.0, lna1 = log(a1), sqrta1 = sqrt(a1);
     gln = gammln(a);
     if (x > a1) xu = max(a1 + 11.5*sqrta1, x + 6.0*sqrta1);
@@ -83,7 +82,7 @@ public class Gamma implements Gauleg18{
   
   public double invgammp(final double p, final double a) {
     int j;
-    double x,err,t,u,pp,lna1=0,afac=0,a1=a-1;
+    double x,err,t,u,pp,gln,lna1=0,afac=0,a1=a-1;
     final double EPS=1.e-8;
     gln=gammln(a);
     if (a <= 0.) throw new IllegalArgumentException("a must be pos in invgammap");
@@ -166,4 +165,21 @@ public class Gamma implements Gauleg18{
   //  the floor function cleans up roundoff error for smaller values of n and k
     return floor(0.5+exp(factln(n)-factln(k)-factln(n-k)));
   }
+
+  // gammp, gammq and invgammp over arrays, evaluated in parallel by Sfbatch
+  public static double[] gammp(final double a, final double[] x) {return Sfbatch.map(fun(0,a),x);}
+  public static double[] gammq(final double a, final double[] x) {return Sfbatch.map(fun(1,a),x);}
+  public static double[] invgammp(final double[] p, final double a) {return Sfbatch.map(fun(2,a),p);}
+  private static Sfbatch.Fun fun(final int op, final double a) {
+    return new Sfbatch.Fun() {
+      final Gamma s = new Gamma();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.gammp(a,x);
+        case 1: return s.gammq(a,x);
+        default: return s.invgammp(x,a);
+        }
+      }
+    };
+  }
 }
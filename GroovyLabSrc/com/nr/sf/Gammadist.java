@@ -2,7 +2,7 @@ package com.nr.sf;
 import static java.lang.Math.*;
 
 // Gamma distribution, derived from the gamma function Gamma
-public class Gammadist extends Gamma{
+public class Gammadist extends Gamma implements Sfbatch.Dist{
   double alph, bet, fac;
   
   public Gammadist(double aalph) {
@@ -33,4 +33,9 @@ public class Gammadist extends Gamma{
     if (p < 0. || p >= 1.) throw new IllegalArgumentException("bad p in Gammadist");
     return invgammp(p,alph)/bet;
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
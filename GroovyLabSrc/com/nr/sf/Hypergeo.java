@@ -80,5 +80,21 @@ public class Hypergeo {
     Hypergeo h = new Hypergeo();
     return h.hypgeo0(a,b,c,z);
   }
+
+  // hypgeo over an array of z, evaluated in parallel by Sfbatch; each evaluation integrates the
+  // hypergeometric equation with its own Hypergeo and Odeint
+  public static Complex[] hypgeo(final Complex a, final Complex b,final Complex c,
+      final Complex[] z){
+    final Complex[] w = new Complex[z.length];
+    Sfbatch.forRange(z.length,(long) z.length*EVALWORK,new Sfbatch.Range() {
+      public void run(final int i0, final int i1) {
+        for (int i=i0;i<i1;i++) w[i] = hypgeo(a,b,c,z[i]);
+      }
+    });
+    return w;
+  }
+
+  // the work of an evaluation, in the units of Sfbatch.minParallelWork
+  private static final int EVALWORK = 1000;
   
 }
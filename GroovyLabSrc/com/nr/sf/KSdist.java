@@ -63,4 +63,23 @@ public class KSdist {
   }
   
   public double invpks(final double p) {return invqks(1.-p);}
+
+  // pks, qks, invqks and invpks over arrays, evaluated in parallel by Sfbatch
+  public static double[] pks(final double[] z) {return Sfbatch.map(fun(0),z);}
+  public static double[] qks(final double[] z) {return Sfbatch.map(fun(1),z);}
+  public static double[] invqks(final double[] q) {return Sfbatch.map(fun(2),q);}
+  public static double[] invpks(final double[] p) {return Sfbatch.map(fun(3),p);}
+  private static Sfbatch.Fun fun(final int op) {
+    return new Sfbatch.Fun() {
+      final KSdist s = new KSdist();
+      public double f(final double x) {
+        switch (op) {
+        case 0: return s.pks(x);
+        case 1: return s.qks(x);
+        case 2: return s.invqks(x);
+        default: return s.invpks(x);
+        }
+      }
+    };
+  }
 }
@@ -3,7 +3,7 @@ import static java.lang.Math.*;
 import static com.nr.NRUtil.*;
 
 // Logistic distribution
-public class Logisticdist {
+public class Logisticdist implements Sfbatch.Dist {
   double mu, sig;
   // Logistic(0, 1)
   public Logisticdist(){
@@ -35,4 +35,9 @@ public class Logisticdist {
     if (p <= 0. || p >= 1.) throw new IllegalArgumentException("bad p in Logisticdist");
     return mu + 0.551328895421792049*sig*log(p/(1.-p));
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
@@ -3,7 +3,7 @@ package com.nr.sf;
 import static java.lang.Math.*;
 import static com.nr.NRUtil.*;
 
-public class Lognormaldist extends Erf{
+public class Lognormaldist extends Erf implements Sfbatch.Dist{
   double mu, sig;
   
   public Lognormaldist(){
@@ -32,4 +32,9 @@ public class Lognormaldist extends Erf{
     if (p <= 0. || p >= 1.) throw new IllegalArgumentException("bad p in Lognormaldist");
     return exp(-1.41421356237309505*sig*inverfc(2.*p)+mu);
   }
+
+  // the same over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
@@ -4,7 +4,7 @@ import static com.nr.NRUtil.*;
 import static java.lang.Math.*;
 
 // Normal distribution, derived from the error function Erf
-public class Normaldist extends Erf{
+public class Normaldist extends Erf implements Sfbatch.Dist{
   double mu, sig;
   
   public Normaldist(){
@@ -32,4 +32,9 @@ public class Normaldist extends Erf{
     if (p <= 0. || p >= 1.) throw new IllegalArgumentException("bad p in Normaldist");
     return -1.41421356237309505*sig*inverfc(2.*p)+mu;
   }
+
+  // the density, distribution and inverse over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
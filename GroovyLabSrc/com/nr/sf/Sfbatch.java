@@ -0,0 +1,109 @@
+package com.nr.sf;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.NRPool;
+
+// Batch evaluation of the special functions and distributions over arrays, split across the threads of
+// the NRPool pool.  Bessjy, Bessik and Bessel keep intermediate results in instance fields, thus an
+// instance must not be shared by threads:  a Fun gives each thread its own instance with fork().  The array
+// entry points of the classes, e.g. Bessjy.j0(double[]), Gamma.gammp(a,double[]) or Normaldist.cdf(double[]),
+// are built on map() and are safe to call from any thread.  The Matrix and Vec versions are kept at
+// groovySci.math.array.SpecialFunctions, thus the package does not depend on the groovySci matrices.
+//
+//   y = new Gammadist(2.,0.5).cdf(x)           // x double[]
+//   y = Bessjy.jn(3,x)
+//   y = Sfbatch.map(new Sfbatch.Fun() { public double f(double x) { return ... } }, x)
+public class Sfbatch {
+
+  // the number of evaluations of a call below which the calling thread does the work
+  public static int minParallelWork = 1 << 12;
+
+  // A function of one variable evaluated over arrays.  fork() returns the instance used by one thread,
+  // this when f() keeps no state, else a new instance
+  public static abstract class Fun {
+    public abstract double f(final double x);
+    public Fun fork() { return this; }
+  }
+
+  // The evaluations [i0, i1) of a batch not of the form y[i] = f(x[i]).  run() is called concurrently
+  // for disjoint ranges, thus it should keep its state in local variables
+  public static abstract class Range {
+    public abstract void run(final int i0, final int i1);
+  }
+
+  // The continuous distributions, with their density, distribution and inverse distribution functions
+  public interface Dist {
+    double p(final double x);
+    double cdf(final double x);
+    double invcdf(final double p);
+  }
+
+  public static final int P=0, CDF=1, INVCDF=2;
+
+  // the function op (P, CDF or INVCDF) of the distribution d, which keeps no state
+  public static Fun fun(final Dist d, final int op) {
+    if (op < P || op > INVCDF) throw new IllegalArgumentException("bad op in Sfbatch");
+    return new Fun() {
+      public double f(final double x) {
+        return op == P ? d.p(x) : op == CDF ? d.cdf(x) : d.invcdf(x);
+      }
+    };
+  }
+
+  // y[i] = f(x[i])
+  public static double[] map(final Fun f, final double[] x) {
+    double[] y = new double[x.length];
+    map(f,x,0,y,0,x.length);
+    return y;
+  }
+
+  // y[yoff+i] = f(x[xoff+i]) for i < n; y may be x
+  public static void map(final Fun f, final double[] x, final int xoff, final double[] y, final int yoff, final int n) {
+    if (n < 0 || xoff < 0 || yoff < 0 || xoff+n > x.length || yoff+n > y.length)
+      throw new IllegalArgumentException("bad range in Sfbatch");
+    forRange(n,n,new Range() {
+      public void run(final int i0, final int i1) {
+        Fun g = f.fork();
+        for (int i=i0;i<i1;i++) y[yoff+i] = g.f(x[xoff+i]);
+      }
+    });
+  }
+
+  // runs r over [0, n), in parallel when the work, the number of evaluations, is at least minParallelWork;
+  // an exception of r is thrown to the caller
+  public static void forRange(final int n, final long work, final Range r) {
+    if (n < 2 || work < minParallelWork || NRPool.getNumThreads() < 2) {
+      r.run(0,n);
+      return;
+    }
+    RangeTask t = new RangeTask(r,0,n);
+    t.grain = Math.max(1,n/(4*NRPool.getNumThreads()));
+    NRPool.run(t);
+  }
+
+  // the range [i0, i1), split in halves down to the grain
+  static class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Range r;
+    final int i0, i1;
+    int grain = 1;
+
+    RangeTask(Range r, int i0, int i1) {
+      this.r = r;  this.i0 = i0;  this.i1 = i1;
+    }
+
+    @Override
+    protected void compute() {
+      if (i1 - i0 <= grain) {
+        r.run(i0,i1);
+        return;
+      }
+      int mid = (i0 + i1) >>> 1;
+      RangeTask left = new RangeTask(r,i0,mid), right = new RangeTask(r,mid,i1);
+      left.grain = right.grain = grain;
+      invokeAll(left,right);
+    }
+  }
+}
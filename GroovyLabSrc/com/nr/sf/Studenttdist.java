@@ -5,7 +5,7 @@ import static com.nr.sf.Gamma.*;
 import static com.nr.NRUtil.*;
 
 // Student-t distribution derived from the beta function Beta
-public class Studenttdist extends Beta {
+public class Studenttdist extends Beta implements Sfbatch.Dist {
   double nu, mu, sig, np, fac;
   
   // Initialize as Student(ν, 0, 1)
@@ -57,4 +57,9 @@ public class Studenttdist extends Beta {
     double x = invbetai(1.-p, 0.5*nu, 0.5);
     return sqrt(nu*(1.-x)/x);
   }
+
+  // p, cdf and invcdf over arrays, evaluated in parallel by Sfbatch
+  public double[] p(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.P),x);}
+  public double[] cdf(final double[] x) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.CDF),x);}
+  public double[] invcdf(final double[] p) {return Sfbatch.map(Sfbatch.fun(this,Sfbatch.INVCDF),p);}
 }
@@ -0,0 +1,133 @@
+package com.nr.sp;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.NRPool;
+import com.nr.fft.FFT;
+
+// Multitaper power spectral estimation with the Slepian tapers of Slepian.tapers(), which are cached, thus
+// estimators of the same M, j_{res} and k_T share the table computed once.  The k_T tapered transforms of a
+// segment are computed in parallel on the NRPool pool.  The eigenspectra are combined either by their
+// average, as Slepian, or with Thomson's adaptive weights, iterated for each frequency over the eigenspectra
+// of the segment, which reduce the broadband leakage of the higher order tapers.
+//
+//   mt = new Multitaper(1024, 4, 7, true)      // 2M = 2048, NW = 4, 7 tapers, adaptive
+//   mt.adddataseg(seg)                         // segments of 2M samples
+//   psd = mt.spectrum()
+public class Multitaper extends Spectreg {
+
+  // the number of samples transformed per segment, over all tapers, below which the tapers are serial
+  public static int minParallelWork = 1 << 15;
+
+  // the iterations of the adaptive weights, and their relative tolerance
+  public static int maxit = 100;
+  public static double tol = 1.e-10;
+
+  final int jres, kt;
+  final boolean adaptive;
+  final double[][] dpss;
+  final double[] lambda;
+  final double[][] eig;   // the eigenspectra of the current segment, eig[k][0..M]
+  final double[][] wksp;
+
+  // Constructor sets M, j_{res} and k_T as Slepian; adaptive selects Thomson's weights instead of the average
+  public Multitaper(final int em, final int jjres, final int kkt, final boolean adaptive) {
+    super(em);
+    if (jjres < 1 || kkt < 1 || kkt >= 2*jjres) throw new IllegalArgumentException("kt too big or jres too small");
+    jres = jjres;
+    kt = kkt;
+    this.adaptive = adaptive;
+    dpss = Slepian.tapers(em,jjres,kkt);
+    lambda = Slepian.concentrations(em,jjres,kkt);
+    eig = new double[kt][m+1];
+    wksp = new double[kt][m2];
+  }
+
+  // the concentrations of the tapers
+  public double[] concentrations() {
+    return lambda.clone();
+  }
+
+  // process a data segment of length 2M
+  public void adddataseg(final double[] data) {
+    if (data.length != m2) throw new IllegalArgumentException("wrong size data segment");
+    adddataseg(data,0);
+  }
+
+  // process the data segment data[off..off+2M)
+  public void adddataseg(final double[] data, final int off) {
+    if (off < 0 || off+m2 > data.length) throw new IllegalArgumentException("data segment out of range");
+    if ((long) kt*m2 < minParallelWork || kt < 2 || NRPool.getNumThreads() < 2)
+      eigenspectra(data,off,0,kt);
+    else
+      NRPool.run(new TaperTask(this,data,off,0,kt));
+    if (adaptive) adaptivesum();
+    else {
+      for (int k=0;k<kt;k++)
+        for (int i=0;i<=m;i++) specsum[i] += eig[k][i]/kt;
+    }
+    nsum++;
+  }
+
+  // the eigenspectra of the tapers [k0, k1), normalized as Spectreg with the unit energy of the tapers
+  void eigenspectra(final double[] data, final int off, final int k0, final int k1) {
+    double fac = 2./m2;
+    for (int k=k0;k<k1;k++) {
+      double[] w = dpss[k], x = wksp[k], s = eig[k];
+      for (int i=0;i<m2;i++) x[i] = w[i]*data[off+i];
+      FFT.realft(x,1);
+      s[0] = 0.5*fac*x[0]*x[0];
+      for (int i=1;i<m;i++) s[i] = fac*(x[2*i]*x[2*i]+x[2*i+1]*x[2*i+1]);
+      s[m] = 0.5*fac*x[1]*x[1];
+    }
+  }
+
+  // Thomson's adaptive weights d_k = sqrt(lambda_k) S/(lambda_k S + (1-lambda_k) sigma2), with S the weighted
+  // average of the eigenspectra, sum d_k^2 S_k/sum d_k^2, iterated from the average of the first two, and
+  // sigma2 the white spectral level of the segment variance
+  void adaptivesum() {
+    double var = 0.;
+    for (int k=0;k<kt;k++)
+      for (int i=0;i<=m;i++) var += eig[k][i];
+    double sigma2 = var/(kt*(double) m);
+    for (int i=0;i<=m;i++) {
+      double s = kt > 1 ? 0.5*(eig[0][i]+eig[1][i]) : eig[0][i];
+      for (int it=0;it<maxit;it++) {
+        double num = 0., den = 0.;
+        for (int k=0;k<kt;k++) {
+          double dk = Math.sqrt(lambda[k])*s/(lambda[k]*s+(1.-lambda[k])*sigma2);
+          num += dk*dk*eig[k][i];
+          den += dk*dk;
+        }
+        double snew = den > 0. ? num/den : 0.;
+        boolean done = Math.abs(snew-s) <= tol*snew;
+        s = snew;
+        if (done) break;
+      }
+      specsum[i] += s;
+    }
+  }
+
+  // the tapers [k0, k1), split in halves down to single tapers
+  static class TaperTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Multitaper mt;
+    final double[] data;
+    final int off, k0, k1;
+
+    TaperTask(Multitaper mt, double[] data, int off, int k0, int k1) {
+      this.mt = mt;  this.data = data;  this.off = off;  this.k0 = k0;  this.k1 = k1;
+    }
+
+    @Override
+    protected void compute() {
+      if (k1 - k0 == 1) {
+        mt.eigenspectra(data,off,k0,k1);
+        return;
+      }
+      int mid = (k0 + k1) >>> 1;
+      invokeAll(new TaperTask(mt,data,off,k0,mid), new TaperTask(mt,data,off,mid,k1));
+    }
+  }
+}
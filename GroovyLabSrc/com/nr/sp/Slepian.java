@@ -3,6 +3,12 @@ package com.nr.sp;
 import static java.lang.Math.*;
 import static com.nr.NRUtil.*;
 
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.nr.fft.FFT;
+
 // Power spectral estimation using the multitaper method with Slepian tapers
 public class Slepian extends Spectreg {
   
@@ -10,15 +16,137 @@ public class Slepian extends Spectreg {
   double[][] dpss;  // table of Slepians
   double p,pp,d,dd;
   
-  // Constructor sets M (same meaning as previously), j_{res}, and k_T, see text
+  // the number of taper tables kept in memory, and the directory where they are also saved, if not null
+  public static int cacheSize = 16;
+  public static File cacheDir = null;
+
+  // tables of tapers by 2M/jres/kT, least recently used first; the last row holds the concentrations
+  private static final LinkedHashMap<String,double[][]> cache = new LinkedHashMap<String,double[][]>(16,0.75f,true) {
+    protected boolean removeEldestEntry(Map.Entry<String,double[][]> eldest) {
+      return size() > cacheSize;
+    }
+  };
+  
+  // Constructor sets M (same meaning as previously), j_{res}, and k_T, see text.  The table of Slepians is
+  // shared with the other instances of the same M, j_{res} and k_T
   public Slepian(final int em, final int jjres, final int kkt) {
+    this(em,jjres,kkt,true);
+  }
+
+  private Slepian(final int em, final int jjres, final int kkt, final boolean cached) {
     super(em);
     jres= jjres;
     kt = kkt;
-    dpss =new double[kkt][2*em];
     
     if (jres < 1 || kt >= 2*jres) throw new IllegalArgumentException("kt too big or jres too small");
-    filltable();
+    if (cached) dpss = tapers(em,jjres,kkt);
+    else filltable();
+  }
+
+  // The Slepian tapers of length 2M, dpss[k][0..2M-1] for k < kT, from the cache, else from the cache
+  // directory, else computed and cached.  The rows are shared and should not be modified
+  public static double[][] tapers(final int em, final int jjres, final int kkt) {
+    double[][] t = table(em,jjres,kkt);
+    double[][] dp = new double[kkt][];
+    for (int k=0;k<kkt;k++) dp[k] = t[k];
+    return dp;
+  }
+
+  // The concentrations of the Slepian tapers, the fractions lambda_k of their energy within the band
+  // |f| < j_{res}/(2M) of the resolution, close to 1 for k < 2 j_{res} - 1
+  public static double[] concentrations(final int em, final int jjres, final int kkt) {
+    return table(em,jjres,kkt)[kkt].clone();
+  }
+
+  // Empty the taper cache in memory
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  private static double[][] table(final int em, final int jjres, final int kkt) {
+    String key = 2*em+"/"+jjres+"/"+kkt;
+    double[][] t;
+    synchronized (cache) {
+      t = cache.get(key);
+    }
+    if (t != null) return t;
+    File dir = cacheDir;
+    File f = dir == null ? null : new File(dir,"dpss_"+2*em+"_"+jjres+"_"+kkt+".bin");
+    if (f != null && f.isFile()) t = load(f,2*em,jjres,kkt);
+    if (t == null) {
+      Slepian s = new Slepian(em,jjres,kkt,false);
+      t = new double[kkt+1][];
+      for (int k=0;k<kkt;k++) t[k] = s.dpss[k];
+      t[kkt] = new double[kkt];
+      for (int k=0;k<kkt;k++) t[kkt][k] = concentration(t[k],jjres);
+      if (f != null) save(f,t,2*em,jjres,kkt);
+    }
+    synchronized (cache) {
+      cache.put(key,t);
+    }
+    return t;
+  }
+
+  // lambda = sum over lags of the autocorrelation r of the taper times sin(2 pi W tau)/(pi tau),
+  // W = j_{res}/(2M), with r from the DFT of the zero-padded taper
+  static double concentration(final double[] v, final int jjres) {
+    int n = v.length, nf = 1;
+    while (nf < 2*n) nf <<= 1;
+    double[] x = new double[nf];
+    System.arraycopy(v,0,x,0,n);
+    FFT.realft(x,1);
+    x[0] = SQR(x[0]);
+    x[1] = SQR(x[1]);
+    for (int i=1;i<nf/2;i++) {
+      x[2*i] = SQR(x[2*i])+SQR(x[2*i+1]);
+      x[2*i+1] = 0.;
+    }
+    FFT.realft(x,-1);
+    for (int t=0;t<n;t++) x[t] *= 2./nf;
+    double w = (double) jjres/n, lam = 2.*w*x[0];
+    for (int t=1;t<n;t++) lam += 2.*x[t]*sin(2.*PI*w*t)/(PI*t);
+    return lam;
+  }
+
+  private static final int MAGIC = 0x44505353;   // "DPSS"
+
+  private static double[][] load(final File f, final int n, final int jjres, final int kkt) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != n || in.readInt() != jjres || in.readInt() != kkt) return null;
+        double[][] t = new double[kkt+1][];
+        for (int k=0;k<=kkt;k++) {
+          t[k] = new double[k < kkt ? n : kkt];
+          for (int i=0;i<t[k].length;i++) t[k][i] = in.readDouble();
+        }
+        return t;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return null;   // recomputed
+    }
+  }
+
+  // written to a temporary file renamed when complete, thus concurrent readers see whole tables only
+  private static void save(final File f, final double[][] t, final int n, final int jjres, final int kkt) {
+    File tmp = new File(f.getPath()+"."+Thread.currentThread().getId()+".tmp");
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC); out.writeInt(n); out.writeInt(jjres); out.writeInt(kkt);
+        for (double[] row : t)
+          for (double v : row) out.writeDouble(v);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(f)) tmp.delete();
+    } catch (IOException e) {
+      tmp.delete();   // the table stays cached in memory only
+    }
   }
   
   public void renorm(final int n) {
@@ -34,9 +162,10 @@ public class Slepian extends Spectreg {
     }
   }
   
-  // calculate Slepian functions and store in table
+  // calculate Slepian functions and store in a new table
   public void filltable() {
     final double EPS = 1.e-10, PI = 4.*atan(1.);
+    dpss = new double[kt][m2];
     double xx,xnew=0,xold,sw,ppp,ddd,sum,bet,ssub,ssup;
     int i,j,k,nl;
     double[] dg = new double[m2],dgg=new double[m2],gam=new double[m2],sup=new double[m2-1],sub=new double[m2-1];
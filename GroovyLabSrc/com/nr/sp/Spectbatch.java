@@ -0,0 +1,197 @@
+package com.nr.sp;
+
+import java.util.concurrent.RecursiveAction;
+
+import com.nr.NRPool;
+import com.nr.fft.FFT;
+
+// Batched power spectrum and spectrogram estimation over overlapping data segments of length 2M.
+// As Spectreg/Spectolap, the estimates are accumulated over the segments, but the window function is
+// tabulated once, and the segments of each call are processed in parallel on the NRPool pool. The input
+// is a stream of blocks of any length: segments that straddle the blocks are completed with the samples
+// kept from the previous block.
+//
+//   sb = new Spectbatch(1024, new Hann(2048), 512)      // segments of 2048, 75% overlap
+//   sb.add(block)                                       // any number of blocks of any length
+//   psd = sb.spectrum()
+//
+// With an output buffer, the periodogram of each completed segment is also stored as a row of M+1
+// values, thus a spectrogram is filled row by row:
+//
+//   rows = new double[sb.segmentsReady(block.length)*(1024+1)]
+//   nrows = sb.add(block, 0, block.length, rows, 0)
+public class Spectbatch extends Spectreg {
+
+  // the number of samples of the segments of a call below which the segments are processed serially
+  public static int minParallelWork = 1 << 16;
+
+  final int hop;
+  final double[] win;
+  final double fac;
+
+  // stream state: pos samples were received, the next segment starts at sample next,
+  // the samples [next, pos) are kept in ring[i & (m2-1)]
+  long pos, next;
+  final double[] ring, joint;
+
+  private final ThreadLocal<double[]> scratch;
+
+  // Constructor. Segments of length 2M overlapping by half, as Spectolap, with the window function wf
+  public Spectbatch(final int em, final WindowFun wf) {
+    this(em, wf, em);
+  }
+
+  // Constructor. Segments of length 2M starting every hop samples, with the window function wf
+  public Spectbatch(final int em, final WindowFun wf, final int hop) {
+    super(em);
+    if (hop < 1) throw new IllegalArgumentException("hop must be positive");
+    this.hop = hop;
+    win = new double[m2];
+    double sumw = 0.;
+    for (int i=0;i<m2;i++) {
+      win[i] = wf.window(i,m2);
+      sumw += win[i]*win[i];
+    }
+    fac = 2./(sumw*m2);
+    ring = new double[m2];
+    joint = new double[2*m2];
+    scratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+        return new double[m2];
+      }
+    };
+  }
+
+  // the number of segments completed by the next n samples of the stream
+  public int segmentsReady(final int n) {
+    long end = pos + n;
+    if (next + m2 > end) return 0;
+    return (int) ((end - m2 - next)/hop) + 1;
+  }
+
+  // Process the next block of the data stream
+  public void add(final double[] data) {
+    add(data, 0, data.length, null, 0);
+  }
+
+  // Process the samples data[off..off+len) of the data stream
+  public void add(final double[] data, final int off, final int len) {
+    add(data, off, len, null, 0);
+  }
+
+  // Process the samples data[off..off+len) of the data stream. When rows is not null, the periodogram
+  // of each completed segment is stored at rows[rowoff + r*(M+1) ..], for rows r = 0, 1, ...;
+  // rows should have room for segmentsReady(len) rows. Returns the number of completed segments
+  public int add(final double[] data, final int off, final int len, final double[] rows, final int rowoff) {
+    if (off < 0 || len < 0 || off+len > data.length) throw new IllegalArgumentException("data block out of range");
+    int nseg = segmentsReady(len);
+    if (rows != null && rowoff + (long) nseg*(m+1) > rows.length)
+      throw new IllegalArgumentException("rows has no room for "+nseg+" segments");
+    int row = 0;
+
+    // segments starting at the kept samples, from the samples [next, pos) followed by the block
+    if (next < pos) {
+      int kept = (int) (pos - next);
+      int take = Math.min(len, m2);
+      for (int i=0;i<kept;i++) joint[i] = ring[(int) ((next+i) & (m2-1))];
+      System.arraycopy(data, off, joint, kept, take);
+      int cnt = 0;
+      while (cnt*(long) hop < kept && cnt*(long) hop + m2 <= kept + take) cnt++;
+      if (cnt > 0) {
+        segments(joint, 0, cnt, rows, rowoff);
+        row += cnt;
+        next += (long) cnt*hop;
+      }
+    }
+
+    // segments within the block
+    long end = pos + len;
+    if (next >= pos && next + m2 <= end) {
+      int cnt = (int) ((end - m2 - next)/hop) + 1;
+      segments(data, off + (int) (next - pos), cnt, rows, rowoff + row*(m+1));
+      row += cnt;
+      next += (long) cnt*hop;
+    }
+
+    // keep the samples of the segments still pending
+    long from = Math.max(next, end - m2);
+    for (long i = Math.max(from, pos); i < end; i++) ring[(int) (i & (m2-1))] = data[off + (int) (i - pos)];
+    pos = end;
+    return row;
+  }
+
+  // Discard the stream state and the accumulated estimates
+  public void reset() {
+    java.util.Arrays.fill(specsum, 0.);
+    nsum = 0;
+    pos = next = 0;
+  }
+
+  // accumulates the segments src[base + k*hop ..] for k < cnt
+  void segments(final double[] src, final int base, final int cnt, final double[] rows, final int rowoff) {
+    if ((long) cnt*m2 < minParallelWork || cnt < 2 || NRPool.getNumThreads() < 2) {
+      range(src, base, 0, cnt, rows, rowoff, specsum);
+    } else {
+      SegTask t = new SegTask(this, src, base, 0, cnt, rows, rowoff);
+      t.grain = Math.max(1, cnt/(4*NRPool.getNumThreads()));
+      NRPool.run(t);
+      for (int i=0;i<=m;i++) specsum[i] += t.sum[i];
+    }
+    nsum += cnt;
+  }
+
+  // the segments [k0, k1), summed into sum
+  void range(final double[] src, final int base, final int k0, final int k1, final double[] rows, final int rowoff,
+             final double[] sum) {
+    double[] wksp = scratch.get();
+    for (int k=k0;k<k1;k++) {
+      int o = base + k*hop;
+      for (int i=0;i<m2;i++) wksp[i] = win[i]*src[o+i];
+      FFT.realft(wksp,1);
+      if (rows != null) {
+        int r = rowoff + k*(m+1);
+        rows[r] = 0.5*fac*wksp[0]*wksp[0];
+        for (int i=1;i<m;i++) rows[r+i] = fac*(wksp[2*i]*wksp[2*i]+wksp[2*i+1]*wksp[2*i+1]);
+        rows[r+m] = 0.5*fac*wksp[1]*wksp[1];
+        for (int i=0;i<=m;i++) sum[i] += rows[r+i];
+      } else {
+        sum[0] += 0.5*fac*wksp[0]*wksp[0];
+        for (int i=1;i<m;i++) sum[i] += fac*(wksp[2*i]*wksp[2*i]+wksp[2*i+1]*wksp[2*i+1]);
+        sum[m] += 0.5*fac*wksp[1]*wksp[1];
+      }
+    }
+  }
+
+  // the segments [k0, k1), split in halves down to the grain; the partial sums are added in a fixed order
+  static class SegTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Spectbatch sb;
+    final double[] src, rows;
+    final int base, k0, k1, rowoff;
+    int grain = 1;
+    double[] sum;
+
+    SegTask(Spectbatch sb, double[] src, int base, int k0, int k1, double[] rows, int rowoff) {
+      this.sb = sb;  this.src = src;  this.base = base;  this.k0 = k0;  this.k1 = k1;
+      this.rows = rows;  this.rowoff = rowoff;
+    }
+
+    @Override
+    protected void compute() {
+      if (k1 - k0 <= grain) {
+        sum = new double[sb.m+1];
+        sb.range(src, base, k0, k1, rows, rowoff, sum);
+        return;
+      }
+      int mid = (k0 + k1) >>> 1;
+      SegTask left = new SegTask(sb, src, base, k0, mid, rows, rowoff);
+      SegTask right = new SegTask(sb, src, base, mid, k1, rows, rowoff);
+      left.grain = right.grain = grain;
+      invokeAll(left, right);
+      sum = left.sum;
+      for (int i=0;i<sum.length;i++) sum[i] += right.sum[i];
+    }
+  }
+}
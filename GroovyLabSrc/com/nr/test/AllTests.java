@@ -42,6 +42,7 @@ import com.nr.test.test_chapter22.*;
   Test_Frprmn.class,
   Test_Golden.class,
   Test_Linemethod.class,
+  Test_Multistart.class,
   Test_Powell.class,
   Test_dfpmin.class,
   Test_dynpro.class,
@@ -63,7 +64,9 @@ import com.nr.test.test_chapter22.*;
   Test_Daub4i.class,
   Test_Daubs.class,
   Test_Hann.class,
+  Test_Multitaper.class,
   Test_Slepian.class,
+  Test_Spectbatch.class,
   Test_Spectolap.class,
   Test_Spectreg.class,
   Test_Square.class,
@@ -122,6 +125,10 @@ import com.nr.test.test_chapter22.*;
   Test_Svm.class,
   Test_markovgen.class,
   Test_newick.class,
+  Test_OdeintEnsemble.class,
+  Test_SparseJacobian.class,
+  Test_StreamOutput.class,
+  Test_StochsimEnsemble.class,
   Test_StepperBS.class,
   Test_StepperDopr5.class,
   Test_StepperDopr853.class,
@@ -255,6 +262,7 @@ import com.nr.test.test_chapter22.*;
   Test_Lognormaldist.class,
   Test_Normaldist.class,
   Test_Poissondist.class,
+  Test_Sfbatch.class,
   Test_Studenttdist.class,
   Test_beta.class,
   Test_betai.class,
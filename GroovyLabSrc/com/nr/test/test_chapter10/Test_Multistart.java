@@ -0,0 +1,160 @@
+package com.nr.test.test_chapter10;
+
+import static com.nr.NRUtil.SQR;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.netlib.util.doubleW;
+import org.netlib.util.intW;
+
+import com.nr.BatchRealValueFun;
+import com.nr.RealValueFun;
+import com.nr.min.Amoeba;
+import com.nr.min.BatchFuncd;
+import com.nr.min.Batchfun;
+import com.nr.min.Funcache;
+import com.nr.min.Funcd;
+import com.nr.min.Multistart;
+import com.nr.min.QuasiNewton;
+
+import com.nr.NRPool;
+
+public class Test_Multistart {
+  int threads;
+
+  @Before
+  public void setUp() throws Exception {
+    threads=NRPool.getNumThreads();
+    NRPool.setNumThreads(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    NRPool.setNumThreads(threads);
+  }
+
+  @Test
+  public void test() {
+    int i,k;
+    double err;
+    boolean localflag, globalflag=false;
+    Rosen_Multistart rosen = new Rosen_Multistart();
+    Wells_Multistart wells = new Wells_Multistart();
+
+    // Test Multistart
+    System.out.println("Testing Multistart");
+
+    // batched vertices give the minimum of the serial Amoeba
+    double[] point={-1.2,1.,0.5,-0.3};
+    double[] x1=new Amoeba(1.e-12).minimize(point,0.5,rosen);
+    double[] x2=new Amoeba(1.e-12).minimize(point,0.5,new Batchfun(rosen));
+    err=0.;
+    for (i=0;i<point.length;i++) err=max(err,abs(x1[i]-x2[i]));
+    localflag = err != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multistart: Amoeba with Batchfun differs from Amoeba");
+    }
+
+    // batched gradient probes give the gradients and the minimum of Funcd
+    double[] g1=new double[4],g2=new double[4];
+    Funcd fd=new Funcd(rosen);
+    BatchFuncd bfd=new BatchFuncd(new Batchfun(rosen));
+    fd.funk(point);
+    fd.df(point.clone(),g1);
+    bfd.funk(point);
+    bfd.df(point,g2);
+    double[] p1=point.clone(),p2=point.clone();
+    QuasiNewton.dfpmin(p1,1.e-10,new intW(0),new doubleW(0.),new Funcd(rosen));
+    QuasiNewton.dfpmin(p2,1.e-10,new intW(0),new doubleW(0.),new BatchFuncd(new Batchfun(rosen)));
+    err=0.;
+    for (i=0;i<point.length;i++) err=max(err,abs(g1[i]-g2[i])+abs(p1[i]-p2[i]));
+    localflag = err != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multistart: BatchFuncd differs from Funcd");
+    }
+
+    // memoized values
+    Funcache fc=new Funcache(rosen,2);
+    double f1=fc.funk(point),f2=fc.funk(point.clone());
+    fc.funk(x1);
+    fc.funk(p1);
+    fc.funk(point);
+    localflag = f1 != f2 || fc.hits() != 1 || fc.misses() != 4;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multistart: wrong Funcache hits");
+    }
+
+    // multistart on four wells, the global minimum near (-1,-1)
+    double[] xg=new Amoeba(1.e-14).minimize(new double[]{-1.,-1.},0.1,wells);
+    double fg=wells.funk(xg);
+    double[][] starts=Multistart.starts(new double[]{-2.,-2.},new double[]{2.,2.},16,1);
+    Multistart.Search[] searches={Multistart.amoeba(1.e-14,0.1),Multistart.powell(1.e-12),
+      Multistart.frprmn(1.e-12),Multistart.dfpmin(1.e-10),Multistart.amebsa(1.e-12,0.1,1.,0.5,40,200)};
+    for (k=0;k<searches.length;k++) {
+      Multistart ms=new Multistart(wells);
+      final List<Double> stream=new ArrayList<Double>();
+      ms.setProgress(new Multistart.Progress() {
+        public void improved(double f, double[] x, int start) {
+          stream.add(f);
+        }
+      });
+      Multistart.Result[] res=ms.minimize(starts,searches[k]);
+      boolean decreasing=true;
+      for (i=1;i<stream.size();i++) decreasing=decreasing && stream.get(i) < stream.get(i-1);
+      double xerr=max(abs(res[0].x[0]-xg[0]),abs(res[0].x[1]-xg[1]));
+      System.out.printf("Multistart %d: f %.12f, x error %g, %d values reported, %d evaluations, %d cached\n",
+        k,res[0].f,xerr,stream.size(),ms.cache().misses(),ms.cache().hits());
+      localflag = res.length != 16 || res[0].f-fg > 1.e-10 || xerr > 1.e-4 || !decreasing
+        || stream.get(stream.size()-1) != ms.best() || res[0].f < ms.best() || ms.cache().hits() == 0;
+      for (i=1;i<res.length;i++) localflag = localflag || res[i].f < res[i-1].f;
+      globalflag = globalflag || localflag;
+      if (localflag) {
+        fail("*** Multistart: global minimum not found by search "+k);
+      }
+    }
+
+    // a failed search is reported, the others go on
+    Multistart.Search failing=new Multistart.Search() {
+      public double[] minimize(double[] start, BatchRealValueFun func) {
+        if (start[0] > 0.) throw new IllegalArgumentException("failed");
+        return new Amoeba(1.e-12).minimize(start,0.1,func);
+      }
+    };
+    Multistart.Result[] res=new Multistart(wells,0).minimize(starts,failing);
+    int nfail=0,nexp=0;
+    for (k=0;k<starts.length;k++) if (starts[k][0] > 0.) nexp++;
+    for (k=0;k<res.length;k++) if (res[k].error != null) nfail++;
+    localflag = nfail != nexp || res[res.length-1].x != null || res[0].x == null;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multistart: failed searches not reported");
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+  class Rosen_Multistart implements RealValueFun {
+    public double funk(final double[] x) {
+      double f=0.;
+      for (int i=0;i<x.length-1;i++) f += 100.*SQR(x[i+1]-SQR(x[i]))+SQR(1.-x[i]);
+      return f;
+    }
+  }
+
+  class Wells_Multistart implements RealValueFun {
+    public double funk(final double[] x) {
+      return SQR(SQR(x[0])-1.)+SQR(SQR(x[1])-1.)+0.3*x[0]+0.2*x[1];
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.nr.test.test_chapter13;
+
+import static com.nr.NRUtil.SQR;
+import static java.lang.Math.abs;
+import static java.lang.Math.acos;
+import static java.lang.Math.cos;
+import static java.lang.Math.exp;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.sp.Multitaper;
+import com.nr.sp.Slepian;
+
+public class Test_Multitaper {
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Slepian.cacheDir=null;
+  }
+
+  @Test
+  public void test() throws Exception {
+    int i,j,k,maxi,M=128,N=2*M,K=16;
+    double diff,maxs,sbeps,pi=acos(-1.0);
+    double[] data=new double[N],spec,spec2,lam;
+    double[][] t1,t2;
+    boolean localflag, globalflag=false;
+
+    
+
+    // Test Multitaper
+    System.out.println("Testing Multitaper");
+
+    // Averaged eigenspectra are those of Slepian
+    Slepian slep=new Slepian(M,3,4);
+    Multitaper mt=new Multitaper(M,3,4,false);
+    Multitaper ma=new Multitaper(M,3,4,true);
+    for (i=0;i<K;i++) {
+      for (j=0;j<N;j++)
+        data[j]=10.0*exp(-1.*SQR(j-M)/SQR(N/8))*cos(2.0*pi*32*j/N)+cos(0.37*i*j);
+      slep.adddataseg(data);
+      mt.adddataseg(data);
+      ma.adddataseg(data);
+    }
+    spec=slep.spectrum();
+    spec2=mt.spectrum();
+    diff=0.;
+    for (i=0;i<=M;i++) diff=Math.max(diff,abs(spec2[i]/spec[i]-1.));
+    sbeps=1.e-12;
+    localflag = diff > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multitaper: averaged eigenspectra differ from Slepian");
+      
+    }
+
+    // The adaptive estimate peaks at the same frequency
+    spec2=ma.spectrum();
+    maxs=-1.;
+    maxi=0;
+    for (i=0;i<=M;i++) {
+      if (spec2[i] > maxs) {
+        maxs=spec2[i];
+        maxi=i;
+      }
+    }
+    localflag = maxi != 32;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multitaper: adaptive estimate does not peak at the frequency of the data");
+      
+    }
+
+    // The concentrations are in (0, 1], decreasing
+    lam=mt.concentrations();
+    localflag = false;
+    for (k=0;k<lam.length;k++)
+      localflag = localflag || lam[k] <= 0. || lam[k] > 1.+1.e-12 || (k > 0 && lam[k] > lam[k-1]);
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multitaper: concentrations not within (0,1] or not decreasing");
+      
+    }
+
+    // Tapers saved in the cache directory are read back unchanged
+    File dir=File.createTempFile("dpss","");
+    dir.delete();
+    dir.mkdir();
+    Slepian.cacheDir=dir;
+    Slepian.clearCache();
+    t1=Slepian.tapers(M,2,3);
+    Slepian.clearCache();
+    t2=Slepian.tapers(M,2,3);
+    diff=0.;
+    for (k=0;k<3;k++)
+      for (j=0;j<N;j++) diff=Math.max(diff,abs(t1[k][j]-t2[k][j]));
+    localflag = diff != 0. || dir.list().length != 1 || t1[0] == t2[0];
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Multitaper: tapers not restored from the cache directory");
+      
+    }
+    for (File f : dir.listFiles()) f.delete();
+    dir.delete();
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+}
@@ -0,0 +1,129 @@
+package com.nr.test.test_chapter13;
+
+import static com.nr.NRUtil.SQR;
+import static java.lang.Math.abs;
+import static java.lang.Math.acos;
+import static java.lang.Math.cos;
+import static java.lang.Math.exp;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.sp.Hann;
+import com.nr.sp.Spectbatch;
+import com.nr.sp.Spectolap;
+import com.nr.sp.Spectreg;
+import com.nr.sp.WelchWin;
+
+public class Test_Spectbatch {
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void test() {
+    int i,j,k,p,len,rows,M=128,N=2*M,K=64,ntot=K*M+77;
+    double diff,sum,sbeps=1.e-12,pi=acos(-1.0);
+    double[] data=new double[ntot],blk=new double[M],seg=new double[N],spec,spec2;
+    boolean localflag, globalflag=false;
+
+    
+
+    // Test Spectbatch
+    System.out.println("Testing Spectbatch");
+
+    for (j=0;j<ntot;j++)
+      data[j]=10.0*exp(-1.*SQR(j%N-M)/SQR(N/8))*
+        (cos(2.0*pi*32*j/N)+cos(2.0*pi*64*j/N))+cos(0.1*j*j);
+
+    // Same estimate as Spectolap, from the whole array and from blocks of varying length
+    Hann hann=new Hann(N);
+    Spectolap so=new Spectolap(M);
+    for (p=0;p+M<=ntot;p+=M) {
+      System.arraycopy(data,p,blk,0,M);
+      so.adddataseg(blk,hann);
+    }
+    spec=so.spectrum();
+
+    Spectbatch sb=new Spectbatch(M,hann);
+    sb.add(data);
+    spec2=sb.spectrum();
+    diff=0.;
+    for (i=0;i<=M;i++) diff=Math.max(diff,abs(spec2[i]/spec[i]-1.));
+    localflag = diff > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Spectbatch: whole array differs from Spectolap");
+      
+    }
+
+    Spectbatch sc=new Spectbatch(M,hann);
+    double[] rowbuf=new double[K*(M+1)];
+    rows=0;
+    for (p=0,len=1;p<ntot;p+=len,len=(3*len+17)%(3*M)) {
+      len=Math.min(len,ntot-p);
+      k=sc.segmentsReady(len);
+      localflag = sc.add(data,p,len,rowbuf,rows*(M+1)) != k;
+      globalflag = globalflag || localflag;
+      if (localflag) {
+        fail("*** Spectbatch: segmentsReady() does not match the segments added");
+        
+      }
+      rows += k;
+    }
+    spec2=sc.spectrum();
+    diff=0.;
+    for (i=0;i<=M;i++) diff=Math.max(diff,abs(spec2[i]/spec[i]-1.));
+    localflag = diff > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Spectbatch: streamed blocks differ from Spectolap");
+      
+    }
+
+    // The rows are the periodograms of the segments
+    diff=0.;
+    for (i=0;i<=M;i++) {
+      sum=0.;
+      for (j=0;j<rows;j++) sum += rowbuf[j*(M+1)+i];
+      diff=Math.max(diff,abs(sum/rows/spec2[i]-1.));
+    }
+    localflag = diff > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Spectbatch: rows do not average to the spectrum");
+      
+    }
+
+    // Segments every 100 samples, as Spectreg
+    Spectreg sr=new Spectreg(M);
+    WelchWin welch=new WelchWin();
+    for (p=0;p+N<=ntot;p+=100) {
+      System.arraycopy(data,p,seg,0,N);
+      sr.adddataseg(seg,welch);
+    }
+    spec=sr.spectrum();
+    Spectbatch sh=new Spectbatch(M,welch,100);
+    for (p=0;p<ntot;p+=333) sh.add(data,p,Math.min(333,ntot-p));
+    spec2=sh.spectrum();
+    diff=0.;
+    for (i=0;i<=M;i++) diff=Math.max(diff,abs(spec2[i]/spec[i]-1.));
+    localflag = diff > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Spectbatch: hop of 100 differs from Spectreg");
+      
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+}
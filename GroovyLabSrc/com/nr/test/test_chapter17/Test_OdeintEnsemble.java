@@ -0,0 +1,129 @@
+package com.nr.test.test_chapter17;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.ode.DerivativeInf;
+import com.nr.ode.EnsembleDerivativeInf;
+import com.nr.ode.Odeint;
+import com.nr.ode.OdeintEnsemble;
+import com.nr.ode.Output;
+import com.nr.ode.StepperDopr5;
+import com.nr.sf.Bessjy;
+
+import com.nr.NRPool;
+
+public class Test_OdeintEnsemble {
+  int threads, batch, minwork;
+
+  @Before
+  public void setUp() throws Exception {
+    threads=NRPool.getNumThreads();
+    batch=OdeintEnsemble.batchSize;
+    minwork=OdeintEnsemble.minParallelWork;
+    NRPool.setNumThreads(4);
+    OdeintEnsemble.batchSize=16;
+    OdeintEnsemble.minParallelWork=1;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    NRPool.setNumThreads(threads);
+    OdeintEnsemble.batchSize=batch;
+    OdeintEnsemble.minParallelWork=minwork;
+  }
+
+  @Test
+  public void test() {
+    int i,j,k,nvar=4,nmem=100,nsave=20;
+    final double atol=1.0e-6,rtol=atol,h1=0.01,hmin=0.0,x1=1.0,x2=2.0;
+    double diff;
+    double[][] y=new double[nvar][nmem],p=new double[1][nmem],y0=new double[nvar][nmem];
+    boolean localflag, globalflag=false;
+
+    
+
+    // Test OdeintEnsemble
+    System.out.println("Testing OdeintEnsemble");
+
+    Bessjy bess = new Bessjy();
+    for (k=0;k<nmem;k++) {
+      p[0][k]=0.5+0.02*k;
+      for (i=0;i<nvar;i++) y0[i][k]=y[i][k]=bess.jn(i,x1)*(1.0+0.001*k);
+    }
+    OdeintEnsemble ens=new OdeintEnsemble(y,p,x1,x2,atol,rtol,h1,hmin,nsave,new rhs_ensemble());
+    ens.integrate();
+
+    // Each member takes the steps of Odeint with StepperDopr5
+    localflag=false;
+    diff=0.;
+    for (k=0;k<nmem;k++) {
+      double[] ys=new double[nvar];
+      for (i=0;i<nvar;i++) ys[i]=y0[i][k];
+      Output out=new Output(nsave);
+      Odeint ode=new Odeint(ys,x1,x2,atol,rtol,h1,hmin,out,new rhs_member(p[0][k]),new StepperDopr5());
+      ode.integrate();
+      for (i=0;i<nvar;i++) {
+        localflag = localflag || ys[i] != y[i][k];
+        for (j=0;j<=nsave;j++) diff=max(diff,abs(out.ysave[i][j]-ens.ysave[j][i][k]));
+      }
+      localflag = localflag || out.count != nsave+1;
+    }
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** OdeintEnsemble: members differ from Odeint");
+      
+    }
+
+    localflag = diff > 1.e-12;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** OdeintEnsemble: dense output differs from Odeint");
+      
+    }
+
+    // Member with the unscaled system gives the Bessel functions
+    localflag=false;
+    for (k=0;k<nmem;k++)
+      if (p[0][k] == 1.0)
+        for (i=0;i<nvar;i++) localflag = localflag || abs(y[i][k]-bess.jn(i,x2)*(1.0+0.001*k)) > 1.e-5;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** OdeintEnsemble: Inaccurate integration");
+      
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+  // the Bessel system of Test_StepperDopr5 with the time scaled by the parameter
+  class rhs_ensemble implements EnsembleDerivativeInf {
+    public void derivs(final double[] x, final double[][] y, final double[][] p, final double[][] dydx, final int m0, final int m1) {
+      for (int k=m0;k<m1;k++) {
+        double c=p[0][k];
+        dydx[0][k]= c*(-y[1][k]);
+        dydx[1][k]= c*(y[0][k]-(1.0/x[k])*y[1][k]);
+        dydx[2][k]= c*(y[1][k]-(2.0/x[k])*y[2][k]);
+        dydx[3][k]= c*(y[2][k]-(3.0/x[k])*y[3][k]);
+      }
+    }
+  }
+
+  class rhs_member implements DerivativeInf {
+    final double c;
+    rhs_member(double c) { this.c=c; }
+    public void derivs (final double x, final double[] y, final double[]dydx) {
+      dydx[0]= c*(-y[1]);
+      dydx[1]= c*(y[0]-(1.0/x)*y[1]);
+      dydx[2]= c*(y[1]-(2.0/x)*y[2]);
+      dydx[3]= c*(y[2]-(3.0/x)*y[3]);
+    }
+    public void jacobian(final double x, double[] y, double[] dfdx, double[][] dfdy){}
+  }
+}
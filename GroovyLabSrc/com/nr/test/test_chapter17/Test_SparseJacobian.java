@@ -0,0 +1,141 @@
+package com.nr.test.test_chapter17;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.pow;
+import static java.lang.Math.sin;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.ode.Odeint;
+import com.nr.ode.Output;
+import com.nr.ode.SparseDerivativeInf;
+import com.nr.ode.SparseJacobian;
+import com.nr.ode.StepperRoss;
+import com.nr.ode.StepperSie;
+
+public class Test_SparseJacobian {
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void test() {
+    int i,n;
+    final double atol=1.0e-6,rtol=atol,hmin=0.0;
+    double sbeps,diff;
+    double[] y;
+    boolean localflag, globalflag=false;
+
+    
+
+    // Test SparseJacobian
+    System.out.println("Testing SparseJacobian");
+
+    // Pattern, colouring and finite differences of the system of Test_StepperRoss
+    rhs_kinetics d=new rhs_kinetics();
+    SparseJacobian jac=d.pattern();
+    double[] y0={1.0,2.0,0.5},f0=new double[3],dfdx=new double[3];
+    d.derivs(0.0,y0,f0);
+    jac.finiteDifferences(d,0.0,y0,f0,dfdx);
+    sbeps=1.e-5;
+    localflag = jac.colors() != 3 || abs(jac.get(1,0)) != 0.0 || abs(dfdx[0]) != 0.0;
+    localflag = localflag || abs(jac.get(0,2)+1000.0*y0[0]) > sbeps*1000.0
+      || abs(jac.get(2,2)+1000.0*y0[0]+2500.0*y0[1]) > sbeps*1000.0;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** SparseJacobian: Wrong finite difference Jacobian");
+      
+    }
+
+    // StepperRoss with the sparse Jacobian, the relationships of Test_StepperRoss
+    y=new double[] {1.0,1.0,0.0};
+    Output out=new Output(20);
+    Odeint ode=new Odeint(y,0.0,50.0,atol,rtol,2.9e-4,hmin,out,d,new StepperRoss());
+    ode.integrate();
+    sbeps=1.e-6;
+    localflag = abs(y[2]-y[0]-y[1]+2.0) > sbeps || abs(y[1]-pow(y[0]*exp(0.013*50.0),2.5)) > sbeps;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** SparseJacobian: Inaccurate integration with StepperRoss");
+      
+    }
+
+    // Stiff heat equation, banded: the lowest mode decays as exp(-lam*t)
+    for (int stepper=0;stepper<2;stepper++) {
+      n = stepper == 0 ? 20000 : 2000;
+      rhs_heat heat=new rhs_heat(n);
+      y=new double[n];
+      for (i=0;i<n;i++) y[i]=sin(PI*(i+1)/(n+1));
+      double x2=0.1;
+      out=new Output();
+      if (stepper == 0)
+        ode=new Odeint(y,0.0,x2,atol,rtol,1.e-6,hmin,out,heat,new StepperRoss());
+      else
+        ode=new Odeint(y,0.0,x2,atol,rtol,1.e-6,hmin,out,heat,new StepperSie());
+      ode.integrate();
+      double dx=1.0/(n+1),lam=4.0/(dx*dx)*pow(sin(PI*dx/2.0),2);
+      diff=0.0;
+      for (i=0;i<n;i++) diff=max(diff,abs(y[i]-sin(PI*(i+1)/(n+1))*exp(-lam*x2)));
+      System.out.printf("%d %s %e\n", n, stepper == 0 ? "StepperRoss" : "StepperSie", diff);
+      localflag = diff > 2.e-5 || heat.nfd == 0;
+      globalflag = globalflag || localflag;
+      if (localflag) {
+        fail("*** SparseJacobian: Inaccurate banded integration");
+        
+      }
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+  // the kinetics of Test_StepperRoss, Jacobian by finite differences
+  class rhs_kinetics implements SparseDerivativeInf {
+    public void derivs(final double x,double[] y,double[] dydx) {
+      dydx[0]= -0.013*y[0]-1000.0*y[0]*y[2];
+      dydx[1]= -2500.0*y[1]*y[2];
+      dydx[2]= -0.013*y[0]-1000.0*y[0]*y[2]-2500.0*y[1]*y[2];
+    }
+    public void jacobian(final double x,double[] y,double[] dfdx,double[][] dfdy) {}
+    public SparseJacobian pattern() {
+      return SparseJacobian.fromEntries(3,new int[] {0,0,1,1,2,2,2,0},new int[] {0,2,1,2,0,1,2,2});
+    }
+    public boolean sparseJacobian(final double x, double[] y, double[] dfdx, SparseJacobian dfdy) {
+      return false;
+    }
+  }
+
+  // u' = u'' on (0,1) with u = 0 at the ends, analytic tridiagonal Jacobian
+  class rhs_heat implements SparseDerivativeInf {
+    final int n;
+    final double c;
+    int nfd;
+    rhs_heat(int n) { this.n=n; c=(n+1.0)*(n+1.0); }
+    public void derivs(final double x,double[] y,double[] dydx) {
+      for (int i=0;i<n;i++)
+        dydx[i]=c*((i > 0 ? y[i-1] : 0.0)-2.0*y[i]+(i < n-1 ? y[i+1] : 0.0));
+    }
+    public void jacobian(final double x,double[] y,double[] dfdx,double[][] dfdy) {}
+    public SparseJacobian pattern() {
+      return SparseJacobian.banded(n,1,1);
+    }
+    public boolean sparseJacobian(final double x, double[] y, double[] dfdx, SparseJacobian dfdy) {
+      for (int i=0;i<n;i++) dfdx[i]=0.0;
+      for (int j=0;j<n;j++)
+        for (int p=dfdy.colp[j];p<dfdy.colp[j+1];p++) dfdy.val[p] = dfdy.rowi[p] == j ? -2.0*c : c;
+      nfd++;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.nr.test.test_chapter17;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.ode.Stochsim;
+import com.nr.ode.StochsimEnsemble;
+
+import com.nr.NRPool;
+
+public class Test_StochsimEnsemble {
+  int threads, batch;
+
+  @Before
+  public void setUp() throws Exception {
+    threads=NRPool.getNumThreads();
+    batch=StochsimEnsemble.batchSize;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    NRPool.setNumThreads(threads);
+    StochsimEnsemble.batchSize=batch;
+  }
+
+  @Test
+  public void test() {
+    int i,it,NVAR=4,NT=40;
+    double err;
+    double[] sinit={150.,10.,10.,0.},tout=new double[NT];
+    double[][] sout=new double[NT][NVAR],sexp=new double[NT][NVAR];
+    boolean localflag, globalflag=false;
+
+    // Test StochsimEnsemble
+    System.out.println("Testing StochsimEnsemble");
+
+    // realization 0 of seed 1 is the trajectory of Stochsim
+    Stochsim stoch = new Stochsim(sinit.clone());
+    for (it=0;it<NT;it++) tout[it]=0.05*it;
+    double[] prev=stoch.s.clone();
+    it=0;
+    while (it < NT) {
+      double tn=stoch.step();
+      while (it < NT && tout[it] < tn) sexp[it++]=prev.clone();
+      prev=stoch.s.clone();
+    }
+    StochsimEnsemble e = new StochsimEnsemble(sinit,stoch.instate,stoch.outstate,
+      StochsimEnsemble.massAction(new double[]{stoch.k0,stoch.k1,stoch.k2},stoch.instate),tout,1);
+    e.realization(0,sout);
+    err=0.;
+    for (it=0;it<NT;it++)
+      for (i=0;i<NVAR;i++) err=max(err,abs(sout[it][i]-sexp[it][i]));
+    localflag = err != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StochsimEnsemble: realization differs from Stochsim");
+    }
+
+    // the statistics do not depend on the threads and the batches
+    NRPool.setNumThreads(1);
+    e.run(500);
+    NRPool.setNumThreads(4);
+    StochsimEnsemble.batchSize=7;
+    StochsimEnsemble e4 = new StochsimEnsemble(sinit,stoch.instate,stoch.outstate,
+      StochsimEnsemble.massAction(new double[]{stoch.k0,stoch.k1,stoch.k2},stoch.instate),tout,1);
+    e4.run(200);
+    e4.run(300);
+    err=0.;
+    for (it=0;it<NT;it++)
+      for (i=0;i<NVAR;i++) err=max(err,abs(e.mean(it,i)-e4.mean(it,i))+abs(e.variance(it,i)-e4.variance(it,i)));
+    localflag = err != 0. || e4.count() != 500;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StochsimEnsemble: statistics depend on the threads");
+    }
+
+    // pure death A -> 0 at rate k*A: binomial with p = exp(-k*t)
+    int n=20000;
+    double k=1.,a0=100.;
+    double[][] in={{1.}},out={{-1.}};
+    double[] td={0.,0.5,1.,2.};
+    StochsimEnsemble d = new StochsimEnsemble(new double[]{a0},in,out,
+      StochsimEnsemble.massAction(new double[]{k},in),td,17);
+    d.run(n);
+    err=0.;
+    for (it=0;it<td.length;it++) {
+      double p=exp(-k*td[it]),m=a0*p,v=a0*p*(1.-p);
+      err=max(err,abs(d.mean(it,0)-m)/sqrt(max(v,1.e-10)/n));
+      err=max(err,abs(d.variance(it,0)-v)/max(v,1.)/0.05);
+      localflag = abs(d.quantile(it,0,0.5)-m) > 1.5 || abs(d.quantile(it,0,0.9)-(m+1.2816*sqrt(v))) > 1.5;
+      globalflag = globalflag || localflag;
+      if (localflag) {
+        fail("*** StochsimEnsemble: wrong quantiles of the death process");
+      }
+    }
+    System.out.printf("StochsimEnsemble: exact death process, max deviation %f sigma\n", err);
+    localflag = err > 5.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StochsimEnsemble: wrong moments of the death process");
+    }
+
+    // tau-leaping, with a bias of O(tau)
+    StochsimEnsemble dl = new StochsimEnsemble(new double[]{a0},in,out,
+      StochsimEnsemble.massAction(new double[]{k},in),td,17);
+    dl.setLeap(0.01);
+    dl.run(n);
+    err=0.;
+    for (it=0;it<td.length;it++) err=max(err,abs(dl.mean(it,0)-a0*exp(-k*td[it])));
+    System.out.printf("StochsimEnsemble: tau-leaping death process, max mean error %f\n", err);
+    localflag = err > 0.6 || dl.quantile(3,0,0.) < 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StochsimEnsemble: inaccurate tau-leaping");
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+}
@@ -0,0 +1,164 @@
+package com.nr.test.test_chapter17;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.ode.DecimatingSink;
+import com.nr.ode.DerivativeInf;
+import com.nr.ode.MappedFileReader;
+import com.nr.ode.MappedFileSink;
+import com.nr.ode.Odeint;
+import com.nr.ode.Output;
+import com.nr.ode.RingBufferSink;
+import com.nr.ode.StepperDopr5;
+import com.nr.ode.StreamOutput;
+import com.nr.sf.Bessjy;
+
+public class Test_StreamOutput {
+  int window;
+  File f;
+
+  @Before
+  public void setUp() throws Exception {
+    window=MappedFileSink.windowBytes;
+    MappedFileSink.windowBytes=8*5*7;   // a window of 7 points, thus many remappings
+    f=File.createTempFile("streamoutput",".bin");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MappedFileSink.windowBytes=window;
+    f.delete();
+  }
+
+  @Test
+  public void test() throws Exception {
+    int i,j,k,n,nvar=4;
+    final double atol=1.0e-6,rtol=atol,h1=0.01,hmin=0.0,x1=1.0,x2=2.0;
+    double err;
+    boolean localflag, globalflag=false;
+    rhs_StreamOutput d = new rhs_StreamOutput();
+
+    // Test StreamOutput
+    System.out.println("Testing StreamOutput");
+
+    // dense output to a mapped file, as Output
+    Output out = new Output(200);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,out,d,new StepperDopr5()).integrate();
+    MappedFileSink fs = new MappedFileSink(f);
+    StreamOutput sout = new StreamOutput(200,fs);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,sout,d,new StepperDopr5()).integrate();
+    MappedFileReader r = new MappedFileReader(f);
+    localflag = sout.count != out.count || r.count != out.count || fs.count() != out.count || r.nvar != nvar
+      || f.length() != MappedFileSink.HEADER+8L*(nvar+1)*out.count;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StreamOutput: wrong number of points in the file");
+    }
+    err=0.;
+    double[] xs=r.x();
+    for (k=0;k<out.count;k++) err=max(err,abs(xs[k]-out.xsave[k]));
+    for (i=0;i<nvar;i++) {
+      double[] v=r.variable(i);
+      for (k=0;k<out.count;k++) err=max(err,abs(v[k]-out.ysave[i][k]));
+    }
+    double[] a=new double[2*out.count];
+    r.column(0,a,0);
+    r.column(3,a,out.count);
+    for (k=0;k<out.count;k++) err=max(err,max(abs(a[k]-out.xsave[k]),abs(a[out.count+k]-out.ysave[2][k])));
+    for (k=0;k<out.count;k+=13) err=max(err,abs(r.y(k,1)-out.ysave[1][k]));
+    System.out.printf("StreamOutput: %d points, max difference to Output %g\n", out.count, err);
+    localflag = err != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StreamOutput: the mapped file differs from Output");
+    }
+
+    // the points of the steps to a ring buffer
+    out = new Output(0);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,out,d,new StepperDopr5()).integrate();
+    RingBufferSink ring = new RingBufferSink(5);
+    sout = new StreamOutput(ring);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,sout,d,new StepperDopr5()).integrate();
+    double[] x=new double[8];
+    double[][] y=new double[nvar][8];
+    n=ring.latest(x,y);
+    err=0.;
+    for (j=0;j<n;j++) {
+      k=out.count-n+j;
+      err=max(err,abs(x[j]-out.xsave[k]));
+      for (i=0;i<nvar;i++) err=max(err,abs(y[i][j]-out.ysave[i][k]));
+    }
+    localflag = n != 5 || ring.total() != out.count || !ring.ended() || err != 0. || sout.xsave != null;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StreamOutput: the ring buffer differs from Output");
+    }
+
+    // decimation of dense output, the last point is kept
+    out = new Output(100);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,out,d,new StepperDopr5()).integrate();
+    int fac=7;
+    ring = new RingBufferSink(1000);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,
+      new StreamOutput(100,new DecimatingSink(ring,fac,DecimatingSink.PICK)),d,new StepperDopr5()).integrate();
+    x=new double[1000];
+    y=new double[nvar][1000];
+    n=ring.latest(x,y);
+    err=0.;
+    for (j=0;j<n-1;j++) err=max(err,abs(x[j]-out.xsave[j*fac]));
+    err=max(err,abs(x[n-1]-out.xsave[out.count-1]));
+    localflag = n != (out.count+fac-1)/fac+((out.count-1)%fac == 0 ? 0 : 1) || err != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StreamOutput: wrong points picked by DecimatingSink");
+    }
+
+    ring = new RingBufferSink(1000);
+    new Odeint(ystart(nvar,x1),x1,x2,atol,rtol,h1,hmin,
+      new StreamOutput(100,new DecimatingSink(ring,fac,DecimatingSink.MEAN)),d,new StepperDopr5()).integrate();
+    n=ring.latest(x,y);
+    err=0.;
+    for (j=0;j<n;j++) {
+      int k0=j*fac,k1=Math.min(k0+fac,out.count);
+      double xm=0.,ym=0.;
+      for (k=k0;k<k1;k++) {
+        xm+=out.xsave[k];
+        ym+=out.ysave[1][k];
+      }
+      err=max(err,max(abs(x[j]-xm/(k1-k0)),abs(y[1][j]-ym/(k1-k0))));
+    }
+    localflag = n != (out.count+fac-1)/fac || err > 1.e-14;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** StreamOutput: wrong means of DecimatingSink");
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+
+  double[] ystart(final int nvar, final double x1) {
+    Bessjy bess = new Bessjy();
+    double[] y = new double[nvar];
+    for (int i=0;i<nvar;i++) y[i]=bess.jn(i,x1);
+    return y;
+  }
+
+  class rhs_StreamOutput implements DerivativeInf {
+    public void derivs (final double x, final double[] y, final double[]dydx) {
+      dydx[0]= -y[1];
+      dydx[1]=y[0]-(1.0/x)*y[1];
+      dydx[2]=y[1]-(2.0/x)*y[2];
+      dydx[3]=y[2]-(3.0/x)*y[3];
+    }
+    public void jacobian(final double x, double[] y, double[] dfdx, double[][] dfdy){}
+  }
+}
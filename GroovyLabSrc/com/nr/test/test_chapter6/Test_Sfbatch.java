@@ -0,0 +1,158 @@
+package com.nr.test.test_chapter6;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nr.Complex;
+import com.nr.sf.Bessel;
+import com.nr.sf.Bessjy;
+import com.nr.sf.Beta;
+import com.nr.sf.Erf;
+import com.nr.sf.Gamma;
+import com.nr.sf.Gammadist;
+import com.nr.sf.Hypergeo;
+import com.nr.sf.Normaldist;
+import com.nr.sf.Poissondist;
+import com.nr.sf.Sfbatch;
+import com.nr.sf.Studenttdist;
+
+import com.nr.NRPool;
+
+public class Test_Sfbatch {
+  int threads, minwork;
+
+  @Before
+  public void setUp() throws Exception {
+    threads=NRPool.getNumThreads();
+    minwork=Sfbatch.minParallelWork;
+    NRPool.setNumThreads(4);
+    Sfbatch.minParallelWork=16;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    NRPool.setNumThreads(threads);
+    Sfbatch.minParallelWork=minwork;
+  }
+
+  static double maxdiff(double[] a, double[] b) {
+    double d=0.;
+    for (int i=0;i<a.length;i++) d=max(d,abs(a[i]-b[i]));
+    return d;
+  }
+
+  @Test
+  public void test() {
+    int i,N=5000;
+    double[] x=new double[N],u=new double[N],k=new double[N],y=new double[N];
+    boolean localflag, globalflag=false;
+
+    
+
+    // Test Sfbatch
+    System.out.println("Testing Sfbatch");
+
+    for (i=0;i<N;i++) {
+      x[i]=0.01+20.0*i/N;
+      u[i]=(i+0.5)/N;
+      k[i]=i % 40;
+    }
+
+    // Batches equal the scalar functions, for the functions with instance state too
+    Bessjy bjy=new Bessjy();
+    for (i=0;i<N;i++) y[i]=bjy.jn(3,x[i]);
+    localflag = maxdiff(Bessjy.jn(3,x),y) != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: Bessjy.jn batch differs from the scalar function");
+      
+    }
+
+    Bessel bes=new Bessel();
+    for (i=0;i<N;i++) y[i]=bes.knu(1.3,x[i]);
+    localflag = maxdiff(Bessel.knu(1.3,x),y) != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: Bessel.knu batch differs from the scalar function");
+      
+    }
+
+    Gamma gam=new Gamma();
+    for (i=0;i<N;i++) y[i]=gam.gammp(3.5,x[i]);
+    localflag = maxdiff(Gamma.gammp(3.5,x),y) != 0.;
+    for (i=0;i<N;i++) y[i]=gam.invgammp(u[i],150.);
+    localflag = localflag || maxdiff(Gamma.invgammp(u,150.),y) != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: Gamma batches differ from the scalar functions");
+      
+    }
+
+    for (i=0;i<N;i++) y[i]=Beta.invbetai(u[i],2.5,0.7);
+    localflag = maxdiff(Beta.invbetai(u,2.5,0.7),y) != 0.;
+    Erf erf=new Erf();
+    for (i=0;i<N;i++) y[i]=erf.inverfc(2.*u[i]);
+    double[] v=new double[N];
+    for (i=0;i<N;i++) v[i]=2.*u[i];
+    localflag = localflag || maxdiff(Erf.inverfc(v),y) != 0.;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: Beta or Erf batches differ from the scalar functions");
+      
+    }
+
+    // Distributions
+    Normaldist norm=new Normaldist(1.,2.);
+    Gammadist gd=new Gammadist(2.,0.5);
+    Studenttdist st=new Studenttdist(4.,0.,1.5);
+    Poissondist pd=new Poissondist(7.5);
+    localflag=false;
+    double[] pn=norm.p(x),cg=gd.cdf(x),it=st.invcdf(u),pp=pd.p(k),ip=pd.invcdf(u);
+    for (i=0;i<N;i++) {
+      localflag = localflag || pn[i] != norm.p(x[i]) || cg[i] != gd.cdf(x[i]) || it[i] != st.invcdf(u[i])
+        || pp[i] != pd.p((int) k[i]) || ip[i] != pd.invcdf(u[i]);
+    }
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: distribution batches differ from the scalar functions");
+      
+    }
+
+    // Exceptions of the evaluations reach the caller
+    localflag=true;
+    try {
+      x[N/2]=-1.;
+      gd.cdf(x);
+    } catch (IllegalArgumentException e) {
+      localflag=false;
+    }
+    x[N/2]=0.01+10.0;
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: exception of a parallel evaluation lost");
+      
+    }
+
+    // Hypergeometric function over an array
+    Complex[] z=new Complex[40];
+    for (i=0;i<40;i++) z[i]=new Complex(-2.0+0.1*i,0.3);
+    Complex ca=new Complex(0.5,0.),cb=new Complex(1.,0.),cc=new Complex(1.5,0.);
+    Complex[] h=Hypergeo.hypgeo(ca,cb,cc,z);
+    localflag=false;
+    for (i=0;i<40;i++)
+      localflag = localflag || h[i].sub(Hypergeo.hypgeo(ca,cb,cc,z[i])).abs() > 1.e-14*h[i].abs();
+    globalflag = globalflag || localflag;
+    if (localflag) {
+      fail("*** Sfbatch: Hypergeo batch differs from the scalar function");
+      
+    }
+
+    if (globalflag) System.out.println("Failed\n");
+    else System.out.println("Passed\n");
+  }
+}
@@ -1,12 +1,10 @@
 package groovySci.FFT;
 
 import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.TransformType;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.DftNormalization;
         
 import groovySci.math.array.Vec;
 
+// the transforms are computed with the cached FFTPlan / RealFFTPlan plans, with the results as Apache Commons Complex arrays
 public class ApacheFFT  {
     private double[] signal;
 
@@ -18,52 +16,53 @@ public class ApacheFFT  {
      */
 	
    static  public Complex [] fft(double [] sig)  {
+       double [][] spec = splitfft(sig);
+       double [] re = spec[0], im = spec[1];
+       int N = re.length;
+       Complex []  result = new Complex[N];
+       for (int k=0; k<N; k++)
+           result[k] = new Complex(re[k], im[k]);
+        
+        return result;
+        }            
+        
+   // the transform of the signal, zero padded to a power of 2, as split real and imaginary parts { re, im },
+   // computed with the cached RealFFTPlan of the padded length
+   static public double [][] splitfft(double [] sig)  {
        int N = sig.length;
-       int M = (int)(Math.log(N)/Math.log(2.0));
-       int NpowerTwo = (int) Math.pow(2, M);
+       int NpowerTwo = FFTPlan.nextPowerOf2(N);
        if (NpowerTwo != N)  {   // padd the signal with zeros in order to be a power of 2
-           NpowerTwo = (int) Math.pow(2, M+1);
            double [] paddSig = new double[NpowerTwo];
-           for (int k=0; k<N; k++)
-               paddSig[k] = sig[k];
-           for (int k=N; k<NpowerTwo; k++)   
-               paddSig[k] = 0.0;
+           System.arraycopy(sig, 0, paddSig, 0, N);
            sig = paddSig;
+           N = NpowerTwo;
        }
-        Complex []  result;
-        
-        FastFourierTransformer fftj = new FastFourierTransformer(DftNormalization.STANDARD);
-        result =   fftj.transform(sig, TransformType.FORWARD);
-        
-        return result;
-        }            
-        
+       double [] re = new double[N];
+       double [] im = new double[N];
+       RealFFTPlan.plan(N).forward(sig, re, im);   // the non-negative frequencies
+       for (int k=N/2+1; k<N; k++) {   // the negative frequencies are the complex conjugates
+           re[k] = re[N-k];
+           im[k] = -im[N-k];
+       }
+       return new double[][] { re, im };
+   }
   
   static public double [] absfft(double [] sig) {
-      Complex  [] fftSig = fft(sig);
-      int N = fftSig.length;
+      double [][] spec = splitfft(sig);
+      double [] re = spec[0], im = spec[1];
+      int N = re.length;
       double [] absSig = new double[N];
       for (int k=0; k<N; k++)
-          absSig[k] = fftSig[k].abs();
+          absSig[k] = Math.hypot(re[k], im[k]);
       return absSig;
   }
   
   static public double [] realsfft(double [] sig) {
-      Complex  [] fftSig = fft(sig);
-      int N = fftSig.length;
-      double [] realsSig = new double[N];
-      for (int k=0; k<N; k++)
-          realsSig[k] = fftSig[k].getReal();
-      return realsSig;
+      return splitfft(sig)[0];
   }
   
   static public double [] imagsfft(double [] sig) {
-      Complex  [] fftSig = fft(sig);
-      int N = fftSig.length;
-      double [] imagsSig = new double[N];
-      for (int k=0; k<N; k++)
-          imagsSig[k] = fftSig[k].getImaginary();
-      return imagsSig;
+      return splitfft(sig)[1];
   }
   
   static public double [] absfft(Vec vsig) {
@@ -78,14 +77,32 @@ public class ApacheFFT  {
       return imagsfft(vsig.getv());
   } 
   
+  // the inverse transform, scaled by 1/N, of any length N
   static  public Complex [] ifft(Complex [] sig)  {
+        int N = sig.length;
+        double [] re = new double[N];
+        double [] im = new double[N];
+        for (int k=0; k<N; k++) {
+            re[k] = sig[k].getReal();
+            im[k] = sig[k].getImaginary();
+        }
+        FFTPlan.plan(N).inverse(re, im);
         
-        FastFourierTransformer fftj = new FastFourierTransformer(DftNormalization.STANDARD);
-        Complex [] result =   fftj.transform(sig, TransformType.INVERSE);
-        
+        Complex [] result = new Complex[N];
+        for (int k=0; k<N; k++)
+            result[k] = new Complex(re[k], im[k]);
         return result;
         }            
    
+  // in-place transforms of complex signals of any length, at split real and imaginary parts
+  static public void fft(double [] re, double [] im)  {
+      FFTPlan.plan(re.length).forward(re, im);
+  }
+  
+  static public void ifft(double [] re, double [] im)  {
+      FFTPlan.plan(re.length).inverse(re, im);
+  }
+   
    static  public Complex []  fft(Vec  sigVec)  {
      return fft(sigVec.getv());    
    }            
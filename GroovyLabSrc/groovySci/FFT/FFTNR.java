@@ -46,25 +46,20 @@ public class  FFTNR {
     } 
          
     N = paddedData.length;
-    int  N2 = (int) (N/2.0);
+    int  N2 = N/2;
     double []  realffts = new double[N2];
     double []  imffts = new double[N2];
-    double []  cpdata =NR.Common.copy(paddedData);  // copy the input data
-  /**
-   * Replaces cpdata[0..2*n-1] by its discrete Fourier transform, if isign is
-   * input as 1; or replaces cpdata[0..2*n-1] by n times its inverse discrete
-   * Fourier transform, if isign is input as 1. data is a complex array of
-   * length n stored as a real array of length 2*n. n must be an integer power of 2.
-   */
-    com.nr.fft.FFT.realft(cpdata, 1);  // perform the FFT
-    int  cnt = 0;
-    int   k = 0;
-    while  ( k < N) {
-        realffts[cnt] = cpdata[k];
-        imffts[cnt] = cpdata[k+1];
-        k += 2;
-        cnt++;
+    double []  re = new double[N2+1];
+    double []  im = new double[N2+1];
+    RealFFTPlan.plan(N).forward(paddedData, re, im);  // perform the FFT, the input data are not modified
+    //  the Numerical Recipes layout of realft: the transform with exp(+2 pi i j k/N), i.e. the complex conjugates,
+    //  and the real-valued last coefficient at the place of the imaginary part of the first
+    for (int k=0; k<N2; k++) {
+        realffts[k] = re[k];
+        imffts[k] = -im[k];
     }
+    if (N2 > 0)
+        imffts[0] = re[N2];
    FFTResults resultFFT = new FFTResults();
     resultFFT.realFFTs = realffts;
     resultFFT.imFFTs = imffts;
@@ -79,44 +74,14 @@ public class  FFTNR {
   }
   
   public static FFTResults  fft(double [] data, double  SFreq)  {
-    int   N = data.length;
-    
-    double [] paddedData = data;  //  we will actually pad only for signal length not a power of 2 
-    int  p2N = (int) java.lang.Math.ceil(log2(N));
-    int  newN = (int) java.lang.Math.pow(2, p2N);
-    
-    if (newN != N)  { // not a power of two, zero pad
-        paddedData = new double[newN];
-        int  k=0;
-        while (k<N)  {
-          paddedData[k] = 0.0;
-          k++;
-          }
-       }
-   
-    N = paddedData.length;
-    int   N2 = (int) (N/2.0);
+    FFTResults resultFFT = fft(data);
+    int   N2 = resultFFT.realFFTs.length;
+    int   N = 2*N2;   // the padded length
     double  Delta = 1.0/SFreq;  // the sampling interval
     double  ND = N * Delta;
     double [] freqs = new double[N2];  // the positive frequency axis half of the complex Fourier Transform
-    double [] realffts = new double[N2];
-    double [] imffts = new double[N2];
-    double [] cpdata = NR.Common.copy(data);  // copy the input data
-    com.nr.fft.FFT.realft(cpdata, 1);  // perform the FFT
-    int   cnt = 0;
-    int   k = 0;
-    //positive frequencies
-    while  ( k <= N2) {
-        realffts[cnt] = cpdata[k];
-        imffts[cnt] = cpdata[k+1];
+    for (int cnt=0; cnt<N2; cnt++)
         freqs[cnt] = cnt/ND;
-        k += 2;
-        cnt++;
-    }
-    
-    FFTResults resultFFT = new FFTResults();
-    resultFFT.realFFTs = realffts;
-    resultFFT.imFFTs = imffts;
     resultFFT.freqs = freqs;
     
     return resultFFT;
@@ -128,23 +93,16 @@ public static double []  ifft(double [] realffts,  double [] imffts)   {
   int  M = realffts.length;
   int  N = M*2;
   double []  rd = new double[N];
-  int k = 0;
-  int k2 = 0;
-  while (k < M) {
-    rd[k2] = realffts[k];
-    rd[k2+1] = imffts[k];
-    k++;
-    k2+=2;
-  }
-  com.nr.fft.FFT.realft(rd, -1);  // perform the inverse FFT
-  
-    // normalize properly
-  int Nd2 = N/2;
-  k=0;
-  while (k<N) {
-    rd[k] /= Nd2;
-    k++;
+  // the inverse of the layout of fft(), with the cached RealFFTPlan
+  double [] re = new double[M+1];
+  double [] im = new double[M+1];
+  re[0] = realffts[0];
+  re[M] = imffts[0];
+  for (int k=1; k<M; k++) {
+    re[k] = realffts[k];
+    im[k] = -imffts[k];
   }
+  RealFFTPlan.plan(N).inverse(re, im, rd);  // perform the inverse FFT, normalized by 1/N
   return rd;
 }
   
@@ -0,0 +1,230 @@
+package groovySci.FFT;
+
+import java.util.HashMap;
+
+/*
+ A plan for the complex discrete Fourier transform of a fixed length n, over split real/imaginary double [] arrays.
+
+ The plan precomputes everything that depends only on n: the twiddle factors and the bit-reversal permutation
+ for lengths that are powers of 2, and, for the other lengths, the chirp and the transformed chirp filter of
+ Bluestein's algorithm, that evaluates the transform as a convolution with a power of 2 transform.
+ Plans are cached by length, thus the tables are built once, and a transform allocates no objects:
+ the scratch buffers of Bluestein's algorithm are kept per thread.
+
+ The forward transform is  X[k] = sum_j x[j] exp(-2 pi i j k / n),  the inverse transform is scaled by 1/n, e.g.
+
+   p = FFTPlan.plan(1000)
+   re = new double[1000];  im = new double[1000]
+   for (k in 0..<1000) re[k] = Math.sin(0.3*k)
+   p.forward(re, im)      // in-place
+   p.inverse(re, im)      // re, im hold again the signal
+
+ RealFFTPlan transforms real signals and MultiFFTPlan transforms 2-D and 3-D arrays on top of these plans.
+ */
+public class FFTPlan {
+
+    private static final HashMap<Integer, FFTPlan> plans = new HashMap<Integer, FFTPlan>();
+
+    // the cached plan for length n
+    public static synchronized FFTPlan plan(int n) {
+        FFTPlan p = plans.get(n);
+        if (p == null) {
+            p = new FFTPlan(n);
+            plans.put(n, p);
+        }
+        return p;
+    }
+
+    // drops the cached plans, e.g. to release the tables of large transforms
+    public static synchronized void clearCache() {
+        plans.clear();
+        RealFFTPlan.clearCache();
+        MultiFFTPlan.clearCache();
+    }
+
+    public static boolean isPowerOf2(int n) {
+        return n > 0 && (n & (n-1)) == 0;
+    }
+
+    // the smallest power of 2 that is at least n
+    public static int nextPowerOf2(int n) {
+        int p = 1;
+        while (p < n)
+            p <<= 1;
+        return p;
+    }
+
+    final int n;
+    final boolean pow2;
+
+    // radix-2 tables: cos(2 pi k/n), sin(2 pi k/n) for k < n/2, and the bit-reversal permutation
+    private double [] cosT, sinT;
+    private int [] rev;
+
+    // Bluestein's algorithm: the chirp w[k] = exp(-i pi k^2/n), the transform of the conjugate chirp filter
+    // scaled by 1/m, and the power of 2 plan of length m >= 2n-1 that computes the convolution
+    private double [] wRe, wIm, bRe, bIm;
+    private FFTPlan conv;
+    private ThreadLocal<double [][]> scratch;
+
+    private FFTPlan(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("FFT length should be positive, is "+n);
+        this.n = n;
+        pow2 = isPowerOf2(n);
+        if (pow2)
+            initRadix2();
+        else
+            initBluestein();
+    }
+
+    public int length() { return n; }
+
+    private void initRadix2() {
+        int half = n/2;
+        cosT = new double[Math.max(half, 1)];
+        sinT = new double[Math.max(half, 1)];
+        for (int k = 0; k < half; k++) {
+            double a = 2*Math.PI*k/n;
+            cosT[k] = Math.cos(a);
+            sinT[k] = Math.sin(a);
+        }
+        int bits = Integer.numberOfTrailingZeros(n);
+        rev = new int[n];
+        for (int k = 0; k < n; k++)
+            rev[k] = bits == 0 ? 0 : Integer.reverse(k) >>> (32 - bits);
+    }
+
+    private void initBluestein() {
+        final int m = nextPowerOf2(2*n-1);
+        conv = plan(m);
+        wRe = new double[n];  wIm = new double[n];
+        long n2 = 2L*n;
+        for (int k = 0; k < n; k++) {
+            double a = Math.PI*(((long) k*k) % n2)/n;   // k^2 is reduced mod 2n to keep the angle accurate
+            wRe[k] = Math.cos(a);
+            wIm[k] = -Math.sin(a);
+        }
+        bRe = new double[m];  bIm = new double[m];
+        bRe[0] = wRe[0];  bIm[0] = -wIm[0];
+        for (int k = 1; k < n; k++) {
+            bRe[k] = bRe[m-k] = wRe[k];
+            bIm[k] = bIm[m-k] = -wIm[k];
+        }
+        conv.transform(bRe, bIm, 0, false);
+        double scale = 1.0/m;   // the scaling of the inverse convolution transform
+        for (int k = 0; k < m; k++) {
+            bRe[k] *= scale;
+            bIm[k] *= scale;
+        }
+        scratch = new ThreadLocal<double [][]>() {
+            @Override
+            protected double [][] initialValue() {
+                return new double[2][m];
+            }
+        };
+    }
+
+    // in-place forward transform of re[0..n), im[0..n)
+    public void forward(double [] re, double [] im) {
+        forward(re, im, 0);
+    }
+
+    // in-place forward transform of re[off..off+n), im[off..off+n)
+    public void forward(double [] re, double [] im, int off) {
+        check(re, im, off);
+        transform(re, im, off, false);
+    }
+
+    // in-place inverse transform of re[0..n), im[0..n), scaled by 1/n
+    public void inverse(double [] re, double [] im) {
+        inverse(re, im, 0);
+    }
+
+    // in-place inverse transform of re[off..off+n), im[off..off+n), scaled by 1/n
+    public void inverse(double [] re, double [] im, int off) {
+        check(re, im, off);
+        transform(re, im, off, true);
+        double scale = 1.0/n;
+        for (int k = off; k < off+n; k++) {
+            re[k] *= scale;
+            im[k] *= scale;
+        }
+    }
+
+    private void check(double [] re, double [] im, int off) {
+        if (off < 0 || re.length < off+n || im.length < off+n)
+            throw new IllegalArgumentException("FFT of length "+n+" at offset "+off+": the real part has "+re.length+
+                                               " elements, the imaginary part "+im.length);
+    }
+
+    // the unscaled transform, with exp(+2 pi i j k/n) when inverse
+    void transform(double [] re, double [] im, int off, boolean inverse) {
+        if (n == 1)
+            return;
+        if (pow2)
+            radix2(re, im, off, inverse);
+        else
+            bluestein(re, im, off, inverse);
+    }
+
+    private void radix2(double [] re, double [] im, int off, boolean inverse) {
+        for (int k = 0; k < n; k++) {
+            int j = rev[k];
+            if (j > k) {
+                double t = re[off+k];  re[off+k] = re[off+j];  re[off+j] = t;
+                t = im[off+k];  im[off+k] = im[off+j];  im[off+j] = t;
+            }
+        }
+        // the length 2 butterflies need no twiddle factors
+        for (int a = off; a < off+n; a += 2) {
+            double xr = re[a+1], xi = im[a+1];
+            re[a+1] = re[a]-xr;  im[a+1] = im[a]-xi;
+            re[a] += xr;  im[a] += xi;
+        }
+        double sgn = inverse ? 1.0 : -1.0;
+        for (int len = 4; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n/len;
+            for (int i = off; i < off+n; i += len) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    double wr = cosT[t], wi = sgn*sinT[t];
+                    int a = i+k, b = a+half;
+                    double xr = re[b]*wr - im[b]*wi;
+                    double xi = re[b]*wi + im[b]*wr;
+                    re[b] = re[a]-xr;  im[b] = im[a]-xi;
+                    re[a] += xr;  im[a] += xi;
+                }
+            }
+        }
+    }
+
+    // X[k] = w[k] * sum_j (x[j] w[j]) conj(w[k-j]), the convolution is computed with the power of 2 plan
+    private void bluestein(double [] re, double [] im, int off, boolean inverse) {
+        double [][] s = scratch.get();
+        double [] ar = s[0], ai = s[1];
+        int m = ar.length;
+        double sgn = inverse ? -1.0 : 1.0;   // the inverse is the conjugate of the forward transform of the conjugate
+        for (int j = 0; j < n; j++) {
+            double xr = re[off+j], xi = sgn*im[off+j];
+            ar[j] = xr*wRe[j] - xi*wIm[j];
+            ai[j] = xr*wIm[j] + xi*wRe[j];
+        }
+        for (int j = n; j < m; j++) {
+            ar[j] = 0.0;
+            ai[j] = 0.0;
+        }
+        conv.transform(ar, ai, 0, false);
+        for (int j = 0; j < m; j++) {
+            double xr = ar[j], xi = ai[j];
+            ar[j] = xr*bRe[j] - xi*bIm[j];
+            ai[j] = xr*bIm[j] + xi*bRe[j];
+        }
+        conv.transform(ar, ai, 0, true);
+        for (int k = 0; k < n; k++) {
+            double cr = ar[k], ci = ai[k];
+            re[off+k] = cr*wRe[k] - ci*wIm[k];
+            im[off+k] = sgn*(cr*wIm[k] + ci*wRe[k]);
+        }
+    }
+}
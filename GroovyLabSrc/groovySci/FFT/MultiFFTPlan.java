@@ -0,0 +1,283 @@
+package groovySci.FFT;
+
+import groovySci.math.array.ParallelEngine;
+import java.util.HashMap;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ A plan for the multidimensional (e.g. 2-D and 3-D) discrete Fourier transform of complex or real arrays.
+
+ The arrays are stored flat in row-major order, i.e. the last index varies fastest, with split real/imaginary parts.
+ The transform is computed with 1-D transforms along each dimension, with the FFTPlan / RealFFTPlan of its length.
+ The lines along the last dimension are transformed in place, the lines along the other dimensions are gathered
+ in blocks of adjacent lines, so that the strided accesses read consecutive elements.
+ Arrays with at least minParallelElements elements are transformed in parallel, with the lines of each pass
+ split across the threads of the ParallelEngine pool.
+
+ For a real plan the forward transform returns the non-negative frequencies of the last dimension only,
+ i.e. an array of shape dims[0] x ... x (dims[last]/2+1), e.g.
+
+   p = MultiFFTPlan.complex(512, 512)
+   re = new double[512*512];  im = new double[512*512]
+   p.forward(re, im);   p.inverse(re, im)       // in-place, the inverse is scaled by 1/(512*512)
+
+   q = MultiFFTPlan.real(64, 64, 64)
+   x = new double[64*64*64];  re = new double[q.spectrumSize()];  im = new double[q.spectrumSize()]
+   q.forward(x, re, im);   q.inverse(re, im, x)   // the inverse overwrites re, im
+ */
+public class MultiFFTPlan {
+
+    // arrays with at least that many elements are transformed in parallel
+    public static int minParallelElements = 1 << 15;
+    // the number of adjacent strided lines gathered together, for the plans built afterwards
+    public static int gatherBlock = 8;
+
+    private static final HashMap<String, MultiFFTPlan> plans = new HashMap<String, MultiFFTPlan>();
+
+    // the cached plan for the complex transform of arrays with these dimensions
+    public static MultiFFTPlan complex(int... dims) {
+        return plan(false, dims);
+    }
+
+    // the cached plan for the transform of real arrays with these dimensions
+    public static MultiFFTPlan real(int... dims) {
+        return plan(true, dims);
+    }
+
+    private static synchronized MultiFFTPlan plan(boolean real, int [] dims) {
+        String key = (real ? "r" : "c")+java.util.Arrays.toString(dims);
+        MultiFFTPlan p = plans.get(key);
+        if (p == null) {
+            p = new MultiFFTPlan(real, dims.clone());
+            plans.put(key, p);
+        }
+        return p;
+    }
+
+    static synchronized void clearCache() {
+        plans.clear();
+    }
+
+    final boolean real;
+    final int [] dims;    // of the signal
+    final int [] cdims;   // of the transform, the last dimension is dims[last]/2+1 for real plans
+    final int size, csize;
+    final FFTPlan [] axisPlans;
+    final RealFFTPlan lastPlan;   // for real plans
+    final int block;   // gatherBlock when the plan was built
+    private final ThreadLocal<double [][]> gather;   // the real and imaginary parts of the gathered lines
+
+    private MultiFFTPlan(boolean real, int [] dims) {
+        if (dims.length == 0)
+            throw new IllegalArgumentException("the FFT plan should have at least one dimension");
+        this.real = real;
+        this.dims = dims;
+        int d = dims.length;
+        cdims = dims.clone();
+        if (real)
+            cdims[d-1] = dims[d-1]/2+1;
+        long sz = 1, csz = 1;
+        axisPlans = new FFTPlan[d];
+        int maxLen = 0;
+        for (int a = 0; a < d; a++) {
+            if (dims[a] < 1)
+                throw new IllegalArgumentException("FFT dimension "+a+" should be positive, is "+dims[a]);
+            sz *= dims[a];
+            csz *= cdims[a];
+            if (!real || a < d-1) {
+                axisPlans[a] = FFTPlan.plan(dims[a]);
+                maxLen = Math.max(maxLen, dims[a]);
+            }
+        }
+        if (csz > Integer.MAX_VALUE || sz > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("FFT arrays of "+java.util.Arrays.toString(dims)+" do not fit at a Java array");
+        size = (int) sz;
+        csize = (int) csz;
+        lastPlan = real ? RealFFTPlan.plan(dims[d-1]) : null;
+        block = Math.max(1, gatherBlock);
+        final int gatherLen = block*maxLen;
+        gather = new ThreadLocal<double [][]>() {
+            @Override
+            protected double [][] initialValue() {
+                return new double[2][gatherLen];
+            }
+        };
+    }
+
+    public int [] dims() { return dims.clone(); }
+
+    // the number of elements of the signal
+    public int size() { return size; }
+
+    // the number of complex elements of the transform
+    public int spectrumSize() { return csize; }
+
+    // in-place forward transform of a complex array
+    public void forward(double [] re, double [] im) {
+        if (real)
+            throw new IllegalArgumentException("forward(re, im) transforms complex arrays, use forward(x, re, im) with a real plan");
+        check(re, im, size);
+        for (int a = dims.length-1; a >= 0; a--)
+            pass(a, re, im, false);
+    }
+
+    // in-place inverse transform of a complex array, scaled by 1/size()
+    public void inverse(double [] re, double [] im) {
+        if (real)
+            throw new IllegalArgumentException("inverse(re, im) transforms complex arrays, use inverse(re, im, x) with a real plan");
+        check(re, im, size);
+        for (int a = 0; a < dims.length; a++)
+            pass(a, re, im, true);
+    }
+
+    // re, im = the transform of the real array x, of spectrumSize() elements
+    public void forward(double [] x, double [] re, double [] im) {
+        if (!real)
+            throw new IllegalArgumentException("forward(x, re, im) transforms real arrays, use a real plan");
+        if (x.length < size)
+            throw new IllegalArgumentException("the real array should have "+size+" elements, has "+x.length);
+        check(re, im, csize);
+        runLines(new LinesTask(this, -1, x, re, im, false, 0, csize/cdims[dims.length-1]));
+        for (int a = dims.length-2; a >= 0; a--)
+            pass(a, re, im, false);
+    }
+
+    // x = the inverse transform of re, im, scaled by 1/size(). re and im are overwritten
+    public void inverse(double [] re, double [] im, double [] x) {
+        if (!real)
+            throw new IllegalArgumentException("inverse(re, im, x) transforms to real arrays, use a real plan");
+        if (x.length < size)
+            throw new IllegalArgumentException("the real array should have "+size+" elements, has "+x.length);
+        check(re, im, csize);
+        for (int a = 0; a < dims.length-1; a++)
+            pass(a, re, im, true);
+        runLines(new LinesTask(this, -1, x, re, im, true, 0, csize/cdims[dims.length-1]));
+    }
+
+    // the complex transform along the dimensions [a0, a1) only, e.g. OutOfCoreFFT transforms the
+    // slices of its slabs with a0 = 1. The inverse is scaled by the product of these dimensions
+    void transformAxes(double [] re, double [] im, int a0, int a1, boolean inverse) {
+        check(re, im, csize);
+        for (int a = a1-1; a >= a0; a--)
+            pass(a, re, im, inverse);
+    }
+
+    private void check(double [] re, double [] im, int n) {
+        if (re.length < n || im.length < n)
+            throw new IllegalArgumentException("the transform arrays should have "+n+" elements, the real part has "+
+                                               re.length+", the imaginary part "+im.length);
+    }
+
+    // the stride of the dimension a at the transform array
+    private int stride(int a) {
+        int s = 1;
+        for (int k = a+1; k < cdims.length; k++)
+            s *= cdims[k];
+        return s;
+    }
+
+    // the number of work units of the pass along dimension a: lines for the last dimension, blocks of lines otherwise
+    private int units(int a) {
+        int s = stride(a);
+        int outer = csize/(s*cdims[a]);
+        return s == 1 ? outer : outer*((s + block - 1)/block);
+    }
+
+    private void pass(int a, double [] re, double [] im, boolean inverse) {
+        runLines(new LinesTask(this, a, null, re, im, inverse, 0, units(a)));
+    }
+
+    private void runLines(LinesTask t) {
+        if (csize < minParallelElements || t.u1 - t.u0 < 2 || ParallelEngine.getNumThreads() < 2) {
+            t.units(t.u0, t.u1);
+            return;
+        }
+        t.grain = Math.max(1, (t.u1 - t.u0)/(4*ParallelEngine.getNumThreads()));
+        ParallelEngine.run(t);
+    }
+
+    // transforms the lines of the units [u0, u1) of the pass along dimension a
+    void lines(int a, double [] re, double [] im, boolean inverse, int u0, int u1) {
+        FFTPlan p = axisPlans[a];
+        int len = cdims[a];
+        int s = stride(a);
+        if (s == 1) {
+            for (int u = u0; u < u1; u++)
+                if (inverse)
+                    p.inverse(re, im, u*len);
+                else
+                    p.forward(re, im, u*len);
+            return;
+        }
+        double [][] g = gather.get();
+        double [] gr = g[0], gi = g[1];
+        int B = block;
+        int blocksPerOuter = (s + B - 1)/B;
+        for (int u = u0; u < u1; u++) {
+            int outer = u / blocksPerOuter;
+            int first = (u % blocksPerOuter)*B;
+            int nb = Math.min(B, s - first);
+            int base = outer*len*s + first;
+            for (int k = 0, idx = base; k < len; k++, idx += s)
+                for (int b = 0; b < nb; b++) {
+                    gr[b*len + k] = re[idx+b];
+                    gi[b*len + k] = im[idx+b];
+                }
+            for (int b = 0; b < nb; b++)
+                if (inverse)
+                    p.inverse(gr, gi, b*len);
+                else
+                    p.forward(gr, gi, b*len);
+            for (int k = 0, idx = base; k < len; k++, idx += s)
+                for (int b = 0; b < nb; b++) {
+                    re[idx+b] = gr[b*len + k];
+                    im[idx+b] = gi[b*len + k];
+                }
+        }
+    }
+
+    // the real transforms of the lines [u0, u1) along the last dimension
+    void realLines(double [] x, double [] re, double [] im, boolean inverse, int u0, int u1) {
+        int n = dims[dims.length-1], cn = cdims[dims.length-1];
+        for (int u = u0; u < u1; u++)
+            if (inverse)
+                lastPlan.inverse(re, im, u*cn, x, u*n);
+            else
+                lastPlan.forward(x, u*n, re, im, u*cn);
+    }
+
+    // a pass along dimension a, or the real pass along the last dimension when a is -1
+    static class LinesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final MultiFFTPlan plan;  final int a;
+        final double [] x, re, im;  final boolean inverse;
+        final int u0, u1;
+        int grain = 1;
+
+        LinesTask(MultiFFTPlan plan, int a, double [] x, double [] re, double [] im, boolean inverse, int u0, int u1) {
+            this.plan = plan;  this.a = a;  this.x = x;  this.re = re;  this.im = im;  this.inverse = inverse;
+            this.u0 = u0;  this.u1 = u1;
+        }
+
+        void units(int v0, int v1) {
+            if (a < 0)
+                plan.realLines(x, re, im, inverse, v0, v1);
+            else
+                plan.lines(a, re, im, inverse, v0, v1);
+        }
+
+        @Override
+        protected void compute() {
+            if (u1 - u0 <= grain) {
+                units(u0, u1);
+                return;
+            }
+            int mid = (u0 + u1) >>> 1;
+            LinesTask left = new LinesTask(plan, a, x, re, im, inverse, u0, mid);
+            LinesTask right = new LinesTask(plan, a, x, re, im, inverse, mid, u1);
+            left.grain = right.grain = grain;
+            invokeAll(left, right);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package groovySci.FFT;
+
+import com.jmatio.io.MatFileReader;
+import com.jmatio.types.MLArray;
+import com.jmatio.types.MLDouble;
+import groovySci.math.array.Matrix;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ Out-of-core multidimensional FFT of complex arrays stored at a single memory-mapped scratch file.
+
+ The scratch file holds the array in row-major order (the last index varies fastest) as interleaved complex
+ doubles (re, im), thus it can be larger than the available memory. The transform is computed with two kinds of passes
+ over slabs of about slabBytes bytes:
+   - the slices along the first dimension are loaded in groups of consecutive slices and transformed along
+     all the other dimensions with a MultiFFTPlan,
+   - the array is then loaded in blocks of columns of the first dimension, that are transposed while loaded into
+     contiguous lines, transformed with the FFTPlan of the first dimension, and transposed back while stored.
+ Two slab buffers are used: a background thread stores the previous slab and loads the next one while the
+ current slab is transformed, so I/O is overlapped with compute. The transforms of a slab run in parallel on the
+ ParallelEngine pool. The memory needed is about 2*slabBytes, plus one slice along the first dimension if that is larger.
+
+ The file is mapped in segments of up to 1 GB, and the mapping is released by the garbage collector after close().
+
+   // a 2000 x 2000 x 3000 seismic volume of float samples (192 GB as complex doubles)
+   f = OutOfCoreFFT.fromRawVolume("/data/vol.raw", 4, java.nio.ByteOrder.BIG_ENDIAN, "/scratch/vol.fft", 2000, 2000, 3000)
+   f.forward()
+   re = new double[3000]; im = new double[3000]
+   f.read(0, re, im)          // the first line of the transform
+   f.close()
+
+   // a Matrix, or a variable of a MAT-file mapped lazily
+   f = OutOfCoreFFT.fromMatrix(rand(4000, 4000), "/scratch/m.fft");  f.forward();  F = f.toMatrix()
+   f = OutOfCoreFFT.fromMat("/data/big.mat", "x", "/scratch/x.fft")   // MAT arrays are column-major, see fromMat
+ */
+public class OutOfCoreFFT implements Closeable {
+
+    // the size in bytes of each of the two in-memory slab buffers
+    public static long slabBytes = 256L << 20;
+
+    private static final long SEGMENT_BYTES = 1L << 30;   // a multiple of 16, complex elements do not cross segments
+    private static final int SEGMENT_DOUBLES = (int) (SEGMENT_BYTES/8);
+    private static final int CHUNK = 1 << 15;   // complex elements converted at a time by read/write
+    private static final int TILE = 32;   // rows read together by the transposing loads
+
+    final int [] dims;
+    final long size;   // the number of complex elements
+    final File file;
+    final ByteOrder order;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer [] segments;
+    private DoubleBuffer [] views;
+
+    // opens the scratch file, it is created, or extended with zeros, if it is shorter than the array
+    public OutOfCoreFFT(String scratchFile, int... dims) throws IOException {
+        this(new File(scratchFile), ByteOrder.nativeOrder(), dims);
+    }
+
+    public OutOfCoreFFT(File scratchFile, ByteOrder order, int... dims) throws IOException {
+        if (dims.length < 2)
+            throw new IllegalArgumentException("the out-of-core FFT is for arrays of at least 2 dimensions, use FFTPlan for 1-D");
+        long n = 1;
+        for (int a = 0; a < dims.length; a++) {
+            if (dims[a] < 1)
+                throw new IllegalArgumentException("FFT dimension "+a+" should be positive, is "+dims[a]);
+            n *= dims[a];
+        }
+        this.dims = dims.clone();
+        size = n;
+        file = scratchFile;
+        this.order = order;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long bytes = 16*size;
+        if (raf.length() < bytes)
+            raf.setLength(bytes);
+        int nseg = (int) ((bytes + SEGMENT_BYTES - 1)/SEGMENT_BYTES);
+        segments = new MappedByteBuffer[nseg];
+        views = new DoubleBuffer[nseg];
+        for (int s = 0; s < nseg; s++) {
+            long pos = s*SEGMENT_BYTES;
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, pos, Math.min(SEGMENT_BYTES, bytes - pos));
+            views[s] = segments[s].order(order).asDoubleBuffer();
+        }
+    }
+
+    public int [] dims() { return dims.clone(); }
+
+    // the number of complex elements
+    public long size() { return size; }
+
+    public File getFile() { return file; }
+
+    // in-place forward transform of the scratch file
+    public void forward() throws IOException {
+        transform(false);
+    }
+
+    // in-place inverse transform of the scratch file, scaled by 1/size()
+    public void inverse() throws IOException {
+        transform(true);
+    }
+
+    private void transform(boolean inverse) throws IOException {
+        checkOpen();
+        pipeline(new SlicePass(inverse));
+        pipeline(new ColumnPass(inverse));
+    }
+
+    // writes the mapped segments to the file
+    public synchronized void flush() {
+        if (segments != null)
+            for (MappedByteBuffer s : segments)
+                s.force();
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel == null)
+            return;
+        flush();
+        segments = null;
+        views = null;
+        channel.close();
+        raf.close();
+        channel = null;
+        raf = null;
+    }
+
+    // closes the scratch file when its loading failed, without hiding the error of the loading
+    private void closeAfterFailure() {
+        try {
+            close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private void checkOpen() {
+        if (views == null)
+            throw new IllegalStateException("the out-of-core FFT of "+file+" is closed");
+    }
+
+    // re[0..len), im[0..len) = the complex elements [first, first+len) of the array, in row-major order
+    public void read(long first, double [] re, double [] im) {
+        read(first, re, im, 0, Math.min(re.length, im.length));
+    }
+
+    public void read(long first, double [] re, double [] im, int off, int len) {
+        checkRange(first, len);
+        double [] tmp = new double[2*Math.min(len, CHUNK)];
+        for (int done = 0; done < len; ) {
+            int n = Math.min(CHUNK, len - done);
+            readRun(first + done, n, tmp, 0);
+            for (int k = 0, j = off + done; k < n; k++, j++) {
+                re[j] = tmp[2*k];
+                im[j] = tmp[2*k+1];
+            }
+            done += n;
+        }
+    }
+
+    // the complex elements [first, first+len) of the array = re[off..off+len), im[off..off+len), im can be null for zeros
+    public void write(long first, double [] re, double [] im, int off, int len) {
+        checkRange(first, len);
+        double [] tmp = new double[2*Math.min(len, CHUNK)];
+        for (int done = 0; done < len; ) {
+            int n = Math.min(CHUNK, len - done);
+            for (int k = 0, j = off + done; k < n; k++, j++) {
+                tmp[2*k] = re[j];
+                tmp[2*k+1] = im == null ? 0.0 : im[j];
+            }
+            writeRun(first + done, n, tmp, 0);
+            done += n;
+        }
+    }
+
+    private void checkRange(long first, int len) {
+        if (first < 0 || len < 0 || first + len > size)
+            throw new IllegalArgumentException("elements ["+first+", "+(first+len)+") are out of the array of "+size+" elements");
+    }
+
+    // the real, or the imaginary, part of a 2-D array as a Matrix
+    public Matrix toMatrix() {
+        return toMatrix(false);
+    }
+
+    public Matrix toMatrix(boolean imaginary) {
+        if (dims.length != 2)
+            throw new IllegalArgumentException("toMatrix() is for 2-D arrays, the array is "+java.util.Arrays.toString(dims));
+        int rows = dims[0], cols = dims[1];
+        Matrix M = Matrix.flat(rows, cols);
+        double [] fd = M.getFlatArray();
+        double [] re = new double[cols], im = new double[cols];
+        for (int r = 0; r < rows; r++) {
+            read((long) r*cols, re, im, 0, cols);
+            System.arraycopy(imaginary ? im : re, 0, fd, r*cols, cols);
+        }
+        return M;
+    }
+
+    // interleaved complex elements [e, e+count) to/from dst[off..off+2*count)
+    synchronized void readRun(long e, int count, double [] dst, int off) {
+        checkOpen();
+        long pos = 2*e;
+        int left = 2*count;
+        while (left > 0) {
+            DoubleBuffer v = views[(int) (pos/SEGMENT_DOUBLES)];
+            int within = (int) (pos % SEGMENT_DOUBLES);
+            int n = Math.min(left, v.limit() - within);
+            v.position(within);
+            v.get(dst, off, n);
+            pos += n;  off += n;  left -= n;
+        }
+    }
+
+    synchronized void writeRun(long e, int count, double [] src, int off) {
+        checkOpen();
+        long pos = 2*e;
+        int left = 2*count;
+        while (left > 0) {
+            DoubleBuffer v = views[(int) (pos/SEGMENT_DOUBLES)];
+            int within = (int) (pos % SEGMENT_DOUBLES);
+            int n = Math.min(left, v.limit() - within);
+            v.position(within);
+            v.put(src, off, n);
+            pos += n;  off += n;  left -= n;
+        }
+    }
+
+    // a Matrix copied to the scratch file, as a complex array with zero imaginary parts
+    public static OutOfCoreFFT fromMatrix(Matrix M, String scratchFile) throws IOException {
+        int rows = M.numRows(), cols = M.numCols();
+        OutOfCoreFFT f = new OutOfCoreFFT(scratchFile, rows, cols);
+        boolean loaded = false;
+        try {
+            double [] row = new double[cols];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++)
+                    row[c] = M.get(r, c);
+                f.write((long) r*cols, row, null, 0, cols);
+            }
+            loaded = true;
+        } finally {
+            if (!loaded)
+                f.closeAfterFailure();
+        }
+        return f;
+    }
+
+    // a raw file of real samples in row-major order, with 4 (float) or 8 (double) bytes per sample,
+    // copied to the scratch file as a complex array with zero imaginary parts
+    public static OutOfCoreFFT fromRawVolume(String dataFile, int bytesPerSample, ByteOrder dataOrder, String scratchFile,
+                                             int... dims) throws IOException {
+        if (bytesPerSample != 4 && bytesPerSample != 8)
+            throw new IllegalArgumentException("samples should have 4 (float) or 8 (double) bytes, not "+bytesPerSample);
+        OutOfCoreFFT f = new OutOfCoreFFT(scratchFile, dims);
+        RandomAccessFile in = null;
+        boolean loaded = false;
+        try {
+            in = new RandomAccessFile(dataFile, "r");
+            FileChannel ch = in.getChannel();
+            if (ch.size() < f.size*bytesPerSample)
+                throw new IllegalArgumentException(dataFile+" has "+ch.size()+" bytes, the volume "+java.util.Arrays.toString(dims)+
+                                                   " needs "+f.size*bytesPerSample);
+            ByteBuffer bb = ByteBuffer.allocateDirect(CHUNK*bytesPerSample).order(dataOrder);
+            double [] samples = new double[CHUNK];
+            for (long e = 0; e < f.size; ) {
+                int n = (int) Math.min(CHUNK, f.size - e);
+                bb.clear();
+                bb.limit(n*bytesPerSample);
+                while (bb.hasRemaining())
+                    if (ch.read(bb, e*bytesPerSample + bb.position()) < 0)
+                        throw new IOException("unexpected end of "+dataFile);
+                bb.flip();
+                for (int k = 0; k < n; k++)
+                    samples[k] = bytesPerSample == 4 ? bb.getFloat() : bb.getDouble();
+                f.write(e, samples, null, 0, n);
+                e += n;
+            }
+            loaded = true;
+        } finally {
+            if (!loaded)
+                f.closeAfterFailure();
+            if (in != null)
+                in.close();
+        }
+        return f;
+    }
+
+    // a double variable of a MAT-file, read through the lazily mapped MatFileReader.
+    // MAT arrays are stored by columns, thus the scratch array has the dimensions of the variable reversed,
+    // e.g. an m x n matrix is transformed as its n x m transpose, and the transform is the transpose of the matrix transform
+    public static OutOfCoreFFT fromMat(String matFile, String name, String scratchFile) throws IOException {
+        MatFileReader reader = new MatFileReader(matFile, true);
+        try {
+            MLArray array = reader.getMLArray(name);
+            if (!(array instanceof MLDouble))
+                throw new IllegalArgumentException(matFile+" has no double variable "+name);
+            MLDouble x = (MLDouble) array;
+            int [] mdims = x.getDimensions();
+            int [] rdims = new int[mdims.length];
+            for (int a = 0; a < mdims.length; a++)
+                rdims[a] = mdims[mdims.length-1-a];
+            OutOfCoreFFT f = new OutOfCoreFFT(scratchFile, rdims);
+            boolean loaded = false;
+            try {
+                DoubleBuffer re = x.getRealDoubleBuffer();
+                DoubleBuffer im = x.getImaginaryDoubleBuffer();
+                double [] cre = new double[CHUNK], cim = im == null ? null : new double[CHUNK];
+                for (long e = 0; e < f.size; ) {
+                    int n = (int) Math.min(CHUNK, f.size - e);
+                    re.get(cre, 0, n);
+                    if (im != null)
+                        im.get(cim, 0, n);
+                    f.write(e, cre, cim, 0, n);
+                    e += n;
+                }
+                loaded = true;
+            } finally {
+                if (!loaded)
+                    f.closeAfterFailure();
+            }
+            return f;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // the in-memory buffers of a slab, with split real and imaginary parts
+    static class Slab {
+        double [] re, im, tmp;
+
+        void ensure(int n, int ntmp) {
+            if (re == null || re.length < n) {
+                re = new double[n];
+                im = new double[n];
+            }
+            if (tmp == null || tmp.length < ntmp)
+                tmp = new double[ntmp];
+        }
+    }
+
+    // a pass over the array in slabs
+    abstract class Pass {
+        final boolean inverse;
+
+        Pass(boolean inverse) { this.inverse = inverse; }
+
+        abstract int count();
+        abstract void load(int i, Slab b);
+        abstract void compute(int i, Slab b);
+        abstract void store(int i, Slab b);
+    }
+
+    // the groups of consecutive slices along the first dimension, transformed along the other dimensions
+    class SlicePass extends Pass {
+        final int inner;   // the elements of a slice
+        final int slices;   // slices per slab
+        final int [] slabDims;
+
+        SlicePass(boolean inverse) {
+            super(inverse);
+            long in = size/dims[0];
+            if (in > Integer.MAX_VALUE/2)
+                throw new IllegalArgumentException("the slices of "+java.util.Arrays.toString(dims)+" do not fit at a Java array");
+            inner = (int) in;
+            slices = (int) Math.max(1, Math.min(dims[0], Math.min(slabBytes/(16L*inner), Integer.MAX_VALUE/2/inner)));
+            slabDims = dims.clone();
+        }
+
+        int count() { return (dims[0] + slices - 1)/slices; }
+
+        private int slicesOf(int i) { return Math.min(slices, dims[0] - i*slices); }
+
+        void load(int i, Slab b) {
+            int n = slicesOf(i)*inner;
+            b.ensure(slices*inner, 2*CHUNK);
+            long first = (long) i*slices*inner;
+            for (int done = 0; done < n; ) {
+                int len = Math.min(CHUNK, n - done);
+                readRun(first + done, len, b.tmp, 0);
+                for (int k = 0, j = done; k < len; k++, j++) {
+                    b.re[j] = b.tmp[2*k];
+                    b.im[j] = b.tmp[2*k+1];
+                }
+                done += len;
+            }
+        }
+
+        void compute(int i, Slab b) {
+            int [] d = slabDims.clone();
+            d[0] = slicesOf(i);
+            MultiFFTPlan.complex(d).transformAxes(b.re, b.im, 1, d.length, inverse);
+        }
+
+        void store(int i, Slab b) {
+            int n = slicesOf(i)*inner;
+            long first = (long) i*slices*inner;
+            for (int done = 0; done < n; ) {
+                int len = Math.min(CHUNK, n - done);
+                for (int k = 0, j = done; k < len; k++, j++) {
+                    b.tmp[2*k] = b.re[j];
+                    b.tmp[2*k+1] = b.im[j];
+                }
+                writeRun(first + done, len, b.tmp, 0);
+                done += len;
+            }
+        }
+    }
+
+    // the blocks of columns along the first dimension, transposed to contiguous lines of dims[0] elements
+    class ColumnPass extends Pass {
+        final int rows, inner;   // the array as a dims[0] x inner matrix
+        final int width;   // columns per slab
+
+        ColumnPass(boolean inverse) {
+            super(inverse);
+            rows = dims[0];
+            inner = (int) (size/rows);
+            width = (int) Math.max(1, Math.min(inner, Math.min(slabBytes/(16L*rows), Integer.MAX_VALUE/2/rows)));
+        }
+
+        int count() { return (inner + width - 1)/width; }
+
+        private int widthOf(int i) { return Math.min(width, inner - i*width); }
+
+        void load(int i, Slab b) {
+            int w = widthOf(i), c0 = i*width;
+            b.ensure(width*rows, 2*Math.min(TILE, rows)*width);
+            double [] tmp = b.tmp, re = b.re, im = b.im;
+            for (int r0 = 0; r0 < rows; r0 += TILE) {
+                int nt = Math.min(TILE, rows - r0);
+                for (int t = 0; t < nt; t++)
+                    readRun((long) (r0+t)*inner + c0, w, tmp, 2*t*w);
+                for (int c = 0; c < w; c++) {
+                    int base = c*rows + r0;
+                    for (int t = 0; t < nt; t++) {
+                        re[base+t] = tmp[2*(t*w + c)];
+                        im[base+t] = tmp[2*(t*w + c)+1];
+                    }
+                }
+            }
+        }
+
+        void compute(int i, Slab b) {
+            MultiFFTPlan.complex(widthOf(i), rows).transformAxes(b.re, b.im, 1, 2, inverse);
+        }
+
+        void store(int i, Slab b) {
+            int w = widthOf(i), c0 = i*width;
+            double [] tmp = b.tmp, re = b.re, im = b.im;
+            for (int r0 = 0; r0 < rows; r0 += TILE) {
+                int nt = Math.min(TILE, rows - r0);
+                for (int c = 0; c < w; c++) {
+                    int base = c*rows + r0;
+                    for (int t = 0; t < nt; t++) {
+                        tmp[2*(t*w + c)] = re[base+t];
+                        tmp[2*(t*w + c)+1] = im[base+t];
+                    }
+                }
+                for (int t = 0; t < nt; t++)
+                    writeRun((long) (r0+t)*inner + c0, w, tmp, 2*t*w);
+            }
+        }
+    }
+
+    // runs the pass with two slab buffers: the I/O thread stores slab i-1 and loads slab i+1 while slab i is transformed
+    private void pipeline(final Pass p) throws IOException {
+        ExecutorService io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "out-of-core FFT I/O");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final Slab [] slabs = { new Slab(), new Slab() };
+            int n = p.count();
+            Future<?> loaded = io.submit(loadTask(p, 0, slabs[0]));
+            Future<?> stored = null;
+            for (int i = 0; i < n; i++) {
+                Slab b = slabs[i % 2];
+                loaded.get();
+                // the single I/O thread runs the tasks in order, thus the store of slab i-1 completes before
+                // the next slab is loaded at its buffer
+                if (i+1 < n)
+                    loaded = io.submit(loadTask(p, i+1, slabs[(i+1) % 2]));
+                p.compute(i, b);
+                stored = io.submit(storeTask(p, i, b));
+            }
+            if (stored != null)
+                stored.get();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException("out-of-core FFT of "+file+" interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            io.shutdownNow();
+        }
+    }
+
+    private static Callable<Void> loadTask(final Pass p, final int i, final Slab b) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                p.load(i, b);
+                return null;
+            }
+        };
+    }
+
+    private static Callable<Void> storeTask(final Pass p, final int i, final Slab b) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                p.store(i, b);
+                return null;
+            }
+        };
+    }
+}
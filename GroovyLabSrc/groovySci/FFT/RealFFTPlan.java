@@ -0,0 +1,174 @@
+package groovySci.FFT;
+
+import java.util.HashMap;
+
+/*
+ A plan for the discrete Fourier transform of real signals of a fixed length n.
+
+ The forward transform returns the n/2+1 non-negative frequency coefficients X[0..n/2] at split real/imaginary
+ arrays, the remaining ones are their complex conjugates, X[n-k] = conj(X[k]).
+ For even n the signal is transformed as a complex signal of length n/2, with the even samples as the real
+ and the odd samples as the imaginary part, and the coefficients are then separated, thus a real transform costs
+ about half a complex transform of the same length. Odd lengths are transformed with the complex plan.
+
+   p = RealFFTPlan.plan(1024)
+   x = new double[1024];  re = new double[513];  im = new double[513]
+   p.forward(x, re, im)
+   p.inverse(re, im, x)    // scaled by 1/n, x holds again the signal
+ */
+public class RealFFTPlan {
+
+    private static final HashMap<Integer, RealFFTPlan> plans = new HashMap<Integer, RealFFTPlan>();
+
+    // the cached plan for length n
+    public static synchronized RealFFTPlan plan(int n) {
+        RealFFTPlan p = plans.get(n);
+        if (p == null) {
+            p = new RealFFTPlan(n);
+            plans.put(n, p);
+        }
+        return p;
+    }
+
+    static synchronized void clearCache() {
+        plans.clear();
+    }
+
+    final int n;
+    final int h;    // n/2
+    final FFTPlan cplan;   // of length n/2 for even n, of length n for odd n
+    private final double [] cosT, sinT;   // cos(2 pi k/n), sin(2 pi k/n) for k <= n/2
+    private final ThreadLocal<double [][]> scratch;
+
+    private RealFFTPlan(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("FFT length should be positive, is "+n);
+        this.n = n;
+        h = n/2;
+        final boolean even = n % 2 == 0;
+        cplan = FFTPlan.plan(even ? h : n);
+        cosT = new double[h+1];
+        sinT = new double[h+1];
+        for (int k = 0; k <= h; k++) {
+            double a = 2*Math.PI*k/n;
+            cosT[k] = Math.cos(a);
+            sinT[k] = Math.sin(a);
+        }
+        scratch = new ThreadLocal<double [][]>() {
+            @Override
+            protected double [][] initialValue() {
+                int len = even ? RealFFTPlan.this.h : RealFFTPlan.this.n;
+                return new double[2][len];
+            }
+        };
+    }
+
+    public int length() { return n; }
+
+    // the number of complex coefficients of the transform, n/2+1
+    public int spectrumLength() { return h+1; }
+
+    // re[0..n/2], im[0..n/2] = the transform of x[0..n)
+    public void forward(double [] x, double [] re, double [] im) {
+        forward(x, 0, re, im, 0);
+    }
+
+    public void forward(double [] x, int xoff, double [] re, double [] im, int off) {
+        if (xoff < 0 || x.length < xoff+n)
+            throw new IllegalArgumentException("real FFT of length "+n+" at offset "+xoff+": the signal has "+x.length+" elements");
+        if (off < 0 || re.length < off+h+1 || im.length < off+h+1)
+            throw new IllegalArgumentException("real FFT of length "+n+": the output at offset "+off+" should have "+(h+1)+
+                                               " elements, the real part has "+re.length+", the imaginary part "+im.length);
+        if (n % 2 != 0) {
+            double [][] s = scratch.get();
+            double [] zr = s[0], zi = s[1];
+            System.arraycopy(x, xoff, zr, 0, n);
+            java.util.Arrays.fill(zi, 0.0);
+            cplan.transform(zr, zi, 0, false);
+            System.arraycopy(zr, 0, re, off, h+1);
+            System.arraycopy(zi, 0, im, off, h+1);
+            return;
+        }
+        if (n == 2) {
+            re[off] = x[xoff] + x[xoff+1];  im[off] = 0.0;
+            re[off+1] = x[xoff] - x[xoff+1];  im[off+1] = 0.0;
+            return;
+        }
+        // z[j] = x[2j] + i x[2j+1] is transformed at the output arrays
+        for (int j = 0; j < h; j++) {
+            re[off+j] = x[xoff+2*j];
+            im[off+j] = x[xoff+2*j+1];
+        }
+        cplan.transform(re, im, off, false);
+        // X[k] = E[k] + W^k O[k],  E[k] = (Z[k] + conj Z[h-k])/2,  O[k] = (Z[k] - conj Z[h-k])/2i,  W = exp(-2 pi i/n)
+        double z0r = re[off], z0i = im[off];
+        re[off] = z0r + z0i;  im[off] = 0.0;
+        re[off+h] = z0r - z0i;  im[off+h] = 0.0;
+        for (int k = 1; k <= h/2; k++) {
+            int a = off+k, b = off+h-k;
+            double ar = re[a], ai = im[a], br = re[b], bi = im[b];
+            // the pair k, h-k
+            double er = 0.5*(ar+br), ei = 0.5*(ai-bi);
+            double or = 0.5*(ai+bi), oi = -0.5*(ar-br);
+            double wr = cosT[k], wi = -sinT[k];
+            re[a] = er + wr*or - wi*oi;
+            im[a] = ei + wr*oi + wi*or;
+            // E[h-k] = conj E[k], O[h-k] = conj O[k], W^(h-k) = -conj W^k
+            re[b] = er - (wr*or - wi*oi);
+            im[b] = -ei + (wr*oi + wi*or);
+        }
+    }
+
+    // x[0..n) = the inverse transform of the coefficients re[0..n/2], im[0..n/2], scaled by 1/n
+    public void inverse(double [] re, double [] im, double [] x) {
+        inverse(re, im, 0, x, 0);
+    }
+
+    public void inverse(double [] re, double [] im, int off, double [] x, int xoff) {
+        if (xoff < 0 || x.length < xoff+n)
+            throw new IllegalArgumentException("inverse real FFT of length "+n+" at offset "+xoff+": the output has "+x.length+" elements");
+        if (off < 0 || re.length < off+h+1 || im.length < off+h+1)
+            throw new IllegalArgumentException("inverse real FFT of length "+n+": the input at offset "+off+" should have "+(h+1)+
+                                               " elements, the real part has "+re.length+", the imaginary part "+im.length);
+        double [][] s = scratch.get();
+        double [] zr = s[0], zi = s[1];
+        if (n % 2 != 0) {
+            // the full spectrum from the conjugate symmetry
+            for (int k = 0; k <= h; k++) {
+                zr[k] = re[off+k];
+                zi[k] = im[off+k];
+            }
+            zi[0] = 0.0;
+            for (int k = h+1; k < n; k++) {
+                zr[k] = re[off+n-k];
+                zi[k] = -im[off+n-k];
+            }
+            cplan.transform(zr, zi, 0, true);
+            double scale = 1.0/n;
+            for (int k = 0; k < n; k++)
+                x[xoff+k] = zr[k]*scale;
+            return;
+        }
+        if (n == 2) {
+            x[xoff] = 0.5*(re[off] + re[off+1]);
+            x[xoff+1] = 0.5*(re[off] - re[off+1]);
+            return;
+        }
+        // Z[k] = E[k] + i O[k],  E[k] = (X[k] + conj X[h-k])/2,  O[k] = (X[k] - conj X[h-k]) conj(W^k)/2
+        for (int k = 0; k < h; k++) {
+            double ar = re[off+k], ai = im[off+k], br = re[off+h-k], bi = -im[off+h-k];
+            double er = 0.5*(ar+br), ei = 0.5*(ai+bi);
+            double dr = 0.5*(ar-br), di = 0.5*(ai-bi);
+            double wr = cosT[k], wi = sinT[k];
+            double or = dr*wr - di*wi, oi = dr*wi + di*wr;
+            zr[k] = er - oi;
+            zi[k] = ei + or;
+        }
+        cplan.transform(zr, zi, 0, true);
+        double scale = 1.0/h;
+        for (int j = 0; j < h; j++) {
+            x[xoff+2*j] = zr[j]*scale;
+            x[xoff+2*j+1] = zi[j]*scale;
+        }
+    }
+}
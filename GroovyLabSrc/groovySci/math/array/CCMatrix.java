@@ -9,9 +9,11 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Iterator;
+import no.uib.cipr.matrix.AbstractMatrix;
 import no.uib.cipr.matrix.DenseMatrix;
 import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.MatrixEntry;
+import no.uib.cipr.matrix.Vector;
 import no.uib.cipr.matrix.sparse.CompColMatrix;
 import no.uib.cipr.matrix.sparse.IterativeSolverNotConvergedException;
 import no.uib.cipr.matrix.io.MatrixVectorReader;
@@ -20,6 +22,7 @@ public class CCMatrix extends GroovyObjectSupport {
     CompColMatrix  ccm;  // the representation of the sparse matrix
     public int numRows;
     public int numColumns;
+    private SparseMV spmv;  // the parallel matrix-vector product engine, built at first use
     
   
     // construct from an MTJ CompColMatrix
@@ -182,18 +185,24 @@ public static CCMatrix   CSparseToCCMatrix(Sparse sm)  {
         return result;
     }
     
+    // the matrix-vector product engine over the compressed-column arrays of ccm,
+    // rebuilt when MTJ reallocates them, e.g. when a new nonzero is inserted
+    public synchronized SparseMV getSpMV() {
+        int [] cp = ccm.getColumnPointers();  int [] ri = ccm.getRowIndices();  double [] data = ccm.getData();
+        if (spmv == null || !spmv.sharesArrays(cp, ri, data))
+            spmv = new SparseMV(ccm.numRows(), ccm.numColumns(), cp, ri, data);
+        return spmv;
+    }
+    
     // multiply with a GroovySci Vector
     public double []  multiply(Vec that) {
-      DenseVector dv = new DenseVector(that.getv());
-      
-      return  this.ccm.multAdd(dv.getData());
+      return  getSpMV().multiply(that.getv());
     }
     
     
     // multiply with a double [] array
     public double []  multiply(double []  that) {
-      
-      return  this.ccm.multAdd(that);
+      return  getSpMV().multiply(that);
     }
     
     public double getAt(int row, int col) {
@@ -202,6 +211,10 @@ public static CCMatrix   CSparseToCCMatrix(Sparse sm)  {
 
     public void putAt(int row, int col, double value) {
         ccm.set(row, col, value);
+        synchronized (this) {
+            if (spmv != null)
+                spmv.invalidate();   // the compressed-row copy holds the old value
+        }
     }
     
 
@@ -221,38 +234,40 @@ public static CCMatrix   CSparseToCCMatrix(Sparse sm)  {
         return ccm.getData();
     }
     
+    // y = y + alpha*A*x, y is updated
     public DenseVector multAdd(double alpha, DenseVector x, DenseVector y) {
-        return  (DenseVector)ccm.multAdd(alpha, x, y);
+        getSpMV().multAdd(alpha, x.getData(), y.getData());
+        return  y;
     }
     
+    // returns y + alpha*A*x, y is not modified
     public double []   multAdd(double alpha, double [] x, double [] y) {
-        DenseVector dx = new DenseVector(x);
-        DenseVector dy = new DenseVector(y);
-        DenseVector result =  (DenseVector)ccm.multAdd(alpha, dx, dy);
-        return result.getData();
+        return getSpMV().multAdd(alpha, x, y.clone());
     }
     
+    // y = A'*x, y is updated
     public DenseVector transMult(DenseVector x, DenseVector y) {
-        return (DenseVector) ccm.transMult(x, y);
+        double [] yd = y.getData();
+        java.util.Arrays.fill(yd, 0.0);
+        getSpMV().transMultAdd(1.0, x.getData(), yd);
+        return y;
     }
     
+    // returns A'*x, y is not modified
     public double []  transMult(double []  x, double [] y) {
-        DenseVector dx = new DenseVector(x);
-        DenseVector dy = new DenseVector(y);
-        DenseVector result = (DenseVector) ccm.transMult(dx, dy);
-        return result.getData();
+        return getSpMV().transMultAdd(1.0, x, new double[y.length]);
     }
 
     
+    // y = y + alpha*A'*x, y is updated
     public DenseVector transMultAdd(double alpha, DenseVector x, DenseVector y) {
-        return (DenseVector) ccm.transMultAdd(alpha, x, y);
+        getSpMV().transMultAdd(alpha, x.getData(), y.getData());
+        return y;
     }
     
+    // returns y + alpha*A'*x, y is not modified
     public double []  transMultAdd(double alpha, double []  x, double [] y) {
-        DenseVector dx = new DenseVector(x);
-        DenseVector dy = new DenseVector(y);
-        DenseVector result = (DenseVector) ccm.transMultAdd(alpha, dx, dy);
-        return result.getData();
+        return getSpMV().transMultAdd(alpha, x, y.clone());
     }
     
     
@@ -268,7 +283,7 @@ public static CCMatrix   CSparseToCCMatrix(Sparse sm)  {
         DenseVector dx = new DenseVector(x);
         DenseVector result = null;
         try {
-            result = (DenseVector) BiCCSolver.solve(A.ccm, db, dx);
+            result = (DenseVector) BiCCSolver.solve(new SpMVMatrix(A), db, dx);
         } catch (IterativeSolverNotConvergedException ex) {
             System.out.println("Iterative BiCGSolver not converged");
             ex.printStackTrace();
@@ -277,6 +292,39 @@ public static CCMatrix   CSparseToCCMatrix(Sparse sm)  {
         return result.getData();
         
     }
+    
+    // the matrix as seen by the MTJ iterative solvers, with the products A*x and A'*x computed by SparseMV
+    static class SpMVMatrix extends AbstractMatrix {
+        final CompColMatrix ccm;
+        final SparseMV spmv;
+
+        SpMVMatrix(CCMatrix A) {
+            super(A.ccm.numRows(), A.ccm.numColumns());
+            ccm = A.ccm;
+            spmv = A.getSpMV();
+        }
+
+        @Override
+        public double get(int row, int column) {
+            return ccm.get(row, column);
+        }
+
+        @Override
+        public Vector multAdd(double alpha, Vector x, Vector y) {
+            if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+                return ccm.multAdd(alpha, x, y);
+            spmv.multAdd(alpha, ((DenseVector) x).getData(), ((DenseVector) y).getData());
+            return y;
+        }
+
+        @Override
+        public Vector transMultAdd(double alpha, Vector x, Vector y) {
+            if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+                return ccm.transMultAdd(alpha, x, y);
+            spmv.transMultAdd(alpha, ((DenseVector) x).getData(), ((DenseVector) y).getData());
+            return y;
+        }
+    }
     /*
      
 
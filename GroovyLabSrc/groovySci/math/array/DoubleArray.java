@@ -113,186 +113,189 @@ public static double [] Multiply(double [][]M, double [] m) {
     
     
                  
- public static double[][]  sin(double [][] M) {
-    double [][] Ms = new double[M.length][M[0].length];
-    for (int i = 0; i < M.length; i++)
-        for (int j = 0; j < M[i].length; j++)
-            Ms[i][j] = Math.sin(M[i][j]);
-        return Ms;
-    }
+  // the element-wise functions run on the ElementwiseOps kernels, in parallel for large arrays.
+  // The (M, out) overloads write at the caller-provided array out, that can be M for in-place operation, e.g.
+  //   double [][] out = new double[M.length][M[0].length];  sin(M, out);  exp(M, M)
+  public static double[][]  sin(double [][] M) {
+      return ElementwiseOps.apply(ElementwiseOps.SIN, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  sin(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.SIN, M, out);
+  }
 
 
   
   public static double[][]  cos(double [][] M) {
-        double [][] Ms = new double[M.length][M[0].length];
-        for (int i = 0; i < M.length; i++)
-            for (int j = 0; j < M[i].length; j++)
-                Ms[i][j] = Math.cos(M[i][j]);
-        return Ms;
-}
+      return ElementwiseOps.apply(ElementwiseOps.COS, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  cos(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.COS, M, out);
+  }
   
   public static double[][]  tan(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-	    for (int j = 0; j < M[i].length; j++)
-                                Ms[i][j] = Math.tan(M[i][j]);
-    return Ms;
- }
+      return ElementwiseOps.apply(ElementwiseOps.TAN, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  tan(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.TAN, M, out);
+  }
   
   
   public static double[][]  asin(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-                    for (int j = 0; j < M[i].length; j++)
-	Ms[i][j] = Math.asin(M[i][j]);
-    return Ms;
- }
+      return ElementwiseOps.apply(ElementwiseOps.ASIN, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  asin(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.ASIN, M, out);
+  }
   
   
   public static double[][]  acos(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-	    for (int j = 0; j < M[i].length; j++)
-                            Ms[i][j] = Math.acos(M[i][j]);
-    return Ms;
-}
+      return ElementwiseOps.apply(ElementwiseOps.ACOS, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  acos(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.ACOS, M, out);
+  }
   
   public static double[][]  atan(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-	    for (int j = 0; j < M[i].length; j++)
-                            Ms[i][j] = Math.atan(M[i][j]);
-    return Ms;
-}
+      return ElementwiseOps.apply(ElementwiseOps.ATAN, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  atan(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.ATAN, M, out);
+  }
   
   
   public static double[][]  sinh(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-                    for (int j = 0; j < M[i].length; j++)
-	Ms[i][j] = Math.sinh(M[i][j]);
-    return Ms;
-}
+      return ElementwiseOps.apply(ElementwiseOps.SINH, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  sinh(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.SINH, M, out);
+  }
   
   
   public static double[][]  cosh(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-                    for (int j = 0; j < M[i].length; j++)
-	Ms[i][j] = Math.cosh(M[i][j]);
-return Ms;
-}
+      return ElementwiseOps.apply(ElementwiseOps.COSH, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  cosh(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.COSH, M, out);
+  }
   
   
   public static double[][]  tanh(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.tanh(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.TANH, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  tanh(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.TANH, M, out);
+  }
   
   public static double[][]  exp(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.exp(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.EXP, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  exp(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.EXP, M, out);
+  }
   
   public static double[][]  log(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.log(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.LOG, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  log(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.LOG, M, out);
+  }
   
   public static double[][]  log2(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.log(M[i][j])/GlobalValues.log2Conv;
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.LOG2, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  log2(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.LOG2, M, out);
+  }
   
   
   public static double[][]  log10(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.log10(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.LOG10, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  log10(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.LOG10, M, out);
+  }
   
   
   public static double[][]  abs(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.abs(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.ABS, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  abs(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.ABS, M, out);
+  }
   
   
   public static double[][]  ceil(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.ceil(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.CEIL, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  ceil(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.CEIL, M, out);
+  }
   
   
   public static double[][]  floor(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.floor(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.FLOOR, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  floor(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.FLOOR, M, out);
+  }
   
   public static double[][]  round(double [][] M) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.round(M[i][j]);
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.ROUND, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  round(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.ROUND, M, out);
+  }
   
   public static double[][]  pow(double [][] M, double exponent ) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.pow(M[i][j],  exponent );
-		return Ms;
-	}
+      return ElementwiseOps.apply(ElementwiseOps.POW, exponent, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  pow(double [][] M, double exponent, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.POW, exponent, M, out);
+  }
   
   
-  public static double[][]  sqrt(double [][] M ) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.sqrt(M[i][j]);
-		return Ms;
-	}
+  public static double[][]  sqrt(double [][] M) {
+      return ElementwiseOps.apply(ElementwiseOps.SQRT, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  sqrt(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.SQRT, M, out);
+  }
   
   
-  public static double[][]  toDegrees(double [][] M ) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.toDegrees(M[i][j]);
-		return Ms;
-	}
+  public static double[][]  toDegrees(double [][] M) {
+      return ElementwiseOps.apply(ElementwiseOps.TODEGREES, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  toDegrees(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.TODEGREES, M, out);
+  }
   
-  public static double[][]  toRadians(double [][] M ) {
-                double [][] Ms = new double[M.length][M[0].length];
-                for (int i = 0; i < M.length; i++)
-		    for (int j = 0; j < M[i].length; j++)
-				Ms[i][j] = Math.toRadians(M[i][j]);
-		return Ms;
-	}
+  public static double[][]  toRadians(double [][] M) {
+      return ElementwiseOps.apply(ElementwiseOps.TORADIANS, M, new double[M.length][M[0].length]);
+  }
+
+  public static double[][]  toRadians(double [][] M, double [][] out) {
+      return ElementwiseOps.apply(ElementwiseOps.TORADIANS, M, out);
+  }
    
   
   
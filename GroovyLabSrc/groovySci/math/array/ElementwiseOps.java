@@ -0,0 +1,215 @@
+package groovySci.math.array;
+
+import gExec.Interpreter.GlobalValues;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Element-wise math kernels (sin, cos, exp, log, pow, sqrt, ...) for double [], double [][] and Matrix data.
+
+ Arrays with at least minParallelElements elements are split by rows (or by segments of segmentLength elements
+ for double [] arrays) across the threads of the ParallelEngine pool.
+ The result is written at a caller-provided output array, that can also be the input array for in-place operation, e.g.
+
+   x = rand(2000, 2000);  y = new double[2000][2000]
+   DoubleArray.sin(x, y)          // y = sin(x), without allocating
+   DoubleArray.exp(x, x)          // in-place
+   ElementwiseOps.minParallelElements = 1000000   // tune the parallelization threshold
+ */
+public class ElementwiseOps {
+
+    // arrays with at least that many elements are processed in parallel
+    public static int minParallelElements = 1 << 15;
+    // double [] arrays are split into segments of that many elements for parallel processing
+    public static int segmentLength = 1 << 13;
+
+    public static final int NEG = 0, SIN = 1, COS = 2, TAN = 3, ASIN = 4, ACOS = 5, ATAN = 6, SINH = 7, COSH = 8, TANH = 9,
+                            EXP = 10, LOG = 11, LOG2 = 12, LOG10 = 13, ABS = 14, CEIL = 15, FLOOR = 16, ROUND = 17,
+                            SQRT = 18, TODEGREES = 19, TORADIANS = 20, POW = 21;
+
+    private static final String [] names = { "neg", "sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh",
+                                             "exp", "log", "log2", "log10", "abs", "ceil", "floor", "round",
+                                             "sqrt", "toDegrees", "toRadians", "pow" };
+
+    public static String name(int op) { return names[op]; }
+
+    public static int numOps() { return names.length; }
+
+    // y[yo .. yo+n) = op(x[xo .. xo+n)), p is the exponent for POW. x and y can overlap exactly, i.e. in-place
+    static void applyRange(int op, double p, double [] x, int xo, double [] y, int yo, int n) {
+        int end = xo + n;
+        int j = yo;
+        switch (op) {
+            case NEG:       for (int k = xo; k < end; k++, j++) y[j] = -x[k]; break;
+            case SIN:       for (int k = xo; k < end; k++, j++) y[j] = Math.sin(x[k]); break;
+            case COS:       for (int k = xo; k < end; k++, j++) y[j] = Math.cos(x[k]); break;
+            case TAN:       for (int k = xo; k < end; k++, j++) y[j] = Math.tan(x[k]); break;
+            case ASIN:      for (int k = xo; k < end; k++, j++) y[j] = Math.asin(x[k]); break;
+            case ACOS:      for (int k = xo; k < end; k++, j++) y[j] = Math.acos(x[k]); break;
+            case ATAN:      for (int k = xo; k < end; k++, j++) y[j] = Math.atan(x[k]); break;
+            case SINH:      for (int k = xo; k < end; k++, j++) y[j] = Math.sinh(x[k]); break;
+            case COSH:      for (int k = xo; k < end; k++, j++) y[j] = Math.cosh(x[k]); break;
+            case TANH:      for (int k = xo; k < end; k++, j++) y[j] = Math.tanh(x[k]); break;
+            case EXP:       for (int k = xo; k < end; k++, j++) y[j] = Math.exp(x[k]); break;
+            case LOG:       for (int k = xo; k < end; k++, j++) y[j] = Math.log(x[k]); break;
+            case LOG2:      for (int k = xo; k < end; k++, j++) y[j] = Math.log(x[k])/GlobalValues.log2Conv; break;
+            case LOG10:     for (int k = xo; k < end; k++, j++) y[j] = Math.log10(x[k]); break;
+            case ABS:       for (int k = xo; k < end; k++, j++) y[j] = Math.abs(x[k]); break;
+            case CEIL:      for (int k = xo; k < end; k++, j++) y[j] = Math.ceil(x[k]); break;
+            case FLOOR:     for (int k = xo; k < end; k++, j++) y[j] = Math.floor(x[k]); break;
+            case ROUND:     for (int k = xo; k < end; k++, j++) y[j] = Math.round(x[k]); break;
+            case SQRT:      for (int k = xo; k < end; k++, j++) y[j] = Math.sqrt(x[k]); break;
+            case TODEGREES: for (int k = xo; k < end; k++, j++) y[j] = Math.toDegrees(x[k]); break;
+            case TORADIANS: for (int k = xo; k < end; k++, j++) y[j] = Math.toRadians(x[k]); break;
+            case POW:       for (int k = xo; k < end; k++, j++) y[j] = Math.pow(x[k], p); break;
+            default: throw new IllegalArgumentException("unknown element-wise operation "+op);
+        }
+    }
+
+
+    // y = op(x) for double [][] arrays, y can be x for in-place operation
+    public static double [][] apply(int op, double [][] x, double [][] y) {
+        return apply(op, 0.0, x, y);
+    }
+
+    public static double [][] apply(int op, double p, double [][] x, double [][] y) {
+        int nrows = x.length;
+        if (y.length != nrows)
+            throw new IllegalArgumentException("Output array should have "+nrows+" rows, has "+y.length);
+        int [] len = new int[nrows];
+        long count = 0;
+        for (int r = 0; r < nrows; r++) {
+            if (y[r].length != x[r].length)
+                throw new IllegalArgumentException("Output array row "+r+" should have "+x[r].length+" columns, has "+y[r].length);
+            len[r] = x[r].length;
+            count += len[r];
+        }
+        run(op, p, x, new int[nrows], y, new int[nrows], len, 0, count);
+        return y;
+    }
+
+    // y = op(x) for double [] arrays, y can be x for in-place operation
+    public static double [] apply(int op, double [] x, double [] y) {
+        return apply(op, 0.0, x, y);
+    }
+
+    public static double [] apply(int op, double p, double [] x, double [] y) {
+        int n = x.length;
+        if (y.length != n)
+            throw new IllegalArgumentException("Output array should have "+n+" elements, has "+y.length);
+        if (n < minParallelElements) {
+            applyRange(op, p, x, 0, y, 0, n);
+            return y;
+        }
+        // the array is processed as rows of segmentLength elements
+        int seg = segmentLength;
+        int nseg = (n + seg - 1) / seg;
+        double [][] xs = new double[nseg][];  int [] xo = new int[nseg];
+        double [][] ys = new double[nseg][];  int [] yo = new int[nseg];
+        int [] len = new int[nseg];
+        for (int s = 0; s < nseg; s++) {
+            xs[s] = x;  ys[s] = y;
+            xo[s] = yo[s] = s*seg;
+            len[s] = Math.min(seg, n - s*seg);
+        }
+        run(op, p, xs, xo, ys, yo, len, 0, n);
+        return y;
+    }
+
+    // Y = op(X) for Matrix objects. Flat-backed matrices are processed without conversion to double [][],
+    // Y can be X for in-place operation
+    public static Matrix apply(int op, Matrix X, Matrix Y) {
+        return apply(op, 0.0, X, Y);
+    }
+
+    public static Matrix apply(int op, double p, Matrix X, Matrix Y) {
+        int nrows = X.numRows();  int ncols = X.numCols();
+        if (Y.numRows() != nrows || Y.numCols() != ncols)
+            throw new IllegalArgumentException("Output Matrix should be "+nrows+" x "+ncols+", is "+Y.numRows()+" x "+Y.numCols());
+        double [][] xs = new double[nrows][];  int [] xo = new int[nrows];
+        double [][] ys = new double[nrows][];  int [] yo = new int[nrows];
+        if (!rowViews(X, xs, xo))
+            rowViews(new Matrix(X), xs, xo);    // a copy with row-major flat storage
+        if (rowViews(Y, ys, yo)) {
+            run(op, p, xs, xo, ys, yo, null, ncols, (long)nrows*ncols);
+            return Y;
+        }
+        // the output has strided columns, compute at a row-major buffer and copy
+        Matrix T = Matrix.flat(nrows, ncols);
+        rowViews(T, ys, yo);
+        run(op, p, xs, xo, ys, yo, null, ncols, (long)nrows*ncols);
+        for (int r = 0; r < nrows; r++)
+            for (int c = 0; c < ncols; c++)
+                Y.set(r, c, T.get(r, c));
+        return Y;
+    }
+
+    // a new Matrix with the same storage kind as X (flat or double [][])
+    static Matrix newLike(Matrix X) {
+        if (X.isFlat() || X.isDeferred())
+            return Matrix.flat(X.numRows(), X.numCols());
+        return new Matrix(new double[X.numRows()][X.numCols()], true);
+    }
+
+    // the rows of the Matrix as (array, offset) pairs, false for a flat Matrix with non-unit column stride
+    static boolean rowViews(Matrix X, double [][] rows, int [] off) {
+        int nrows = X.numRows();
+        X.eval();
+        if (X.isFlat()) {
+            if (X.getColStride() != 1)
+                return false;
+            double [] fd = X.getFlatArray();
+            for (int r = 0; r < nrows; r++) {
+                rows[r] = fd;
+                off[r] = X.getFlatOffset() + r*X.getRowStride();
+            }
+        }
+        else {
+            double [][] xd = X.getArray();
+            for (int r = 0; r < nrows; r++)
+                rows[r] = xd[r];
+        }
+        return true;
+    }
+
+    // applies the operation at the rows, len[r] is the length of row r, or all the rows have ncols elements when len is null
+    private static void run(int op, double p, double [][] x, int [] xo, double [][] y, int [] yo, int [] len, int ncols, long count) {
+        int nrows = x.length;
+        if (count < minParallelElements || nrows < 2) {
+            applyRows(op, p, x, xo, y, yo, len, ncols, 0, nrows);
+            return;
+        }
+        int grain = Math.max(1, nrows / (4*ParallelEngine.getNumThreads()));
+        ParallelEngine.run(new RowsTask(op, p, x, xo, y, yo, len, ncols, 0, nrows, grain));
+    }
+
+    private static void applyRows(int op, double p, double [][] x, int [] xo, double [][] y, int [] yo, int [] len, int ncols,
+                                  int r0, int r1) {
+        for (int r = r0; r < r1; r++)
+            applyRange(op, p, x[r], xo[r], y[r], yo[r], len != null ? len[r] : ncols);
+    }
+
+    static class RowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int op;  final double p;
+        final double [][] x, y;  final int [] xo, yo, len;
+        final int ncols, r0, r1, grain;
+
+        RowsTask(int op, double p, double [][] x, int [] xo, double [][] y, int [] yo, int [] len, int ncols,
+                 int r0, int r1, int grain) {
+            this.op = op; this.p = p; this.x = x; this.xo = xo; this.y = y; this.yo = yo; this.len = len;
+            this.ncols = ncols; this.r0 = r0; this.r1 = r1; this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (r1 - r0 <= grain) {
+                applyRows(op, p, x, xo, y, yo, len, ncols, r0, r1);
+                return;
+            }
+            int mid = (r0 + r1) >>> 1;
+            invokeAll(new RowsTask(op, p, x, xo, y, yo, len, ncols, r0, mid, grain),
+                      new RowsTask(op, p, x, xo, y, yo, len, ncols, mid, r1, grain));
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package groovySci.math.array;
+
+import Jama.LinearAlgebra;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Cache-blocked, multithreaded dense matrix multiply C = A*B.
+
+ The rows of C are split among the threads of the ParallelEngine pool. Each thread walks B in
+ blockK x blockN blocks that stay in cache, and updates MR rows of C together, so that every loaded
+ element of B is used MR times. The innermost loop runs over contiguous row elements and is vectorized by the JIT.
+
+ Matrix.multiply() and LinearAlgebra.times() dispatch here automatically above minBlockedOps multiply-adds.
+ Very large products are passed to JBLAS when its native BLAS library is loaded.
+
+ e.g.
+   a = rand(2000, 2000); b = rand(2000, 2000)
+   GEMM.minParallelOps = 1000000   // tune the parallelization threshold
+   c = a*b
+ */
+public class GEMM {
+
+    // products with less multiply-adds (rows*inner*cols) use the simple triple loop of LinearAlgebra.times()
+    public static long minBlockedOps = 48L*48*48;
+    // products with at least that many multiply-adds are split across the threads of the ParallelEngine pool
+    public static long minParallelOps = 128L*128*128;
+    // products with at least that many multiply-adds are computed with JBLAS when its native BLAS is loaded
+    public static long minNativeOps = 384L*384*384;
+    // controls whether JBLAS is used for the large products
+    public static boolean useJBLAS = true;
+
+    // a blockK x blockN block of B (256 KB with the defaults) is reused from the L2 cache
+    public static int blockK = 128;
+    public static int blockN = 256;
+
+    static final int MR = 4;  // rows of C updated together by the micro-kernel
+
+    private static int nativeBLASState = 0;  // 0: not probed yet, 1: native BLAS loaded, -1: not available
+
+    // true if the JBLAS native library can be used, probed once at the first call
+    public static synchronized boolean isNativeBLASLoaded() {
+        if (nativeBLASState == 0) {
+            try {
+                org.jblas.DoubleMatrix a = new org.jblas.DoubleMatrix(1, 1, 2.0);
+                org.jblas.DoubleMatrix c = new org.jblas.DoubleMatrix(1, 1, 0.0);
+                org.jblas.NativeBlas.dgemm('N', 'N', 1, 1, 1, 1.0, a.data, 0, 1, a.data, 0, 1, 0.0, c.data, 0, 1);
+                nativeBLASState = (c.data[0] == 4.0) ? 1 : -1;
+            }
+            catch (Throwable t)  {   // UnsatisfiedLinkError, NoClassDefFoundError, ...
+                nativeBLASState = -1;
+            }
+        }
+        return nativeBLASState == 1;
+    }
+
+
+    // C = A*B for double [][] arrays
+    public static double [][] times(double [][] A, double [][] B) {
+        int M = A.length;  int K = A[0].length;  int N = B[0].length;
+        checkDims(K, B.length);
+        long ops = (long)M*K*N;
+        if (useJBLAS && ops >= minNativeOps && isNativeBLASLoaded())
+            return new org.jblas.DoubleMatrix(A).mmul(new org.jblas.DoubleMatrix(B)).toArray2();
+
+        double [][] C = new double[M][N];
+        multiply(A, zeroOffsets(M), B, zeroOffsets(K), C, zeroOffsets(M), M, K, N, ops >= minParallelOps);
+        return C;
+    }
+
+    // C = A*B, the result is written at the caller-provided array C
+    public static void times(double [][] A, double [][] B, double [][] C) {
+        int M = A.length;  int K = A[0].length;  int N = B[0].length;
+        checkDims(K, B.length);
+        if (C.length != M || C[0].length != N)
+            throw new IllegalArgumentException("Result array should be "+M+" x "+N+", is "+C.length+" x "+C[0].length);
+        for (int r = 0; r < M; r++)
+            java.util.Arrays.fill(C[r], 0.0);
+        multiply(A, zeroOffsets(M), B, zeroOffsets(K), C, zeroOffsets(M), M, K, N, (long)M*K*N >= minParallelOps);
+    }
+
+    // C = A*B for Matrix objects. Flat-backed operands are multiplied without conversion to double [][]
+    // and give a flat-backed result. The JBLAS result is returned as a column-major flat Matrix, without copying
+    public static Matrix times(Matrix A, Matrix B) {
+        int M = A.numRows();  int K = A.numCols();  int N = B.numCols();
+        checkDims(K, B.numRows());
+        long ops = (long)M*K*N;
+
+        if (useJBLAS && ops >= minNativeOps && isNativeBLASLoaded())
+            return JBLASUtils.JBLASDoubleMatrixToFlatMatrix(JBLASUtils.toDoubleMatrix(A).mmul(JBLASUtils.toDoubleMatrix(B)));
+
+        if (!A.isFlat() && !B.isFlat()) {
+            if (ops < minBlockedOps)
+                return new Matrix(LinearAlgebra.times(A.getArray(), B.getArray()), false);
+            double [][] C = new double[M][N];
+            multiply(A.getArray(), zeroOffsets(M), B.getArray(), zeroOffsets(K), C, zeroOffsets(M), M, K, N, ops >= minParallelOps);
+            return new Matrix(C, true);
+        }
+
+        // at least one flat operand: rows are addressed as (array, offset) pairs
+        double [][] aRows = new double[M][];  int [] aOff = new int[M];
+        double [][] bRows = new double[K][];  int [] bOff = new int[K];
+        rowViews(A, aRows, aOff);
+        rowViews(B, bRows, bOff);
+        Matrix C = Matrix.flat(M, N);
+        double [] cd = C.getFlatArray();
+        double [][] cRows = new double[M][];  int [] cOff = new int[M];
+        for (int r = 0; r < M; r++) {
+            cRows[r] = cd;
+            cOff[r] = r*N;
+        }
+        multiply(aRows, aOff, bRows, bOff, cRows, cOff, M, K, N, ops >= minParallelOps);
+        return C;
+    }
+
+    private static void checkDims(int innerA, int rowsB) {
+        if (innerA != rowsB)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree, A has "+innerA+" columns while B has "+rowsB+" rows");
+    }
+
+    private static int [] zeroOffsets(int n) {
+        return new int[n];
+    }
+
+    // the rows of the Matrix as (array, offset) pairs. Rows of a flat Matrix with non-unit column stride are copied
+    private static void rowViews(Matrix X, double [][] rows, int [] off) {
+        int nrows = X.numRows();
+        if (X.isFlat() && X.getColStride() == 1) {
+            double [] fd = X.getFlatArray();
+            for (int r = 0; r < nrows; r++) {
+                rows[r] = fd;
+                off[r] = X.getFlatOffset() + r*X.getRowStride();
+            }
+        }
+        else {
+            double [][] xd = X.isFlat() ? X.toDoubleArray() : X.getArray();
+            for (int r = 0; r < nrows; r++)
+                rows[r] = xd[r];
+        }
+    }
+
+    private static void multiply(double [][] a, int [] aOff, double [][] b, int [] bOff, double [][] c, int [] cOff,
+                                 int M, int K, int N, boolean parallel) {
+        if (!parallel || M < 2*MR) {
+            kernel(a, aOff, b, bOff, c, cOff, 0, M, K, N);
+            return;
+        }
+        int nTasks = 4*ParallelEngine.getNumThreads();   // some slack for load balancing
+        int grain = (M + nTasks - 1) / nTasks;
+        grain = Math.max(MR, ((grain + MR - 1) / MR) * MR);
+        ParallelEngine.run(new RowBlockTask(a, aOff, b, bOff, c, cOff, 0, M, K, N, grain));
+    }
+
+    // splits the rows of C recursively until at most grain rows remain
+    static class RowBlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final double [][] a, b, c;
+        final int [] aOff, bOff, cOff;
+        final int i0, i1, K, N, grain;
+
+        RowBlockTask(double [][] a, int [] aOff, double [][] b, int [] bOff, double [][] c, int [] cOff,
+                     int i0, int i1, int K, int N, int grain) {
+            this.a = a; this.aOff = aOff; this.b = b; this.bOff = bOff; this.c = c; this.cOff = cOff;
+            this.i0 = i0; this.i1 = i1; this.K = K; this.N = N; this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = i1 - i0;
+            if (rows <= grain) {
+                kernel(a, aOff, b, bOff, c, cOff, i0, i1, K, N);
+                return;
+            }
+            int mid = i0 + ((rows / 2 + MR - 1) / MR) * MR;
+            invokeAll(new RowBlockTask(a, aOff, b, bOff, c, cOff, i0, mid, K, N, grain),
+                      new RowBlockTask(a, aOff, b, bOff, c, cOff, mid, i1, K, N, grain));
+        }
+    }
+
+    // C[i0..i1) += A[i0..i1) * B, with the element (i, j) of X kept at x[i][xOff[i]+j]
+    static void kernel(double [][] a, int [] aOff, double [][] b, int [] bOff, double [][] c, int [] cOff,
+                       int i0, int i1, int K, int N) {
+        int bk = blockK;  int bn = blockN;
+        for (int kk = 0; kk < K; kk += bk) {
+            int kEnd = Math.min(kk + bk, K);
+            for (int jj = 0; jj < N; jj += bn) {
+                int jEnd = Math.min(jj + bn, N);
+                int i = i0;
+                for (; i + MR <= i1; i += MR) {   // MR rows at a time
+                    double [] a0 = a[i], a1 = a[i+1], a2 = a[i+2], a3 = a[i+3];
+                    int ao0 = aOff[i], ao1 = aOff[i+1], ao2 = aOff[i+2], ao3 = aOff[i+3];
+                    double [] c0 = c[i], c1 = c[i+1], c2 = c[i+2], c3 = c[i+3];
+                    int co0 = cOff[i], co1 = cOff[i+1], co2 = cOff[i+2], co3 = cOff[i+3];
+                    for (int k = kk; k < kEnd; k++) {
+                        double av0 = a0[ao0+k], av1 = a1[ao1+k], av2 = a2[ao2+k], av3 = a3[ao3+k];
+                        double [] bRow = b[k];
+                        int bo = bOff[k];
+                        for (int j = jj; j < jEnd; j++) {
+                            double bv = bRow[bo+j];
+                            c0[co0+j] += av0*bv;
+                            c1[co1+j] += av1*bv;
+                            c2[co2+j] += av2*bv;
+                            c3[co3+j] += av3*bv;
+                        }
+                    }
+                }
+                for (; i < i1; i++) {   // remaining rows
+                    double [] ai = a[i];  int aoi = aOff[i];
+                    double [] ci = c[i];  int coi = cOff[i];
+                    for (int k = kk; k < kEnd; k++) {
+                        double av = ai[aoi+k];
+                        double [] bRow = b[k];
+                        int bo = bOff[k];
+                        for (int j = jj; j < jEnd; j++)
+                            ci[coi+j] += av*bRow[bo+j];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,31 @@ public class JBLASUtils {
       return JBLASDoubleMatrixToDouble2D(dm);
       
   }
+  
+  // wraps the column-major data of a JBLAS DoubleMatrix as a flat-backed Matrix without copying,
+  // i.e. the returned Matrix and dm share their storage
+  public static Matrix JBLASDoubleMatrixToFlatMatrix(org.jblas.DoubleMatrix dm)     {
+      return new Matrix(dm.data, dm.rows, dm.columns, 0, 1, dm.rows);
+  }
+  
+  // converts a Matrix to a JBLAS DoubleMatrix. 
+  // A Matrix kept at a column-major flat storage is shared with the DoubleMatrix without copying
+  public static org.jblas.DoubleMatrix toDoubleMatrix(Matrix m)     {
+      int nr = m.numRows();
+      int nc = m.numCols();
+      if (m.isColumnMajorFlat())
+          return new org.jblas.DoubleMatrix(nr, nc, m.getFlatArray());
+      
+      if (m.isFlat())  {   // copy with the JBLAS column-major order, without converting m to double [][] storage
+          double [] data = new double[nr*nc];
+          for (int c=0; c<nc; c++)
+              for (int r=0; r<nr; r++)
+                  data[c*nr+r] = m.get(r, c);
+          return new org.jblas.DoubleMatrix(nr, nc, data);
+      }
+      
+      return new org.jblas.DoubleMatrix(m.getArray());
+  }
 }
 
 
@@ -88,6 +88,45 @@ public static double [][] denseMatrixToDoubleArray(DenseMatrix dm) {
           
 }
 
+// wraps the column-major data of a MTJ DenseMatrix as a flat-backed Matrix without copying,
+// i.e. the returned Matrix and dm share their storage
+public static Matrix denseMatrixToFlatMatrix(DenseMatrix dm) {
+  int nrows = dm.numRows();
+  return new Matrix(dm.getData(), nrows, dm.numColumns(), 0, 1, nrows);
+}
+
+// converts a Matrix to a MTJ DenseMatrix.
+// MTJ DenseMatrix always allocates its own storage, thus a column-major flat Matrix is transferred with a single bulk copy
+public static DenseMatrix toDenseMatrix(Matrix m) {
+  if (m.isFlat()) {
+    int nrows = m.numRows();
+    int ncols = m.numCols();
+    DenseMatrix dm = new DenseMatrix(nrows, ncols);
+    double [] data = dm.getData();
+    if (m.isColumnMajorFlat())
+        System.arraycopy(m.getFlatArray(), 0, data, 0, nrows*ncols);
+    else
+      for (int c=0; c<ncols; c++)
+        for (int r=0; r<nrows; r++)
+          data[c*nrows+r] = m.get(r, c);
+    return dm;
+  }
+  return new DenseMatrix(m.getArray());
+}
+
+// a column-major working copy of the Matrix data, as LAPACK routines overwrite their input
+static double [] columnMajorCopy(Matrix m) {
+  int nrows = m.numRows();
+  int ncols = m.numCols();
+  if (m.isColumnMajorFlat())
+      return m.getFlatArray().clone();
+  double [] data = new double[nrows*ncols];
+  for (int c=0; c<ncols; c++)
+    for (int r=0; r<nrows; r++)
+       data[c*nrows+r] = m.get(r, c);
+  return data;
+}
+
 public static double [] denseVectorToDoubleArray(DenseVector dv) {
   int vlen = dv.size();
   double  [] vres = new double[vlen];
@@ -201,6 +240,35 @@ public static double[][]  invLapack(double [][]inM) {
     return DMc.toDoubleArray();  // return the inverse matrix
  }
 
+// invert the Matrix using JLAPACK, the inverse is returned as a column-major flat-backed Matrix.
+// For a column-major flat Matrix only the LAPACK working copy is performed
+public static Matrix  invLapack(Matrix inM) {
+    int numRows = inM.numRows();
+    int numCols = inM.numCols();
+    if (numRows != numCols) {
+        System.out.println("invLapack() called for non-square matrix");
+        return inM;
+    }
+    double [] data = columnMajorCopy(inM);
+    
+    int [] lpiv = new int[numRows];
+    intW info = new intW(0);
+    LAPACK.getInstance().dgetrf(numRows, numCols, data,  ld(numRows), lpiv,  info);
+
+    int workSize = -1; // issue workspace query
+    double [] work = new double[2];
+    LAPACK.getInstance().dgetri(numRows, data, ld(numRows), lpiv, work, workSize, info);
+    workSize = (int) work[0];  // take the computed optimal workspace size
+    
+    work = new double[workSize];
+    LAPACK.getInstance().dgetri(numRows, data, ld(numRows), lpiv, work, workSize, info);
+    
+    if (info.val != 0) 
+        System.out.println("illegal invLapack with code:  "+info.val);
+    
+    return new Matrix(data, numRows, numCols, 0, 1, numRows);  // return the inverse matrix
+ }
+
 
 // simpler interface to LAPACK DGELS routine
 // solves overdetermined/underdetermined linear systems involving an m-by-n matrix A
@@ -244,6 +312,38 @@ public static double [][]  DGELS(double [][] A, double [][] B) {
      return dBc.toDoubleArray();
   }
 
+// DGELS on Matrix objects, the n-by-nrhs solution is returned as a column-major flat-backed Matrix
+public static Matrix  DGELS(Matrix A, Matrix B) {
+    int  M = A.numRows();   // number of rows
+    int  N = A.numCols();  // number of columns
+    int  NRHS = B.numCols();  // number of right hand sides
+    
+    int LDA = ld(M);  // leading dimension of A
+    int LDB = Math.max(M, N);  // since LDB >= max(1, M, N)
+    
+    double [] dA = columnMajorCopy(A);
+    double [] dB = new double[LDB*NRHS];  // B is copied to a LDB leading dimension array
+    for (int c=0; c<NRHS; c++)
+        for (int r=0; r<M; r++)
+            dB[c*LDB+r] = B.get(r, c);
+    
+    intW info = new intW(0);
+    
+    int workSize = -1; // issue workspace query
+    double [] work = new double[2];
+    LAPACK.getInstance().dgels("N", M, N, NRHS, dA, LDA, dB, LDB, work, workSize, info);
+    workSize = (int) work[0];  // take the computed optimal workspace size
+    
+    work = new double[workSize];
+    LAPACK.getInstance().dgels("N", M, N, NRHS, dA, LDA, dB, LDB, work, workSize, info);
+
+    if (info.val != 0) 
+        System.out.println("illegal DGELS with code:  "+info.val);
+    
+     // the solution occupies the first N rows of each column of dB
+     return new Matrix(dB, N, NRHS, 0, 1, LDB);
+  }
+
 
 // simpler interface to LAPACK DGELD routine
 // computes the minimum norm solutionto a real linear least squares problem:
@@ -0,0 +1,534 @@
+package groovySci.math.array;
+
+import Jama.EigenvalueDecomposition;
+import Jama.LinearAlgebra;
+import Jama.QRDecomposition;
+import Jama.SingularValueDecomposition;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/*
+ Routes solve, inv, svd, eig, qr and det to the fastest of the available libraries
+ (JAMA, EJML, JBLAS, MTJ/LAPACK, Numerical Recipes, Apache Commons Math).
+
+ The first time an operation is called for a shape bucket (the rows and the columns each between successive
+ powers of 2), all the backends of the operation are timed on a synthetic matrix of the caller's shape, and the
+ fastest one is used afterwards for the bucket; the caller's matrices are only given to the chosen backend.
+ Matrices of more than maxTuneElements elements are not timed, they use the default backend. The timings are
+ kept at a profile that is saved at profileFile, in the .groovylab directory of the user's home, and reloaded at
+ the next session, e.g.
+
+   LinAlgDispatcher.profile()                     // the timings and the chosen backends
+   LinAlgDispatcher.backends("solve")             // the available backends, e.g. [jama, ejml, mtj]
+   LinAlgDispatcher.setBackend("svd", "nr")       // always use Numerical Recipes for svd
+   LinAlgDispatcher.setBackend("inv", 512, "mtj") // use MTJ for inverses of the size bucket of 512
+   LinAlgDispatcher.setBackend("svd", null)       // back to the automatic choice
+   LinAlgDispatcher.autoTune = false              // use the default (first) backends, without timing
+
+ The results are the same as those of the default backends up to rounding, apart from the signs
+ of the singular vectors and of the Q columns, that differ between the libraries. A singular matrix throws
+ as at JAMA: a backend that detects it throws SingularMatrixException, any other failure of a backend
+ is retried at the default backend. eig is not routed automatically, since the libraries scale the eigenvectors
+ differently: it uses Numerical Recipes unless another backend is set with setBackend.
+ */
+public class LinAlgDispatcher {
+
+    public static final String SOLVE = "solve", INV = "inv", SVD = "svd", EIG = "eig", QR = "qr", DET = "det";
+
+    // when false, the operations use the default backend of each operation unless overridden
+    public static boolean autoTune = true;
+    // the file where the timing profile is kept
+    public static File profileFile = new File(new File(System.getProperty("user.home"), ".groovylab"), "LinAlgProfile.props");
+    // backends faster than that (in seconds) are timed a few more times, since a single fast run is noisy
+    public static double repeatBelowSecs = 0.02;
+    // larger matrices (elements of A and B) are not timed, they use the default backend unless overridden
+    public static long maxTuneElements = 1 << 18;
+
+    // thrown by the backends that detect a singular matrix, it is not retried at the default backend
+    public static class SingularMatrixException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SingularMatrixException() { super("Matrix is singular."); }
+    }
+
+    // a library implementation of an operation, B is only used by solve
+    static abstract class Backend {
+        final String name;
+
+        Backend(String name) { this.name = name; }
+
+        boolean isAvailable() { return true; }
+
+        abstract Object run(double [][] A, double [][] B);
+    }
+
+    // the backends of each operation, the first one is the default
+    private static final Map<String, Backend[]> backendsOf = new LinkedHashMap<String, Backend[]>();
+    // the backends forced with setBackend(), keyed by operation or by operation.rowBucket.colBucket
+    private static final Map<String, String> overrides = new LinkedHashMap<String, String>();
+    // the operations that keep their default backend unless overridden, since the results of the backends differ
+    private static final java.util.Set<String> untuned = new java.util.HashSet<String>(java.util.Arrays.asList(EIG));
+    // operation.rowBucket.colBucket -> chosen backend, operation.rowBucket.colBucket.backend -> seconds
+    private static Properties timings = null;
+    // held while a bucket is timed, thus concurrent first calls time it once
+    private static final Object tuneLock = new Object();
+
+    static {
+        backendsOf.put(SOLVE, new Backend[] {
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) { return LinearAlgebra.solve(A, B); }
+            },
+            new Backend("ejml") {
+                Object run(double [][] A, double [][] B) {
+                    org.ejml.data.DenseMatrix64F x = new org.ejml.data.DenseMatrix64F(A.length, B[0].length);
+                    if (!org.ejml.ops.CommonOps.solve(new org.ejml.data.DenseMatrix64F(A), new org.ejml.data.DenseMatrix64F(B), x))
+                        throw new SingularMatrixException();
+                    return Matrix.EJMLDenseMatrixtoDoubleArray(x);
+                }
+            },
+            new Backend("jblas") {
+                boolean isAvailable() { return GEMM.isNativeBLASLoaded(); }
+                Object run(double [][] A, double [][] B) {
+                    return org.jblas.Solve.solve(new org.jblas.DoubleMatrix(A), new org.jblas.DoubleMatrix(B)).toArray2();
+                }
+            },
+            new Backend("mtj") {
+                Object run(double [][] A, double [][] B) { return new Matrix(A, true).MTJsolve(new Matrix(B, true)).getArray(); }
+            }
+        });
+
+        backendsOf.put(INV, new Backend[] {
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) { return LinearAlgebra.inverse(A); }
+            },
+            new Backend("ejml") {
+                Object run(double [][] A, double [][] B) {
+                    org.ejml.data.DenseMatrix64F a = new org.ejml.data.DenseMatrix64F(A);
+                    if (!org.ejml.ops.CommonOps.invert(a))
+                        throw new SingularMatrixException();
+                    return Matrix.EJMLDenseMatrixtoDoubleArray(a);
+                }
+            },
+            new Backend("jblas") {
+                boolean isAvailable() { return GEMM.isNativeBLASLoaded(); }
+                Object run(double [][] A, double [][] B) {
+                    return org.jblas.Solve.solve(new org.jblas.DoubleMatrix(A), org.jblas.DoubleMatrix.eye(A.length)).toArray2();
+                }
+            },
+            new Backend("mtj") {
+                Object run(double [][] A, double [][] B) { return lapackInv(A); }
+            }
+        });
+
+        backendsOf.put(SVD, new Backend[] {
+            new Backend("apache") {
+                Object run(double [][] A, double [][] B) { return Matrix.asvd(A); }
+            },
+            new Backend("nr") {
+                Object run(double [][] A, double [][] B) {
+                    SvdResults r = Matrix.nrsvd(A);
+                    r.norm = r.W[0];    // the singular values are sorted in decreasing order
+                    r.conditionNumber = r.W[0]/r.W[r.W.length-1];
+                    return r;
+                }
+            },
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) {
+                    SingularValueDecomposition s = LinearAlgebra.singular(A);
+                    SvdResults r = new SvdResults();
+                    r.U = s.getU().getArray();
+                    r.W = s.getSingularValues();
+                    r.V = s.getV().getArray();
+                    r.conditionNumber = s.cond();
+                    r.norm = s.norm2();
+                    return r;
+                }
+            }
+        });
+
+        backendsOf.put(EIG, new Backend[] {
+            new Backend("nr") {
+                Object run(double [][] A, double [][] B) { return Matrix.eigNR(A, true, false); }
+            },
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) { return jamaEig(A); }
+            }
+        });
+
+        backendsOf.put(QR, new Backend[] {
+            new Backend("apache") {
+                Object run(double [][] A, double [][] B) { return Matrix.aqr(A); }
+            },
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) {
+                    QRDecomposition q = LinearAlgebra.QR(A);
+                    QRResults r = new QRResults();
+                    r.Q = q.getQ().getArray();
+                    r.R = q.getR().getArray();
+                    return r;
+                }
+            },
+            new Backend("nr") {
+                Object run(double [][] A, double [][] B) {
+                    QRResults r = Matrix.nrqr(A);
+                    r.Q = DoubleArray.transpose(r.Q);   // Numerical Recipes keeps the transpose of Q
+                    return r;
+                }
+            }
+        });
+
+        backendsOf.put(DET, new Backend[] {
+            new Backend("jama") {
+                Object run(double [][] A, double [][] B) { return LinearAlgebra.det(A); }
+            },
+            new Backend("nr") {
+                Object run(double [][] A, double [][] B) { return new com.nr.la.LUdcmp(A).det(); }
+            },
+            new Backend("ejml") {
+                Object run(double [][] A, double [][] B) { return org.ejml.ops.CommonOps.det(new org.ejml.data.DenseMatrix64F(A)); }
+            }
+        });
+    }
+
+    // the eigen decomposition of JAMA, with the eigenvalues and eigenvectors sorted
+    // in decreasing order of the real part, as Numerical Recipes returns them
+    static eigReIm jamaEig(double [][] A) {
+        EigenvalueDecomposition e = LinearAlgebra.eigen(A);
+        int n = A.length;
+        double [] re = e.getRealEigenvalues();
+        double [] im = e.getImagEigenvalues();
+        double [][] v = e.getV().getArray();
+        Integer [] order = new Integer[n];
+        for (int k = 0; k < n; k++)
+            order[k] = k;
+        final double [] key = re;
+        java.util.Arrays.sort(order, new java.util.Comparator<Integer>() {   // stable, thus conjugate pairs stay together
+            public int compare(Integer a, Integer b) { return Double.compare(key[b], key[a]); }
+        });
+        eigReIm r = new eigReIm(n);
+        for (int k = 0; k < n; k++) {
+            int src = order[k];
+            r.realEvs[k] = re[src];
+            r.imEvs[k] = im[src];
+            for (int row = 0; row < n; row++)
+                r.realEvecs[row][k] = v[row][src];
+        }
+        return r;
+    }
+
+
+    // the operations, the inputs are not modified
+    public static double [][] solve(double [][] A, double [][] B) {
+        if (A.length != A[0].length)
+            return LinearAlgebra.solve(A, B);    // least squares, only JAMA handles it in the same way
+        return (double [][]) dispatch(SOLVE, A, B);
+    }
+
+    public static double [][] inv(double [][] A) {
+        return (double [][]) dispatch(INV, A, null);
+    }
+
+    public static SvdResults svd(double [][] A) {
+        if (A.length < A[0].length)
+            return Matrix.asvd(A);     // the other backends require rows >= columns
+        return (SvdResults) dispatch(SVD, A, null);
+    }
+
+    public static eigReIm eig(double [][] A) {
+        return (eigReIm) dispatch(EIG, A, null);
+    }
+
+    public static QRResults qr(double [][] A) {
+        if (A.length != A[0].length)
+            return Matrix.aqr(A);     // the factor sizes of non-square matrices differ between the backends
+        return (QRResults) dispatch(QR, A, null);
+    }
+
+    public static double det(double [][] A) {
+        return (Double) dispatch(DET, A, null);
+    }
+
+
+    // the size bucket: dimensions in (2^(b-1), 2^b] share the bucket b
+    static int bucket(int n) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(n-1, 1));
+    }
+
+    // the key of the shape bucket of m x n matrices
+    static String key(String op, int m, int n) {
+        return op+"."+bucket(m)+"."+bucket(n);
+    }
+
+    private static Object dispatch(String op, double [][] A, double [][] B) {
+        int m = A.length, n = A[0].length, nrhs = B == null ? 0 : B[0].length;
+        String key = key(op, m, n);
+        Backend chosen = chosenBackend(op, key);
+        if (chosen == null) {
+            if ((long) m*n + (long) m*nrhs > maxTuneElements)
+                chosen = backendsOf.get(op)[0];
+            else
+                synchronized (tuneLock) {
+                    chosen = chosenBackend(op, key);    // timed meanwhile by another thread
+                    if (chosen == null)
+                        chosen = tune(op, key, m, n, nrhs);
+                }
+        }
+        return run(op, chosen, A, B);
+    }
+
+    // runs the backend on the input; a singular matrix throws, as at JAMA, while another failure,
+    // e.g. of a native library, is retried at the default backend, that throws for a singular matrix
+    private static Object run(String op, Backend b, double [][] A, double [][] B) {
+        try {
+            return b.run(A, B);
+        }
+        catch (SingularMatrixException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            Backend def = backendsOf.get(op)[0];
+            if (b == def)
+                throw e;
+            return def.run(A, B);
+        }
+    }
+
+    // the backend to use, null if the bucket has to be timed first
+    private static synchronized Backend chosenBackend(String op, String key) {
+        String name = overrides.get(key);
+        if (name == null)
+            name = overrides.get(op);
+        if (name == null && (!autoTune || untuned.contains(op)))
+            return backendsOf.get(op)[0];
+        if (name == null)
+            name = getTimings().getProperty(key);
+        if (name == null)
+            return null;
+        Backend b = find(op, name);
+        if (b == null || !b.isAvailable())   // e.g. a profile saved where the native BLAS was available
+            return null;
+        return b;
+    }
+
+    // times all the available backends on a synthetic m x n matrix (and nrhs right-hand sides for solve),
+    // records the fastest for the bucket key and returns it
+    private static Backend tune(String op, String key, int m, int n, int nrhs) {
+        Backend [] cands = backendsOf.get(op);
+        double [][] A = syntheticMatrix(m, n, 1);
+        double [][] B = nrhs > 0 ? syntheticMatrix(m, nrhs, 2) : null;
+        Backend best = null;
+        double bestSecs = Double.MAX_VALUE;
+        Properties measured = new Properties();
+        for (Backend b : cands) {
+            if (!b.isAvailable())
+                continue;
+            try {
+                long start = System.nanoTime();
+                b.run(A, B);
+                double secs = (System.nanoTime()-start)*1e-9;
+                for (int k = 0; k < 3 && secs < repeatBelowSecs; k++) {
+                    start = System.nanoTime();
+                    b.run(A, B);
+                    secs = Math.min(secs, (System.nanoTime()-start)*1e-9);
+                }
+                measured.setProperty(key+"."+b.name, String.valueOf(secs));
+                if (secs < bestSecs) {
+                    bestSecs = secs;
+                    best = b;
+                }
+            }
+            catch (RuntimeException e) {    // the backend fails at a regular matrix, it is not recorded
+            }
+            catch (LinkageError e) {    // a library that is not at the classpath
+            }
+            catch (OutOfMemoryError e) {    // e.g. the workspace of a library, the backend is not recorded
+            }
+        }
+        if (best == null)
+            throw new IllegalStateException("no backend is available for "+key);
+        synchronized (LinAlgDispatcher.class) {
+            Properties t = getTimings();
+            t.putAll(measured);
+            t.setProperty(key, best.name);
+            saveProfile();
+        }
+        return best;
+    }
+
+    // a diagonally dominant random matrix, thus well conditioned, of fixed seed
+    static double [][] syntheticMatrix(int m, int n, long seed) {
+        java.util.Random r = new java.util.Random(seed);
+        double [][] a = new double[m][n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++)
+                a[i][j] = 2*r.nextDouble()-1;
+            if (i < n)
+                a[i][i] += n;
+        }
+        return a;
+    }
+
+    // the inverse by the LU decomposition of LAPACK, as JILapack.invLapack, throwing for a singular matrix
+    static double [][] lapackInv(double [][] A) {
+        int n = A.length;
+        no.uib.cipr.matrix.DenseMatrix M = new no.uib.cipr.matrix.DenseMatrix(A);
+        double [] a = M.getData();
+        int [] piv = new int[n];
+        org.netlib.util.intW info = new org.netlib.util.intW(0);
+        org.netlib.lapack.LAPACK.getInstance().dgetrf(n, n, a, Math.max(1, n), piv, info);
+        if (info.val > 0)
+            throw new SingularMatrixException();
+        double [] work = new double[1];
+        org.netlib.lapack.LAPACK.getInstance().dgetri(n, a, Math.max(1, n), piv, work, -1, info);
+        work = new double[Math.max(1, (int) work[0])];
+        org.netlib.lapack.LAPACK.getInstance().dgetri(n, a, Math.max(1, n), piv, work, work.length, info);
+        if (info.val != 0)
+            throw new SingularMatrixException();
+        return M.toDoubleArray();
+    }
+
+    private static Backend find(String op, String name) {
+        Backend [] cands = backendsOf.get(op);
+        if (cands == null)
+            throw new IllegalArgumentException("unknown operation "+op+", the operations are "+backendsOf.keySet());
+        for (Backend b : cands)
+            if (b.name.equals(name))
+                return b;
+        return null;
+    }
+
+    private static Properties getTimings() {
+        if (timings == null) {
+            timings = new Properties();
+            if (profileFile.exists()) {
+                try {
+                    FileInputStream in = new FileInputStream(profileFile);
+                    try {
+                        timings.load(in);
+                    }
+                    finally {
+                        in.close();
+                    }
+                }
+                catch (IOException e) {
+                    System.out.println("cannot load the linear algebra profile "+profileFile+": "+e.getMessage());
+                }
+            }
+        }
+        return timings;
+    }
+
+
+    // the names of the available backends of the operation, the first one is the default
+    public static String [] backends(String op) {
+        find(op, "");    // validates the operation
+        ArrayList<String> names = new ArrayList<String>();
+        for (Backend b : backendsOf.get(op))
+            if (b.isAvailable())
+                names.add(b.name);
+        return names.toArray(new String[names.size()]);
+    }
+
+    // the backend used for the operation at n x n matrices, null if it is not chosen yet
+    public static synchronized String getBackend(String op, int n) {
+        return getBackend(op, n, n);
+    }
+
+    // the backend used for the operation at m x n matrices, null if it is not chosen yet
+    public static synchronized String getBackend(String op, int m, int n) {
+        Backend b = chosenBackend(op, key(op, m, n));
+        return b == null ? null : b.name;
+    }
+
+    // forces the backend of the operation for all sizes, null restores the automatic choice
+    public static synchronized void setBackend(String op, String backend) {
+        setOverride(op, op, backend);
+    }
+
+    // forces the backend of the operation for the bucket of n x n matrices, null restores the automatic choice
+    public static synchronized void setBackend(String op, int n, String backend) {
+        setBackend(op, n, n, backend);
+    }
+
+    // forces the backend of the operation for the bucket of m x n matrices, null restores the automatic choice
+    public static synchronized void setBackend(String op, int m, int n, String backend) {
+        setOverride(op, key(op, m, n), backend);
+    }
+
+    private static void setOverride(String op, String key, String backend) {
+        if (backend == null) {
+            overrides.remove(key);
+            return;
+        }
+        Backend b = find(op, backend);
+        if (b == null)
+            throw new IllegalArgumentException("unknown backend "+backend+" for "+op+", the backends are "+java.util.Arrays.toString(backends(op)));
+        if (!b.isAvailable())
+            throw new IllegalArgumentException("backend "+backend+" is not available");
+        overrides.put(key, backend);
+    }
+
+    // a description of the timings, the chosen backends and the overrides
+    public static synchronized String profile() {
+        Properties t = getTimings();
+        StringBuilder sb = new StringBuilder();
+        for (String op : backendsOf.keySet()) {
+            TreeSet<Long> buckets = new TreeSet<Long>();    // rowBucket << 32 | colBucket
+            for (String k : t.stringPropertyNames()) {
+                String [] parts = k.split("\\.");
+                if (parts[0].equals(op) && parts.length == 3)
+                    buckets.add(Long.valueOf(parts[1]) << 32 | Long.valueOf(parts[2]));
+            }
+            sb.append(op);
+            if (overrides.containsKey(op))
+                sb.append("  (forced: ").append(overrides.get(op)).append(")");
+            sb.append("\n");
+            for (long bk : buckets) {
+                int rb = (int) (bk >>> 32), cb = (int) bk;
+                String key = op+"."+rb+"."+cb;
+                sb.append("  size <= ").append(1 << rb).append(" x ").append(1 << cb).append(": ").append(t.getProperty(key));
+                if (overrides.containsKey(key))
+                    sb.append("  (forced: ").append(overrides.get(key)).append(")");
+                sb.append("   ");
+                for (Backend b : backendsOf.get(op)) {
+                    String secs = t.getProperty(key+"."+b.name);
+                    if (secs != null)
+                        sb.append(b.name).append("=").append(String.format("%.3g", Double.valueOf(secs))).append("s ");
+                }
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    // forgets the timings, the sizes are timed again at next use
+    public static synchronized void clearProfile() {
+        timings = new Properties();
+        saveProfile();
+    }
+
+    public static synchronized void saveProfile() {
+        try {
+            File dir = profileFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("cannot create "+dir);
+            FileOutputStream out = new FileOutputStream(profileFile);
+            try {
+                getTimings().store(out, "GroovyLab linear algebra backend timings (seconds)");
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            System.out.println("cannot save the linear algebra profile "+profileFile+": "+e.getMessage());
+        }
+    }
+}
@@ -3,6 +3,7 @@
 package groovySci.math.array;
 
 import groovy.lang.Closure;
+import groovySci.math.array.util.Function;
 import Jama.CholeskyDecomposition;
 import Jama.LUDecomposition;
 import Jama.QRDecomposition;
@@ -135,13 +136,53 @@ public class Matrix  extends GroovyObjectSupport  {
     // y = x[1..2][3..4]  
     
     // The storage of data as double [][] array. We can manipulate it directly for efficiency.
+    // For flat-backed and deferred matrices (see isFlat() and isDeferred()) d is null until a row-array based operation needs it,
+    // thus it should be read with getArray(), the property d of the scripts reads it with getD()
      public    double[][] d;
 
-     // get the data array by reference
-     final public  double [][] getArray() { return d; } 
+    // Optional flat storage: when fd is not null, element (i, j) is kept at fd[foffset + i*frowStride + j*fcolStride]
+    // A row-major layout (frowStride = ncols, fcolStride = 1) avoids row-pointer chasing, 
+    // a column-major layout (frowStride = 1, fcolStride = nrows) is shared without copying with JBLAS and MTJ
+     private double [] fd;
+     private int foffset;
+     private int frowStride;
+     private int fcolStride;
+
+    // Lazy evaluation: when lazyEvaluation is true, the element-wise operators (plus, minus, multiply and div by scalars,
+    // plus and minus of matrices, dot() and the elementary functions sin(), cos(), exp(), log() ...) return a deferred Matrix.
+    // A deferred Matrix keeps a MatrixExpr tree (lazyExpr) instead of data, the tree is evaluated at a single fused pass
+    // to a row-major flat storage at the first access of the data, or explicitly with eval()
+    // e.g.
+    //   Matrix.lazyEvaluation = true
+    //   A = rand(2000, 2000);  C = sin(A)*2 + A - 1   // a single pass over A, without temporary matrices
+     static public boolean lazyEvaluation = false;
+     private MatrixExpr lazyExpr;
+     // the deferred matrices that read this Matrix, they are evaluated before this Matrix can be modified,
+     // thus they keep the values of their operands at the time they were built
+     private java.util.ArrayList<java.lang.ref.WeakReference<Matrix>> pendingReaders;
+
+     // get the data array by reference, a flat-backed Matrix is converted to the double [][] storage
+     final public  double [][] getArray() { 
+         if (d == null) unflatten();
+         else evalPendingReaders();
+         return d; 
+     } 
+
+     // the property d of the scripts, e.g. A.d, never null, as getArray()
+     final public double [][] getD() { return getArray(); }
+
+     final public void setD(double [][] a) { setRef(a); }
    
         // gets the first row of the matrix as double [] array 
      final public double [] getv() {
+         if (lazyExpr != null) eval();
+         if (fd != null) {
+            double [] firstRow =  new double[fncols];
+            int idx = foffset;
+            for (int c=0; c<fncols; c++, idx += fcolStride)
+                firstRow[c] = fd[idx];
+            return firstRow;
+         }
             int ncol = d[0].length; // number of columns
             double [] firstRow =  new double[ncol];
             for (int c=0; c<ncol; c++)
@@ -150,18 +191,45 @@ public class Matrix  extends GroovyObjectSupport  {
             return firstRow;
         }
 
+        // gets the first row of the matrix by reference, i.e. updates of the returned array update the matrix.
+        // For a one row, contiguous, flat-backed matrix the flat array itself is returned without copying,
+        // else the row of the double [][] storage
+     final public double [] getvRef() {
+         if (lazyExpr != null) eval();
+         if (fd != null && fnrows == 1 && foffset == 0 && fcolStride == 1 && fd.length == fncols)
+             return getFlatArray();
+         return getArray()[0];
+     }
+
        // set the reference to double[][] storage of this matrix object to a different array 	
     final  public void setRef(double[][] a) {
+        evalPendingReaders();
+        fd = null;
+        lazyExpr = null;
         d = a;
     }
       // sets the reference to a row of this matrix to a different row   	
     final  public  void setRowRef(int i, double[] row) {
-        d[i-1] = row;
+        getArray()[i-1] = row;
     }
 
      
     // get  the data array by value
 final public double [][] toDoubleArray() { 
+    if (lazyExpr != null) eval();
+    if (fd != null) {
+        double [][] data = new double[fnrows][fncols];
+        for (int r = 0; r < fnrows; r++)  {
+            double [] dr = data[r];
+            int idx = foffset + r*frowStride;
+            if (fcolStride == 1)
+                System.arraycopy(fd, idx, dr, 0, fncols);
+            else
+                for (int c=0; c < fncols; c++, idx += fcolStride)
+                    dr[c] = fd[idx];
+        }
+        return data;
+    }
     int Nrows = d.length; int Ncols = d[0].length;
     double [][] data = new double[Nrows][Ncols];
     for (int r = 0; r < Nrows; r++)
@@ -170,15 +238,158 @@ final public double [][] toDoubleArray() {
     return data;
 }
 
-final public int numRows()  { return d.length; }
-final public int numCols() { return d[0].length; }
-final public int numColumns() { return d[0].length; }
-final public int Nrows() { return d.length; }
-final public int Ncols() { return d[0].length; }
+final public int numRows()  { return d == null ? fnrows : d.length; }
+final public int numCols() { return d == null ? fncols : d[0].length; }
+final public int numColumns() { return d == null ? fncols : d[0].length; }
+final public int Nrows() { return d == null ? fnrows : d.length; }
+final public int Ncols() { return d == null ? fncols : d[0].length; }
   // keep row and column numbers as as field for further efficiency
 final public int fnrows;
 final public int fncols;
 
+
+// true if the Matrix keeps its data at a flat double [] array
+final public boolean isFlat() { return fd != null; }
+
+// the flat storage array by reference (null if the Matrix is not flat-backed)
+final public double [] getFlatArray() { 
+    evalPendingReaders();
+    return fd; 
+}
+
+// the storage, without evaluating the pending readers, for the evaluation of the expressions that read the Matrix
+final double [] flatData() { return fd; }
+final double [][] rowData() { return d; }
+final public int getFlatOffset() { return foffset; }
+final public int getRowStride() { return frowStride; }
+final public int getColStride() { return fcolStride; }
+
+// true if the flat storage is exactly a row-major nrows*ncols array, e.g. as EJML's DenseMatrix64F keeps its data
+final public boolean isRowMajorFlat() {
+    return fd != null && foffset == 0 && fcolStride == 1 && frowStride == fncols && fd.length == fnrows*fncols;
+}
+
+// true if the flat storage is exactly a column-major nrows*ncols array, e.g. as JBLAS and MTJ keep their data
+final public boolean isColumnMajorFlat() {
+    return fd != null && foffset == 0 && frowStride == 1 && fcolStride == fnrows && fd.length == fnrows*fncols;
+}
+
+// converts the Matrix to a row-major flat storage, the double [][] storage is released
+final public Matrix flatten() {
+    if (lazyExpr != null)
+        return eval();   // the evaluation gives a row-major flat storage
+    if (isRowMajorFlat())
+        return this;
+    int nrows = numRows(); int ncols = numCols();
+    double [] flat = new double[nrows*ncols];
+    for (int r = 0; r < nrows; r++)
+        for (int c = 0; c < ncols; c++)
+            flat[r*ncols+c] = get(r, c);
+    d = null;
+    fd = flat; foffset = 0; frowStride = ncols; fcolStride = 1;
+    return this;
+}
+
+// converts a flat-backed Matrix to the double [][] storage, the flat storage is released
+final public Matrix unflatten() {
+    if (lazyExpr != null) eval();
+    evalPendingReaders();
+    if (fd != null) {
+        double [][] data = toDoubleArray();
+        fd = null;
+        d = data;
+    }
+    return this;
+}
+
+// true if the Matrix is deferred, i.e. it keeps an unevaluated element-wise expression
+final public boolean isDeferred() { return lazyExpr != null; }
+
+final MatrixExpr getDeferredExpr() { return lazyExpr; }
+
+// registers the deferred Matrix reader, an expression with this Matrix as operand
+final void addPendingReader(Matrix reader) {
+    if (pendingReaders == null)
+        pendingReaders = new java.util.ArrayList<java.lang.ref.WeakReference<Matrix>>(2);
+    else
+        for (java.util.Iterator<java.lang.ref.WeakReference<Matrix>> it = pendingReaders.iterator(); it.hasNext(); ) {
+            Matrix r = it.next().get();
+            if (r == null || r.lazyExpr == null)   // collected or already evaluated
+                it.remove();
+        }
+    pendingReaders.add(new java.lang.ref.WeakReference<Matrix>(reader));
+}
+
+// evaluates the deferred matrices that read this Matrix, before it is modified or its storage is given by reference
+private void evalPendingReaders() {
+    if (pendingReaders == null)
+        return;
+    java.util.ArrayList<java.lang.ref.WeakReference<Matrix>> readers = pendingReaders;
+    pendingReaders = null;
+    for (java.lang.ref.WeakReference<Matrix> w : readers) {
+        Matrix r = w.get();
+        if (r != null)
+            r.eval();
+    }
+}
+
+// evaluates a deferred Matrix to a row-major flat storage, a Matrix that keeps data is returned as is
+final public Matrix eval() {
+    if (lazyExpr != null) {
+        double [] data = lazyExpr.evaluate();
+        lazyExpr = null;
+        fd = data; foffset = 0; frowStride = fncols; fcolStride = 1;
+    }
+    return this;
+}
+
+// a deferred Matrix for the expression
+private Matrix(MatrixExpr e) {
+    fnrows = e.nrows;
+    fncols = e.ncols;
+    lazyExpr = e;
+    e.addReader(this);
+}
+
+// true if the element-wise operation of this Matrix with M can be deferred
+private boolean canDefer(Matrix M) {
+    return lazyEvaluation && numRows() == M.numRows() && numCols() == M.numCols();
+}
+
+private static Matrix deferUnary(int op, Matrix M) {
+    return new Matrix(new MatrixExpr.Unary(op, 0.0, MatrixExpr.of(M)));
+}
+
+// an element-wise function of M with the ElementwiseOps kernels, deferred when lazyEvaluation is true
+private static Matrix elementwise(int op, Matrix M) {
+    if (lazyEvaluation)
+        return deferUnary(op, M);
+    return ElementwiseOps.apply(op, M, ElementwiseOps.newLike(M));
+}
+
+private Matrix deferBinary(int op, Matrix M) {
+    return new Matrix(new MatrixExpr.Binary(op, MatrixExpr.of(this), MatrixExpr.of(M)));
+}
+
+private Matrix deferScalar(int op, double v) {
+    return new Matrix(new MatrixExpr.Scalar(op, MatrixExpr.of(this), v, false));
+}
+
+// a zero row-major flat-backed Matrix
+final public static Matrix flat(int n, int m) {
+    return new Matrix(new double[n*m], n, m, 0, m, 1);
+}
+
+// a zero column-major flat-backed Matrix, it can be passed to JBLAS without copying
+final public static Matrix flatColumnMajor(int n, int m) {
+    return new Matrix(new double[n*m], n, m, 0, 1, n);
+}
+
+// a row-major flat-backed copy of the Matrix M
+final public static Matrix flat(Matrix M) {
+    return new Matrix(M).flatten();
+}
+
 // returns size as an array of two ints, i.e. int[2]
 final public int  [] size() {
     int [] siz = new int[2];
@@ -271,7 +482,7 @@ final static  Matrix M( Object ...values)    {
                
         for (int  rs=0; rs < nrowsSubm; rs++)
            for (int cs=0; cs < ncolsSubm; cs++)
-               nm.d[crow+rs][ccol+cs] = cv.d[rs][cs];
+               nm.d[crow+rs][ccol+cs] = cv.getArray()[rs][cs];
                }
                  
          cpos++;  // next element
@@ -311,7 +522,7 @@ final static  Matrix M( Object ...values)    {
   
 // clone the Matrix object
   final public Matrix  clone()  {
-    return new Matrix(this.d, false);  // return a new Matrix object copying data contents
+    return new Matrix(this);  // return a new Matrix object copying data contents
 }  
   
   final public  Matrix copy()  {  // same as clone()
@@ -349,10 +560,39 @@ public Matrix(int n, int m, double v)  {  // creates a Matrix filled with the va
 }
 
 public Matrix(Matrix m) {    // matrix to copy
- d = DoubleArray.copy(m.d);   
+  if (m.lazyExpr != null) m.eval();
+  if (m.fd != null)  {  // a flat-backed Matrix is copied to a row-major flat storage
+    fnrows = m.fnrows;
+    fncols = m.fncols;
+    fd = new double[fnrows*fncols];
+    frowStride = fncols;
+    fcolStride = 1;
+    for (int r = 0; r < fnrows; r++) {
+        int idx = m.foffset + r*m.frowStride;
+        for (int c = 0; c < fncols; c++, idx += m.fcolStride)
+            fd[r*fncols+c] = m.fd[idx];
+    }
+  }
+  else {
+    d = DoubleArray.copy(m.d);   
  
     fnrows = d.length;
     fncols = d[0].length;
+  }
+}
+
+// construct a flat-backed Matrix that uses the data array by reference,
+// the element (i, j) is kept at data[offset + i*rowStride + j*colStride]
+// e.g.  new Matrix(data, n, m, 0, m, 1) for row-major and new Matrix(data, n, m, 0, 1, n) for column-major data
+public Matrix(double [] data, int n, int m, int offset, int rowStride, int colStride) {
+    if (offset < 0 || offset + (n-1)*rowStride + (m-1)*colStride >= data.length)
+        throw new IllegalArgumentException("Flat storage of length "+data.length+" cannot keep a "+n+" x "+m+" Matrix with offset = "+offset+", rowStride = "+rowStride+", colStride = "+colStride);
+    fd = data;
+    foffset = offset;
+    frowStride = rowStride;
+    fcolStride = colStride;
+    fnrows = n;
+    fncols = m;
 }
 
 // inVec elements are zero-indexed arrays of doubles
@@ -506,7 +746,7 @@ public static Matrix read(String filename)  {
 }
 	
 public static void write(File f, Matrix M)  {
-    ASCIIFile.writeDoubleArray(f, M.d);
+    ASCIIFile.writeDoubleArray(f, M.getArray());
 }
 	
 public static void write(String filename,Matrix M)  {
@@ -514,44 +754,57 @@ public static void write(String filename,Matrix M)  {
 }
 
 final public double get(int i, int j) {
+   if (lazyExpr != null) eval();
+   if (fd != null)
+       return fd[foffset + i*frowStride + j*fcolStride];
    return  d[i][j];
 }
 	
 final public double[][] getRef() {
-   return d;
+   return getArray();
 }
 	
 final  public  double[][] getColumnCopy(int j) {
-    return DoubleArray.getColumnsCopy(d,j-1);
+    return DoubleArray.getColumnsCopy(getArray(),j-1);
 }
 	
 final  public double[] getColumnCopyasRow(int j) {
- return DoubleArray.getColumnCopy(d,j-1);
+ return DoubleArray.getColumnCopy(getArray(),j-1);
 }
 	
 final  public  double[] getRowRef(int i) {
-    return d[i-1];
+    return getArray()[i-1];
 }
 	
 final  public int getRowsNumber() {
-    return d.length;
+    return numRows();
 }
 	
 final  public int getColumnsNumber() {
-    return d[0].length;
+    return numCols();
 }
 	
 final  public void set(int i, int j, Number v) {
+    if (lazyExpr != null) eval();
+    evalPendingReaders();
+    if (fd != null)
+        fd[foffset + i*frowStride + j*fcolStride] = v.doubleValue();
+    else
     d[i][j] = v.doubleValue();
 }
 	
 final public void set(int i, int j, Integer v) {
+    if (lazyExpr != null) eval();
+    evalPendingReaders();
+    if (fd != null)
+        fd[foffset + (i-1)*frowStride + (j-1)*fcolStride] = (double)v.intValue();
+    else
     d[i-1][j-1] = (double)v.intValue();
 }
 	
 // resize the array (i.e. shrink or grow it)
 final  public void resize( int m, int n) {
-    d = DoubleArray.resize(d, m, n);
+    d = DoubleArray.resize(getArray(), m, n);
 }
 
 	
@@ -560,32 +813,35 @@ public  String toString() {
     String mstr = "";
     //if (groovySci.PrintFormatParams.verboseFlag==true)
       //  mstr += "Matrix["+Nrows()+","+Ncols()+"] =\n";
-    return mstr+printArray(d);
+    return mstr+printArray(d == null ? toDoubleArray() : d);
 }
 
 public String toString(String format) {
     String mstr = "Matrix["+Nrows()+","+Ncols()+"] =\n";
-    return mstr+printArray(d);  //DoubleArray.toString(format,  d);
+    return mstr+printArray(d == null ? toDoubleArray() : d);  //DoubleArray.toString(format,  d);
 }
 
 public String print() {
     String mstr = "Matrix["+Nrows()+","+Ncols()+"] =\n";
-    return mstr+printArray(d); // DoubleArray.print(d);
+    return mstr+printArray(d == null ? toDoubleArray() : d); // DoubleArray.print(d);
 }
 
 // appends the String s to the String representation of the matrix returned with toString()
 public String  plus(String s) {
-    return DoubleArray.toString(d) + s;
+    return DoubleArray.toString(d == null ? toDoubleArray() : d) + s;
 }
 
 // this method is used to overload the indexing operator e.g.,
 // A = rand(8, 9);   a23 = A[2,3]
 final public double   getAt(int row, int col)  { 
+    if (lazyExpr != null) eval();
+    if (fd != null)
+        return fd[foffset + row*frowStride + col*fcolStride];
     return d[row][col];
 }
 
 final public double getAt(java.util.List<Integer>  rc) {
-    return d[rc.get(0)][rc.get(1)];
+    return getAt(rc.get(0), rc.get(1));
 }
 
 
@@ -675,7 +931,7 @@ final public Matrix  getAt(IntRangeWithStep   rr, IntRangeWithStep  cr) {
 }
 
 public double []  getAt(int r) {
-    return d[r];
+    return getArray()[r];
 }
 
 // assign to a submatrix consisting of the rows within the rr range the value value 
@@ -702,6 +958,11 @@ private  void putAtWithRange(java.util.ArrayList <groovy.lang.IntRange>  paramLi
         }
 
 private  void putAtWithInt(Integer a1, Integer a2, double value) {
+    if (lazyExpr != null) eval();
+    evalPendingReaders();
+    if (fd != null)
+        fd[foffset + a1*frowStride + a2*fcolStride] = value;
+    else
     d[a1][a2] = value;
 }
 
@@ -808,6 +1069,7 @@ public void  putAt( IntRangeWithStep  rr, IntRangeWithStep cr, double value) {
    */
  
   final public Matrix gc( int [] colIndices)  {
+    unflatten();
     int  lv = colIndices.length;
     if (lv > Ncols())  // do nothing
       {
@@ -838,6 +1100,7 @@ public void  putAt( IntRangeWithStep  rr, IntRangeWithStep cr, double value) {
  extract3_1rows = testMat.gr(rowIndices)
    */
   final public Matrix gr(int [] rowIndices)  {
+    unflatten();
     int  lv = rowIndices.length;
     if (lv > Nrows())  // do nothing
       {
@@ -868,6 +1131,7 @@ public void  putAt( IntRangeWithStep  rr, IntRangeWithStep cr, double value) {
  extract0_2cols = testMat.gc(colIndices)
    */
   final public Matrix gc(boolean [] colIndices)   {   
+    unflatten();
     int  lv = colIndices.length; 
     if (lv != Ncols())  // do nothing
       {
@@ -908,6 +1172,7 @@ public void  putAt( IntRangeWithStep  rr, IntRangeWithStep cr, double value) {
    */
   
   final  public Matrix gr(boolean [] rowIndices) {
+    unflatten();
     int   lv = rowIndices.length;
     if (lv != Nrows())  // do nothing
       {
@@ -939,6 +1204,7 @@ public void  putAt( IntRangeWithStep  rr, IntRangeWithStep cr, double value) {
  
 // extracts a submatrix specifying rows only, take all columns, e.g. m.gr(2, 3) corresponds to Matlab's m(2:3, :)'
  final public Matrix  gr( int rowL,  int  rowH)  {
+    unflatten();
      int Nrows = d.length; int Ncols = d[0].length;
      int  rowStart = rowL;  int  rowEnd = rowH;
      int  colStart = 0;   int  colEnd =  Ncols - 1;   // all columns
@@ -995,6 +1261,7 @@ return subMatr;   // return the submatrix
 
 // extracts a submatrix, e.g. m.gc( 2,  12 ) corresponds to Matlab's m(:, 2:12)'
  final public Matrix  gc(int colLow, int  colHigh)  {
+    unflatten();
      int Nrows = d.length; int Ncols = d[0].length;
      int rowStart = 0;     int rowEnd =  Nrows-1;   // all rows
      int colStart = colLow;  int  colEnd = colHigh;
@@ -1053,16 +1320,18 @@ return subMatr;   // return the submatrix
      evenRdd = rdd.filterRows(pred)
    */
   final public Matrix   filterRows( Closure predicate)  {
+    unflatten();
+      boolean [] keep = PrimitiveClosures.select(predicate, this.numRows());   // a predicate { int k -> ... } is called without boxing
       int  rowCnt = 0;
       for (int r = 0; r <  this.numRows(); r++) {
-          if ((Boolean)predicate.call(r) == true)
+          if (keep[r])
            rowCnt++;
      }
  
     Matrix   newMat = new Matrix(rowCnt, this.numColumns());
     int  rCnt = 0;
     for (int r = 0; r < this.numRows(); r++)  {
-      if ((Boolean) predicate.call(r) == true) {  // copy the row
+      if (keep[r]) {  // copy the row
       for (int c = 0; c < this.numColumns(); c++)
           newMat.d[rCnt][c] =  this.d[r][c];
           rCnt++;
@@ -1075,15 +1344,17 @@ return subMatr;   // return the submatrix
 
   // return cols according to the predicate
  final public Matrix   filterColumns( Closure predicate)  {
+    unflatten();
+    boolean [] keep = PrimitiveClosures.select(predicate, this.numColumns());
     int  colCnt = 0;
     for (int c = 0; c < this.numColumns(); c++) {
-      if ((Boolean)predicate.call(c) ==  true)
+      if (keep[c])
        colCnt++;
   }
   int  cCnt = 0;
   Matrix   newMat = new Matrix(this.numRows(), colCnt);
     for (int c = 0; c < this.numColumns(); c++) {
-      if ((Boolean)predicate.call(c) == true )  {  // copy the column
+      if (keep[c])  {  // copy the column
       for (int r = 0; r < this.numRows(); r++) 
         newMat.d[r][cCnt] =  this.d[r][c];
       cCnt++;
@@ -1095,6 +1366,7 @@ return subMatr;   // return the submatrix
 
  // extracts a submatrix, e.g. m.grc( 2,  12, 4,   8 )  corresponds to Matlab's m(2:12, 4:8)'
 final public  Matrix  grc(int rowLow,  int rowHigh, int  colLow,  int  colHigh)  {
+    unflatten();
      int  Nrows = d.length; int Ncols = d[0].length;
      int  rowStart = rowLow;     int  rowEnd =  rowHigh;
      int  colStart = colLow;    int  colEnd = colHigh;
@@ -1186,6 +1458,7 @@ else {
  
  // extracts a submatrix, e.g. m.grc( 2, 3, 12, 4, 2,  8 )  corresponds to Matlab's m(2:3:12, 4:2:8)'
   final public Matrix  grc(int rowLow, int  rowInc,  int rowHigh,  int  colLow,  int  colInc, int  colHigh)  {
+    unflatten();
     int Nrows = d.length; int Ncols = d[0].length;
     int  rowStart = rowLow;     int  rowEnd =  rowHigh;
     int  colStart = colLow;   int colEnd = colHigh;
@@ -1273,6 +1546,7 @@ else {
  
 // extracts a specific row, take all columns, e.g. m.gr(2) corresponds to Matlab's m(2, :)'
 final public Matrix gr(int row)  {
+    unflatten();
      int Nrows = d.length; int Ncols = d[0].length;
     
       int   colStart = 0;     int  colEnd =  Ncols-1;   // all columns
@@ -1291,6 +1565,7 @@ final public Matrix gr(int row)  {
 
 // extracts a specific column, take all rows, e.g. m.gc( 2) corresponds to Matlab's m(:,2:)'  
  final public Matrix gc( int col )  { 
+    unflatten();
       int Nrows = d.length; int Ncols = d[0].length;
     
      int  rowStart = 0;     int  rowEnd =  Nrows-1;   // all rows
@@ -1337,6 +1612,7 @@ final public Matrix gr(int row)  {
    */
   final public void   s(int rowS, int colS, Matrix M)  
       {
+    unflatten();
          int  rowsNum = M.Nrows();
          int colsNum = M.Ncols();
          int cc = 0; int rr = 0;
@@ -1355,6 +1631,7 @@ final public Matrix gr(int row)  {
  a.sr(1..2, 8)    // sets rows 1 and 2 to 8
  */
  final public void  sr(groovy.lang.IntRange rowRange, double value)  {
+    unflatten();
     int rowS = rowRange.getFromInt();
     int rowE  = rowRange.getToInt();
     
@@ -1364,12 +1641,14 @@ final public Matrix gr(int row)  {
     }
 
  final public void  sr(int rowS, int rowE, double value)  {
+    unflatten();
      for (int rows=rowS; rows <= rowE; rows++ )
        for  (int cols=0; cols < d[0].length; cols++)
         d[rows][cols] = value;
     }
 
  final public void  src( groovy.lang.IntRange   rowRange, groovy.lang.IntRange colRange, double value)  {
+    unflatten();
          int rowS = rowRange.getFromInt(); 
          int rowE = rowRange.getToInt();
          int colsS = colRange.getFromInt();
@@ -1381,6 +1660,7 @@ final public Matrix gr(int row)  {
         }
 
      final  public void  sc( groovy.lang.IntRange colRange, double value)  {
+    unflatten();
             
             int colsS = colRange.getFromInt();
             int colsE  = colRange.getToInt();
@@ -1392,6 +1672,7 @@ final public Matrix gr(int row)  {
 
         
      final  public void  sc(IntRangeWithStep colRange, double value)  {
+    unflatten();
             
             int colsS = colRange.getFromInt();
             int colsE  = colRange.getToInt();
@@ -1404,6 +1685,7 @@ final public Matrix gr(int row)  {
 
      
      final  public void  sc( int colsS, int colsE,  double value)  {
+    unflatten();
             
             for  (int rows=0; rows < d.length; rows++)
                 for (int cols=colsS; cols <= colsE; cols++ )
@@ -1411,12 +1693,14 @@ final public Matrix gr(int row)  {
         }
         
         final  public void  src(int rowS, int rowE, int colsS, int colsE, double value)  {
+    unflatten();
             for  (int rows=rowS; rows <= rowE; rows++)
                 for (int cols=colsS; cols <= colsE; cols++ )
                     d[rows][cols] = value;
         }
 
         final  public void  src(int rowS, int rowInc,  int rowE, int colsS, int colInc, int colsE, double value)  {
+    unflatten();
             for  (int rows=rowS; rows <= rowE; rows+=rowInc)
                 for (int cols=colsS; cols <= colsE; cols+=colInc )
                     d[rows][cols] = value;
@@ -1424,6 +1708,7 @@ final public Matrix gr(int row)  {
 
         
         final  public void  s(int [] rng, double value)  {
+    unflatten();
             int rowsS = rng[0];  int rowsE = rng[1];
             int colsS = rng[2]; int colsE = rng[3];
             for  (int rows=rowsS; rows <= rowsE; rows++)
@@ -1467,6 +1752,7 @@ final public Matrix gr(int row)  {
   mmprepend = mmRP(mmo) // append mmo 
    */   
 final public Matrix  RA(Matrix rowsToAppend)  {
+    unflatten();
     if (rowsToAppend.fncols != this.fncols)   // incompatible number of columns
       return this;
     // create a new extended matrix to have also the added rows
@@ -1489,7 +1775,7 @@ final public Matrix  RA(Matrix rowsToAppend)  {
     while  (r < rowsToAppend.fnrows)  {
       c = 0;
       while  (c < rowsToAppend.fncols)  {
-         res.d[fnrows + r][c] = rowsToAppend.d[r][c];
+         res.d[fnrows + r][c] = rowsToAppend.getArray()[r][c];
          c++;
           }
           r++;
@@ -1500,6 +1786,7 @@ final public Matrix  RA(Matrix rowsToAppend)  {
 
   
 final Matrix   RA(double [] rowToAppend) {
+    unflatten();
     if (rowToAppend.length != this.fncols )   // incompatible number of columns
       return this;
     // create a new extended matrix to have also the added rows
@@ -1534,6 +1821,7 @@ final Matrix   RA(double [] rowToAppend) {
  
 // prepend rowwise the Matrix Ncols
 final  Matrix   RP(Matrix  rowsToPrepend)  {
+    unflatten();
     if (rowsToPrepend.fncols  != this.fncols )   // incompatible number of columns
       return this;
     // create a new extended matrix to have also the added rows
@@ -1544,7 +1832,7 @@ final  Matrix   RP(Matrix  rowsToPrepend)  {
     while  (r <  rowsToPrepend.fnrows)   {
       int  c = 0;
       while  (c < rowsToPrepend.fncols)  {
-         res.d[r][c] = rowsToPrepend.d[r][c];
+         res.d[r][c] = rowsToPrepend.getArray()[r][c];
          c++;
       }
       r++;
@@ -1569,6 +1857,7 @@ final  Matrix   RP(Matrix  rowsToPrepend)  {
 
   // prepend rowwise the 1-d array rowToPrepend
 final Matrix  RP(double [] rowToPrepend) {
+    unflatten();
     if (rowToPrepend.length != this.fncols )   // incompatible number of columns
       return this;
     // create a new extended matrix to have also the added rows
@@ -1610,6 +1899,7 @@ final Matrix    RP(Vec  rowToPrepend) {
  */
 
 final Matrix   CA(Matrix colsToAppend)   {
+    unflatten();
     if (colsToAppend.fnrows  != this.fnrows )   // incompatible number of rows
       return this;
     // create a new extended matrix to have also the added columns
@@ -1631,7 +1921,7 @@ final Matrix   CA(Matrix colsToAppend)   {
     while  (r < colsToAppend.fnrows)   {
       int  c = 0; 
       while  (c < colsToAppend.fncols)  {
-         res.d[r][fncols+c] = colsToAppend.d[r][c];
+         res.d[r][fncols+c] = colsToAppend.getArray()[r][c];
          c++;
        }
       r++;
@@ -1643,6 +1933,7 @@ final Matrix   CA(Matrix colsToAppend)   {
 
   // append an Array[Double] as the last column
 final Matrix   CA(double [] colsToAppend) {
+    unflatten();
     if (colsToAppend.length != this.fnrows )   // incompatible number of rows
       return this;
     // create a new extended matrix to have also the added columns
@@ -1679,6 +1970,7 @@ final Matrix   CA(double [] colsToAppend) {
 
 // prepend a Mat  
   final Matrix  CP(Matrix colsToPrepend)  {
+    unflatten();
     if (colsToPrepend.fnrows  != this.fnrows )   // incompatible number of rows
       return this;
     // create a new extended matrix to have also the added columns
@@ -1690,7 +1982,7 @@ final Matrix   CA(double [] colsToAppend) {
     while  (r < colsToPrepend.fnrows)   {
       int  c = 0; 
       while  (c < colsToPrepend.fncols)  {
-         res.d[r][c] = colsToPrepend.d[r][c];
+         res.d[r][c] = colsToPrepend.getArray()[r][c];
          c++;
        }
       r++;
@@ -1715,6 +2007,7 @@ final Matrix   CA(double [] colsToAppend) {
   
 // prepend an Array[Double] to matrix
 Matrix   CP(double [] colsToPrepend) {
+    unflatten();
     int   arrayLen = colsToPrepend.length;
     if (arrayLen!= this.fnrows )   // incompatible number of rows
       return this;
@@ -1755,12 +2048,22 @@ Matrix  CP(Vec colToPrepend) {
   M.eachValue(c);
  }
 	
+ // a closure with a double parameter, e.g. { double x -> x*x }, is called without boxing the elements
  final  public void eachValue(groovy.lang.Closure c) {
+   Function f = PrimitiveClosures.asFunction(c);
+   if (f != null) {
+       PrimitiveClosures.map(f, this, false);
+       return;
+   }
    for (int i = 0; i < getRowsNumber(); i++)
      for (int j=0; j < getColumnsNumber(); j++)
       set(i, j, (Number)c.call(get(i,j)));
   }
 	
+ final  public void eachValue(Function f) {
+   PrimitiveClosures.map(f, this, false);
+ }
+
   final  public void map(groovy.lang.Closure c) {
    eachValue(c);
  }
@@ -1768,6 +2071,15 @@ Matrix  CP(Vec colToPrepend) {
   final  public  static void map(Matrix M, groovy.lang.Closure c) {
     M.map(c);
  }
+
+  // parallel in-place map, only for pure closures, i.e. closures that can be called concurrently
+  final  public void pmap(groovy.lang.Closure c) {
+    PrimitiveClosures.map(PrimitiveClosures.toFunction(c), this, true);
+ }
+
+  final  public void pmap(Function f) {
+    PrimitiveClosures.map(f, this, true);
+ }
 	
  
 // compare matrices by value
@@ -1840,11 +2152,18 @@ final  public  static Matrix sum(Object vals) {
 }
 
 final  public static Matrix sin(Matrix M) {
-    return new Matrix(DoubleArray.sin( M.getRef() ), false);
+    return elementwise(ElementwiseOps.SIN, M);
+}
+
+// the (M, out) overloads of the element-wise functions write the result at the caller-provided Matrix out,
+// that can be M for in-place operation, e.g.  sin(A, B);  exp(A, A)
+final public static Matrix sin(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.SIN, M, out);
 }
 
 
  final  public  Matrix sin() {
+    unflatten();
     int N = this.d.length;
     int M = this.d[0].length;
     for (int k=0; k<N; k++)
@@ -1856,6 +2175,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final public  Matrix cos() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1868,6 +2188,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix tan() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1879,6 +2200,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix asin() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1890,6 +2212,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix acos() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1901,6 +2224,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix atan() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1912,6 +2236,7 @@ final  public static Matrix sin(Matrix M) {
  
   
  final  public  Matrix sinh() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1923,6 +2248,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix cosh() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1934,6 +2260,7 @@ final  public static Matrix sin(Matrix M) {
  
   
  final public  Matrix tanh() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1945,6 +2272,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix pow(double v) {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1955,6 +2283,7 @@ final  public static Matrix sin(Matrix M) {
 }   
   
  final  public  Matrix log() {
+    unflatten();
       int N = this.d.length;
      int M = this.d[0].length;
      for (int k=0; k<N; k++)
@@ -1966,6 +2295,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final public  Matrix log2() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(2.0);
@@ -1978,6 +2308,7 @@ final  public static Matrix sin(Matrix M) {
 }   
  
  final  public  Matrix log10() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(10.0);
@@ -1990,6 +2321,7 @@ final  public static Matrix sin(Matrix M) {
 }   
  
  final public  Matrix ceil() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(10.0);
@@ -2003,6 +2335,7 @@ final  public static Matrix sin(Matrix M) {
  
  
  final  public  Matrix floor() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(10.0);
@@ -2015,6 +2348,7 @@ final  public static Matrix sin(Matrix M) {
 }   
  
  final  public  Matrix round() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(10.0);
@@ -2027,6 +2361,7 @@ final  public static Matrix sin(Matrix M) {
 }   
  
  final public  Matrix sqrt() {
+    unflatten();
      int N = this.d.length;
      int M = this.d[0].length;
      double  conv = Math.log(10.0);
@@ -2066,7 +2401,11 @@ final  public static double [][] sin(double [] []x)
 }   
 
   final  public static Matrix cos(Matrix M) {
-    return new Matrix(DoubleArray.cos( M.getRef() ), false);
+    return elementwise(ElementwiseOps.COS, M);
+}
+
+final public static Matrix cos(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.COS, M, out);
 }   
 
   final public static double  cos(double d) {
@@ -2096,7 +2435,11 @@ final  public static double [][] sin(double [] []x)
  }
  
   final  public static Matrix tan(Matrix M) {
-    return new Matrix(DoubleArray.tan( M.getRef() ), false);
+    return elementwise(ElementwiseOps.TAN, M);
+}
+
+final public static Matrix tan(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.TAN, M, out);
 }   
 
   final  public  static double  tan(double d) {
@@ -2124,7 +2467,11 @@ final  public static double [][] sin(double [] []x)
      return r;
  }
    final public  static Matrix atan(Matrix M) {
-   	return new Matrix(DoubleArray.atan( M.getRef() ), false);
+    return elementwise(ElementwiseOps.ATAN, M);
+}
+
+final public static Matrix atan(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.ATAN, M, out);
 }   
 
    final  public  static double  atan(double d) {
@@ -2154,7 +2501,11 @@ final  public static double [][] sin(double [] []x)
  }
  
  final public static Matrix asin(Matrix M) {
-      	return new Matrix(DoubleArray.asin( M.getRef() ), false);
+    return elementwise(ElementwiseOps.ASIN, M);
+}
+
+final public static Matrix asin(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.ASIN, M, out);
 }   
 
  final public  static double  asin(double d) {
@@ -2162,7 +2513,11 @@ final  public static double [][] sin(double [] []x)
 }   
   
 final public  static Matrix acos(Matrix M) {
-      	return new Matrix(DoubleArray.acos( M.getRef() ), false);
+    return elementwise(ElementwiseOps.ACOS, M);
+}
+
+final public static Matrix acos(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.ACOS, M, out);
 }   
 
  final public static double []  acos(double [] x) {
@@ -2193,7 +2548,11 @@ final public static double  acos(double d) {
   
  
 final public static Matrix  sinh(Matrix M) {
-      	return new Matrix(DoubleArray.sinh( M.getRef() ), false);
+    return elementwise(ElementwiseOps.SINH, M);
+}
+
+final public static Matrix sinh(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.SINH, M, out);
 }   
 
  final public static double []  sinh(double [] x) {
@@ -2224,7 +2583,11 @@ final public  static double  sinh(double d) {
 }   
    
 final public  static Matrix cosh(Matrix M) {
-      	return new Matrix(DoubleArray.cosh( M.getRef() ), false);
+    return elementwise(ElementwiseOps.COSH, M);
+}
+
+final public static Matrix cosh(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.COSH, M, out);
 }   
 
  final public static double []  cosh(double [] x) {
@@ -2254,7 +2617,11 @@ final public static double  cosh(double d) {
 }   
   
 final public  static Matrix tanh(Matrix M) {
-      	return new Matrix(DoubleArray.tanh( M.getRef() ), false);
+    return elementwise(ElementwiseOps.TANH, M);
+}
+
+final public static Matrix tanh(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.TANH, M, out);
 }   
 
  final public static double []  tanh(double [] x) {
@@ -2285,7 +2652,11 @@ final public static double  tanh(double d) {
 }   
   
  final public static Matrix exp(Matrix M) {
-      	return new Matrix(DoubleArray.exp( M.getRef() ), false);
+    return elementwise(ElementwiseOps.EXP, M);
+}
+
+final public static Matrix exp(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.EXP, M, out);
 }   
 
  final public static double [] exp(double [] x) {
@@ -2315,7 +2686,11 @@ final public  static double  exp(double d) {
 }   
  
 final public static Matrix log(Matrix M) {
-    return new Matrix(DoubleArray.log( M.getRef() ), false);
+    return elementwise(ElementwiseOps.LOG, M);
+}
+
+final public static Matrix log(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.LOG, M, out);
 }   
 
 final public static double []  log(double [] x) {
@@ -2345,7 +2720,11 @@ final public static double  log(double d) {
 }   
  
 final public static Matrix log2(Matrix M) {
-      	return new Matrix(DoubleArray.log2( M.getRef() ), false);
+    return elementwise(ElementwiseOps.LOG2, M);
+}
+
+final public static Matrix log2(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.LOG2, M, out);
 }   
 
 final public static double []  log2(double [] x) {
@@ -2376,7 +2755,11 @@ final public static double  log2(double d) {
  
 
 final public static Matrix log10(Matrix M) {
-    return new Matrix(DoubleArray.log10( M.getRef() ), false);
+    return elementwise(ElementwiseOps.LOG10, M);
+}
+
+final public static Matrix log10(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.LOG10, M, out);
 }   
 
  final public static double []  log10(double [] x) {
@@ -2406,7 +2789,11 @@ final public static double  log10(double d) {
 }   
      
 final public static Matrix  abs(Matrix M) {
-    return new Matrix(DoubleArray.abs( M.getRef() ), false);
+    return elementwise(ElementwiseOps.ABS, M);
+}
+
+final public static Matrix abs(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.ABS, M, out);
 }   
 
  final public static double [] abs(double [] x) {
@@ -2436,7 +2823,11 @@ final public static double  abs(double d) {
 
 
 final  public static Matrix  ceil(Matrix M) {
-    return new Matrix(DoubleArray.ceil( M.getRef() ), false);
+    return elementwise(ElementwiseOps.CEIL, M);
+}
+
+final public static Matrix ceil(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.CEIL, M, out);
 }   
 
  final public static double [] ceil(double [] x) {
@@ -2465,7 +2856,11 @@ final public static int  ceil(double d) {
 }   
 
 final public static Matrix  floor(Matrix M) {
-   return new Matrix(DoubleArray.floor( M.getRef() ), false);
+    return elementwise(ElementwiseOps.FLOOR, M);
+}
+
+final public static Matrix floor(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.FLOOR, M, out);
 }   
 
  final public static double []   floor(double [] x) {
@@ -2494,7 +2889,11 @@ final public static int  floor(double d) {
 }   
 
 final public static Matrix  round(Matrix M) {
-    return new Matrix(DoubleArray.round( M.getRef() ), false);
+    return elementwise(ElementwiseOps.ROUND, M);
+}
+
+final public static Matrix round(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.ROUND, M, out);
 }   
 
  final public static double []  round(double [] x) {
@@ -2524,7 +2923,11 @@ final public static int  round(double d) {
 
 
 final public static Matrix  sqrt(Matrix M) {
-    return new Matrix(DoubleArray.sqrt( M.getRef() ), false);
+    return elementwise(ElementwiseOps.SQRT, M);
+}
+
+final public static Matrix sqrt(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.SQRT, M, out);
 }   
 
  final public static double [] sqrt(double [] x) {
@@ -2555,7 +2958,11 @@ final public static double  sqrt(double d) {
 }
 
 final public  static Matrix  toDegrees(Matrix M) {
-   return new Matrix(DoubleArray.toDegrees( M.getRef() ), false);
+    return elementwise(ElementwiseOps.TODEGREES, M);
+}
+
+final public static Matrix toDegrees(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.TODEGREES, M, out);
 }   
 
  final public static double [] toDegrees(double [] x) {
@@ -2585,7 +2992,11 @@ final public static double   toDegrees(double d) {
 
 
 final public static Matrix  toRadians(Matrix M) {
-    return new Matrix(DoubleArray.toRadians( M.getRef() ), false);
+    return elementwise(ElementwiseOps.TORADIANS, M);
+}
+
+final public static Matrix toRadians(Matrix M, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.TORADIANS, M, out);
 }   
 
  final public static double [] toRadians(double [] x) {
@@ -2615,7 +3026,13 @@ final public static double  toRadians(double d) {
 }   
 
 final public static Matrix  pow(Matrix M, double exponent) {
-    return new Matrix(DoubleArray.pow( M.getRef(), exponent ), false);
+    if (lazyEvaluation)
+        return new Matrix(new MatrixExpr.Unary(ElementwiseOps.POW, exponent, MatrixExpr.of(M)));
+    return ElementwiseOps.apply(ElementwiseOps.POW, exponent, M, ElementwiseOps.newLike(M));
+}
+
+final public static Matrix pow(Matrix M, double exponent, Matrix out) {
+    return ElementwiseOps.apply(ElementwiseOps.POW, exponent, M, out);
 }   
 
  final public static double []  pow(double [] x, double exponent) {
@@ -2804,13 +3221,13 @@ final public static Matrix diag(Matrix diagm) {
     if (Nrows==1) {
         Matrix diagmr = new Matrix(Ncols, Ncols);
         for (int c = 0; c < Ncols; c++)
-            diagmr.d[c][c] = diagm.d[0][c];
+            diagmr.d[c][c] = diagm.getArray()[0][c];
         return diagmr;
     }
     else {
         Matrix diagmr = new Matrix(Nrows, Nrows);
         for (int r = 0; r< Nrows; r++)
-            diagmr.d[r][r] = diagm.d[r][0];
+            diagmr.d[r][r] = diagm.getArray()[r][0];
        return diagmr;
     }
 }
@@ -2822,7 +3239,7 @@ final public  static Matrix diagonal(double[] c)  {
 	
 	
 final public  static Matrix diagonal(Matrix M, int m)  {
-    return new Matrix(DoubleArray.getDiagonal( M.d, m), false );
+    return new Matrix(DoubleArray.getDiagonal( M.getArray(), m), false );
 }
 	
   final public  static Matrix diag(Matrix M, int m)  {
@@ -3137,6 +3554,8 @@ final public  static Matrix  logspace(double startOrig,  double endOrig, int  nP
 ///////////////////////////////////////////////////////////////////
 	
     final public Matrix minus( Matrix v2)  {
+        if (canDefer(v2))
+            return deferBinary(MatrixExpr.SUB, v2);
         return new Matrix(LinearAlgebra.minus( getRef(),  v2.getRef()), false );
     }
 	
@@ -3145,18 +3564,24 @@ final public  static Matrix  logspace(double startOrig,  double endOrig, int  nP
     }
 	
     final public Matrix minus(Number v2)  {
+        if (lazyEvaluation)
+            return deferScalar(MatrixExpr.SUB, v2.doubleValue());
         return new Matrix(LinearAlgebra.minus( getRef(), v2.doubleValue()), false );
     }
 	
     final public Matrix plus( Matrix v2)  {
+        if (canDefer(v2))
+            return deferBinary(MatrixExpr.ADD, v2);
         return new Matrix(LinearAlgebra.plus( getRef(),  v2.getRef()), false );
     }
 	
     final public Matrix plus( double [][] v2)  {
+    unflatten();
        return new Matrix( DoubleArray.Add(this.d, v2));
     }
 
     final public Matrix plus(double [] v2) {
+    unflatten();
         int nrows = this.Nrows();
         int ncols = this.Ncols();
         double [][]res = new double[nrows][ncols];
@@ -3168,6 +3593,7 @@ final public  static Matrix  logspace(double startOrig,  double endOrig, int  nP
     }
                 
     final public Matrix minus(double [] v2) {
+    unflatten();
         int nrows = this.Nrows();
         int ncols = this.Ncols();
         double [][]res = new double[nrows][ncols];
@@ -3189,11 +3615,13 @@ final public  static Matrix  logspace(double startOrig,  double endOrig, int  nP
   
   
   final public static Matrix minus(double [][] v2, Matrix v)  {
-       return new Matrix(LinearAlgebra.minus( v2, v.d), false );
+       return new Matrix(LinearAlgebra.minus( v2, v.getArray()), false );
     }
 
 
   final public Matrix negative(Matrix v)  {
+          if (lazyEvaluation)
+              return deferUnary(ElementwiseOps.NEG, this);
           return  multiply(-1);
     }
 
@@ -3202,15 +3630,21 @@ final public  static Matrix  logspace(double startOrig,  double endOrig, int  nP
     }
 
   final public Matrix plus( Number v2)  {
+        if (lazyEvaluation)
+            return deferScalar(MatrixExpr.ADD, v2.doubleValue());
         return new Matrix(LinearAlgebra.plus( getRef(), v2.doubleValue()), false );
     }
 	
     final public Matrix multiply( Number v)  {
+        if (lazyEvaluation)
+            return deferScalar(MatrixExpr.MUL, v.doubleValue());
         return new Matrix(LinearAlgebra.times( getRef(), v.doubleValue()), false );
     }
 
         
     final public Matrix div( Number v)  {
+        if (lazyEvaluation)
+            return deferScalar(MatrixExpr.DIV, v.doubleValue());
         return new Matrix(LinearAlgebra.divide( getRef(), v.doubleValue()), false );
     }
 	
@@ -3222,8 +3656,8 @@ final public Matrix power(int n, Matrix m)  {
         return copy(m); 
     else {
         Matrix  recurMat = power(n-1, m); 
-        jMatrix  thisMatrix = new jMatrix(recurMat.d);
-        jMatrix  mMatrix = new jMatrix(m.d);
+        jMatrix  thisMatrix = new jMatrix(recurMat.getArray());
+        jMatrix  mMatrix = new jMatrix(m.getArray());
         jMatrix  product = thisMatrix.times(mMatrix);   
         Matrix   matProd = new Matrix(product.getArray());
         return matProd;
@@ -3252,12 +3686,13 @@ final public Matrix power(int n, Matrix m)  {
             return this.size()[1];
         }
         
+    // the product is computed by the GEMM engine: blocked and multithreaded above a size threshold, JBLAS when native BLAS is loaded
     final public Matrix multiply( Matrix v2)  {
-            return new Matrix(LinearAlgebra.times( getRef(),  v2.getRef()), false );
+            return GEMM.times(this, v2);
 	}
 
     final public Matrix multiply( double [][] v2)  {
-            return new Matrix(LinearAlgebra.times( getRef(),  v2), false );
+            return GEMM.times(this, new Matrix(v2, true));
 	}
     
     final public Matrix multiply( double [] v2)  {
@@ -3270,6 +3705,7 @@ final public Matrix power(int n, Matrix m)  {
 	}
     
     final public Vec  multiply( Vec that) {
+    unflatten();
         int  rN = this.Ncols();   int  rM = this.Ncols();  // receiver's dimensions
         int  sN = that.length();
         double  sm = 0.0;
@@ -3342,8 +3778,9 @@ final public static double [][] inverse_QR(double [][] dM)  {
         return LinearAlgebra.inverseQR( dM );
 }
 	        
+// inverse(), det(), solve(), svd(), qr() and eig() use the fastest available library, see LinAlgDispatcher
 final public static Matrix inverse(Matrix M)  {
-        return new Matrix(LinearAlgebra.inverse( M.getRef()), false );
+        return new Matrix(LinAlgDispatcher.inv( M.getRef()), false );
 }
 	
 final public static Matrix inv(Matrix M)  {
@@ -3352,7 +3789,7 @@ final public static Matrix inv(Matrix M)  {
 	
 	
 final public static double [][]  inverse(double [][]  dM)  {
-    return LinearAlgebra.inverse( dM );
+    return LinAlgDispatcher.inv( dM );
 }
 	
 final public static double [][] inv(double [][] dM)  {
@@ -3459,7 +3896,7 @@ final public static double [][] Cholesky_SPD(double [][] dM) {
         
 final public static Matrix Cholesky_solve(Matrix A,Matrix b) {
     CholeskyDecomposition choleskDec = LinearAlgebra.cholesky(A.getRef());
-    jMatrix jb = new jMatrix(b.d);
+    jMatrix jb = new jMatrix(b.getArray());
     jMatrix solvedMat = choleskDec.solve(jb);
     return new Matrix(solvedMat.getArray());
 }
@@ -3531,16 +3968,16 @@ final public static double LU_det(double [][] dM) {
 }
         
 final public static double det(Matrix M) {
-    return LinearAlgebra.det(M.getRef());
+    return LinAlgDispatcher.det(M.getRef());
 }
         
  final public static double det(double [][] Ma) {
-    return LinearAlgebra.det(Ma);
+    return LinAlgDispatcher.det(Ma);
   }
 	
  final public static Matrix LU_solve(Matrix A, Matrix b) {
     LUDecomposition LUDec = LinearAlgebra.LU(A.getRef());
-    jMatrix jb = new jMatrix(b.d);
+    jMatrix jb = new jMatrix(b.getArray());
     jMatrix solvedMat = LUDec.solve(jb);
     return new Matrix(solvedMat.getArray());
 }
@@ -3594,7 +4031,7 @@ final public static double [][] R(double [][] M) {
 	
 final public static Matrix QR_solve(Matrix A, Matrix b) {
     QRDecomposition QRDec = LinearAlgebra.QR(A.getRef());
-    jMatrix jb = new jMatrix(b.d);
+    jMatrix jb = new jMatrix(b.getArray());
     jMatrix solvedMat = QRDec.solve(jb);
     return new Matrix(solvedMat.getArray());
 }
@@ -3607,11 +4044,11 @@ final public static double [][]  QR_solve(double [][] dA, double [][] db) {
 }
         
 final public static Matrix solve(Matrix A, Matrix b) {
-    return new Matrix(LinearAlgebra.solve( A.getRef(),b.getRef()), false);
+    return new Matrix(LinAlgDispatcher.solve( A.getRef(),b.getRef()), false);
 }
 
 final public static double [][]  solve(double [][]  dA,  double [][] db) {
-    return LinearAlgebra.solve( dA, db);
+    return LinAlgDispatcher.solve( dA, db);
 }
 
 // solve with the CSparse
@@ -3651,6 +4088,13 @@ final public static double []  solveEJML(double [][]  dA,  double [] db) {
 
 
 final public static double []  solveEJML(Matrix A,  Vec  b) {
+    if (A.isRowMajorFlat())  {  // the flat storage is passed to EJML without copying
+      double [] db = b.getv();
+      DenseMatrix64F ddb = new DenseMatrix64F(db.length, 1, true, db);
+      DenseMatrix64F dsol = new DenseMatrix64F(db.length, 1);
+      org.ejml.ops.CommonOps.solve(MatrixConvs.Matrix2EJML(A), ddb, dsol);
+      return dsol.getData();
+    }
     return solveEJML(A.getArray(), b.getv());
 }
 
@@ -3742,12 +4186,12 @@ final public static  SvdResults asvd(Matrix xm) {
 }
 
 final public static  SvdResults svd(Matrix xm) {
-    return asvd(xm);
+    return LinAlgDispatcher.svd(xm.getArray());
 }
 
 
 final public static  SvdResults svd(double [][]  xd) {
-    return asvd(xd);
+    return LinAlgDispatcher.svd(xd);
 }
 
 final public static  SvdResults asvd(double[][] x) {
@@ -3789,10 +4233,10 @@ final public static QRResults nrqr(Matrix x )  {
  , e.g. 0.48sec vs. 4.1sec
  */
  final public static QRResults qr(double [][] x )  {
-     return aqr(x);
+     return LinAlgDispatcher.qr(x);
  }
  final public static QRResults qr(Matrix x )  {
-     return aqr(x);
+     return LinAlgDispatcher.qr(x.getArray());
  }
  
 // perform QR using Apache Commons
@@ -4053,25 +4497,26 @@ final public static eigReIm  eigNUMAL(double [][] M) {
    return gaussj(b.getArray());
 }
   
-  // eig() defaults to the Numerical Recipes implementation
+  // eig() defaults to the Numerical Recipes implementation, or to the faster library chosen by LinAlgDispatcher
+  // (the eigenvalues are sorted in decreasing order of their real part in both cases)
        public eigReIm eig() {
-           return eigNR(this, true, false);
+           return LinAlgDispatcher.eig(getArray());
        }
        
        final  public static eigReIm eig(Matrix a) {
-            return eigNR(a, true, false);
+            return LinAlgDispatcher.eig(a.getArray());
         }
         
        final  public static eigReIm eig(Matrix a, boolean computeEigVecs) {
-            return eigNR(a, computeEigVecs, false);
+            return computeEigVecs ? LinAlgDispatcher.eig(a.getArray()) : eigNR(a, false, false);
         }
         
        final  public static eigReIm eig(double [][] a) {
-            return eigNR(a, true, false);
+            return LinAlgDispatcher.eig(a);
         }
         
        final  public static eigReIm eig(double [][]  a, boolean computeEigVecs) {
-            return eigNR(a, computeEigVecs, false);
+            return computeEigVecs ? LinAlgDispatcher.eig(a) : eigNR(a, false, false);
         }
         
        final  public static eigReIm eigNR(Matrix a,  boolean yesvec,  boolean hessenb) {
@@ -4364,6 +4809,8 @@ final public static double [][]  RandomWeibull(int m, int n, double lambda, doub
 }
         
 final public static Matrix dot(Matrix X, Matrix Y) {
+    if (X.canDefer(Y))
+        return X.deferBinary(MatrixExpr.MUL, Y);
     double [][] xvals = X.getArray();
     double [][] yvals = Y.getArray();
     double [][] res = DoubleArray.dot(xvals, yvals);
@@ -4572,9 +5019,10 @@ final public static Matrix MTJsolve(Matrix A, Matrix b) {
 }
 
 final public Matrix MTJsolve(Matrix B) {
+    unflatten();
         DenseMatrix Adm = new DenseMatrix(this.d);
-        DenseMatrix bdm = new DenseMatrix(B.d);
-        DenseMatrix xdm = new DenseMatrix(B.d);
+        DenseMatrix bdm = new DenseMatrix(B.getArray());
+        DenseMatrix xdm = new DenseMatrix(B.getArray());
         DenseMatrix X =  Adm.solve(bdm, xdm);
         
         return new Matrix(xdm.toDoubleArray());
@@ -4727,7 +5175,7 @@ final public static Matrix EJMLpinv(Matrix A, Matrix invA) {
   org.ejml.data.DenseMatrix64F dinva = new org.ejml.data.DenseMatrix64F(invA.getArray());
   
   org.ejml.ops.CommonOps.pinv(da, dinva);
-  invA.d = EJMLDenseMatrixtoDoubleArray(dinva);
+  invA.setRef(EJMLDenseMatrixtoDoubleArray(dinva));
   
   return invA;
 }
@@ -5436,7 +5884,7 @@ public static String   printArray(double [] va) {
   public static Matrix solveAC(Matrix A, Matrix B) {
       
   org.apache.commons.math3.linear.Array2DRowRealMatrix  rmA = 
-          new org.apache.commons.math3.linear.Array2DRowRealMatrix(A.d);  // transform it to an Apache Commons Array2DRealMatrix
+          new org.apache.commons.math3.linear.Array2DRowRealMatrix(A.getArray());  // transform it to an Apache Commons Array2DRealMatrix
   org.apache.commons.math3.linear.LUDecomposition   luObj =
           new org.apache.commons.math3.linear.LUDecomposition(rmA);   // perform an LU decomposition on A
 
@@ -5444,7 +5892,7 @@ public static String   printArray(double [] va) {
 // solve for  one  right-hand side
 
   org.apache.commons.math3.linear.Array2DRowRealMatrix  rmB = 
-          new org.apache.commons.math3.linear.Array2DRowRealMatrix(B.d);  // transform it to an Apache Commons Array2DRealMatrix        
+          new org.apache.commons.math3.linear.Array2DRowRealMatrix(B.getArray());  // transform it to an Apache Commons Array2DRealMatrix        
 
  org.apache.commons.math3.linear.DecompositionSolver solver = luObj.getSolver();
 Matrix x = new Matrix(solver.solve(rmB).getData());
@@ -5456,7 +5904,7 @@ return x;
   
     //  Computes the eigenvalues of the matrix.using JBLAS
 public ComplexDoubleMatrix jblas_eigenvalues() {
-    DoubleMatrix dM = new DoubleMatrix(this.getArray());
+    DoubleMatrix dM = JBLASUtils.toDoubleMatrix(this);
     return org.jblas.Eigen.eigenvalues(dM);
 }
 
@@ -5466,13 +5914,13 @@ public ComplexDoubleMatrix jblas_eigenvalues() {
    //          stored as the columns of the first matrix, and the eigenvalues as the
    //         diagonal elements of the second matrix.
 public  ComplexDoubleMatrix[]  jblas_eigenvectors() {
-    DoubleMatrix dM = new DoubleMatrix(this.getArray());
+    DoubleMatrix dM = JBLASUtils.toDoubleMatrix(this);
     return org.jblas.Eigen.eigenvectors(dM);
 }
      
 //  Compute the eigenvalues for a symmetric matrix.
 public  DoubleMatrix  jblas_symmetricEigenvalues() {
-    DoubleMatrix dM = new DoubleMatrix(this.getArray());
+    DoubleMatrix dM = JBLASUtils.toDoubleMatrix(this);
     return org.jblas.Eigen.symmetricEigenvalues(dM);
 }
 
@@ -5482,7 +5930,7 @@ public  DoubleMatrix  jblas_symmetricEigenvalues() {
 //         stored as the columns of the first matrix, and the eigenvalues as
 //         diagonal elements of the second matrix.
 public  DoubleMatrix []  jblas_symmetricEigenvectors() {
-    DoubleMatrix dM = new DoubleMatrix(this.getArray());
+    DoubleMatrix dM = JBLASUtils.toDoubleMatrix(this);
     return org.jblas.Eigen.symmetricEigenvectors(dM);
 }
 
@@ -5492,7 +5940,7 @@ public  DoubleMatrix []  jblas_symmetricEigenvectors() {
 //  @return a vector of eigenvalues L.
     
 public  DoubleMatrix jblas_symmetricGeneralizedEigenvalues( double [][] B) {
-    return org.jblas.Eigen.symmetricGeneralizedEigenvalues(new DoubleMatrix(this.getArray()), new DoubleMatrix(B));
+    return org.jblas.Eigen.symmetricGeneralizedEigenvalues(JBLASUtils.toDoubleMatrix(this), new DoubleMatrix(B));
 }
 
     /**
@@ -5504,7 +5952,7 @@ public  DoubleMatrix jblas_symmetricGeneralizedEigenvalues( double [][] B) {
      *         The second one is A vector containing the corresponding eigenvalues L.
      */
 public DoubleMatrix [] jblas_symmetricGeneralizedEigenvectors( double [][] B) {
-    return org.jblas.Eigen.symmetricGeneralizedEigenvectors(new DoubleMatrix(this.getArray()), new DoubleMatrix(B));
+    return org.jblas.Eigen.symmetricGeneralizedEigenvectors(JBLASUtils.toDoubleMatrix(this), new DoubleMatrix(B));
 }
 
     /**
@@ -5514,22 +5962,22 @@ public DoubleMatrix [] jblas_symmetricGeneralizedEigenvectors( double [][] B) {
      * @return upper triangular matrix U such that  A = U' * U
      */
 public DoubleMatrix  jblas_cholesky() {
-  return org.jblas.Decompose.cholesky(new DoubleMatrix(this.getArray()));
+  return org.jblas.Decompose.cholesky(JBLASUtils.toDoubleMatrix(this));
 }
 
 /** Solves the linear equation A*X = B.  ( A is this) */
 public DoubleMatrix jblas_solve( double [][] B) {
-    return org.jblas.Solve.solve(new DoubleMatrix(this.getArray()),  new DoubleMatrix(B));
+    return org.jblas.Solve.solve(JBLASUtils.toDoubleMatrix(this),  new DoubleMatrix(B));
 }
 
 /** Solves the linear equation A*X = B for symmetric A.  ( A is this) */
 public DoubleMatrix jblas_solveSymmetric(double [][] B) {
-    return org.jblas.Solve.solveSymmetric(new DoubleMatrix(this.getArray()),  new DoubleMatrix(B));
+    return org.jblas.Solve.solveSymmetric(JBLASUtils.toDoubleMatrix(this),  new DoubleMatrix(B));
 }
 
 /** Solves the linear equation A*X = B for symmetric and positive definite A. ( A is this ) */
 public DoubleMatrix jblas_solvePositive(double [][] B) {
-    return org.jblas.Solve.solvePositive(new DoubleMatrix(this.getArray()),  new DoubleMatrix(B));
+    return org.jblas.Solve.solvePositive(JBLASUtils.toDoubleMatrix(this),  new DoubleMatrix(B));
 }
 
  /**
@@ -5539,7 +5987,7 @@ public DoubleMatrix jblas_solvePositive(double [][] B) {
      */
 
 public DoubleMatrix []  jblas_fullSVD( ) {
-    return org.jblas.Singular.fullSVD(new DoubleMatrix(this.getArray()));
+    return org.jblas.Singular.fullSVD(JBLASUtils.toDoubleMatrix(this));
 }
 
 
@@ -5553,13 +6001,13 @@ public DoubleMatrix []  jblas_fullSVD( ) {
      */
 
 public  DoubleMatrix []  jblas_sparseSVD( ) {
-    return org.jblas.Singular.sparseSVD(new DoubleMatrix(this.getArray()));
+    return org.jblas.Singular.sparseSVD(JBLASUtils.toDoubleMatrix(this));
 }
 
 
 public ComplexDoubleMatrix []  jblas_sparseSVD( double [][] Aimag) {
     return org.jblas.Singular.sparseSVD(
-            new ComplexDoubleMatrix(new DoubleMatrix(this.getArray()),  new DoubleMatrix(Aimag)));
+            new ComplexDoubleMatrix(JBLASUtils.toDoubleMatrix(this),  new DoubleMatrix(Aimag)));
 }
 
 
@@ -5571,7 +6019,7 @@ public ComplexDoubleMatrix []  jblas_sparseSVD( double [][] Aimag) {
      */
 
 public  DoubleMatrix jblas_SPDValues() {
-    return  org.jblas.Singular.SVDValues(new DoubleMatrix(this.getArray()));
+    return  org.jblas.Singular.SVDValues(JBLASUtils.toDoubleMatrix(this));
 }
 
     /**
@@ -5583,7 +6031,7 @@ public  DoubleMatrix jblas_SPDValues() {
 
 public  DoubleMatrix  jblas_SPDValues( double [][]Aimag) {
     return  org.jblas.Singular.SVDValues(
-            new ComplexDoubleMatrix(new DoubleMatrix(this.getArray()), new DoubleMatrix(Aimag)));
+            new ComplexDoubleMatrix(JBLASUtils.toDoubleMatrix(this), new DoubleMatrix(Aimag)));
 }
 
 
@@ -17,10 +17,9 @@ public class MatrixConvs {
   }
   
     // convert Matrix to JBLAS DoubleMatrix
+    // a column-major flat Matrix is shared with the DoubleMatrix without copying
     public static org.jblas.DoubleMatrix  Matrix2JBLAS(Matrix  A) {
-        double [][] dA = A.d;   // get the double [][] representation of A
-        org.jblas.DoubleMatrix   dm = new org.jblas.DoubleMatrix(dA);  // construct a JBLAS DoubleMatrix
-        return dm;
+        return JBLASUtils.toDoubleMatrix(A);
     }
 
     // convert double [][] to JBLAS DoubleMatrix
@@ -58,6 +57,11 @@ public class MatrixConvs {
   
   }
   
+  // wrap the row-major data of an EJML DenseMatrix64F as a flat-backed Matrix without copying
+    public static Matrix EJML2FlatMatrix(org.ejml.data.DenseMatrix64F  dm)     {
+      return new Matrix(dm.data, dm.numRows, dm.numCols, 0, dm.numCols, 1);
+  }
+  
   // convert EJML  DenseMatrix64F to Double Array
     public static double[][] EJML2DoubleArray(org.ejml.data.DenseMatrix64F  dm)     {
       int nr = dm.numRows;
@@ -72,9 +76,12 @@ public class MatrixConvs {
   }
     
     // convert Matrix to EJML DenseMatrix64F
+    // a row-major flat Matrix is wrapped without copying
     public static org.ejml.data.DenseMatrix64F   Matrix2EJML(Matrix dm)     {
       int nr = dm.Nrows();
       int nc = dm.Ncols();
+      if (dm.isRowMajorFlat())
+          return org.ejml.data.DenseMatrix64F.wrap(nr, nc, dm.getFlatArray());
       org.ejml.data.DenseMatrix64F  rm = new org.ejml.data.DenseMatrix64F(nr, nc);
       for (int r=0; r<nr; r++)
           for (int c=0; c<nc; c++)
@@ -113,6 +120,11 @@ public class MatrixConvs {
   
   }
   
+  // wrap MTJ DenseMatrix as a flat-backed Matrix without copying
+    public static Matrix MTJ2FlatMatrix(no.uib.cipr.matrix.DenseMatrix   dm)     {
+      return JILapack.denseMatrixToFlatMatrix(dm);
+  }
+  
   // convert MTJ DenseMatrix to Double Array
     public static double[][] MTJ2DoubleArray(no.uib.cipr.matrix.DenseMatrix  dm)     {
       int nr = dm.numRows();
@@ -128,6 +140,8 @@ public class MatrixConvs {
     
     // convert Matrix to MTJ DenseMatrix
     public static no.uib.cipr.matrix.DenseMatrix   Matrix2MTJ(Matrix dm)     {
+      if (dm.isFlat())
+          return JILapack.toDenseMatrix(dm);
       int nr = dm.Nrows();
       int nc = dm.Ncols();
       no.uib.cipr.matrix.DenseMatrix  rm = new no.uib.cipr.matrix.DenseMatrix(nr, nc);
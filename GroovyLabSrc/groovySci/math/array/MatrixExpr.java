@@ -0,0 +1,208 @@
+package groovySci.math.array;
+
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Deferred element-wise Matrix expressions, used when Matrix.lazyEvaluation is true.
+
+ The element-wise Matrix operators then build an expression tree instead of computing a temporary array
+ at each step. The tree is evaluated in a single fused pass, row by row, only when the values are needed,
+ thus the temporaries are only a few row sized buffers that stay in cache, e.g.
+
+   Matrix.lazyEvaluation = true
+   A = rand(4000, 4000); B = rand(4000, 4000)
+   C = sin(A) * 2 + B - 1    // builds the tree, no computation yet
+   c00 = C[0, 0]              // evaluates the whole expression in one pass
+
+ C keeps the values that A and B have when it is built: before an operand of a pending expression is
+ modified, or its storage is given by reference (e.g. with getArray()), the expression is evaluated.
+ Call C.eval() to force the evaluation.
+ */
+public abstract class MatrixExpr {
+
+    // expressions with at least that many elements are evaluated with the threads of the ParallelEngine pool
+    public static int minParallelElements = 1 << 16;
+
+    // binary operation codes
+    static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3;
+
+    final int nrows, ncols;
+
+    MatrixExpr(int nrows, int ncols) {
+        this.nrows = nrows;
+        this.ncols = ncols;
+    }
+
+    // computes the row r of the expression at out[off .. off+ncols), with scratch[level ..] available as temporaries
+    abstract void evalRow(int r, double [] out, int off, double [][] scratch, int level);
+
+    // the number of row temporaries that evalRow() needs
+    abstract int depth();
+
+    // registers the deferred Matrix of the expression at the operand matrices
+    abstract void addReader(Matrix reader);
+
+    // the expression for a Matrix operand, a deferred Matrix contributes its own tree, thus the evaluation is fused
+    static MatrixExpr of(Matrix m) {
+        MatrixExpr e = m.getDeferredExpr();
+        return e != null ? e : new Leaf(m);
+    }
+
+    // evaluates the whole expression to a row-major flat array
+    double [] evaluate() {
+        final double [] res = new double[nrows*ncols];
+        if ((long)nrows*ncols >= minParallelElements && nrows > 1)
+            ParallelEngine.run(new RowsTask(this, res, 0, nrows, Math.max(1, nrows / (4*ParallelEngine.getNumThreads()))));
+        else
+            evalRows(res, 0, nrows);
+        return res;
+    }
+
+    void evalRows(double [] res, int r0, int r1) {
+        double [][] scratch = new double[depth()][ncols];
+        for (int r = r0; r < r1; r++)
+            evalRow(r, res, r*ncols, scratch, 0);
+    }
+
+    static class RowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final MatrixExpr e;  final double [] res;  final int r0, r1, grain;
+
+        RowsTask(MatrixExpr e, double [] res, int r0, int r1, int grain) {
+            this.e = e; this.res = res; this.r0 = r0; this.r1 = r1; this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (r1 - r0 <= grain) {
+                e.evalRows(res, r0, r1);
+                return;
+            }
+            int mid = (r0 + r1) >>> 1;
+            invokeAll(new RowsTask(e, res, r0, mid, grain), new RowsTask(e, res, mid, r1, grain));
+        }
+    }
+
+
+    // a Matrix operand
+    static final class Leaf extends MatrixExpr {
+        final Matrix m;
+
+        Leaf(Matrix m) {
+            super(m.numRows(), m.numCols());
+            this.m = m;
+        }
+
+        void evalRow(int r, double [] out, int off, double [][] scratch, int level) {
+            double [] fd = m.flatData();    // without evaluating the pending readers, i.e. this expression
+            if (fd != null) {
+                int idx = m.getFlatOffset() + r*m.getRowStride();
+                int cs = m.getColStride();
+                if (cs == 1)
+                    System.arraycopy(fd, idx, out, off, ncols);
+                else
+                    for (int c = 0; c < ncols; c++, idx += cs)
+                        out[off+c] = fd[idx];
+            }
+            else
+                System.arraycopy(m.rowData()[r], 0, out, off, ncols);
+        }
+
+        int depth() { return 0; }
+
+        void addReader(Matrix reader) { m.addPendingReader(reader); }
+    }
+
+    // an element-wise function of an expression, op is an ElementwiseOps operation code and p the exponent for POW
+    static final class Unary extends MatrixExpr {
+        final int op;  final double p;  final MatrixExpr x;
+
+        Unary(int op, double p, MatrixExpr x) {
+            super(x.nrows, x.ncols);
+            this.op = op;
+            this.p = p;
+            this.x = x;
+        }
+
+        void evalRow(int r, double [] out, int off, double [][] scratch, int level) {
+            x.evalRow(r, out, off, scratch, level);
+            ElementwiseOps.applyRange(op, p, out, off, out, off, ncols);
+        }
+
+        int depth() { return x.depth(); }
+
+        void addReader(Matrix reader) { x.addReader(reader); }
+    }
+
+    // an element-wise operation between two expressions of the same size
+    static final class Binary extends MatrixExpr {
+        final int op;  final MatrixExpr x, y;
+
+        Binary(int op, MatrixExpr x, MatrixExpr y) {
+            super(x.nrows, x.ncols);
+            this.op = op;
+            this.x = x;
+            this.y = y;
+        }
+
+        void evalRow(int r, double [] out, int off, double [][] scratch, int level) {
+            x.evalRow(r, out, off, scratch, level);
+            double [] t = scratch[level];
+            y.evalRow(r, t, 0, scratch, level+1);
+            int n = ncols;
+            switch (op) {
+                case ADD: for (int k = 0; k < n; k++) out[off+k] += t[k]; break;
+                case SUB: for (int k = 0; k < n; k++) out[off+k] -= t[k]; break;
+                case MUL: for (int k = 0; k < n; k++) out[off+k] *= t[k]; break;
+                case DIV: for (int k = 0; k < n; k++) out[off+k] /= t[k]; break;
+                default: throw new IllegalStateException("unknown binary operation "+op);
+            }
+        }
+
+        int depth() { return Math.max(x.depth(), 1 + y.depth()); }
+
+        void addReader(Matrix reader) {
+            x.addReader(reader);
+            y.addReader(reader);
+        }
+    }
+
+    // an element-wise operation between an expression and a scalar, e.g. A*2 or 1-A (scalarFirst)
+    static final class Scalar extends MatrixExpr {
+        final int op;  final MatrixExpr x;  final double v;  final boolean scalarFirst;
+
+        Scalar(int op, MatrixExpr x, double v, boolean scalarFirst) {
+            super(x.nrows, x.ncols);
+            this.op = op;
+            this.x = x;
+            this.v = v;
+            this.scalarFirst = scalarFirst;
+        }
+
+        void evalRow(int r, double [] out, int off, double [][] scratch, int level) {
+            x.evalRow(r, out, off, scratch, level);
+            int end = off + ncols;
+            double s = v;
+            switch (op) {
+                case ADD: for (int k = off; k < end; k++) out[k] += s; break;
+                case SUB: if (scalarFirst)
+                              for (int k = off; k < end; k++) out[k] = s - out[k];
+                          else
+                              for (int k = off; k < end; k++) out[k] -= s;
+                          break;
+                case MUL: for (int k = off; k < end; k++) out[k] *= s; break;
+                case DIV: if (scalarFirst)
+                              for (int k = off; k < end; k++) out[k] = s / out[k];
+                          else
+                              for (int k = off; k < end; k++) out[k] /= s;
+                          break;
+                default: throw new IllegalStateException("unknown scalar operation "+op);
+            }
+        }
+
+        int depth() { return x.depth(); }
+
+        void addReader(Matrix reader) { x.addReader(reader); }
+    }
+}
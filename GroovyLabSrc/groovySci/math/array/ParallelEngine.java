@@ -0,0 +1,43 @@
+package groovySci.math.array;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// keeps the fork/join pool that the multithreaded numeric routines of GroovySci share,
+// e.g.
+//   ParallelEngine.setNumThreads(8)   // use 8 worker threads
+public class ParallelEngine {
+
+    static private int numThreads = Runtime.getRuntime().availableProcessors();
+    static private ForkJoinPool pool = null;
+
+    // the shared pool, created at first use
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(numThreads);
+        return pool;
+    }
+
+    public static synchronized int getNumThreads() {
+        return numThreads;
+    }
+
+    // sets the parallelism level, a new pool is created at next use. The current pool is not shut down,
+    // since a run() of another thread may still be submitting to it; its idle workers terminate by themselves
+    public static synchronized void setNumThreads(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("number of threads should be positive, given "+n);
+        if (n == numThreads)
+            return;
+        numThreads = n;
+        pool = null;
+    }
+
+    // runs the task at the shared pool and waits for its completion,
+    // a task started from a worker thread (i.e. nested parallelism) is run directly at the worker's pool
+    public static <T> T run(ForkJoinTask<T> task) {
+        if (ForkJoinTask.inForkJoinPool())
+            return task.invoke();
+        return getPool().invoke(task);
+    }
+}
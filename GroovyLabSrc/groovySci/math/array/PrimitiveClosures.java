@@ -0,0 +1,213 @@
+package groovySci.math.array;
+
+import groovy.lang.Closure;
+import groovySci.math.array.util.Function;
+import groovySci.math.array.util.IndexPredicate;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Calls Groovy closures with a primitive parameter without boxing the argument and without Groovy's dynamic dispatch.
+
+ A closure declared with a double parameter, e.g. { double x -> x*x+1 }, is called directly through a method handle
+ to its doCall(double) method, and similarly a closure with an int parameter used as an index predicate.
+ Closures with an untyped parameter, e.g. { x -> x*x+1 }, are called with Closure.call() as before.
+
+ Matrix.map(), Matrix.eachValue(), Vec.map(), Vec.i_map(), Matrix.filterRows() and Matrix.filterColumns() use this
+ path automatically. The parallel variants Matrix.pmap() and Vec.pmap() split the elements across the threads of
+ the ParallelEngine pool, they are only for pure closures, i.e. closures that do not update shared state, e.g.
+
+   A = rand(1000, 1000)
+   A.map { double x -> x*x+1 }       // primitive call, no boxing of the argument
+   A.pmap { double x -> sin(x)*x }   // the same, in parallel
+ */
+public class PrimitiveClosures {
+
+    // Vec elements are split into segments of that many elements for the parallel variants
+    public static int segmentLength = 1 << 12;
+
+    // the doCall(double) and doCall(int) handles of each closure class, looked up once per class
+    private static final ClassValue<MethodHandle> doubleDoCall = new ClassValue<MethodHandle>() {
+        protected MethodHandle computeValue(Class<?> cls) {
+            return lookupDoCall(cls, double.class);
+        }
+    };
+
+    private static final ClassValue<MethodHandle> intDoCall = new ClassValue<MethodHandle>() {
+        protected MethodHandle computeValue(Class<?> cls) {
+            return lookupDoCall(cls, int.class);
+        }
+    };
+
+    // the doCall method with the single parameter type, as (Closure, param) -> Object handle, null if there is none
+    private static MethodHandle lookupDoCall(Class<?> cls, Class<?> paramType) {
+        try {
+            Method m = cls.getMethod("doCall", paramType);
+            m.setAccessible(true);   // the generated closure classes are not always public
+            return MethodHandles.lookup().unreflect(m).asType(MethodType.methodType(Object.class, Closure.class, paramType));
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+        catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasSingleParameter(Closure c, Class<?> paramType) {
+        Class [] types = c.getParameterTypes();
+        return types.length == 1 && types[0] == paramType;
+    }
+
+    // the closure as a Function called without boxing when it has a single double parameter, else null
+    public static Function asFunction(Closure c) {
+        if (!hasSingleParameter(c, double.class))
+            return null;
+        MethodHandle h = doubleDoCall.get(c.getClass());
+        if (h == null)
+            return null;
+        final MethodHandle bound = h.bindTo(c);
+        return new Function() {
+            public double f(double x) {
+                try {
+                    return ((Number) (Object) bound.invokeExact(x)).doubleValue();
+                }
+                catch (RuntimeException e) { throw e; }
+                catch (Error e) { throw e; }
+                catch (Throwable t) { throw new RuntimeException(t); }
+            }
+        };
+    }
+
+    // the closure as a Function, with the primitive path when possible, else through Closure.call()
+    public static Function toFunction(final Closure c) {
+        Function f = asFunction(c);
+        if (f != null)
+            return f;
+        return new Function() {
+            public double f(double x) {
+                return ((Number) c.call(x)).doubleValue();
+            }
+        };
+    }
+
+    // the closure as an IndexPredicate, with the primitive path when it has a single int parameter
+    public static IndexPredicate toIndexPredicate(final Closure c) {
+        MethodHandle h = hasSingleParameter(c, int.class) ? intDoCall.get(c.getClass()) : null;
+        if (h == null)
+            return new IndexPredicate() {
+                public boolean test(int i) {
+                    return (Boolean) c.call(i);
+                }
+            };
+        final MethodHandle bound = h.bindTo(c);
+        return new IndexPredicate() {
+            public boolean test(int i) {
+                try {
+                    return (Boolean) (Object) bound.invokeExact(i);
+                }
+                catch (RuntimeException e) { throw e; }
+                catch (Error e) { throw e; }
+                catch (Throwable t) { throw new RuntimeException(t); }
+            }
+        };
+    }
+
+    // the indices 0 .. n-1 selected by the predicate closure, each index is tested once
+    static boolean [] select(Closure predicate, int n) {
+        IndexPredicate p = toIndexPredicate(predicate);
+        boolean [] keep = new boolean[n];
+        for (int k = 0; k < n; k++)
+            keep[k] = p.test(k);
+        return keep;
+    }
+
+
+    // M = f(M) in-place, in parallel if parallel is true
+    static void map(Function f, Matrix M, boolean parallel) {
+        int nrows = M.numRows();  int ncols = M.numCols();
+        double [][] rows = new double[nrows][];  int [] off = new int[nrows];
+        if (!ElementwiseOps.rowViews(M, rows, off)) {
+            M.unflatten();    // strided flat storage
+            ElementwiseOps.rowViews(M, rows, off);
+        }
+        if (parallel && nrows > 1)
+            ParallelEngine.run(new RowsTask(f, rows, off, ncols, 0, nrows, Math.max(1, nrows / (4*ParallelEngine.getNumThreads()))));
+        else
+            mapRows(f, rows, off, ncols, 0, nrows);
+    }
+
+    // y = f(x) for double [] arrays, y can be x
+    static void map(Function f, double [] x, double [] y, int n, boolean parallel) {
+        if (!parallel || n <= segmentLength) {
+            mapRange(f, x, y, 0, n);
+            return;
+        }
+        int nseg = (n + segmentLength - 1) / segmentLength;
+        ParallelEngine.run(new RangeTask(f, x, y, 0, nseg, n));
+    }
+
+    private static void mapRange(Function f, double [] x, double [] y, int from, int to) {
+        for (int k = from; k < to; k++)
+            y[k] = f.f(x[k]);
+    }
+
+    private static void mapRows(Function f, double [][] rows, int [] off, int ncols, int r0, int r1) {
+        for (int r = r0; r < r1; r++) {
+            double [] row = rows[r];
+            int end = off[r] + ncols;
+            for (int k = off[r]; k < end; k++)
+                row[k] = f.f(row[k]);
+        }
+    }
+
+    static class RowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Function f;  final double [][] rows;  final int [] off;
+        final int ncols, r0, r1, grain;
+
+        RowsTask(Function f, double [][] rows, int [] off, int ncols, int r0, int r1, int grain) {
+            this.f = f; this.rows = rows; this.off = off;
+            this.ncols = ncols; this.r0 = r0; this.r1 = r1; this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (r1 - r0 <= grain) {
+                mapRows(f, rows, off, ncols, r0, r1);
+                return;
+            }
+            int mid = (r0 + r1) >>> 1;
+            invokeAll(new RowsTask(f, rows, off, ncols, r0, mid, grain),
+                      new RowsTask(f, rows, off, ncols, mid, r1, grain));
+        }
+    }
+
+    // maps the segments s0 .. s1-1 of segmentLength elements
+    static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Function f;  final double [] x, y;  final int s0, s1, n;
+
+        RangeTask(Function f, double [] x, double [] y, int s0, int s1, int n) {
+            this.f = f; this.x = x; this.y = y; this.s0 = s0; this.s1 = s1; this.n = n;
+        }
+
+        @Override
+        protected void compute() {
+            if (s1 - s0 <= 1) {
+                mapRange(f, x, y, s0*segmentLength, Math.min(n, s1*segmentLength));
+                return;
+            }
+            int mid = (s0 + s1) >>> 1;
+            invokeAll(new RangeTask(f, x, y, s0, mid, n), new RangeTask(f, x, y, mid, s1, n));
+        }
+    }
+}
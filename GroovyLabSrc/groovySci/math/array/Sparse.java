@@ -14,6 +14,8 @@ public class Sparse extends  GroovyObjectSupport {
      public int Nrows;
      public int Ncols;
      
+     private SparseMV spmv;  // the parallel matrix-vector product engine for csm, built at first use
+     
      public int numRows() { return Nrows; }
      public int numColumns() { return Ncols; }
      
@@ -110,13 +112,21 @@ public class Sparse extends  GroovyObjectSupport {
          return result;
      }
      
-     // matrix vector multiplication
+     // the matrix-vector product engine of the matrix, rebuilt when csm is replaced
+     public synchronized SparseMV getSpMV() {
+         if (spmv == null || !spmv.sharesArrays(csm.p, csm.i, csm.x) || spmv.m != csm.m || spmv.n != csm.n)
+             spmv = new SparseMV(csm);
+         return spmv;
+     }
+     
+     // matrix vector multiplication, multithreaded for large matrices
      public double [] multiply(double [] x) {
-         double [] y = new double[x.length];
-         boolean success = Dcs_gaxpy.cs_gaxpy(csm, x, y);
-         if (success == false)
-             System.out.println("failure in Dcs_gaxpy.cs_gaxpy");
-         return y;  
+         return getSpMV().multiply(x);
+     }
+     
+     // transposed matrix vector multiplication, y = A'*x
+     public double [] transMultiply(double [] x) {
+         return getSpMV().transMultiply(x);
      }
           
      // matrix vector multiplication
@@ -340,7 +350,10 @@ public class Sparse extends  GroovyObjectSupport {
      //    y:    in/out, size m
      //          returns true if successful, false on error
      public static boolean  cs_gaxpy(Sparse A, double [] x, double [] y) {
-         return Dcs_gaxpy.cs_gaxpy(A.csm, x,  y);
+         if (A.csm == null || A.csm.nz != -1 || x == null || y == null)
+             return false;
+         A.getSpMV().multAdd(1.0, x, y);
+         return true;
      }
      
      // solve Ax=b using LU factorization
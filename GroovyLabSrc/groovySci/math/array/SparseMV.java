@@ -0,0 +1,191 @@
+package groovySci.math.array;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Multithreaded sparse matrix - vector products over the compressed-column layout of
+ csparsej Dcs and MTJ CompColMatrix matrices.
+
+ The transposed product A'*x is computed column-parallel directly at the compressed-column arrays.
+ For the product A*x a compressed-row copy of the matrix is built at the first parallel product,
+ and the rows are then split across the threads of the ParallelEngine pool, in parts with about
+ the same number of nonzeros. Matrices with fewer than minParallelNonzeros nonzeros are multiplied serially.
+
+ Sparse and CCMatrix keep an engine per matrix, thus the compressed-row copy is built once, e.g.
+
+   s = loadSparse("/home/sp/matrix/t1")
+   y = s.multiply(x)        // parallel for large matrices
+   SparseMV.minParallelNonzeros = 1000000    // tune the parallelization threshold
+
+ The engine shares the compressed-column arrays, if their values are changed in place invalidate() should be called.
+ */
+public class SparseMV {
+
+    // matrices with at least that many nonzeros are multiplied in parallel
+    public static int minParallelNonzeros = 1 << 15;
+
+    final int m, n;   // rows, columns
+    final int [] colPtr, rowIdx;
+    final double [] vals;
+
+    // the compressed-row copy, built at the first parallel A*x product
+    private int [] rowPtr, colIdx;
+    private double [] rowVals;
+
+    public SparseMV(int m, int n, int [] colPtr, int [] rowIdx, double [] vals) {
+        if (colPtr.length < n+1)
+            throw new IllegalArgumentException("column pointers should have "+(n+1)+" elements, have "+colPtr.length);
+        this.m = m;  this.n = n;
+        this.colPtr = colPtr;  this.rowIdx = rowIdx;  this.vals = vals;
+    }
+
+    // an engine for a compressed csparsej matrix
+    public SparseMV(Dcs A) {
+        this(A.m, A.n, A.p, A.i, A.x);
+        if (A.nz != -1)
+            throw new IllegalArgumentException("the Dcs matrix is in triplet form, compress it first");
+    }
+
+    // true if the engine is built on these compressed-column arrays
+    boolean sharesArrays(int [] cp, int [] ri, double [] x) {
+        return cp == colPtr && ri == rowIdx && x == vals;
+    }
+
+    public int numRows() { return m; }
+
+    public int numColumns() { return n; }
+
+    public int nnz() { return colPtr[n]; }
+
+    // drops the compressed-row copy, it is rebuilt at the next parallel product
+    public synchronized void invalidate() {
+        rowPtr = null;  colIdx = null;  rowVals = null;
+    }
+
+    // y = A*x
+    public double [] multiply(double [] x) {
+        return multAdd(1.0, x, new double[m]);
+    }
+
+    // y = A'*x
+    public double [] transMultiply(double [] x) {
+        return transMultAdd(1.0, x, new double[n]);
+    }
+
+    // y = y + alpha*A*x, returns y
+    public double [] multAdd(double alpha, double [] x, double [] y) {
+        if (x.length < n || y.length < m)
+            throw new IllegalArgumentException("A*x: A is "+m+" x "+n+", x has "+x.length+" elements, y has "+y.length);
+        if (nnz() < minParallelNonzeros || ParallelEngine.getNumThreads() < 2) {
+            // scatter the columns, no compressed-row copy is needed
+            for (int c = 0; c < n; c++) {
+                double ax = alpha*x[c];
+                for (int p = colPtr[c]; p < colPtr[c+1]; p++)
+                    y[rowIdx[p]] += vals[p]*ax;
+            }
+            return y;
+        }
+        int [] rp, ci;  double [] rv;
+        synchronized (this) {
+            buildRowCopy();
+            rp = rowPtr;  ci = colIdx;  rv = rowVals;
+        }
+        ParallelEngine.run(new PartsTask(rp, ci, rv, alpha, x, y, partition(rp, m), 0, numParts()));
+        return y;
+    }
+
+    // y = y + alpha*A'*x, returns y
+    public double [] transMultAdd(double alpha, double [] x, double [] y) {
+        if (x.length < m || y.length < n)
+            throw new IllegalArgumentException("A'*x: A is "+m+" x "+n+", x has "+x.length+" elements, y has "+y.length);
+        if (nnz() < minParallelNonzeros || ParallelEngine.getNumThreads() < 2)
+            dotRows(colPtr, rowIdx, vals, alpha, x, y, 0, n);
+        else
+            ParallelEngine.run(new PartsTask(colPtr, rowIdx, vals, alpha, x, y, partition(colPtr, n), 0, numParts()));
+        return y;
+    }
+
+    // builds the compressed-row copy of the matrix, if it is not already built
+    public synchronized void buildRowCopy() {
+        if (rowPtr != null)
+            return;
+        int nz = nnz();
+        int [] rp = new int[m+1];
+        for (int p = 0; p < nz; p++)
+            rp[rowIdx[p]+1]++;
+        for (int r = 0; r < m; r++)
+            rp[r+1] += rp[r];
+        int [] next = new int[m];
+        System.arraycopy(rp, 0, next, 0, m);
+        int [] ci = new int[nz];
+        double [] rv = new double[nz];
+        for (int c = 0; c < n; c++)
+            for (int p = colPtr[c]; p < colPtr[c+1]; p++) {
+                int q = next[rowIdx[p]]++;
+                ci[q] = c;
+                rv[q] = vals[p];
+            }
+        colIdx = ci;  rowVals = rv;
+        rowPtr = rp;
+    }
+
+    // y[k] += alpha * (the dot product of the compressed vector k with x), for k in [k0, k1)
+    private static void dotRows(int [] ptr, int [] idx, double [] v, double alpha, double [] x, double [] y, int k0, int k1) {
+        for (int k = k0; k < k1; k++) {
+            double s = 0.0;
+            for (int p = ptr[k]; p < ptr[k+1]; p++)
+                s += v[p]*x[idx[p]];
+            y[k] += alpha*s;
+        }
+    }
+
+    private static int numParts() {
+        return 4*ParallelEngine.getNumThreads();
+    }
+
+    // the boundaries of numParts() ranges of compressed vectors with about the same number of nonzeros
+    private static int [] partition(int [] ptr, int count) {
+        int parts = numParts();
+        long nz = ptr[count];
+        int [] bounds = new int[parts+1];
+        bounds[parts] = count;
+        for (int k = 1; k < parts; k++) {
+            int target = (int) (nz*k/parts);
+            int lo = bounds[k-1], hi = count;   // the first vector starting at or after target
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ptr[mid] < target)
+                    lo = mid+1;
+                else
+                    hi = mid;
+            }
+            bounds[k] = lo;
+        }
+        return bounds;
+    }
+
+    // computes the parts [p0, p1) of the product, over the compressed-row copy for A*x or over the columns for A'*x
+    static class PartsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int [] ptr, idx;  final double [] v;  final double alpha;
+        final double [] x, y;  final int [] bounds;  final int p0, p1;
+
+        PartsTask(int [] ptr, int [] idx, double [] v, double alpha, double [] x, double [] y, int [] bounds, int p0, int p1) {
+            this.ptr = ptr;  this.idx = idx;  this.v = v;  this.alpha = alpha;  this.x = x;  this.y = y;
+            this.bounds = bounds;  this.p0 = p0;  this.p1 = p1;
+        }
+
+        @Override
+        protected void compute() {
+            if (p1 - p0 == 1) {
+                dotRows(ptr, idx, v, alpha, x, y, bounds[p0], bounds[p1]);
+                return;
+            }
+            int mid = (p0 + p1) >>> 1;
+            invokeAll(new PartsTask(ptr, idx, v, alpha, x, y, bounds, p0, mid),
+                      new PartsTask(ptr, idx, v, alpha, x, y, bounds, mid, p1));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package groovySci.math.array;
+
+import com.nr.sf.Bessel;
+import com.nr.sf.Bessik;
+import com.nr.sf.Bessjy;
+import com.nr.sf.Beta;
+import com.nr.sf.Binomialdist;
+import com.nr.sf.Erf;
+import com.nr.sf.Gamma;
+import com.nr.sf.KSdist;
+import com.nr.sf.Poissondist;
+import com.nr.sf.Sfbatch;
+
+/*
+ The special functions and distributions of Numerical Recipes (com.nr.sf) over Matrix and Vec arguments.
+ The elements are evaluated in parallel by the double [] entry points of com.nr.sf, see Sfbatch, and the
+ results have the shape of the argument, e.g.
+
+   x = rand(500, 500)
+   y = SpecialFunctions.j0(x)                                  // Bessel J0 of the elements of x
+   c = SpecialFunctions.cdf(new com.nr.sf.Gammadist(2, 0.5), x) // any continuous distribution
+   b = SpecialFunctions.p(new com.nr.sf.Binomialdist(10, 0.3), k)  // the elements of k whole numbers
+ */
+public class SpecialFunctions {
+
+    // the elements of x row by row, the flat storage itself when it is already row-major
+    private static double [] rowMajor(Matrix x) {
+        x.eval();
+        if (x.isRowMajorFlat())
+            return x.getFlatArray();
+        int nr = x.numRows(), nc = x.numCols();
+        double [] a = new double[nr*nc];
+        if (!x.isFlat()) {
+            double [][] d = x.getArray();
+            for (int r = 0; r < nr; r++)
+                System.arraycopy(d[r], 0, a, r*nc, nc);
+        }
+        else
+            for (int r = 0; r < nr; r++)
+                for (int c = 0; c < nc; c++)
+                    a[r*nc+c] = x.get(r, c);
+        return a;
+    }
+
+    // a row-major flat Matrix of the shape of x for the values y
+    private static Matrix shaped(double [] y, Matrix x) {
+        return new Matrix(y, x.numRows(), x.numCols(), 0, x.numCols(), 1);
+    }
+
+    private static Vec vec(double [] y) {
+        return new Vec(y, true);
+    }
+
+    // f over the elements of x
+    public static Matrix map(Sfbatch.Fun f, Matrix x) { return shaped(Sfbatch.map(f, rowMajor(x)), x); }
+    public static Vec map(Sfbatch.Fun f, Vec x) { return vec(Sfbatch.map(f, x.getv())); }
+
+    // the density, distribution and inverse distribution of a continuous distribution, e.g. com.nr.sf.Normaldist
+    public static Matrix p(Sfbatch.Dist dist, Matrix x) { return map(Sfbatch.fun(dist, Sfbatch.P), x); }
+    public static Vec p(Sfbatch.Dist dist, Vec x) { return map(Sfbatch.fun(dist, Sfbatch.P), x); }
+    public static Matrix cdf(Sfbatch.Dist dist, Matrix x) { return map(Sfbatch.fun(dist, Sfbatch.CDF), x); }
+    public static Vec cdf(Sfbatch.Dist dist, Vec x) { return map(Sfbatch.fun(dist, Sfbatch.CDF), x); }
+    public static Matrix invcdf(Sfbatch.Dist dist, Matrix p) { return map(Sfbatch.fun(dist, Sfbatch.INVCDF), p); }
+    public static Vec invcdf(Sfbatch.Dist dist, Vec p) { return map(Sfbatch.fun(dist, Sfbatch.INVCDF), p); }
+
+    // the binomial and Poisson distributions, the counts k are whole numbers
+    public static Matrix p(Binomialdist dist, Matrix k) { return shaped(dist.p(rowMajor(k)), k); }
+    public static Vec p(Binomialdist dist, Vec k) { return vec(dist.p(k.getv())); }
+    public static Matrix cdf(Binomialdist dist, Matrix k) { return shaped(dist.cdf(rowMajor(k)), k); }
+    public static Vec cdf(Binomialdist dist, Vec k) { return vec(dist.cdf(k.getv())); }
+    public static Matrix invcdf(Binomialdist dist, Matrix p) { return shaped(dist.invcdf(rowMajor(p)), p); }
+    public static Vec invcdf(Binomialdist dist, Vec p) { return vec(dist.invcdf(p.getv())); }
+
+    public static Matrix p(Poissondist dist, Matrix k) { return shaped(dist.p(rowMajor(k)), k); }
+    public static Vec p(Poissondist dist, Vec k) { return vec(dist.p(k.getv())); }
+    public static Matrix cdf(Poissondist dist, Matrix k) { return shaped(dist.cdf(rowMajor(k)), k); }
+    public static Vec cdf(Poissondist dist, Vec k) { return vec(dist.cdf(k.getv())); }
+    public static Matrix invcdf(Poissondist dist, Matrix p) { return shaped(dist.invcdf(rowMajor(p)), p); }
+    public static Vec invcdf(Poissondist dist, Vec p) { return vec(dist.invcdf(p.getv())); }
+
+    // Bessel functions of integer order
+    public static Matrix j0(Matrix x) { return shaped(Bessjy.j0(rowMajor(x)), x); }
+    public static Vec j0(Vec x) { return vec(Bessjy.j0(x.getv())); }
+    public static Matrix j1(Matrix x) { return shaped(Bessjy.j1(rowMajor(x)), x); }
+    public static Vec j1(Vec x) { return vec(Bessjy.j1(x.getv())); }
+    public static Matrix y0(Matrix x) { return shaped(Bessjy.y0(rowMajor(x)), x); }
+    public static Vec y0(Vec x) { return vec(Bessjy.y0(x.getv())); }
+    public static Matrix y1(Matrix x) { return shaped(Bessjy.y1(rowMajor(x)), x); }
+    public static Vec y1(Vec x) { return vec(Bessjy.y1(x.getv())); }
+    public static Matrix jn(int n, Matrix x) { return shaped(Bessjy.jn(n, rowMajor(x)), x); }
+    public static Vec jn(int n, Vec x) { return vec(Bessjy.jn(n, x.getv())); }
+    public static Matrix yn(int n, Matrix x) { return shaped(Bessjy.yn(n, rowMajor(x)), x); }
+    public static Vec yn(int n, Vec x) { return vec(Bessjy.yn(n, x.getv())); }
+
+    // modified Bessel functions of integer order
+    public static Matrix i0(Matrix x) { return shaped(Bessik.i0(rowMajor(x)), x); }
+    public static Vec i0(Vec x) { return vec(Bessik.i0(x.getv())); }
+    public static Matrix i1(Matrix x) { return shaped(Bessik.i1(rowMajor(x)), x); }
+    public static Vec i1(Vec x) { return vec(Bessik.i1(x.getv())); }
+    public static Matrix k0(Matrix x) { return shaped(Bessik.k0(rowMajor(x)), x); }
+    public static Vec k0(Vec x) { return vec(Bessik.k0(x.getv())); }
+    public static Matrix k1(Matrix x) { return shaped(Bessik.k1(rowMajor(x)), x); }
+    public static Vec k1(Vec x) { return vec(Bessik.k1(x.getv())); }
+    public static Matrix in(int n, Matrix x) { return shaped(Bessik.in(n, rowMajor(x)), x); }
+    public static Vec in(int n, Vec x) { return vec(Bessik.in(n, x.getv())); }
+    public static Matrix kn(int n, Matrix x) { return shaped(Bessik.kn(n, rowMajor(x)), x); }
+    public static Vec kn(int n, Vec x) { return vec(Bessik.kn(n, x.getv())); }
+
+    // Bessel functions of fractional order
+    public static Matrix jnu(double nu, Matrix x) { return shaped(Bessel.jnu(nu, rowMajor(x)), x); }
+    public static Vec jnu(double nu, Vec x) { return vec(Bessel.jnu(nu, x.getv())); }
+    public static Matrix ynu(double nu, Matrix x) { return shaped(Bessel.ynu(nu, rowMajor(x)), x); }
+    public static Vec ynu(double nu, Vec x) { return vec(Bessel.ynu(nu, x.getv())); }
+    public static Matrix inu(double nu, Matrix x) { return shaped(Bessel.inu(nu, rowMajor(x)), x); }
+    public static Vec inu(double nu, Vec x) { return vec(Bessel.inu(nu, x.getv())); }
+    public static Matrix knu(double nu, Matrix x) { return shaped(Bessel.knu(nu, rowMajor(x)), x); }
+    public static Vec knu(double nu, Vec x) { return vec(Bessel.knu(nu, x.getv())); }
+
+    // incomplete gamma and beta functions
+    public static Matrix gammp(double a, Matrix x) { return shaped(Gamma.gammp(a, rowMajor(x)), x); }
+    public static Vec gammp(double a, Vec x) { return vec(Gamma.gammp(a, x.getv())); }
+    public static Matrix gammq(double a, Matrix x) { return shaped(Gamma.gammq(a, rowMajor(x)), x); }
+    public static Vec gammq(double a, Vec x) { return vec(Gamma.gammq(a, x.getv())); }
+    public static Matrix invgammp(Matrix p, double a) { return shaped(Gamma.invgammp(rowMajor(p), a), p); }
+    public static Vec invgammp(Vec p, double a) { return vec(Gamma.invgammp(p.getv(), a)); }
+    public static Matrix betai(double a, double b, Matrix x) { return shaped(Beta.betai(a, b, rowMajor(x)), x); }
+    public static Vec betai(double a, double b, Vec x) { return vec(Beta.betai(a, b, x.getv())); }
+    public static Matrix invbetai(Matrix p, double a, double b) { return shaped(Beta.invbetai(rowMajor(p), a, b), p); }
+    public static Vec invbetai(Vec p, double a, double b) { return vec(Beta.invbetai(p.getv(), a, b)); }
+
+    // error function and its inverses
+    public static Matrix erf(Matrix x) { return shaped(Erf.erf(rowMajor(x)), x); }
+    public static Vec erf(Vec x) { return vec(Erf.erf(x.getv())); }
+    public static Matrix erfc(Matrix x) { return shaped(Erf.erfc(rowMajor(x)), x); }
+    public static Vec erfc(Vec x) { return vec(Erf.erfc(x.getv())); }
+    public static Matrix inverf(Matrix p) { return shaped(Erf.inverf(rowMajor(p)), p); }
+    public static Vec inverf(Vec p) { return vec(Erf.inverf(p.getv())); }
+    public static Matrix inverfc(Matrix p) { return shaped(Erf.inverfc(rowMajor(p)), p); }
+    public static Vec inverfc(Vec p) { return vec(Erf.inverfc(p.getv())); }
+
+    // Kolmogorov-Smirnov distribution
+    public static Matrix pks(Matrix z) { return shaped(KSdist.pks(rowMajor(z)), z); }
+    public static Vec pks(Vec z) { return vec(KSdist.pks(z.getv())); }
+    public static Matrix qks(Matrix z) { return shaped(KSdist.qks(rowMajor(z)), z); }
+    public static Vec qks(Vec z) { return vec(KSdist.qks(z.getv())); }
+    public static Matrix invqks(Matrix q) { return shaped(KSdist.invqks(rowMajor(q)), q); }
+    public static Vec invqks(Vec q) { return vec(KSdist.invqks(q.getv())); }
+    public static Matrix invpks(Matrix p) { return shaped(KSdist.invpks(rowMajor(p)), p); }
+    public static Vec invpks(Vec p) { return vec(KSdist.invpks(p.getv())); }
+}
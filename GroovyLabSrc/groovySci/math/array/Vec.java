@@ -2,6 +2,7 @@ package groovySci.math.array;
 
 import gExec.Interpreter.GlobalValues;
 import groovy.lang.GroovyObjectSupport;
+import groovySci.math.array.util.Function;
 import java.util.StringTokenizer;
 
 import java.text.DecimalFormat;
@@ -150,28 +151,52 @@ public double get(int i) {
 }
 
   
+// a closure with a double parameter, e.g. { double x -> x*x }, is called without boxing the elements
 public Vec eachValue(groovy.lang.Closure c) {
     Vec vr = new Vec(this.length());
+    Function f = PrimitiveClosures.asFunction(c);
+    if (f != null) {
+        PrimitiveClosures.map(f, this.v, vr.v, this.len, false);
+        return vr;
+    }
     for (int i = 0; i < this.len; i++)
         vr.set(i, (Number)c.call(get(i)));
      return vr;
 }
 	
 public Vec  map(groovy.lang.Closure c) {
+    return eachValue(c);
+}
+
+public Vec  map(Function f) {
     Vec vr = new Vec(this.length());
-    for (int i = 0; i < this.len; i++)
-        vr.set(i, (Number)c.call(get(i)));
-     return vr;
+    PrimitiveClosures.map(f, this.v, vr.v, this.len, false);
+    return vr;
+}
+
+// parallel map, only for pure closures, i.e. closures that can be called concurrently
+public Vec  pmap(groovy.lang.Closure c) {
+    return pmap(PrimitiveClosures.toFunction(c));
+}
+
+public Vec  pmap(Function f) {
+    Vec vr = new Vec(this.length());
+    PrimitiveClosures.map(f, this.v, vr.v, this.len, true);
+    return vr;
 }
  
 public void i_eachValue(groovy.lang.Closure c) {  // in-place
+    Function f = PrimitiveClosures.asFunction(c);
+    if (f != null) {
+        PrimitiveClosures.map(f, this.v, this.v, this.len, false);
+        return;
+    }
     for (int i = 0; i < this.len; i++)
         set(i, (Number)c.call(get(i)));
 }
 	
 public void i_map(groovy.lang.Closure c) { // in-place map
-    for (int i = 0; i < this.len; i++)
-        set(i, (Number)c.call(get(i)));
+    i_eachValue(c);
 }
 
 public  double sum() {
@@ -0,0 +1,44 @@
+package groovySci.math.array;
+
+// reports the throughput of the element-wise kernels of ElementwiseOps, on a single thread and in parallel,
+// e.g.  java groovySci.math.array.benchElementwise 2000 2000 5
+public class benchElementwise {
+
+    public static void main(String [] args)
+    {
+        int N = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int M = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int NLoop = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        double [][] x = new double[N][M];
+        double [][] y = new double[N][M];
+        java.util.Random rnd = new java.util.Random(1);
+        for (int r=0; r<N; r++)
+            for (int c=0; c<M; c++)
+                x[r][c] = 0.01+0.98*rnd.nextDouble();   // inside the domain of all the functions
+
+        int savedMinParallel = ElementwiseOps.minParallelElements;
+        System.out.println("element-wise kernels on "+N+" x "+M+" arrays, "+ParallelEngine.getNumThreads()+" threads");
+        System.out.println(String.format("%-10s %14s %14s %8s", "kernel", "serial Mel/s", "parallel Mel/s", "speedup"));
+        for (int op=0; op<ElementwiseOps.numOps(); op++) {
+            ElementwiseOps.minParallelElements = Integer.MAX_VALUE;
+            double serial = throughput(op, x, y, NLoop);
+            ElementwiseOps.minParallelElements = 0;
+            double parallel = throughput(op, x, y, NLoop);
+            System.out.println(String.format("%-10s %14.1f %14.1f %8.2f", ElementwiseOps.name(op), serial, parallel, parallel/serial));
+        }
+        ElementwiseOps.minParallelElements = savedMinParallel;
+    }
+
+    // millions of elements per second, the best of NLoop runs after a warm-up run
+    static double throughput(int op, double [][] x, double [][] y, int NLoop) {
+        ElementwiseOps.apply(op, 1.5, x, y);
+        long best = Long.MAX_VALUE;
+        for (int reps=0; reps < NLoop; reps++) {
+            long start = System.nanoTime();
+            ElementwiseOps.apply(op, 1.5, x, y);
+            best = Math.min(best, System.nanoTime()-start);
+        }
+        return (double)x.length*x[0].length/(best/1000.0);
+    }
+}
@@ -0,0 +1,5 @@
+package groovySci.math.array.util;
+
+public interface IndexPredicate {
+    public boolean test(int i);
+}
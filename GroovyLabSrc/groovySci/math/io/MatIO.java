@@ -3,9 +3,7 @@ package groovySci.math.io;
 
 import gExec.Interpreter.GlobalValues;
 import com.jmatio.types.MLDouble;
-import java.util.ArrayList;
 import com.jmatio.io.*;
-import com.jmatio.types.MLArray;
 import groovy.lang.Binding;
 import java.io.File;
 import java.io.IOException;
@@ -40,32 +38,14 @@ public class MatIO {
       
       Object valueOfVariable = GlobalValues.GroovyShell.getProperty(variableNameToSave);
       if (valueOfVariable != null)  {  // variable exist in GroovySci's workspace
-        ArrayList <MLArray> list = new ArrayList<MLArray>();  // list of variables to save
-      
-        // depending on the type of the variable construct the compatible .mat file object
-      if (valueOfVariable instanceof double[])  {
-        double [] valuesOfVariable = (double[])valueOfVariable;
-        MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable, 1);
-        list.add(mlDouble);   // add to the list of variables to save
-      }
-      else if (valueOfVariable instanceof double[][])  {
-          double [][] valuesOfVariable = (double [][]) valueOfVariable;
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable);
-          list.add(mlDouble);   // add to the list of variables to save
-       }
-      else if (valueOfVariable instanceof groovySci.math.array.Vec)  {
-          double [] valuesOfVariable = ((groovySci.math.array.Vec) valueOfVariable).getv();
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable, 1);
-          list.add(mlDouble);   // add to the list of variables to save
-       }
-      else if (valueOfVariable instanceof groovySci.math.array.Matrix)  {
-          double [][]valuesOfMatrix = ((groovySci.math.array.Matrix)valueOfVariable).getArray();
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfMatrix);
-          list.add(mlDouble);   // add to the list of variables to save
-       }
-            
         try {
-        new MatFileWriter(matFileName, list);   // save the variable to the .mat file
+        MatFileStreamWriter writer = new MatFileStreamWriter(matFileName);
+        try {
+          writeVariable(writer, variableNameToSave, valueOfVariable);   // save the variable to the .mat file
+        }
+        finally {
+          writer.close();
+        }
         }
         catch (IOException ex)  {
             System.out.println("IO Exception in MatFileWriter");
@@ -75,6 +55,30 @@ public class MatIO {
        }
       return success;
       }
+      
+    // writes the variable if its type is compatible with a .mat file double array, the data are streamed to the file
+    // without conversion to MLArray objects, thus large variables do not need additional memory
+    private static boolean writeVariable(MatFileStreamWriter writer, String name, Object value) throws IOException {
+      if (value instanceof double[])  {
+        double [] v = (double[])value;
+        writer.writeDouble(name, v, 1);
+      }
+      else if (value instanceof double[][])
+        writer.writeDouble(name, (double [][]) value);
+      else if (value instanceof groovySci.math.array.Vec)
+        writer.writeDouble(name, ((groovySci.math.array.Vec) value).getv(), 1);
+      else if (value instanceof groovySci.math.array.Matrix)  {
+        final groovySci.math.array.Matrix M = (groovySci.math.array.Matrix) value;
+        writer.writeDouble(name, M.numRows(), M.numColumns(), new MatFileStreamWriter.DoubleSource() {
+            public double get(int row, int column) {
+                return M.get(row, column);
+            }
+        });
+      }
+      else
+        return false;
+      return true;
+    }
          
      /*  GroovySci sample code
   //    save a Matrix    
@@ -119,37 +123,20 @@ public class MatIO {
       Map varsMap = currentVarBinding.getVariables();
       Set varsSet = varsMap.keySet();
       Iterator <String> currentVar = varsSet.iterator();
-      ArrayList <MLArray> list = new ArrayList<MLArray>();  // list of variables to save
+      try {
+      MatFileStreamWriter writer = new MatFileStreamWriter(matFileName);
+      try {
       while (currentVar.hasNext()) {  // for all variables
           String variableNameToSave = currentVar.next();
           Object valueOfVariable = GlobalValues.GroovyShell.getProperty(variableNameToSave);
-      if (valueOfVariable != null)  {  // variable exist in GroovySci's workspace
-        // depending on the type of the variable construct the compatible .mat file object
-      if (valueOfVariable instanceof double[])  {
-        double [] valuesOfVariable = (double[])valueOfVariable;
-        MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable, 1);
-        list.add(mlDouble);   // add to the list of variables to save
+      if (valueOfVariable != null)  // variable exist in GroovySci's workspace
+        writeVariable(writer, variableNameToSave, valueOfVariable);   // streamed to the file, one variable at a time
+      }     // for all variables   
+      }
+      finally {
+        writer.close();
+      }
       }
-      else if (valueOfVariable instanceof double[][])  {
-          double [][] valuesOfVariable = (double [][]) valueOfVariable;
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable);
-          list.add(mlDouble);   // add to the list of variables to save
-       }
-      else if (valueOfVariable instanceof groovySci.math.array.Vec)  {
-          double [] valuesOfVariable = ((groovySci.math.array.Vec) valueOfVariable).getv();
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfVariable, 1);
-          list.add(mlDouble);   // add to the list of variables to save
-       }
-      else if (valueOfVariable instanceof groovySci.math.array.Matrix)  {
-          double [][]valuesOfMatrix = ((groovySci.math.array.Matrix)valueOfVariable).getArray();
-          MLDouble mlDouble = new MLDouble(variableNameToSave, valuesOfMatrix);
-          list.add(mlDouble);   // add to the list of variables to save
-          }
-       }     // for all variables   
-      }  // variable exist in GroovySci's workspace
-          try {
-        new MatFileWriter(matFileName, list);   // save the variable to the .mat file
-        }
         catch (IOException ex)  {
             System.out.println("IO Exception in MatFileWriter");
             return false;
@@ -0,0 +1,70 @@
+// GroovySci routines for reading the points of an ODE integration streamed to a file by com.nr.ode.MappedFileSink
+package groovySci.math.io;
+
+import com.nr.ode.MappedFileReader;
+import groovySci.math.array.Matrix;
+import java.io.File;
+import java.io.IOException;
+
+/*
+ The columns of the file as Matrix objects, x as column 0 and y[i] as column i+1. The file is mapped by a
+ MappedFileReader and a column is only read when it is asked for, directly to the storage of the returned Matrix, e.g.
+
+   sink = new com.nr.ode.MappedFileSink(new File("lorenz.bin"))
+   ... integrate with new com.nr.ode.StreamOutput(200, sink) ...
+   f = new OdeOutputFile("lorenz.bin")
+   xs = f.x()                 // count x 1
+   m = f.matrix(0, 1, 3)      // count x 3, the columns x, y[0] and y[2]
+ */
+public class OdeOutputFile {
+
+    private final MappedFileReader reader;
+
+    public OdeOutputFile(File file) throws IOException {
+        reader = new MappedFileReader(file);
+    }
+
+    public OdeOutputFile(String fileName) throws IOException {
+        this(new File(fileName.trim()));
+    }
+
+    // the reader of the file, for single points
+    public MappedFileReader reader() { return reader; }
+
+    // the number of variables y
+    public int nvar() { return reader.nvar; }
+
+    // the number of points
+    public long count() { return reader.count; }
+
+    // column c, 0 for x and i+1 for y[i], as a count x 1 Matrix
+    public Matrix column(int c) {
+        return matrix(c);
+    }
+
+    public Matrix x() { return column(0); }
+
+    public Matrix variable(int i) {
+        if (i < 0 || i >= reader.nvar)
+            throw new IllegalArgumentException("variable "+i+" is not at the file, that keeps "+reader.nvar+" variables");
+        return column(i+1);
+    }
+
+    // the Matrix of count rows with the columns cols, all the columns when cols is empty. The Matrix is kept at a
+    // column-major flat storage, thus each column is read at its place without an intermediate copy
+    public Matrix matrix(int... cols) {
+        int [] c = cols;
+        if (c.length == 0) {
+            c = new int[reader.nvar+1];
+            for (int j = 0; j < c.length; j++)
+                c[j] = j;
+        }
+        if (reader.count > Integer.MAX_VALUE / Math.max(1, c.length))
+            throw new IllegalArgumentException(reader.count+" points of "+c.length+" columns are too many for a Matrix");
+        int n = (int) reader.count;
+        double [] data = new double[n*c.length];
+        for (int j = 0; j < c.length; j++)
+            reader.column(c[j], data, j*n);
+        return new Matrix(data, n, c.length, 0, 1, n);
+    }
+}
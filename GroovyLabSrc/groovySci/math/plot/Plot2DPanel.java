@@ -468,6 +468,10 @@ public class Plot2DPanel extends PlotPanel {
        return ((Plot2DCanvas) plotCanvas).addScalogramPlot(name, getNewColor(), XY);
     }
     
+    public int addScalogramPlot(String name, double [] data, int rows, int cols)  {
+       return ((Plot2DCanvas) plotCanvas).addScalogramPlot(name, getNewColor(), data, rows, cols);
+    }
+    
     @Override
     public int addPlot(String type, String name, Color color, double[]... XY) {
         if (type.equalsIgnoreCase(SCATTER)) {
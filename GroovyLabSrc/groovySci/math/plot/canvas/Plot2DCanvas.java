@@ -206,6 +206,11 @@ public class Plot2DCanvas extends PlotCanvas {
         public int addScalogramPlot(String name, Color c, double[][] XY) {
 	return addPlot(new scalogram(name, c, XY));
 	}
+
+        // a scalogram of a rows x cols row-major buffer, rendered without copying the buffer
+        public int addScalogramPlot(String name, Color c, double[] data, int rows, int cols) {
+	return addPlot(new scalogram(name, c, data, rows, cols));
+	}
 	
  
 
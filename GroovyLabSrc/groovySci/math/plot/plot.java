@@ -2348,6 +2348,19 @@ static public PlotPanel plot(double []  x) {
                 return currentPlot;
         }
 
+        // the scalogram of a rows x cols row-major buffer, e.g. the power of a frequency-domain wavelets.CWT, without copying
+        static public PlotPanel plot2d_scalogram(double [] data, int rows, int cols, String name) {
+            if (new_figure == true)  newPlot2D();
+	        ((Plot2DPanel)currentPlot).addScalogramPlot(name, data, rows, cols);
+                return currentPlot;
+        }
+
+        static public PlotPanel plot2d_scalogram(wavelets.CWT w, String name) {
+            if (w.power == null)
+                return plot2d_scalogram(w.getAbs(), name);
+            return plot2d_scalogram(w.power, w.f.length, w.nt, name);
+        }
+
 
 
         static public PlotPanel plot2d_cloud(double [][] sample, int slices_x,int slices_y, String name) {
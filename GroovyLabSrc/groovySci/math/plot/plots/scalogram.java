@@ -11,6 +11,10 @@ import groovySci.math.plot.render.*;
 
 public class scalogram extends Plot implements JSci.awt.ColorScheme {
     double [][] XY;
+    // a scalogram of a contiguous row-major buffer, e.g. wavelets.CWT.power, is rendered from the buffer without copying,
+    // with the color of each pixel from the maximum of the columns that it covers
+    double [] buf;
+    int bufRows, bufCols;
 	private double min, max;
 	private int deltay;
 	private double[] deltax;
@@ -33,6 +37,12 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
                 setData(_XY);
               }
 
+	public scalogram(String n, Color c, double [] data, int rows, int cols) {
+                super(n, c);
+                CS = this;
+                setData(data, rows, cols);
+              }
+
   public Color getColor(float f) {
      if((f<0)||(f>1))
        throw new IllegalArgumentException("Color are given for values between 0 and 1 : "+f);
@@ -67,6 +77,11 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
         aDraw.drawString(MinString, Contourx,yCoordMax-1);
     }
 		aDraw.setClip(2*Contourx+ColorScaleWidth,Contoury,xCoordMax-1,yCoordMax-1);
+    if (buf != null) {
+        plotBuffer(aDraw);
+        aDraw.canvas.repaint();
+        return;
+    }
     for(int k=0;k<XY.length;k++) {
 			for(int l=0;l<XY[k].length;l++) {
                 aDraw.setColor(CS.getColor((float)XY[k][l]));
@@ -83,10 +98,58 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
                 
 
 
+        // the first row of the buffer is drawn at the bottom, as the first row of setData(double [][])
+        private void plotBuffer(AWTDrawer aDraw) {
+            double range = max - min;
+            int x0 = 2*Contourx+ColorScaleWidth;
+            for (int k=0; k<bufRows; k++) {
+                int rowStart = (bufRows-k-1)*bufCols;
+                for (int px=0; px<xCoordMax; px++) {
+                    int c0 = (int)Math.floor(px/deltax[k]);
+                    if (c0 >= bufCols)
+                        break;
+                    int c1 = Math.min(bufCols, Math.max(c0+1, (int)Math.floor((px+1)/deltax[k])));
+                    double v = buf[rowStart+c0];
+                    for (int c=c0+1; c<c1; c++)
+                        if (buf[rowStart+c] > v)
+                            v = buf[rowStart+c];
+                    float level = range == 0 ? 1f : (float)(1-(v-min)/range);
+                    aDraw.setColor(CS.getColor(Math.max(0f, Math.min(1f, level))));
+                    aDraw.fillRect(x0+px, k*deltay+Contoury, 1, deltay);
+                }
+            }
+        }
+
+        /**
+        * Sets the data plotted by this scalogram to the rows x cols row-major buffer, the buffer is not copied.
+        */
+	public void setData(double [] data, int rows, int cols) {
+                if (rows < 1 || cols < 1 || data.length < rows*cols)
+                    throw new IllegalArgumentException("the scalogram buffer should have "+rows+" x "+cols+" elements, has "+data.length);
+                buf = data;
+                bufRows = rows;
+                bufCols = cols;
+                XY = null;
+                int n = rows*cols;
+		min=data[0];
+		max=data[0];
+                for (int k=1; k<n; k++) {
+                    if (data[k] > max)
+                        max = data[k];
+                    if (data[k] < min)
+                        min = data[k];
+                }
+                int precision=getPrecision(max-min);
+                MaxString=Double.toString(round(max, precision));
+                MinString=Double.toString(round(min, precision));
+                MiddleString=Double.toString(round((max+min)/2.0,precision));
+	}
+
                 /**
         * Sets the data plotted by this ContourPlot to the specified data.
         */
 	public void setData(double feed[][]) {
+                buf = null;
     //invert the rows
                 double[][] array=new double[feed.length][];
                 for(int k=0;k<array.length;k++) {
@@ -176,12 +239,18 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
   	private void rescale(int  width, int height) {
             int xDim=width-3*Contourx;
             int yDim =height-2*Contoury-ColorScaleWidth;
-            deltay=(int) Math.floor(yDim/XY.length);
-            yCoordMax=deltay*XY.length;
+            int rows = buf != null ? bufRows : XY.length;
+            deltay=(int) Math.floor(yDim/rows);
+            yCoordMax=deltay*rows;
       //modifi 
-	deltax=new double[XY.length];
+	deltax=new double[rows];
       //modifi 
 		xCoordMax=0;
+    if (buf != null) {
+        java.util.Arrays.fill(deltax, xDim/(double)bufCols);
+        xCoordMax = xDim;
+        return;
+    }
     int MaxNumberOfElements=XY[0].length;
     for(int k=1;k<XY.length;k++) {
       MaxNumberOfElements=Math.max(XY[k].length,MaxNumberOfElements);
@@ -197,6 +266,8 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
 
          
 	public double[] isSelected(int[] screenCoordTest, AbstractDrawer draw) {
+		if (XY == null)
+			return null;
 		for (int i = 0; i < XY.length; i++) {
 			int[] screenCoord = draw.project(XY[i]);
 
@@ -207,7 +278,14 @@ public class scalogram extends Plot implements JSci.awt.ColorScheme {
 		return null;
 	}
 
+	// for a buffer scalogram, a copy of the rows of the buffer
 	public double[][] getData() {
+		if (buf != null) {
+			double [][] rows = new double[bufRows][bufCols];
+			for (int k=0; k<bufRows; k++)
+				System.arraycopy(buf, k*bufCols, rows[k], 0, bufCols);
+			return rows;
+		}
 		return XY;
 	}
 
@@ -1,8 +1,12 @@
 package wavelets;
 
+import groovySci.FFT.FFTPlan;
+import groovySci.FFT.RealFFTPlan;
 import groovySci.math.array.Matrix;
+import groovySci.math.array.ParallelEngine;
 
 import java.io.Serializable;
+import java.util.concurrent.RecursiveAction;
 
 // Continuous Morlet Wavelet Transform
 // Copyright (C)  Richard Buessow
@@ -16,7 +20,14 @@ public class CWT implements Serializable{
     public double[] f;
     public double[] t;
     public double[] deltaStept;
+    // the frequency-domain transform (see fft()) stores |W|^2 at a contiguous buffer instead of Re, Im:
+    // the row of frequency f[k] is power[k*nt .. k*nt+nt), at the times t[0..nt)
+    public double[] power;
+    public int nt;
 	
+    private CWT(){
+    }
+
     public CWT(double[] y){
         this(y, y.length, (double) y.length/4, 100, "log", 3, 3);
     }	
@@ -577,7 +588,152 @@ public class CWT implements Serializable{
 		} // :end outer frequency loop
 		//System.out.println("index= " +index);	
 	}
+
+	// Frequency-domain Morlet transform: one forward FFT of the (zero padded) signal, and for each frequency
+	// one inverse FFT of its product with the Fourier transform of the Morlet wavelet,
+	//      Psi(w) = (beta/pi)^(1/4) sqrt(2 pi/beta) exp(-(w-wf)^2 (fs/f)^2/(2 beta)),   wf = 2 pi f/fs
+	// i.e. the transform of the time-domain constructors, computed also at the borders of the signal.
+	// The output is decimated by step: the spectrum is folded to L = M/step bins, thus the inverse FFT
+	// has length L and computes exactly the samples 0, step, 2*step, ... of the transform.
+	// The frequencies are computed in parallel with the ParallelEngine pool.
+	// power is the output buffer of f.length * ceil(y.length/step) elements, or null to allocate it, e.g.
+	//
+	//   fs = 48000;  y = sin(2*Math.PI*1000*inc(0, 1.0/fs, 10))
+	//   w = CWT.fft(y, fs, 20000, 100, 64)
+	//   plot2d_scalogram(w, "CWT")        // renders w.power without copying
+	public static CWT fft(double[] y, int fs, double fmax, int maxNf, int step){
+		if (fmax>fs/2) fmax=fs/2;   // analyze up to the Nyquist frequency
+		double fmin = Math.min(fmax, 8.0*fs/y.length);   // as the time-domain default df0 = 3
+		double[] f = new double[maxNf];
+		for (int k=0;k<maxNf;k++)
+			f[k] = maxNf == 1 ? fmin : fmin*Math.pow(fmax/fmin, (double) k/(maxNf-1));
+		return fft(y, fs, f, step, null);
+	}
+
+	public static CWT fft(final double[] y, final int fs, final double[] f, final int step, double[] power){
+		final int n = y.length, nf = f.length;
+		if (step<1)
+			throw new IllegalArgumentException("the time step should be at least 1, is "+step);
+		final int nt = (n+step-1)/step;
+		if (power == null)
+			power = new double[nf*nt];
+		else if (power.length < nf*nt)
+			throw new IllegalArgumentException("the output buffer should have "+nf+" x "+nt+" elements, has "+power.length);
+		double fmin = Double.MAX_VALUE;
+		for (int k=0;k<nf;k++){
+			if (!(f[k] > 0))
+				throw new IllegalArgumentException("the frequencies should be positive, f["+k+"] = "+f[k]);
+			fmin = Math.min(fmin, f[k]);
+		}
+		// zero padding against the wrap-around of the circular convolution,
+		// the Morlet envelope exp(-beta/2 (f t)^2) is below 1e-7 after 4/f seconds
+		long pad = Math.min(n, (long) Math.ceil(4.0*fs/fmin));
+		final int L = FFTPlan.nextPowerOf2((int) ((n+pad+step-1)/step));
+		if ((long) L*step > Integer.MAX_VALUE-1)
+			throw new IllegalArgumentException("the signal of "+n+" samples is too long for the step "+step);
+		final int M = L*step;
+		// the forward transform of the signal, only the non-negative frequencies are needed for the analytic Morlet wavelet
+		double[] x = new double[M];
+		System.arraycopy(y, 0, x, 0, n);
+		final double[] yre = new double[M/2+1], yim = new double[M/2+1];
+		RealFFTPlan.plan(M).forward(x, yre, yim);
+		x = null;
+
+		CWT w = new CWT();
+		w.Ny = n;
+		w.f = f;
+		w.nt = nt;
+		w.power = power;
+		w.t = new double[nt];
+		for (int j=0;j<nt;j++)
+			w.t[j] = (double) j*step/fs;
+		w.deltaStept = new double[nf];
+		java.util.Arrays.fill(w.deltaStept, (double) step/fs);
+
+		final double[] out = power;
+		int parts = Math.min(nf, ParallelEngine.getNumThreads());
+		if (parts < 2){
+			double[] re = new double[L], im = new double[L];
+			for (int k=0;k<nf;k++)
+				scale(k, yre, yim, M, L, fs, f[k], re, im, out, nt);
+		}
+		else {
+			ParallelEngine.run(new ScalesTask(yre, yim, M, L, fs, f, out, nt, parts, 0, parts));
+		}
+		return w;
+	}
+
+	// power[k*nt .. k*nt+nt) = |W|^2 at the frequency fk, re and im are scratch arrays of L elements
+	static void scale(int k, double[] yre, double[] yim, int M, int L, int fs, double fk,
+	                  double[] re, double[] im, double[] power, int nt){
+		double beta = 2;   // as the Morlet class
+		double wf = 2*Math.PI*fk/fs;   // rad/sample
+		double s = fs/fk;   // the scale in samples
+		double amp = Math.sqrt(Math.sqrt(beta/Math.PI))*Math.sqrt(2*Math.PI/beta)/Math.sqrt(fk);
+		double g = s*s/(2*beta);
+		double cut = Math.sqrt(25/g);   // the Gaussian band around wf, below exp(-25) beyond
+		int b0 = (int) Math.max(0, Math.ceil((wf-cut)*M/(2*Math.PI)));
+		int b1 = (int) Math.min(M/2, Math.floor((wf+cut)*M/(2*Math.PI)));
+		java.util.Arrays.fill(re, 0.0);
+		java.util.Arrays.fill(im, 0.0);
+		// amp*exp(-g dw^2) along the bins with the recurrence e[b+1] = e[b]*q[b], q[b+1] = q[b]*qq,
+		// restarted every 1024 bins to bound the rounding drift
+		double h = 2*Math.PI/M;
+		double qq = Math.exp(-2*g*h*h);
+		double e = 0, q = 0;
+		for (int b=b0;b<=b1;b++){
+			if (((b-b0) & 1023) == 0){
+				double dw = h*b - wf;
+				e = amp*Math.exp(-g*dw*dw);
+				q = Math.exp(-g*(2*dw*h + h*h));
+			}
+			int r = b % L;   // the decimation in time folds the spectrum
+			re[r] += yre[b]*e;
+			im[r] += yim[b]*e;
+			e *= q;
+			q *= qq;
+		}
+		FFTPlan.plan(L).inverse(re, im);   // scaled by 1/L, the transform of length M is scaled by 1/M
+		int step = M/L;
+		double sc = 1.0/((double) step*step);
+		int off = k*nt;
+		for (int j=0;j<nt;j++)
+			power[off+j] = (re[j]*re[j] + im[j]*im[j])*sc;
+	}
+
+	// the frequencies part, part+parts, part+2*parts, ... for part in [p0, p1), with scratch arrays per part
+	static class ScalesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final double[] yre, yim, f, power;
+		final int M, L, fs, nt, parts, p0, p1;
+
+		ScalesTask(double[] yre, double[] yim, int M, int L, int fs, double[] f, double[] power, int nt, int parts, int p0, int p1){
+			this.yre = yre; this.yim = yim; this.M = M; this.L = L; this.fs = fs; this.f = f; this.power = power;
+			this.nt = nt; this.parts = parts; this.p0 = p0; this.p1 = p1;
+		}
+
+		@Override
+		protected void compute(){
+			if (p1-p0 == 1){
+				double[] re = new double[L], im = new double[L];
+				for (int k=p0;k<f.length;k+=parts)
+					scale(k, yre, yim, M, L, fs, f[k], re, im, power, nt);
+				return;
+			}
+			int mid = (p0+p1) >>> 1;
+			invokeAll(new ScalesTask(yre, yim, M, L, fs, f, power, nt, parts, p0, mid),
+			          new ScalesTask(yre, yim, M, L, fs, f, power, nt, parts, mid, p1));
+		}
+	}
+
 	public double[][] getAbs(){
+		if (Re == null){   // frequency-domain transform
+			double out[][] = new double[f.length][nt];
+			for (int i=0;i<out.length;i++)
+				System.arraycopy(power, i*nt, out[i], 0, nt);
+			return out;
+		}
 		double out[][] = new double[Re.length][];
 
 		for (int i=0;i<out.length;i++){
@@ -590,6 +746,11 @@ public class CWT implements Serializable{
 	// by cols
 	public double[] getAbs(int i){
 		System.out.println(i);
+		if (Re == null){
+			double out[] = new double[nt];
+			System.arraycopy(power, i*nt, out, 0, nt);
+			return out;
+		}
 		double out[] = new double[Re[i].length];
 			for (int j=0;j<out.length;j++)
 				out[j] = Math.pow(Re[i][j],2.) + Math.pow(Im[i][j],2.);